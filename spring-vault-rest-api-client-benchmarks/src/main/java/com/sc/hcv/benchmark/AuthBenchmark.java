@@ -0,0 +1,68 @@
+package com.sc.hcv.benchmark;
+
+import com.sc.hcv.auth.VaultAuthenticator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of AppRole login, TLS certificate login and token lookup against the local stub.
+ * TLS login runs over the authenticator's pooled TLS transport, so it measures a login on a reused connection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthBenchmark {
+
+    private StubEnvironment http;
+    private StubEnvironment https;
+    private VaultAuthenticator appRoleAuthenticator;
+    private VaultAuthenticator tlsAuthenticator;
+    private String keyStore;
+    private String trustStore;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        http = new StubEnvironment("http");
+        https = new StubEnvironment("https");
+        appRoleAuthenticator = new VaultAuthenticator(http.getStub().getUrl(), 1, 10, 100, http.getTransport());
+        tlsAuthenticator = new VaultAuthenticator(https.getStub().getUrl(), 1, 10, 100, https.getTransport());
+        keyStore = https.getCertificates().getClientKeyStore();
+        trustStore = https.getCertificates().getClientTrustStore();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        http.close();
+        https.close();
+    }
+
+    @Benchmark
+    public String appRoleLogin() throws Exception {
+        return appRoleAuthenticator.authenticateAppRole("role-id", "secret-id", "/v1/auth/approle/login");
+    }
+
+    @Benchmark
+    public String tlsLogin() throws Exception {
+        return tlsAuthenticator.authenticateTLS(keyStore, StubCertificates.PASSWORD, trustStore, StubCertificates.PASSWORD, "/v1/auth/cert/login");
+    }
+
+    @Benchmark
+    public boolean tokenLookup() throws Exception {
+        return appRoleAuthenticator.isValidToken(VaultStub.CLIENT_TOKEN);
+    }
+}
@@ -0,0 +1,74 @@
+package com.sc.hcv.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sc.hcv.auth.VaultToken;
+import com.sc.hcv.response.VaultResponseDecoder;
+import com.sc.hcv.secrets.VaultSecret;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of decoding Vault responses, without any I/O. The ObjectMapper variant is the tree-building baseline
+ * the streaming decoder replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodingBenchmark {
+
+    @Param({"4", "64", "1024"})
+    public int secretKeys;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private byte[] secretResponse;
+    private byte[] authResponse;
+
+    @Setup
+    public void setUp() {
+        StringBuilder data = new StringBuilder("{");
+        for (int i = 0; i < secretKeys; i++) {
+            if (i > 0) {
+                data.append(',');
+            }
+            data.append("\"key").append(i).append("\":\"").append(String.format("value-%026d", i)).append('"');
+        }
+        data.append('}');
+        secretResponse = ("{\"request_id\":\"benchmark\",\"lease_id\":\"\",\"renewable\":false,\"lease_duration\":2764800,"
+                + "\"data\":" + data + ",\"wrap_info\":null,\"warnings\":null,\"auth\":null}").getBytes(StandardCharsets.UTF_8);
+        authResponse = ("{\"request_id\":\"benchmark\",\"data\":null,\"auth\":{\"client_token\":\"" + VaultStub.CLIENT_TOKEN + "\","
+                + "\"policies\":[\"default\",\"app\"],\"metadata\":{\"role_name\":\"app\"},\"lease_duration\":2764800,\"renewable\":true}}")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public VaultSecret decodeSecret() throws Exception {
+        return VaultResponseDecoder.decodeSecret(new ByteArrayInputStream(secretResponse));
+    }
+
+    @Benchmark
+    public Map<?, ?> decodeSecretWithObjectMapper() throws Exception {
+        return objectMapper.readValue(new ByteArrayInputStream(secretResponse), Map.class);
+    }
+
+    @Benchmark
+    public VaultToken decodeToken() throws Exception {
+        return VaultResponseDecoder.decodeToken(new ByteArrayInputStream(authResponse));
+    }
+}
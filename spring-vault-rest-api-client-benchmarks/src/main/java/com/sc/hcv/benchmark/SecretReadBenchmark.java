@@ -0,0 +1,92 @@
+package com.sc.hcv.benchmark;
+
+import com.sc.hcv.async.VaultAsyncExecutor;
+import com.sc.hcv.secrets.VaultDBSecrets;
+import com.sc.hcv.secrets.VaultDirectorySecrets;
+import com.sc.hcv.secrets.VaultSecret;
+import com.sc.hcv.secrets.VaultStaticSecrets;
+import com.sc.hcv.secrets.VaultStaticSecretsAsync;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of each secret read against the local stub, without a cache, over HTTP and HTTPS.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SecretReadBenchmark {
+
+    @Param({"http", "https"})
+    public String protocol;
+
+    @Param({"4", "64"})
+    public int secretKeys;
+
+    private StubEnvironment environment;
+    private VaultAsyncExecutor executor;
+    private VaultStaticSecrets staticSecrets;
+    private VaultStaticSecretsAsync staticSecretsAsync;
+    private VaultDBSecrets dbSecrets;
+    private VaultDirectorySecrets directorySecrets;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        environment = new StubEnvironment(protocol);
+        environment.getStub().setSecretKeys(secretKeys);
+        String url = environment.getStub().getUrl();
+        executor = new VaultAsyncExecutor(4);
+        staticSecrets = new VaultStaticSecrets(url, 1, 10, 100, environment.getTransport());
+        staticSecretsAsync = new VaultStaticSecretsAsync(staticSecrets, executor);
+        dbSecrets = new VaultDBSecrets(url, 1, 10, 100, environment.getTransport());
+        directorySecrets = new VaultDirectorySecrets(url, 1, 10, 100, environment.getTransport());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.close();
+        environment.close();
+    }
+
+    @Benchmark
+    public Map<String, String> readKVSecrets() throws Exception {
+        return staticSecrets.readKVSecrets(VaultStub.CLIENT_TOKEN, "secret/app", "key0", "key1");
+    }
+
+    @Benchmark
+    public VaultSecret readKVSecretV2() {
+        return staticSecretsAsync.readKVSecret(VaultStub.CLIENT_TOKEN, "kv/data/app").join();
+    }
+
+    @Benchmark
+    public Map<String, String> readDatabaseSecret() throws Exception {
+        return dbSecrets.readDatabaseSecret(VaultStub.CLIENT_TOKEN, "database/creds/app");
+    }
+
+    @Benchmark
+    public Map<String, String> readLdapSecret() throws Exception {
+        return directorySecrets.readLdapSecret(VaultStub.CLIENT_TOKEN, "ldap/static-cred/app");
+    }
+
+    @Benchmark
+    public Map<String, String> readActiveDirectorySecret() throws Exception {
+        return directorySecrets.readActiveDirectorySecret(VaultStub.CLIENT_TOKEN, "ad/creds", "app");
+    }
+}
@@ -0,0 +1,118 @@
+package com.sc.hcv.benchmark;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Self-signed server and client certificates for the HTTPS {@link VaultStub} and TLS login benchmarks.
+ * They are generated with the JDK's keytool into a temporary directory, so no key material is checked in.
+ */
+public class StubCertificates {
+
+    public static final String PASSWORD = "changeit";
+
+    private final File directory;
+
+
+    public StubCertificates() throws Exception {
+        directory = Files.createTempDirectory("vault-stub-certs").toFile();
+        directory.deleteOnExit();
+        generateKeyPair("server", "CN=localhost");
+        generateKeyPair("client", "CN=benchmark-client");
+        exportCertificate("server");
+        exportCertificate("client");
+        importCertificate("server", "client-truststore.jks");
+        importCertificate("client", "server-truststore.jks");
+    }
+
+
+    /**
+     * @return the PKCS12 key store holding the client certificate, as expected by VaultAuthenticator.authenticateTLS
+     */
+    public String getClientKeyStore() {
+        return file("client.p12").getAbsolutePath();
+    }
+
+    /**
+     * @return the JKS trust store that trusts the stub's server certificate
+     */
+    public String getClientTrustStore() {
+        return file("client-truststore.jks").getAbsolutePath();
+    }
+
+    /**
+     * @return the SSLContext for the stub: the server certificate, trusting the client certificate
+     */
+    public SSLContext serverSslContext() throws Exception {
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(load("PKCS12", "server.p12"), PASSWORD.toCharArray());
+        TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(load("JKS", "server-truststore.jks"));
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagers.getKeyManagers(), trustManagers.getTrustManagers(), null);
+        return sslContext;
+    }
+
+    private void generateKeyPair(String name, String distinguishedName) throws Exception {
+        keytool("-genkeypair", "-alias", name, "-keyalg", "RSA", "-keysize", "2048", "-validity", "2",
+                "-dname", distinguishedName, "-ext", "SAN=dns:localhost,ip:127.0.0.1",
+                "-storetype", "PKCS12", "-keystore", file(name + ".p12").getPath(),
+                "-storepass", PASSWORD, "-keypass", PASSWORD);
+    }
+
+    private void exportCertificate(String name) throws Exception {
+        keytool("-exportcert", "-alias", name, "-keystore", file(name + ".p12").getPath(), "-storetype", "PKCS12",
+                "-storepass", PASSWORD, "-file", file(name + ".cer").getPath());
+    }
+
+    private void importCertificate(String name, String trustStore) throws Exception {
+        keytool("-importcert", "-noprompt", "-alias", name, "-file", file(name + ".cer").getPath(),
+                "-storetype", "JKS", "-keystore", file(trustStore).getPath(), "-storepass", PASSWORD);
+    }
+
+    private void keytool(String... args) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/keytool").getPath());
+        command.addAll(Arrays.asList(args));
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        byte[] output = readAll(process.getInputStream());
+        if (process.waitFor() != 0) {
+            throw new IOException("keytool failed: " + new String(output));
+        }
+    }
+
+    private KeyStore load(String type, String name) throws Exception {
+        KeyStore keyStore = KeyStore.getInstance(type);
+        try (InputStream input = new FileInputStream(file(name))) {
+            keyStore.load(input, PASSWORD.toCharArray());
+        }
+        return keyStore;
+    }
+
+    private File file(String name) {
+        File file = new File(directory, name);
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static byte[] readAll(InputStream input) throws IOException {
+        byte[] buffer = new byte[4096];
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        return output.toByteArray();
+    }
+}
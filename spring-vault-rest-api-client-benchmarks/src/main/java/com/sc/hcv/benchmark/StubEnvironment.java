@@ -0,0 +1,62 @@
+package com.sc.hcv.benchmark;
+
+import com.sc.hcv.transport.VaultHttpTransport;
+import com.sc.hcv.transport.VaultTransportConfig;
+
+import java.io.Closeable;
+
+/**
+ * A running {@link VaultStub} together with a client transport that can reach it, over HTTP or HTTPS.
+ */
+public class StubEnvironment implements Closeable {
+
+    private final StubCertificates certificates;
+    private final VaultStub stub;
+    private final VaultHttpTransport transport;
+
+
+    /**
+     * @param protocol "http" or "https"
+     */
+    public StubEnvironment(String protocol) throws Exception {
+        VaultTransportConfig config = new VaultTransportConfig();
+        config.setMaxTotalConnections(200);
+        config.setMaxConnectionsPerRoute(200);
+        if ("https".equals(protocol)) {
+            certificates = new StubCertificates();
+            stub = new VaultStub(certificates.serverSslContext());
+            transport = VaultHttpTransport.withClientCertificate(config, certificates.getClientKeyStore(), StubCertificates.PASSWORD,
+                    certificates.getClientTrustStore(), StubCertificates.PASSWORD);
+        } else {
+            certificates = null;
+            stub = new VaultStub();
+            transport = new VaultHttpTransport(config);
+        }
+    }
+
+
+    public VaultStub getStub() {
+        return stub;
+    }
+
+    public VaultHttpTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * @return the generated certificates, or null for a plain HTTP environment
+     */
+    public StubCertificates getCertificates() {
+        return certificates;
+    }
+
+    @Override
+    public void close() {
+        try {
+            transport.close();
+        } catch (Exception ignored) {
+            // the stub is stopped regardless
+        }
+        stub.close();
+    }
+}
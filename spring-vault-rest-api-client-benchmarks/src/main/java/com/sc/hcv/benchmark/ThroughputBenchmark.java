@@ -0,0 +1,83 @@
+package com.sc.hcv.benchmark;
+
+import com.sc.hcv.cache.VaultSecretCache;
+import com.sc.hcv.retry.CircuitBreaker;
+import com.sc.hcv.retry.RetryBudget;
+import com.sc.hcv.retry.VaultRetryEngine;
+import com.sc.hcv.secrets.VaultStaticSecrets;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Concurrent KV read throughput from 16 threads sharing one client, with the stub's latency and error injection
+ * enabled. Run with {@code -t} to change the thread count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+public class ThroughputBenchmark {
+
+    @Param({"0", "2"})
+    public long latencyMillis;
+
+    @Param({"0", "0.05"})
+    public double errorRate;
+
+    @Param({"false", "true"})
+    public boolean cached;
+
+    private StubEnvironment environment;
+    private VaultStaticSecrets staticSecrets;
+    private VaultSecretCache secretCache;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        environment = new StubEnvironment("http");
+        environment.getStub().setLatency(latencyMillis, latencyMillis / 2);
+        environment.getStub().setErrors(errorRate, 503);
+        staticSecrets = new VaultStaticSecrets(environment.getStub().getUrl(), 3, 1, 10, environment.getTransport());
+        // a private engine, so that injected errors do not trip the breaker of another benchmark in the same JVM
+        staticSecrets.setRetryEngine(new VaultRetryEngine(new RetryBudget(0.2, 1000), new CircuitBreaker(1000, 1000)));
+        if (cached) {
+            secretCache = new VaultSecretCache(1000, 1000, 1000);
+            staticSecrets.setSecretCache(secretCache);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (secretCache != null) {
+            secretCache.close();
+        }
+        environment.close();
+    }
+
+    @Benchmark
+    public Map<String, String> readKVSecrets() {
+        try {
+            return staticSecrets.readKVSecrets(VaultStub.CLIENT_TOKEN, "secret/app", "key0", "key1");
+        } catch (Exception ex) {
+            // with error injection some reads exhaust their retries; they count as completed operations
+            return null;
+        }
+    }
+}
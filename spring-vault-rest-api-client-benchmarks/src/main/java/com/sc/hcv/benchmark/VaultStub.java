@@ -0,0 +1,255 @@
+package com.sc.hcv.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsExchange;
+import com.sun.net.httpserver.HttpsParameters;
+import com.sun.net.httpserver.HttpsServer;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process Vault stand-in for benchmarks, listening on the loopback interface over HTTP or HTTPS.
+ * <p>
+ * It serves AppRole and cert login, token lookup-self and renew-self, KV v1 ({@code secret/}), KV v2
+ * ({@code kv/data/}), database credentials ({@code database/creds/}), LDAP static credentials ({@code ldap/static-cred/}),
+ * AD credentials ({@code ad/creds/}) and {@code sys/leases/renew}. Every request can be delayed by a fixed latency plus
+ * random jitter, and a configurable fraction of requests fails with a configurable status.
+ */
+public class VaultStub implements Closeable {
+
+    public static final String CLIENT_TOKEN = "s.benchmark-token";
+
+    static {
+        // the JDK server writes headers and body separately; without TCP_NODELAY every response waits for a delayed ACK
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String url;
+    private final AtomicLong leaseCounter = new AtomicLong();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private volatile long latency;
+    private volatile long latencyJitter;
+    private volatile double errorRate;
+    private volatile int errorStatus = 503;
+    private volatile String kvData;
+
+
+    /**
+     * Starts a plain HTTP stub.
+     */
+    public VaultStub() throws IOException {
+        this(null);
+    }
+
+    /**
+     * Starts the stub over HTTPS when an SSLContext is given. Client certificates are requested but only required
+     * by the cert login endpoint.
+     *
+     * @param sslContext the server SSLContext, or null for plain HTTP
+     */
+    public VaultStub(SSLContext sslContext) throws IOException {
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        if (sslContext == null) {
+            server = HttpServer.create(address, 1024);
+        } else {
+            HttpsServer httpsServer = HttpsServer.create(address, 1024);
+            httpsServer.setHttpsConfigurator(new HttpsConfigurator(sslContext) {
+                @Override
+                public void configure(HttpsParameters params) {
+                    params.setWantClientAuth(true);
+                }
+            });
+            server = httpsServer;
+        }
+        AtomicInteger threads = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "vault-stub-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/v1/", this::handle);
+        server.start();
+        url = (sslContext == null ? "http" : "https") + "://localhost:" + server.getAddress().getPort();
+        setSecretKeys(4);
+    }
+
+
+    /**
+     * @return the base URL of the stub, e.g. http://localhost:8200
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @param latency the fixed delay in milliseconds added to every response
+     * @param jitter  the maximum random delay in milliseconds added on top of it
+     */
+    public void setLatency(long latency, long jitter) {
+        this.latency = latency;
+        this.latencyJitter = jitter;
+    }
+
+    /**
+     * @param errorRate   the fraction of requests, between 0 and 1, that fail
+     * @param errorStatus the HTTP status returned for failed requests, e.g. 503 or 429
+     */
+    public void setErrors(double errorRate, int errorStatus) {
+        this.errorRate = errorRate;
+        this.errorStatus = errorStatus;
+    }
+
+    /**
+     * Sets the size of the KV payloads. The data block holds keys {@code key0 .. key<n-1>}, each with a 32 character value.
+     *
+     * @param count the number of keys in each KV secret
+     */
+    public void setSecretKeys(int count) {
+        StringBuilder data = new StringBuilder("{");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                data.append(',');
+            }
+            data.append("\"key").append(i).append("\":\"").append(String.format("value-%026d", i)).append('"');
+        }
+        kvData = data.append('}').toString();
+    }
+
+    /**
+     * @return the number of requests served since the stub started
+     */
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            drain(exchange.getRequestBody());
+            requestCount.incrementAndGet();
+            delay();
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                respond(exchange, errorStatus, "{\"errors\":[\"injected error\"]}");
+                return;
+            }
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath().substring("/v1/".length());
+            if (path.equals("auth/approle/login") && method.equals("POST")) {
+                respond(exchange, 200, authResponse());
+            } else if (path.equals("auth/cert/login")) {
+                if (hasClientCertificate(exchange)) {
+                    respond(exchange, 200, authResponse());
+                } else {
+                    respond(exchange, 400, "{\"errors\":[\"client certificate must be supplied\"]}");
+                }
+            } else if (!authorized(exchange)) {
+                respond(exchange, 403, "{\"errors\":[\"permission denied\"]}");
+            } else if (path.equals("auth/token/lookup-self")) {
+                respond(exchange, 200, envelope("", 0, false,
+                        "{\"id\":\"" + CLIENT_TOKEN + "\",\"policies\":[\"default\"],\"ttl\":2764800,\"renewable\":true}"));
+            } else if (path.equals("auth/token/renew-self")) {
+                respond(exchange, 200, authResponse());
+            } else if (path.equals("sys/leases/renew")) {
+                respond(exchange, 200, envelope("database/creds/renewed", 3600, true, "null"));
+            } else if (path.startsWith("secret/")) {
+                respond(exchange, 200, envelope("", 2764800, false, kvData));
+            } else if (path.startsWith("kv/data/")) {
+                respond(exchange, 200, envelope("", 0, false, "{\"data\":" + kvData
+                        + ",\"metadata\":{\"created_time\":\"2024-01-01T00:00:00Z\",\"deletion_time\":\"\",\"destroyed\":false,\"version\":1}}"));
+            } else if (path.startsWith("database/creds/")) {
+                long lease = leaseCounter.incrementAndGet();
+                respond(exchange, 200, envelope(path + "/" + lease, 3600, true,
+                        "{\"username\":\"v-benchmark-" + lease + "\",\"password\":\"A1a-" + lease + "-password\"}"));
+            } else if (path.startsWith("ldap/static-cred/")) {
+                respond(exchange, 200, envelope("", 0, false, "{\"dn\":\"cn=benchmark,ou=users,dc=example,dc=com\","
+                        + "\"last_vault_rotation\":\"2024-01-01T00:00:00Z\",\"password\":\"ldap-password\",\"rotation_period\":86400,"
+                        + "\"ttl\":86000,\"username\":\"benchmark\"}"));
+            } else if (path.startsWith("ad/creds/")) {
+                respond(exchange, 200, envelope("", 0, false, "{\"current_password\":\"ad-password\",\"last_password\":\"ad-previous\","
+                        + "\"username\":\"benchmark\",\"ttl\":86000}"));
+            } else {
+                respond(exchange, 404, "{\"errors\":[]}");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void delay() throws InterruptedException {
+        long wait = latency + (latencyJitter > 0 ? ThreadLocalRandom.current().nextLong(latencyJitter + 1) : 0);
+        if (wait > 0) {
+            Thread.sleep(wait);
+        }
+    }
+
+    private static boolean authorized(HttpExchange exchange) {
+        String vaultToken = exchange.getRequestHeaders().getFirst("X-Vault-Token");
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        return CLIENT_TOKEN.equals(vaultToken) || ("Bearer " + CLIENT_TOKEN).equals(authorization);
+    }
+
+    private static boolean hasClientCertificate(HttpExchange exchange) {
+        if (!(exchange instanceof HttpsExchange)) {
+            return true;
+        }
+        try {
+            return ((HttpsExchange) exchange).getSSLSession().getPeerCertificates().length > 0;
+        } catch (SSLPeerUnverifiedException ex) {
+            return false;
+        }
+    }
+
+    private static String authResponse() {
+        return "{\"request_id\":\"benchmark\",\"lease_id\":\"\",\"renewable\":false,\"lease_duration\":0,\"data\":null,"
+                + "\"wrap_info\":null,\"warnings\":null,\"auth\":{\"client_token\":\"" + CLIENT_TOKEN + "\","
+                + "\"accessor\":\"benchmark-accessor\",\"policies\":[\"default\"],\"token_policies\":[\"default\"],"
+                + "\"metadata\":{\"role_name\":\"benchmark\"},\"lease_duration\":2764800,\"renewable\":true,"
+                + "\"entity_id\":\"benchmark-entity\",\"token_type\":\"service\",\"orphan\":true}}";
+    }
+
+    private static String envelope(String leaseId, long leaseDuration, boolean renewable, String data) {
+        return "{\"request_id\":\"benchmark\",\"lease_id\":\"" + leaseId + "\",\"renewable\":" + renewable
+                + ",\"lease_duration\":" + leaseDuration + ",\"data\":" + data + ",\"wrap_info\":null,\"warnings\":null,\"auth\":null}";
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    private static void drain(InputStream input) throws IOException {
+        byte[] buffer = new byte[1024];
+        while (input.read(buffer) != -1) {
+            // discard the request body so the connection can be reused
+        }
+    }
+}
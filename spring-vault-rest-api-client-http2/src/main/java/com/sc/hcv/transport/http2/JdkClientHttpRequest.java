@@ -0,0 +1,97 @@
+package com.sc.hcv.transport.http2;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A request built by {@link JdkClientHttpRequestFactory}. The body is buffered, as Vault request bodies are small JSON
+ * documents, and the response body is streamed.
+ */
+final class JdkClientHttpRequest extends AbstractClientHttpRequest {
+
+    /**
+     * Headers that {@link HttpRequest.Builder} rejects because the client manages them itself.
+     */
+    private static final Set<String> RESTRICTED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        RESTRICTED_HEADERS.add(HttpHeaders.CONNECTION);
+        RESTRICTED_HEADERS.add(HttpHeaders.CONTENT_LENGTH);
+        RESTRICTED_HEADERS.add(HttpHeaders.EXPECT);
+        RESTRICTED_HEADERS.add(HttpHeaders.HOST);
+        RESTRICTED_HEADERS.add(HttpHeaders.UPGRADE);
+    }
+
+    private final HttpClient httpClient;
+    private final URI uri;
+    private final HttpMethod method;
+    private final Duration readTimeout;
+    private ByteArrayOutputStream body;
+
+
+    JdkClientHttpRequest(HttpClient httpClient, URI uri, HttpMethod method, Duration readTimeout) {
+        this.httpClient = httpClient;
+        this.uri = uri;
+        this.method = method;
+        this.readTimeout = readTimeout;
+    }
+
+
+    @Override
+    public String getMethodValue() {
+        return method.name();
+    }
+
+    @Override
+    public URI getURI() {
+        return uri;
+    }
+
+    @Override
+    protected OutputStream getBodyInternal(HttpHeaders headers) {
+        if (body == null) {
+            body = new ByteArrayOutputStream(256);
+        }
+        return body;
+    }
+
+    @Override
+    protected ClientHttpResponse executeInternal(HttpHeaders headers) throws IOException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri);
+        if (readTimeout != null) {
+            request.timeout(readTimeout);
+        }
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (!RESTRICTED_HEADERS.contains(header.getKey())) {
+                for (String value : header.getValue()) {
+                    request.header(header.getKey(), value);
+                }
+            }
+        }
+        request.method(method.name(), body == null || body.size() == 0
+                ? HttpRequest.BodyPublishers.noBody()
+                : HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()));
+        try {
+            return new JdkClientHttpResponse(httpClient.send(request.build(), HttpResponse.BodyHandlers.ofInputStream()));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + method + " " + uri);
+        }
+    }
+}
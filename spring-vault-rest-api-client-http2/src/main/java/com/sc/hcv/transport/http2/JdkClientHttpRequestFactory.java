@@ -0,0 +1,35 @@
+package com.sc.hcv.transport.http2;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+/**
+ * Lets a RestTemplate send its requests through a JDK {@link HttpClient}.
+ * Spring Framework 5 has no such factory; it was only added in Spring Framework 6.1.
+ */
+public class JdkClientHttpRequestFactory implements ClientHttpRequestFactory {
+
+    private final HttpClient httpClient;
+    private final Duration readTimeout;
+
+
+    /**
+     * @param httpClient  the client that sends the requests
+     * @param readTimeout the time to wait for the response headers of each request, or null to wait indefinitely
+     */
+    public JdkClientHttpRequestFactory(HttpClient httpClient, Duration readTimeout) {
+        this.httpClient = httpClient;
+        this.readTimeout = readTimeout;
+    }
+
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) {
+        return new JdkClientHttpRequest(httpClient, uri, httpMethod, readTimeout);
+    }
+}
@@ -0,0 +1,64 @@
+package com.sc.hcv.transport.http2;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.AbstractClientHttpResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Adapts a JDK {@link HttpResponse} with a streamed body to Spring's client response.
+ */
+final class JdkClientHttpResponse extends AbstractClientHttpResponse {
+
+    private final HttpResponse<InputStream> response;
+    private HttpHeaders headers;
+
+
+    JdkClientHttpResponse(HttpResponse<InputStream> response) {
+        this.response = response;
+    }
+
+
+    @Override
+    public int getRawStatusCode() {
+        return response.statusCode();
+    }
+
+    @Override
+    public String getStatusText() {
+        // HTTP/2 has no reason phrase
+        HttpStatus status = HttpStatus.resolve(response.statusCode());
+        return status != null ? status.getReasonPhrase() : "";
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        if (headers == null) {
+            HttpHeaders converted = new HttpHeaders();
+            for (Map.Entry<String, List<String>> header : response.headers().map().entrySet()) {
+                converted.addAll(header.getKey(), header.getValue());
+            }
+            headers = HttpHeaders.readOnlyHttpHeaders(converted);
+        }
+        return headers;
+    }
+
+    @Override
+    public InputStream getBody() {
+        return response.body();
+    }
+
+    @Override
+    public void close() {
+        try {
+            response.body().close();
+        } catch (IOException ignored) {
+            // the stream is only closed to release the connection
+        }
+    }
+}
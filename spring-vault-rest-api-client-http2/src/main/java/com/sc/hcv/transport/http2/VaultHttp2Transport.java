@@ -0,0 +1,82 @@
+package com.sc.hcv.transport.http2;
+
+import com.sc.hcv.transport.VaultHttpTransport;
+import com.sc.hcv.transport.VaultTransportConfig;
+
+import javax.net.ssl.SSLContext;
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+/**
+ * A {@link VaultHttpTransport} built on the JDK 11 {@link HttpClient} that speaks HTTP/2 to Vault.
+ * <p>
+ * Over TLS, HTTP/2 is negotiated with ALPN, and all concurrent requests to a Vault node (secret reads, logins and
+ * lease renewals alike) are multiplexed as streams over one connection instead of each holding its own socket.
+ * Certificate logins are only among them when made with {@link com.sc.hcv.auth.VaultAuthenticator#authenticateTLS(String)}
+ * on a transport created by {@link #withClientCertificate}.
+ * Servers that do not offer HTTP/2 are spoken to over HTTP/1.1. Only the timeouts of the {@link VaultTransportConfig}
+ * apply; the JDK client manages its connections itself, so the pool settings are ignored.
+ */
+public class VaultHttp2Transport extends VaultHttpTransport {
+
+    private final HttpClient jdkHttpClient;
+
+
+    public VaultHttp2Transport(VaultTransportConfig config) {
+        this(config, newClient(config).build());
+    }
+
+    /**
+     * @param config     the timeout settings
+     * @param sslContext the TLS settings, e.g. from {@link VaultHttpTransport#createSslContext}
+     */
+    public VaultHttp2Transport(VaultTransportConfig config, SSLContext sslContext) {
+        this(config, newClient(config).sslContext(sslContext).build());
+    }
+
+    private VaultHttp2Transport(VaultTransportConfig config, HttpClient jdkHttpClient) {
+        super(config, new JdkClientHttpRequestFactory(jdkHttpClient, timeout(config.getReadTimeout())));
+        this.jdkHttpClient = jdkHttpClient;
+    }
+
+
+    /**
+     * Creates an HTTP/2 transport that presents a client certificate for TLS authentication.
+     * The key store and trust store are loaded once, and the single multiplexed connection is authenticated with them.
+     *
+     * @param config             the timeout settings
+     * @param keyStorePath       the file path of the PKCS12 format key store containing the client certificate and private key
+     * @param keyStorePassword   the password for the key store
+     * @param trustStorePath     the file path of the JKS format trust store containing the trusted CA certificates
+     * @param trustStorePassword the password for the trust store
+     * @return a transport configured for TLS authentication
+     * @throws Exception if an error occurs while loading the key store or trust store, or creating the SSLContext
+     */
+
+    public static VaultHttp2Transport withClientCertificate(VaultTransportConfig config, String keyStorePath, String keyStorePassword,
+                                                            String trustStorePath, String trustStorePassword) throws Exception {
+        return new VaultHttp2Transport(config, createSslContext(keyStorePath, keyStorePassword, trustStorePath, trustStorePassword));
+    }
+
+    public HttpClient getJdkHttpClient() {
+        return jdkHttpClient;
+    }
+
+    private static HttpClient.Builder newClient(VaultTransportConfig config) {
+        HttpClient.Builder builder = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2);
+        Duration connectTimeout = timeout(config.getConnectTimeout());
+        if (connectTimeout != null) {
+            builder.connectTimeout(connectTimeout);
+        }
+        return builder;
+    }
+
+    /**
+     * @return the timeout, or null for 0 or less, which means no timeout as for the Apache transport; the JDK client
+     * rejects a zero duration
+     */
+
+    private static Duration timeout(long millis) {
+        return millis > 0 ? Duration.ofMillis(millis) : null;
+    }
+}
@@ -0,0 +1,115 @@
+package com.sc.hcv.transport.http2;
+
+import com.sc.hcv.auth.VaultAuthenticator;
+import com.sc.hcv.secrets.VaultStaticSecrets;
+import com.sc.hcv.transport.VaultTransportConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class VaultHttp2TransportTest {
+    private HttpServer server;
+    private VaultHttp2Transport transport;
+    private String vaultUrl;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/v1/secret/app", exchange -> {
+            if (!"Bearer testToken".equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                respond(exchange, 403, "{\"errors\":[\"permission denied\"]}");
+            } else {
+                respond(exchange, 200, "{\"request_id\":\"1\",\"lease_duration\":0,\"data\":{\"password\":\"p1\"}}");
+            }
+        });
+        server.createContext("/v1/auth/approle/login", exchange -> {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            if (body.contains("\"role_id\":\"role\"") && body.contains("\"secret_id\":\"secret\"")) {
+                respond(exchange, 200, "{\"auth\":{\"client_token\":\"s.token\",\"lease_duration\":3600,\"renewable\":true}}");
+            } else {
+                respond(exchange, 400, "{\"errors\":[\"missing role_id\"]}");
+            }
+        });
+        server.createContext("/v1/auth/cert/login", exchange ->
+                respond(exchange, 200, "{\"auth\":{\"client_token\":\"s.cert\",\"lease_duration\":3600,\"renewable\":true}}"));
+        server.start();
+        vaultUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        transport = new VaultHttp2Transport(new VaultTransportConfig());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        transport.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void testSecretIsRead() throws Exception {
+        VaultStaticSecrets secrets = new VaultStaticSecrets(vaultUrl, 1, 1, 1, transport);
+
+        Map<String, String> values = secrets.readKVSecrets("testToken", "secret/app", "password");
+
+        assertEquals("p1", values.get("password"));
+    }
+
+    @Test
+    public void testZeroTimeoutsMeanNoTimeout() throws Exception {
+        VaultTransportConfig config = new VaultTransportConfig();
+        config.setConnectTimeout(0);
+        config.setReadTimeout(0);
+        try (VaultHttp2Transport unbounded = new VaultHttp2Transport(config)) {
+            VaultStaticSecrets secrets = new VaultStaticSecrets(vaultUrl, 1, 1, 1, unbounded);
+
+            assertEquals("p1", secrets.readKVSecrets("testToken", "secret/app", "password").get("password"));
+        }
+    }
+
+    @Test
+    public void testRequestBodyIsSent() throws Exception {
+        VaultAuthenticator authenticator = new VaultAuthenticator(vaultUrl, 1, 1, 1, transport);
+
+        assertEquals("s.token", authenticator.authenticateAppRole("role", "secret", "/v1/auth/approle/login"));
+    }
+
+    @Test
+    public void testCertificateLoginUsesTheTransport() throws Exception {
+        VaultAuthenticator authenticator = new VaultAuthenticator(vaultUrl, 1, 1, 1, transport);
+
+        assertEquals("s.cert", authenticator.authenticateTLS("/v1/auth/cert/login"));
+    }
+
+    @Test
+    public void testErrorStatusIsReported() throws Exception {
+        VaultStaticSecrets secrets = new VaultStaticSecrets(vaultUrl, 1, 1, 1, transport);
+        try {
+            secrets.readKVSecrets("otherToken", "secret/app", "password");
+            fail("Expected the read to be rejected");
+        } catch (HttpClientErrorException ex) {
+            assertEquals(403, ex.getRawStatusCode());
+            assertTrue(ex.getResponseBodyAsString().contains("permission denied"));
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
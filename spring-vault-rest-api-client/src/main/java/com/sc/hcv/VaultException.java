@@ -0,0 +1,25 @@
+package com.sc.hcv;
+
+/**
+ * Raised when Vault rejects a request, such as for an invalid token or a missing secret.
+ * The retry engine only retries it when the status code is 429 or 5xx.
+ */
+public class VaultException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+
+    public VaultException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * @return the HTTP status returned by Vault
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
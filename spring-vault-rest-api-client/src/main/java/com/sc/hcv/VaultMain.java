@@ -1,12 +1,31 @@
 package com.sc.hcv;
 
+import com.sc.hcv.async.VaultAsyncExecutor;
+import com.sc.hcv.async.VaultThreads;
 import com.sc.hcv.auth.VaultAuthenticator;
+import com.sc.hcv.auth.VaultTokenManager;
+import com.sc.hcv.cache.VaultSecretCache;
+import com.sc.hcv.cache.VaultSecretSnapshot;
+import com.sc.hcv.prefetch.PrefetchManifest;
+import com.sc.hcv.prefetch.SecretPrefetcher;
+import com.sc.hcv.retry.VaultRetryEngine;
+import com.sc.hcv.secrets.VaultDBSecrets;
+import com.sc.hcv.secrets.VaultDBSecretsAsync;
+import com.sc.hcv.secrets.VaultDirectorySecrets;
+import com.sc.hcv.secrets.VaultDirectorySecretsAsync;
+import com.sc.hcv.secrets.VaultStaticSecrets;
+import com.sc.hcv.secrets.VaultStaticSecretsAsync;
+import com.sc.hcv.transport.VaultClusterRouter;
+import com.sc.hcv.transport.VaultHttpTransport;
+import com.sc.hcv.transport.VaultTransportConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Properties;
 
 public class VaultMain {
@@ -27,20 +46,70 @@ public class VaultMain {
         int maxRetries = Integer.parseInt(properties.getProperty("vault.max-retries"));
         int backoffInterval = Integer.parseInt(properties.getProperty("vault.backoff-interval"));
         int maxBackoffInterval = Integer.parseInt(properties.getProperty("vault.max-backoff-interval"));
-        String adPath = properties.getProperty("vault.ad.path");
+        double renewalFraction = Double.parseDouble(properties.getProperty("vault.token.renewal-fraction", "0.67"));
 
 
+        VaultThreads.setVirtualThreads(Boolean.parseBoolean(properties.getProperty("vault.virtual-threads", "false")));
+        VaultHttpTransport transport = new VaultHttpTransport(VaultTransportConfig.fromProperties(properties));
+        VaultRetryEngine retryEngine = VaultRetryEngine.fromProperties(properties);
+
+        VaultClusterRouter router = null;
+        String vaultUrls = properties.getProperty("vault.urls");
+        if (vaultUrls != null) {
+            router = new VaultClusterRouter(Arrays.asList(vaultUrls.split(",")), transport);
+            router.start(Long.parseLong(properties.getProperty("vault.health-check-interval", "5000")));
+            vaultUrl = router.getVaultUrl();
+        }
+
         VaultAuthenticator authenticator;
         if (authMethod.equals("approle")) {
-            authenticator = new VaultAuthenticator(vaultUrl, maxRetries, backoffInterval, maxBackoffInterval);
+            authenticator = new VaultAuthenticator(vaultUrl, maxRetries, backoffInterval, maxBackoffInterval, transport);
+            authenticator.setRetryEngine(retryEngine);
         } else {
             System.out.println("Invalid authentication method specified in properties file");
             return;
         }
 
-        String result = authenticator.authenticateAppRole(roleId, secretId, authPath);
+        VaultTokenManager tokenManager = new VaultTokenManager(authenticator, () -> authenticator.loginAppRole(roleId, secretId, authPath), renewalFraction);
+        VaultSecretCache secretCache = new VaultSecretCache(
+                Integer.parseInt(properties.getProperty("vault.cache.max-entries", "1000")),
+                Long.parseLong(properties.getProperty("vault.cache.ttl", "300000")),
+                Long.parseLong(properties.getProperty("vault.cache.max-stale", "60000")));
 
-        System.out.println(result);
+        VaultSecretSnapshot snapshot = vaultMain.readSnapshot(properties);
+        if (snapshot != null) {
+            snapshot.restore(secretCache, tokenManager);
+        }
+        tokenManager.getToken();
+
+        System.out.println("Vault authentication successful");
+
+        PrefetchManifest manifest = vaultMain.readPrefetchManifest(properties);
+        if (!manifest.isEmpty()) {
+            VaultStaticSecrets staticSecrets = new VaultStaticSecrets(vaultUrl, maxRetries, backoffInterval, maxBackoffInterval, transport);
+            VaultDBSecrets dbSecrets = new VaultDBSecrets(vaultUrl, maxRetries, backoffInterval, maxBackoffInterval, transport);
+            VaultDirectorySecrets directorySecrets = new VaultDirectorySecrets(vaultUrl, maxRetries, backoffInterval, maxBackoffInterval, transport);
+            staticSecrets.setSecretCache(secretCache);
+            staticSecrets.setRetryEngine(retryEngine);
+            dbSecrets.setSecretCache(secretCache);
+            dbSecrets.setRetryEngine(retryEngine);
+            directorySecrets.setSecretCache(secretCache);
+            directorySecrets.setRetryEngine(retryEngine);
+
+            try (VaultAsyncExecutor executor = new VaultAsyncExecutor(manifest.getConcurrency())) {
+                SecretPrefetcher prefetcher = new SecretPrefetcher(manifest, new VaultStaticSecretsAsync(staticSecrets, executor),
+                        new VaultDBSecretsAsync(dbSecrets, executor), new VaultDirectorySecretsAsync(directorySecrets, executor));
+                System.out.println("Secret prefetch finished: " + prefetcher.prefetch(tokenManager.getToken()));
+            }
+        }
+        if (snapshot != null) {
+            snapshot.save(secretCache, tokenManager);
+        }
+        secretCache.close();
+        tokenManager.close();
+        if (router != null) {
+            router.close();
+        }
 
   }
 
@@ -60,4 +129,39 @@ public class VaultMain {
         return props;
     }
 
+    /**
+     * Opens the cache snapshot named by {@code vault.snapshot.file}, encrypted with the key read from
+     * {@code vault.snapshot.key-file}.
+     *
+     * @return the snapshot, or null if no snapshot file is configured
+     */
+    public VaultSecretSnapshot readSnapshot(Properties properties) throws IOException {
+        String snapshotFile = properties.getProperty("vault.snapshot.file");
+        if (snapshotFile == null) {
+            return null;
+        }
+        String keyFile = properties.getProperty("vault.snapshot.key-file");
+        if (keyFile == null) {
+            throw new IllegalArgumentException("vault.snapshot.key-file must be set when vault.snapshot.file is set");
+        }
+        return new VaultSecretSnapshot(Paths.get(snapshotFile), VaultSecretSnapshot.readKey(Paths.get(keyFile)));
+    }
+
+    /**
+     * Reads the startup prefetch manifest: the YAML resource named by {@code vault.prefetch.manifest} if set,
+     * otherwise the {@code vault.prefetch.*} entries of the properties.
+     */
+    public PrefetchManifest readPrefetchManifest(Properties properties) throws IOException {
+        String resource = properties.getProperty("vault.prefetch.manifest");
+        if (resource == null) {
+            return PrefetchManifest.fromProperties(properties);
+        }
+        try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream(resource)) {
+            if (inputStream == null) {
+                throw new FileNotFoundException(resource + " file not found in the classpath");
+            }
+            return PrefetchManifest.fromYaml(inputStream, properties.getProperty("vault.ad.path"));
+        }
+    }
+
 }
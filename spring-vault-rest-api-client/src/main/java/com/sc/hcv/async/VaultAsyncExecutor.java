@@ -0,0 +1,80 @@
+package com.sc.hcv.async;
+
+import com.sc.hcv.retry.RetryPolicy;
+import com.sc.hcv.retry.VaultRetryEngine;
+import com.sc.hcv.secrets.SecretEngine;
+
+import java.io.Closeable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Runs Vault requests for the asynchronous clients.
+ * Each attempt runs on a small I/O pool; retries are scheduled on a timer instead of sleeping,
+ * so no thread is parked while waiting for the next attempt.
+ */
+public class VaultAsyncExecutor implements Closeable {
+
+    private final ExecutorService ioExecutor;
+    private final ScheduledExecutorService timer;
+
+
+    /**
+     * @param ioThreads the number of threads that perform the blocking HTTP calls; with virtual threads
+     *                  (see {@link VaultThreads}) every call gets its own thread instead
+     */
+    public VaultAsyncExecutor(int ioThreads) {
+        this(VaultThreads.newTaskExecutor("vault-io", ioThreads), VaultThreads.newScheduler("vault-retry-timer"));
+    }
+
+    public VaultAsyncExecutor(ExecutorService ioExecutor, ScheduledExecutorService timer) {
+        this.ioExecutor = ioExecutor;
+        this.timer = timer;
+    }
+
+
+    /**
+     * Runs the attempt through the retry engine; attempts run on the I/O pool and the backoff between them
+     * is scheduled on the timer.
+     *
+     * @param operation   the operation name used in log and error messages
+     * @param attempt     a single, non-retrying request
+     * @param retryEngine classifies failures and applies the retry budget and circuit breaker
+     * @param retryPolicy the number of attempts and backoff to use
+     * @return a future completed with the result of the first successful attempt
+     */
+
+    public <T> CompletableFuture<T> retry(String operation, Callable<T> attempt, VaultRetryEngine retryEngine, RetryPolicy retryPolicy) {
+        return retryEngine.executeAsync(operation, retryPolicy, attempt, ioExecutor, timer);
+    }
+
+    /**
+     * Same as {@link #retry(String, Callable, VaultRetryEngine, RetryPolicy)}, reporting the secret engine and path
+     * to the retry engine's metrics.
+     *
+     * @param operation   the operation name used in log and error messages
+     * @param engine      the secret engine the path belongs to, or null for auth and sys endpoints
+     * @param path        the requested path
+     * @param attempt     a single, non-retrying request
+     * @param retryEngine classifies failures and applies the retry budget and circuit breaker
+     * @param retryPolicy the number of attempts and backoff to use
+     * @return a future completed with the result of the first successful attempt
+     */
+
+    public <T> CompletableFuture<T> retry(String operation, SecretEngine engine, String path, Callable<T> attempt,
+                                          VaultRetryEngine retryEngine, RetryPolicy retryPolicy) {
+        return retryEngine.executeAsync(operation, engine, path, retryPolicy, attempt, ioExecutor, timer);
+    }
+
+    public ExecutorService getIoExecutor() {
+        return ioExecutor;
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        ioExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,136 @@
+package com.sc.hcv.async;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the threads and executors used for background work: asynchronous requests, cache refreshes and token,
+ * lease and KV renewals.
+ * <p>
+ * By default these are daemon platform threads. On JDK 21 and later, virtual threads can be selected at runtime with
+ * {@link #setVirtualThreads(boolean)} or the {@code vault.virtual-threads} system property; a blocked request or retry
+ * backoff then parks a virtual thread instead of holding a platform thread. The library is compiled for Java 8, so the
+ * virtual thread API is looked up reflectively and the setting is ignored, with a warning, on older JVMs.
+ * The mode applies to executors created after it is set, so it should be chosen before the clients are built.
+ */
+public final class VaultThreads {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VaultThreads.class);
+
+    private static final Method OF_VIRTUAL = method(Thread.class, "ofVirtual");
+    private static final Method BUILDER_NAME = OF_VIRTUAL == null ? null : method(OF_VIRTUAL.getReturnType(), "name", String.class, long.class);
+    private static final Method BUILDER_FACTORY = OF_VIRTUAL == null ? null : method(OF_VIRTUAL.getReturnType(), "factory");
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR = method(Executors.class, "newThreadPerTaskExecutor", ThreadFactory.class);
+
+    private static volatile boolean virtualThreads;
+
+    static {
+        if (Boolean.getBoolean("vault.virtual-threads")) {
+            setVirtualThreads(true);
+        }
+    }
+
+
+    private VaultThreads() {
+    }
+
+
+    /**
+     * @return true if the running JVM supports virtual threads
+     */
+
+    public static boolean isVirtualThreadsSupported() {
+        return OF_VIRTUAL != null && BUILDER_NAME != null && BUILDER_FACTORY != null && NEW_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Selects virtual or platform threads for executors created from now on.
+     *
+     * @param enabled true to use virtual threads if the JVM supports them
+     */
+
+    public static void setVirtualThreads(boolean enabled) {
+        if (enabled && !isVirtualThreadsSupported()) {
+            LOGGER.warn("Virtual threads are not supported by Java {}, using platform threads", System.getProperty("java.version"));
+            enabled = false;
+        }
+        virtualThreads = enabled;
+    }
+
+    public static boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * @param name the thread name prefix; threads are named name-1, name-2, ...
+     * @return a factory for virtual threads, or for daemon platform threads
+     */
+
+    public static ThreadFactory threadFactory(String name) {
+        if (virtualThreads) {
+            return virtualThreadFactory(name);
+        }
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Creates an executor for blocking tasks. With virtual threads, every task gets its own thread; otherwise the tasks
+     * share a fixed pool of platform threads.
+     *
+     * @param name            the thread name prefix
+     * @param platformThreads the pool size when platform threads are used
+     * @return the executor
+     */
+
+    public static ExecutorService newTaskExecutor(String name, int platformThreads) {
+        if (virtualThreads) {
+            return (ExecutorService) invoke(NEW_THREAD_PER_TASK_EXECUTOR, null, virtualThreadFactory(name));
+        }
+        return Executors.newFixedThreadPool(platformThreads, threadFactory(name));
+    }
+
+    /**
+     * Creates a single-threaded scheduler for periodic or delayed work such as renewals.
+     *
+     * @param name the thread name prefix
+     * @return the scheduler
+     */
+
+    public static ScheduledExecutorService newScheduler(String name) {
+        return Executors.newSingleThreadScheduledExecutor(threadFactory(name));
+    }
+
+    private static ThreadFactory virtualThreadFactory(String name) {
+        Object builder = invoke(OF_VIRTUAL, null);
+        builder = invoke(BUILDER_NAME, builder, name + "-", 1L);
+        return (ThreadFactory) invoke(BUILDER_FACTORY, builder);
+    }
+
+    private static Method method(Class<?> type, String name, Class<?>... parameterTypes) {
+        try {
+            return type.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+
+    private static Object invoke(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Cannot create virtual threads", ex);
+        }
+    }
+}
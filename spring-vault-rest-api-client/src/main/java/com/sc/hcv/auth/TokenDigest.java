@@ -0,0 +1,47 @@
+package com.sc.hcv.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Derives a stable identity for a Vault token, so that cache and index keys never contain the raw token.
+ */
+public final class TokenDigest {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    });
+
+
+    private TokenDigest() {
+    }
+
+    /**
+     * Returns the hex encoded SHA-256 digest of the token. Neither the token nor the digest is remembered; each
+     * thread reuses its own {@link MessageDigest} so that only the hash itself is paid for.
+     *
+     * @param vaultToken the Vault token, or null when a Vault Agent adds its auto-auth token to the request
+     * @return the digest of the token, or an empty string for null
+     */
+
+    public static String of(String vaultToken) {
+        if (vaultToken == null) {
+            return "";
+        }
+        // digest() resets the instance, so it is ready for the thread's next call
+        byte[] hash = SHA_256.get().digest(vaultToken.getBytes(StandardCharsets.UTF_8));
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = HEX[(hash[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX[hash[i] & 0xf];
+        }
+        return new String(hex);
+    }
+}
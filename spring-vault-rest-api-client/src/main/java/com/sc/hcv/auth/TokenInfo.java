@@ -0,0 +1,109 @@
+package com.sc.hcv.auth;
+
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable view of the "data" block returned by {@code auth/token/lookup-self}.
+ */
+public class TokenInfo {
+
+    private final long ttl;
+    private final String expireTime;
+    private final List<String> policies;
+    private final boolean renewable;
+    private final long checkedAt;
+
+
+    public TokenInfo(long ttl, String expireTime, List<String> policies, boolean renewable, long checkedAt) {
+        this.ttl = ttl;
+        this.expireTime = expireTime;
+        this.policies = Collections.unmodifiableList(new ArrayList<>(policies));
+        this.renewable = renewable;
+        this.checkedAt = checkedAt;
+    }
+
+    /**
+     * Reads the fields of a lookup-self response.
+     *
+     * @param data      the "data" block of the response
+     * @param checkedAt the epoch time in milliseconds at which Vault was asked
+     * @return the token information
+     */
+
+    public static TokenInfo fromLookup(Map<String, Object> data, long checkedAt) {
+        Object ttl = data.get("ttl");
+        Object expireTime = data.get("expire_time");
+        List<String> policies = new ArrayList<>();
+        if (data.get("policies") instanceof List) {
+            for (Object policy : (List<?>) data.get("policies")) {
+                policies.add(String.valueOf(policy));
+            }
+        }
+        return new TokenInfo(ttl instanceof Number ? ((Number) ttl).longValue() : 0,
+                expireTime instanceof String ? (String) expireTime : null,
+                policies, Boolean.TRUE.equals(data.get("renewable")), checkedAt);
+    }
+
+    /**
+     * @return the remaining TTL in seconds when the token was looked up, 0 for tokens that never expire
+     */
+    public long getTtl() {
+        return ttl;
+    }
+
+    /**
+     * @return the expire_time reported by Vault, or null for tokens that never expire
+     */
+    public String getExpireTime() {
+        return expireTime;
+    }
+
+    public List<String> getPolicies() {
+        return policies;
+    }
+
+    public boolean isRenewable() {
+        return renewable;
+    }
+
+    /**
+     * @return the epoch time in milliseconds at which Vault was asked
+     */
+    public long getCheckedAt() {
+        return checkedAt;
+    }
+
+    /**
+     * Returns the expiry of the token on the local clock. It is derived from the TTL rather than from expire_time,
+     * so a clock skew between this host and Vault does not shift it.
+     *
+     * @return the epoch time in milliseconds at which the token expires, or Long.MAX_VALUE for tokens that never expire
+     */
+    public long getExpiresAt() {
+        if (ttl > 0) {
+            return checkedAt + ttl * 1000;
+        }
+        if (expireTime != null) {
+            try {
+                return OffsetDateTime.parse(expireTime).toInstant().toEpochMilli();
+            } catch (DateTimeParseException ex) {
+                return checkedAt;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    public boolean isExpired(long now) {
+        return now >= getExpiresAt();
+    }
+
+    @Override
+    public String toString() {
+        return "TokenInfo{ttl=" + ttl + ", expireTime=" + expireTime + ", policies=" + policies + ", renewable=" + renewable + "}";
+    }
+}
@@ -0,0 +1,227 @@
+package com.sc.hcv.auth;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Remembers the outcome of token lookups, so that {@link VaultAuthenticator#isValidToken} answers repeated checks of
+ * the same token without a request to Vault.
+ * <p>
+ * Entries are keyed by the {@link TokenDigest} of the token; the raw token is never stored. A valid token is trusted
+ * for {@code reverifyInterval} milliseconds after its lookup, and never past its TTL: a non-renewable token whose TTL
+ * has run out is reported invalid without asking Vault, while a renewable one is looked up again since it may have
+ * been renewed. Checks are plain map reads without locks. Once more than {@code maxEntries} valid tokens are held,
+ * the least recently checked ones are evicted.
+ * <p>
+ * Tokens Vault rejected are held apart, in a smaller set bounded by {@link #setRejected}, and only for a limited
+ * time, so that a flood of bogus tokens cannot evict the valid ones.
+ */
+public class TokenValidityCache {
+
+    private static final long ACCESS_GRANULARITY = 1000;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> rejected = new ConcurrentHashMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final int maxEntries;
+    private final long reverifyInterval;
+    private volatile int maxRejected = 1000;
+    private volatile long rejectedTtl;
+
+
+    /**
+     * @param maxEntries       the number of valid tokens remembered
+     * @param reverifyInterval the time (ms) after which a token is looked up again
+     */
+    public TokenValidityCache(int maxEntries, long reverifyInterval) {
+        this.maxEntries = maxEntries;
+        this.reverifyInterval = reverifyInterval;
+        this.rejectedTtl = reverifyInterval;
+    }
+
+
+    /**
+     * Sets how many rejected tokens are remembered, and for how long. Defaults to 1000 tokens for the re-verification
+     * interval.
+     *
+     * @param maxRejected the number of rejected tokens remembered
+     * @param rejectedTtl the time (ms) a rejected token is reported invalid without asking Vault
+     */
+
+    public void setRejected(int maxRejected, long rejectedTtl) {
+        this.maxRejected = maxRejected;
+        this.rejectedTtl = rejectedTtl;
+    }
+
+    /**
+     * @param vaultToken the token to check
+     * @return TRUE or FALSE if the validity of the token is known, or null if it must be looked up in Vault
+     */
+
+    public Boolean getValidity(String vaultToken) {
+        return validityOf(TokenDigest.of(vaultToken));
+    }
+
+    /**
+     * @param vaultToken the token to check
+     * @return the result of the last lookup of the token if it is still trusted, otherwise null
+     */
+
+    public TokenInfo getInfo(String vaultToken) {
+        return infoOf(TokenDigest.of(vaultToken));
+    }
+
+    /**
+     * Records the result of a token lookup.
+     *
+     * @param vaultToken the token that was looked up
+     * @param info       the lookup result, or null if Vault rejected the token
+     */
+
+    public void put(String vaultToken, TokenInfo info) {
+        record(TokenDigest.of(vaultToken), info);
+    }
+
+    /**
+     * Forgets a token, e.g. after it was revoked, so that its next check asks Vault.
+     *
+     * @param vaultToken the token to forget
+     */
+
+    public void invalidate(String vaultToken) {
+        String digest = TokenDigest.of(vaultToken);
+        entries.remove(digest);
+        rejected.remove(digest);
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+        rejected.clear();
+    }
+
+    /**
+     * @return the number of tokens remembered, valid and rejected
+     */
+    public int size() {
+        return entries.size() + rejected.size();
+    }
+
+    /**
+     * Same as {@link #getValidity}, for callers that already hold the digest of the token.
+     */
+
+    Boolean validityOf(String digest) {
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(digest);
+        if (entry != null) {
+            return validity(entry, now);
+        }
+        Long rejectedUntil = rejected.get(digest);
+        return rejectedUntil != null && now < rejectedUntil ? Boolean.FALSE : null;
+    }
+
+    /**
+     * Same as {@link #getInfo}, for callers that already hold the digest of the token.
+     */
+
+    TokenInfo infoOf(String digest) {
+        Entry entry = entries.get(digest);
+        return entry != null && Boolean.TRUE.equals(validity(entry, System.currentTimeMillis())) ? entry.info : null;
+    }
+
+    /**
+     * Same as {@link #put}, for callers that already hold the digest of the token.
+     */
+
+    void record(String digest, TokenInfo info) {
+        long now = System.currentTimeMillis();
+        if (info == null) {
+            entries.remove(digest);
+            rejected.put(digest, now + rejectedTtl);
+            if (rejected.size() > maxRejected) {
+                evictRejected(now);
+            }
+            return;
+        }
+        rejected.remove(digest);
+        entries.put(digest, new Entry(info, now));
+        if (entries.size() > maxEntries) {
+            evict();
+        }
+    }
+
+    private Boolean validity(Entry entry, long now) {
+        entry.touch(now);
+        if (entry.info.isExpired(now)) {
+            return entry.info.isRenewable() ? null : Boolean.FALSE;
+        }
+        return now < entry.info.getCheckedAt() + reverifyInterval ? Boolean.TRUE : null;
+    }
+
+    /**
+     * Drops the least recently checked tokens down to 90% of the capacity, so that eviction runs once per batch of
+     * lookups rather than on every lookup.
+     */
+
+    private void evict() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            int excess = entries.size() - (int) (maxEntries * 0.9);
+            if (excess <= 0) {
+                return;
+            }
+            List<Map.Entry<String, Entry>> candidates = new ArrayList<>(entries.entrySet());
+            candidates.sort((a, b) -> Long.compare(a.getValue().lastAccess, b.getValue().lastAccess));
+            for (int i = 0; i < excess && i < candidates.size(); i++) {
+                entries.remove(candidates.get(i).getKey(), candidates.get(i).getValue());
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Drops expired rejections and then the oldest ones, down to 90% of their capacity.
+     */
+
+    private void evictRejected(long now) {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            rejected.values().removeIf(rejectedUntil -> now >= rejectedUntil);
+            int excess = rejected.size() - (int) (maxRejected * 0.9);
+            if (excess <= 0) {
+                return;
+            }
+            List<Map.Entry<String, Long>> candidates = new ArrayList<>(rejected.entrySet());
+            candidates.sort(Map.Entry.comparingByValue());
+            for (int i = 0; i < excess && i < candidates.size(); i++) {
+                rejected.remove(candidates.get(i).getKey(), candidates.get(i).getValue());
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static final class Entry {
+        private final TokenInfo info;
+        private volatile long lastAccess;
+
+        Entry(TokenInfo info, long now) {
+            this.info = info;
+            this.lastAccess = now;
+        }
+
+        void touch(long now) {
+            if (now - lastAccess > ACCESS_GRANULARITY) {
+                lastAccess = now;
+            }
+        }
+    }
+}
@@ -1,40 +1,51 @@
 package com.sc.hcv.auth;
 
-import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.ssl.SSLContexts;
+import com.sc.hcv.VaultException;
+import com.sc.hcv.metrics.VaultMetrics;
+import com.sc.hcv.response.VaultResponseDecoder;
+import com.sc.hcv.retry.RetryPolicy;
+import com.sc.hcv.retry.VaultRetryEngine;
+import com.sc.hcv.secrets.VaultSecret;
+import com.sc.hcv.transport.VaultHttpTransport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.*;
-import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
-import javax.net.ssl.SSLContext;
 import java.io.File;
-import java.io.FileInputStream;
-import java.security.KeyStore;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class VaultAuthenticator {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(VaultAuthenticator.class);
 
     private final String vaultUrl;
-    private RestTemplate restTemplate;
-    private final int maxRetries;
-    private final long backoffInterval;
-    private final long maxBackoffInterval;
+    private final VaultHttpTransport transport;
+    private final RestTemplate restTemplate;
+    private final RetryPolicy retryPolicy;
+    private VaultRetryEngine retryEngine = VaultRetryEngine.getDefault();
+    private final ReentrantLock tlsTransportLock = new ReentrantLock();
+    private TlsTransport tlsTransport;
+    private volatile TokenValidityCache validityCache;
 
 
     public VaultAuthenticator(String vaultUrl, int maxRetries, long backoffInterval, long maxBackOffInterval) {
+        this(vaultUrl, maxRetries, backoffInterval, maxBackOffInterval, VaultHttpTransport.getDefault());
+    }
+
+    public VaultAuthenticator(String vaultUrl, int maxRetries, long backoffInterval, long maxBackOffInterval, VaultHttpTransport transport) {
         this.vaultUrl = vaultUrl;
-        this.maxRetries = maxRetries;
-        this.backoffInterval = backoffInterval;
-        this.maxBackoffInterval = maxBackOffInterval;
-        this.restTemplate = new RestTemplate();
+        this.retryPolicy = new RetryPolicy(maxRetries, backoffInterval, maxBackOffInterval);
+        this.transport = transport;
+        this.restTemplate = transport.getRestTemplate();
     }
 
     /**
@@ -42,43 +53,61 @@ public class VaultAuthenticator {
      *
      * @param roleId   the Role ID for the AppRole
      * @param secretId the Secret ID for the AppRole
-     * @return a string message indicating successful authentication
+     * @return the client token issued by Vault
      * @throws Exception if the authentication fails after maxRetries attempts
      */
 
     public String authenticateAppRole(String roleId, String secretId, String authPath) throws Exception {
-        int numRetries = 0;
-        while (numRetries < maxRetries) {
-            try {
-                Map<String, String> requestMap = new HashMap<>();
-                requestMap.put("role_id", roleId);
-                requestMap.put("secret_id", secretId);
+        return loginAppRole(roleId, secretId, authPath).getClientToken();
+    }
 
-                ResponseEntity<String> response = restTemplate.postForEntity(vaultUrl + authPath, requestMap, String.class);
+    /**
+     * Authenticates to Vault using the AppRole authentication method and keeps the lease information of the issued token.
+     *
+     * @param roleId   the Role ID for the AppRole
+     * @param secretId the Secret ID for the AppRole
+     * @param authPath the AppRole login endpoint
+     * @return the issued token with its lease duration and renewability
+     * @throws Exception if the authentication fails after maxRetries attempts
+     */
 
-                if (response.getStatusCode() == HttpStatus.OK) {
-                    LOGGER.info("Vault authentication successful");
-                    return "Vault authentication successful";
-                } else {
-                    throw new Exception("Vault authentication failed");
-                }
-            } catch (HttpClientErrorException ex) {
-                if (ex.getStatusCode() == HttpStatus.UNAUTHORIZED) {
-                    LOGGER.error("Invalid Vault token");
-                    throw new Exception("Invalid Vault credentials");
-                } else {
-                    numRetries++;
-                    LOGGER.warn("Retrying Vault authentication after {} milliseconds", backoffInterval * numRetries);
-                    waitUntilConditionMet(backoffInterval * numRetries, maxBackoffInterval);
-                }
-            } catch (Exception ex) {
-                numRetries++;
-                LOGGER.warn("Retrying Vault authentication after {} milliseconds", backoffInterval * numRetries);
-                waitUntilConditionMet(backoffInterval * numRetries, maxBackoffInterval);
+    public VaultToken loginAppRole(String roleId, String secretId, String authPath) throws Exception {
+        return retryEngine.execute("Vault authentication", null, authPath, retryPolicy, () -> attemptAppRoleLogin(roleId, secretId, authPath));
+    }
+
+    /**
+     * Performs a single AppRole login request without retrying.
+     *
+     * @param roleId   the Role ID for the AppRole
+     * @param secretId the Secret ID for the AppRole
+     * @param authPath the AppRole login endpoint
+     * @return the issued token
+     * @throws VaultException if Vault rejects the credentials
+     * @throws Exception if the request fails and may be retried
+     */
+
+    VaultToken attemptAppRoleLogin(String roleId, String secretId, String authPath) throws Exception {
+        try {
+            Map<String, String> requestMap = new HashMap<>();
+            requestMap.put("role_id", roleId);
+            requestMap.put("secret_id", secretId);
+
+            VaultToken token = restTemplate.execute(vaultUrl + authPath, HttpMethod.POST,
+                    restTemplate.httpEntityCallback(requestMap), VaultResponseDecoder.tokenExtractor());
+
+            if (token != null) {
+                LOGGER.info("Vault authentication successful");
+                return token;
+            } else {
+                throw new Exception("Vault authentication failed");
             }
+        } catch (HttpClientErrorException ex) {
+            if (ex.getStatusCode() == HttpStatus.UNAUTHORIZED) {
+                LOGGER.error("Invalid Vault token");
+                throw new VaultException("Invalid Vault credentials", ex.getRawStatusCode());
+            }
+            throw ex;
         }
-        LOGGER.error("Max retries exceeded for Vault authentication");
-        throw new Exception("Max retries exceeded for Vault authentication");
     }
 
     /**
@@ -89,116 +118,401 @@ public class VaultAuthenticator {
      * @param trustStorePath    Path to the JKS format trust store containing the trusted certificates.
      * @param trustStorePassword Password for the trust store.
      * @param authPath          Vault authentication endpoint.
-     * @return                  Success message upon successful authentication.
+     * @return                  The client token issued by Vault.
      * @throws Exception        Throws exception upon failure to authenticate with Vault after maximum number of retries.
      */
 
     public String authenticateTLS(String keyStorePath, String keyStorePassword, String trustStorePath, String trustStorePassword, String authPath) throws Exception {
-        int numRetries = 0;
-        while (numRetries < maxRetries) {
-            try {
-                HttpHeaders headers = new HttpHeaders();
-                RestTemplate restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(getHttpClient(keyStorePath, keyStorePassword, trustStorePath, trustStorePassword)));
+        return loginTLS(keyStorePath, keyStorePassword, trustStorePath, trustStorePassword, authPath).getClientToken();
+    }
 
-                HttpEntity<String> entity = new HttpEntity<String>(headers);
-                ResponseEntity<String> response = restTemplate.exchange(vaultUrl + authPath, HttpMethod.GET, entity, String.class);
+    /**
+     * Authenticates with Vault using TLS certificate and key authentication and keeps the lease information of the issued token.
+     *
+     * @param keyStorePath      Path to the PKCS12 format key store containing the client certificate and key.
+     * @param keyStorePassword  Password for the key store.
+     * @param trustStorePath    Path to the JKS format trust store containing the trusted certificates.
+     * @param trustStorePassword Password for the trust store.
+     * @param authPath          Vault authentication endpoint.
+     * @return                  The issued token with its lease duration and renewability.
+     * @throws Exception        Throws exception upon failure to authenticate with Vault after maximum number of retries.
+     */
 
-                if (response.getStatusCode() == HttpStatus.OK) {
-                    LOGGER.info("Vault authentication successful");
-                    return "Vault authentication successful";
-                } else {
-                    throw new Exception("Vault authentication failed");
-                }
-            } catch (HttpClientErrorException ex) {
-                if (ex.getStatusCode() == HttpStatus.UNAUTHORIZED) {
-                    LOGGER.error("Invalid Vault token");
-                    throw new Exception("Invalid Vault credentials");
-                } else {
-                    numRetries++;
-                    LOGGER.warn("Retrying Vault authentication after {} milliseconds", backoffInterval * numRetries);
-                    waitUntilConditionMet(backoffInterval * numRetries, maxBackoffInterval);
-                }
-            } catch (Exception ex) {
-                numRetries++;
-                LOGGER.warn("Retrying Vault authentication after {} milliseconds", backoffInterval * numRetries);
-                waitUntilConditionMet(backoffInterval * numRetries, maxBackoffInterval);
+    public VaultToken loginTLS(String keyStorePath, String keyStorePassword, String trustStorePath, String trustStorePassword, String authPath) throws Exception {
+        return retryEngine.execute("Vault authentication", null, authPath, retryPolicy, () -> attemptTLSLogin(keyStorePath, keyStorePassword, trustStorePath, trustStorePassword, authPath));
+    }
+
+    /**
+     * Authenticates with Vault using TLS certificate authentication over the transport the authenticator was built
+     * with, which must already present the client certificate, e.g. one created by
+     * {@link VaultHttpTransport#withClientCertificate} or the HTTP/2 transport's equivalent. The login then shares the
+     * transport's connections with every other request instead of opening its own.
+     *
+     * @param authPath Vault authentication endpoint.
+     * @return         The client token issued by Vault.
+     * @throws Exception Throws exception upon failure to authenticate with Vault after maximum number of retries.
+     */
+
+    public String authenticateTLS(String authPath) throws Exception {
+        return loginTLS(authPath).getClientToken();
+    }
+
+    /**
+     * Same as {@link #authenticateTLS(String)}, keeping the lease information of the issued token.
+     *
+     * @param authPath Vault authentication endpoint.
+     * @return         The issued token with its lease duration and renewability.
+     * @throws Exception Throws exception upon failure to authenticate with Vault after maximum number of retries.
+     */
+
+    public VaultToken loginTLS(String authPath) throws Exception {
+        return retryEngine.execute("Vault authentication", null, authPath, retryPolicy, () -> attemptTLSLogin(restTemplate, authPath));
+    }
+
+    /**
+     * Performs a single TLS certificate login request without retrying.
+     *
+     * @param keyStorePath      Path to the PKCS12 format key store containing the client certificate and key.
+     * @param keyStorePassword  Password for the key store.
+     * @param trustStorePath    Path to the JKS format trust store containing the trusted certificates.
+     * @param trustStorePassword Password for the trust store.
+     * @param authPath          Vault authentication endpoint.
+     * @return                  The issued token.
+     * @throws VaultException   If Vault rejects the certificate.
+     * @throws Exception        If the request fails and may be retried.
+     */
+
+    VaultToken attemptTLSLogin(String keyStorePath, String keyStorePassword, String trustStorePath, String trustStorePassword, String authPath) throws Exception {
+        TlsTransport tls = acquireTlsTransport(keyStorePath, keyStorePassword, trustStorePath, trustStorePassword);
+        try {
+            return attemptTLSLogin(tls.restTemplate, authPath);
+        } finally {
+            releaseTlsTransport(tls);
+        }
+    }
+
+    private VaultToken attemptTLSLogin(RestTemplate restTemplate, String authPath) throws Exception {
+        try {
+            HttpHeaders headers = new HttpHeaders();
+
+            HttpEntity<String> entity = new HttpEntity<String>(headers);
+            VaultToken token = restTemplate.execute(vaultUrl + authPath, HttpMethod.GET,
+                    restTemplate.httpEntityCallback(entity), VaultResponseDecoder.tokenExtractor());
+
+            if (token != null) {
+                LOGGER.info("Vault authentication successful");
+                return token;
+            } else {
+                throw new Exception("Vault authentication failed");
+            }
+        } catch (HttpClientErrorException ex) {
+            if (ex.getStatusCode() == HttpStatus.UNAUTHORIZED) {
+                LOGGER.error("Invalid Vault token");
+                throw new VaultException("Invalid Vault credentials", ex.getRawStatusCode());
             }
+            throw ex;
         }
-        LOGGER.error("Max retries exceeded for Vault authentication");
-        throw new Exception("Max retries exceeded for Vault authentication");
     }
 
     /**
-     * This method creates and returns a CloseableHttpClient object for communicating with a remote server using TLS authentication.
+     * Returns the pooled transport used for TLS authentication, creating it on first use, and counts the caller as
+     * one of its users until {@link #releaseTlsTransport}.
+     * The key store and trust store are only loaded again when a different pair of stores or passwords is requested,
+     * or when either file was modified, e.g. after a certificate was rotated in place, so retries and repeated logins
+     * reuse the same SSLContext and keep-alive connections. Its RestTemplate carries the interceptors of the
+     * authenticator's transport, such as a {@link com.sc.hcv.transport.VaultClusterRouter}, so that logins are routed
+     * like every other request.
      * @param keyStorePath the file path of the PKCS12 format key store containing the client certificate and private key
      * @param keyStorePassword the password for the key store
      * @param trustStorePath the file path of the JKS format trust store containing the trusted CA certificates
      * @param trustStorePassword the password for the trust store
-     * @return a CloseableHttpClient object configured with the SSLContext and SSLConnectionSocketFactory for TLS authentication
+     * @return the transport configured with the client certificate for TLS authentication
      * @throws Exception if an error occurs while loading the key store or trust store, or creating the SSLContext
      */
 
-    private static CloseableHttpClient getHttpClient(String keyStorePath, String keyStorePassword, String trustStorePath, String trustStorePassword) throws Exception {
-
-        KeyStore keyStore = KeyStore.getInstance("PKCS12");
-        keyStore.load(new FileInputStream(new File(keyStorePath)), keyStorePassword.toCharArray());
+    private TlsTransport acquireTlsTransport(String keyStorePath, String keyStorePassword, String trustStorePath, String trustStorePassword) throws Exception {
+        // the passwords are only kept as digests
+        String storeVersion = storeVersion(keyStorePath) + "|" + storeVersion(trustStorePath) + "|"
+                + TokenDigest.of(keyStorePassword) + "|" + TokenDigest.of(trustStorePassword);
+        // a lock rather than synchronized, so that a virtual thread loading the stores does not pin its carrier
+        tlsTransportLock.lock();
+        try {
+            if (tlsTransport == null || !storeVersion.equals(tlsTransport.storeVersion)) {
+                TlsTransport replaced = tlsTransport;
+                tlsTransport = new TlsTransport(VaultHttpTransport.withClientCertificate(transport.getConfig(), keyStorePath, keyStorePassword,
+                        trustStorePath, trustStorePassword), storeVersion);
+                if (replaced != null) {
+                    replaced.retired = true;
+                    closeIfUnused(replaced);
+                }
+            }
+            if (!tlsTransport.interceptors.equals(transport.getRestTemplate().getInterceptors())) {
+                // a new template rather than changing the interceptors of one that other logins may be using
+                tlsTransport.interceptors = new ArrayList<>(transport.getRestTemplate().getInterceptors());
+                RestTemplate routed = new RestTemplate(tlsTransport.transport.getRequestFactory());
+                routed.setInterceptors(tlsTransport.interceptors);
+                tlsTransport.restTemplate = routed;
+            }
+            tlsTransport.users++;
+            return tlsTransport;
+        } finally {
+            tlsTransportLock.unlock();
+        }
+    }
 
-        KeyStore trustStore = KeyStore.getInstance("JKS");
-        trustStore.load(new FileInputStream(new File(trustStorePath)), trustStorePassword.toCharArray());
+    private void releaseTlsTransport(TlsTransport tls) {
+        tlsTransportLock.lock();
+        try {
+            tls.users--;
+            closeIfUnused(tls);
+        } finally {
+            tlsTransportLock.unlock();
+        }
+    }
 
-        SSLContext sslContext = SSLContexts.custom()
-                .loadKeyMaterial(keyStore, keyStorePassword.toCharArray())
-                .loadTrustMaterial(trustStore, null)
-                .build();
+    /**
+     * Closes a replaced transport once the last login still using it has finished.
+     */
 
-        SSLConnectionSocketFactory socketFactory = new SSLConnectionSocketFactory(sslContext, new String[]{"TLSv1.2"}, null, SSLConnectionSocketFactory.getDefaultHostnameVerifier());
+    private static void closeIfUnused(TlsTransport tls) {
+        if (tls.retired && tls.users == 0) {
+            try {
+                tls.transport.close();
+            } catch (IOException ex) {
+                LOGGER.warn("Failed to close the replaced TLS authentication transport", ex);
+            }
+        }
+    }
 
-        return HttpClients.custom().setSSLContext(sslContext).build();
+    private static String storeVersion(String storePath) {
+        File store = new File(storePath);
+        return storePath + "@" + store.lastModified() + ":" + store.length();
     }
 
 
     /**
      * Checks if the given Vault token is valid by performing a token lookup on the Vault server.
      * If the token is valid, returns true. If the token is invalid or lookup fails, returns false.
+     * With a {@link TokenValidityCache} set, tokens checked recently are answered without a request to Vault.
      *
      * @param vaultToken the Vault token to check for validity
      * @return true if the token is valid, false otherwise
      */
 
     public boolean isValidToken(String vaultToken) throws Exception {
-        int numRetries = 0;
-        while (numRetries < maxRetries) {
-            try {
-                HttpHeaders headers = new HttpHeaders();
-                headers.setBearerAuth(vaultToken);
+        TokenValidityCache cache = validityCache;
+        if (cache == null) {
+            return lookup(vaultToken, null) != null;
+        }
+        String digest = TokenDigest.of(vaultToken);
+        Boolean cached = cache.validityOf(digest);
+        if (cached != null) {
+            return cached;
+        }
+        return lookup(vaultToken, digest) != null;
+    }
+
+    /**
+     * Looks up the TTL and policies of the given token, from the {@link TokenValidityCache} if one is set and the
+     * token was checked recently, otherwise through lookup-self.
+     *
+     * @param vaultToken the Vault token to look up
+     * @return the token information, or null if Vault rejects the token
+     * @throws Exception if the lookup fails after maxRetries attempts
+     */
+
+    public TokenInfo lookupToken(String vaultToken) throws Exception {
+        TokenValidityCache cache = validityCache;
+        if (cache == null) {
+            return lookup(vaultToken, null);
+        }
+        String digest = TokenDigest.of(vaultToken);
+        TokenInfo cached = cache.infoOf(digest);
+        if (cached != null) {
+            return cached;
+        }
+        if (Boolean.FALSE.equals(cache.validityOf(digest))) {
+            return null;
+        }
+        return lookup(vaultToken, digest);
+    }
+
+    /**
+     * @param digest the digest of the token, computed once per check, or null if no validity cache is set
+     */
 
-                HttpEntity<String> entity = new HttpEntity<>(null, headers);
+    private TokenInfo lookup(String vaultToken, String digest) throws Exception {
+        TokenInfo info = retryEngine.execute("checking token validity", null, "auth/token/lookup-self", retryPolicy, () -> attemptTokenLookup(vaultToken));
+        return recordLookup(digest, info);
+    }
+
+    /**
+     * Performs a single token lookup-self request without retrying.
+     *
+     * @param vaultToken the Vault token to check for validity
+     * @return the token information, or null if Vault rejects the token
+     * @throws Exception if the request fails and may be retried
+     */
+
+    TokenInfo attemptTokenLookup(String vaultToken) throws Exception {
+        try {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setBearerAuth(vaultToken);
+
+            HttpEntity<String> entity = new HttpEntity<>(null, headers);
 
-                ResponseEntity<String> response = restTemplate.exchange(vaultUrl + "/v1/auth/token/lookup-self", HttpMethod.GET, entity, String.class);
+            long checkedAt = System.currentTimeMillis();
+            VaultSecret lookup = restTemplate.execute(vaultUrl + "/v1/auth/token/lookup-self", HttpMethod.GET,
+                    restTemplate.httpEntityCallback(entity), VaultResponseDecoder.secretExtractor());
 
-                return response.getStatusCode() == HttpStatus.OK;
-            } catch (Exception ex) {
-                numRetries++;
-                Thread.sleep(backoffInterval * numRetries);
+            if (lookup == null || lookup.getData() == null) {
+                throw new Exception("Vault token lookup returned no data");
             }
+            return TokenInfo.fromLookup(lookup.getData(), checkedAt);
+        } catch (HttpClientErrorException ex) {
+            if (ex.getStatusCode() == HttpStatus.FORBIDDEN || ex.getStatusCode() == HttpStatus.UNAUTHORIZED) {
+                VaultRetryEngine.reportStatus(ex.getRawStatusCode());
+                return null;
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Stores the result of a lookup in the validity cache, if one is set.
+     *
+     * @param digest the {@link TokenDigest} of the token that was looked up, or null if no validity cache is set
+     * @return the lookup result
+     */
+
+    TokenInfo recordLookup(String digest, TokenInfo info) {
+        TokenValidityCache cache = validityCache;
+        if (cache != null && digest != null) {
+            cache.record(digest, info);
+        }
+        return info;
+    }
+
+    /**
+     * Removes the token from the validity cache, so that its next check asks Vault. Call this after revoking a token.
+     *
+     * @param vaultToken the token to forget
+     */
+
+    public void invalidateToken(String vaultToken) {
+        TokenValidityCache cache = validityCache;
+        if (cache != null) {
+            cache.invalidate(vaultToken);
         }
-        throw new Exception("Max retries exceeded for checking token validity");
     }
 
     /**
-     * This method will cause the thread to wait for a specific amount of time
-     * or until the maximum wait time is reached, whichever comes first.
+     * Renews the given token through the token/renew-self endpoint.
+     * Vault may grant a shorter lease than requested once the token approaches its max TTL.
      *
-     * @param waitTime    the time (in milliseconds) to wait between iterations
-     * @param maxWaitTime the maximum time (in milliseconds) to wait for the condition to be met
-     * @throws InterruptedException if the thread is interrupted while waiting
+     * @param vaultToken the token to renew
+     * @param increment  the requested lease extension in seconds, or 0 to use the token's default TTL
+     * @return the renewed token with its new lease duration
+     * @throws Exception if the token is no longer valid or the renewal fails after maxRetries attempts
      */
 
-    private void waitUntilConditionMet(long waitTime, long maxWaitTime) throws InterruptedException {
-        long startTime = System.currentTimeMillis();
-        while (System.currentTimeMillis() - startTime < maxWaitTime) {
-            Thread.sleep(waitTime);
+    public VaultToken renewSelf(String vaultToken, long increment) throws Exception {
+        VaultMetrics metrics = retryEngine.getMetrics();
+        try {
+            VaultToken token = retryEngine.execute("Vault token renewal", null, "auth/token/renew-self", retryPolicy, () -> attemptRenewSelf(vaultToken, increment));
+            metrics.tokenRenewed(true);
+            return token;
+        } catch (Exception ex) {
+            metrics.tokenRenewed(false);
+            throw ex;
         }
     }
 
+    /**
+     * Performs a single renew-self request without retrying.
+     *
+     * @param vaultToken the token to renew
+     * @param increment  the requested lease extension in seconds, or 0 to use the token's default TTL
+     * @return the renewed token
+     * @throws VaultException if the token can no longer be renewed
+     * @throws Exception if the request fails and may be retried
+     */
+
+    VaultToken attemptRenewSelf(String vaultToken, long increment) throws Exception {
+        try {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setBearerAuth(vaultToken);
+            Map<String, Object> requestMap = new HashMap<>();
+            if (increment > 0) {
+                requestMap.put("increment", increment + "s");
+            }
+
+            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestMap, headers);
+            VaultToken token = restTemplate.execute(vaultUrl + "/v1/auth/token/renew-self", HttpMethod.POST,
+                    restTemplate.httpEntityCallback(entity), VaultResponseDecoder.tokenExtractor());
+
+            if (token != null) {
+                LOGGER.info("Vault token renewal successful");
+                return token;
+            } else {
+                throw new Exception("Vault token renewal failed");
+            }
+        } catch (HttpClientErrorException ex) {
+            if (ex.getStatusCode() == HttpStatus.FORBIDDEN || ex.getStatusCode() == HttpStatus.UNAUTHORIZED) {
+                LOGGER.error("Vault token can no longer be renewed");
+                throw new VaultException("Invalid Vault token", ex.getRawStatusCode());
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Replaces the process-wide {@link VaultRetryEngine} used for this client's requests.
+     * @param retryEngine the retry engine to use
+     */
+
+    public void setRetryEngine(VaultRetryEngine retryEngine) {
+        this.retryEngine = retryEngine;
+    }
+
+    /**
+     * Sets the cache that answers {@link #isValidToken} for recently checked tokens.
+     * @param validityCache the cache, or null to look up every token in Vault
+     */
+
+    public void setValidityCache(TokenValidityCache validityCache) {
+        this.validityCache = validityCache;
+    }
+
+    public TokenValidityCache getValidityCache() {
+        return validityCache;
+    }
+
+    VaultRetryEngine getRetryEngine() {
+        return retryEngine;
+    }
+
+    RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * A transport for TLS authentication, with the stores it was built from and the logins using it.
+     * Its mutable fields are only written under {@code tlsTransportLock}.
+     */
+
+    private static final class TlsTransport {
+        private final VaultHttpTransport transport;
+        private final String storeVersion;
+        private volatile RestTemplate restTemplate;
+        private List<ClientHttpRequestInterceptor> interceptors = Collections.emptyList();
+        private int users;
+        private boolean retired;
+
+        TlsTransport(VaultHttpTransport transport, String storeVersion) {
+            this.transport = transport;
+            this.storeVersion = storeVersion;
+            this.restTemplate = transport.getRestTemplate();
+        }
+    }
 }
@@ -0,0 +1,89 @@
+package com.sc.hcv.auth;
+
+import com.sc.hcv.async.VaultAsyncExecutor;
+import com.sc.hcv.metrics.VaultMetrics;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking variant of {@link VaultAuthenticator}. Requests run on the I/O pool of a {@link VaultAsyncExecutor}
+ * and retries are scheduled on its timer, using the retry settings of the wrapped authenticator.
+ */
+public class VaultAuthenticatorAsync {
+
+    private final VaultAuthenticator authenticator;
+    private final VaultAsyncExecutor executor;
+
+
+    public VaultAuthenticatorAsync(VaultAuthenticator authenticator, VaultAsyncExecutor executor) {
+        this.authenticator = authenticator;
+        this.executor = executor;
+    }
+
+
+    /**
+     * Authenticates to Vault using the AppRole authentication method.
+     *
+     * @param roleId   the Role ID for the AppRole
+     * @param secretId the Secret ID for the AppRole
+     * @param authPath the AppRole login endpoint
+     * @return a future completed with the issued token
+     */
+
+    public CompletableFuture<VaultToken> loginAppRole(String roleId, String secretId, String authPath) {
+        return retry("Vault authentication", authPath, () -> authenticator.attemptAppRoleLogin(roleId, secretId, authPath));
+    }
+
+    /**
+     * Authenticates with Vault using TLS certificate and key authentication.
+     *
+     * @param keyStorePath       Path to the PKCS12 format key store containing the client certificate and key.
+     * @param keyStorePassword   Password for the key store.
+     * @param trustStorePath     Path to the JKS format trust store containing the trusted certificates.
+     * @param trustStorePassword Password for the trust store.
+     * @param authPath           Vault authentication endpoint.
+     * @return a future completed with the issued token
+     */
+
+    public CompletableFuture<VaultToken> loginTLS(String keyStorePath, String keyStorePassword, String trustStorePath, String trustStorePassword, String authPath) {
+        return retry("Vault authentication", authPath, () -> authenticator.attemptTLSLogin(keyStorePath, keyStorePassword, trustStorePath, trustStorePassword, authPath));
+    }
+
+    /**
+     * Checks if the given Vault token is valid by performing a token lookup on the Vault server.
+     * Tokens found in the authenticator's {@link TokenValidityCache} are answered at once.
+     *
+     * @param vaultToken the Vault token to check for validity
+     * @return a future completed with true if the token is valid, false otherwise
+     */
+
+    public CompletableFuture<Boolean> isValidToken(String vaultToken) {
+        TokenValidityCache cache = authenticator.getValidityCache();
+        String digest = cache == null ? null : TokenDigest.of(vaultToken);
+        Boolean cached = cache == null ? null : cache.validityOf(digest);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return retry("checking token validity", "auth/token/lookup-self", () -> authenticator.attemptTokenLookup(vaultToken))
+                .thenApply(info -> authenticator.recordLookup(digest, info) != null);
+    }
+
+    /**
+     * Renews the given token through the token/renew-self endpoint.
+     *
+     * @param vaultToken the token to renew
+     * @param increment  the requested lease extension in seconds, or 0 to use the token's default TTL
+     * @return a future completed with the renewed token
+     */
+
+    public CompletableFuture<VaultToken> renewSelf(String vaultToken, long increment) {
+        VaultMetrics metrics = authenticator.getRetryEngine().getMetrics();
+        return retry("Vault token renewal", "auth/token/renew-self", () -> authenticator.attemptRenewSelf(vaultToken, increment))
+                .whenComplete((token, error) -> metrics.tokenRenewed(error == null));
+    }
+
+    private <T> CompletableFuture<T> retry(String operation, String path, Callable<T> attempt) {
+        return executor.retry(operation, null, path, attempt, authenticator.getRetryEngine(), authenticator.getRetryPolicy());
+    }
+}
@@ -0,0 +1,10 @@
+package com.sc.hcv.auth;
+
+/**
+ * A login against one of the Vault auth methods, e.g. {@code () -> authenticator.loginAppRole(roleId, secretId, authPath)}.
+ */
+@FunctionalInterface
+public interface VaultLogin {
+
+    VaultToken login() throws Exception;
+}
@@ -0,0 +1,69 @@
+package com.sc.hcv.auth;
+
+import com.sc.hcv.response.VaultResponseDecoder;
+
+/**
+ * Immutable view of the "auth" block returned by a Vault login or token renewal.
+ */
+public class VaultToken {
+
+    private final String clientToken;
+    private final long leaseDuration;
+    private final boolean renewable;
+    private final long issuedAt;
+
+
+    public VaultToken(String clientToken, long leaseDuration, boolean renewable, long issuedAt) {
+        this.clientToken = clientToken;
+        this.leaseDuration = leaseDuration;
+        this.renewable = renewable;
+        this.issuedAt = issuedAt;
+    }
+
+    /**
+     * Parses the "auth" block of a Vault login or renew-self response.
+     *
+     * @param responseBody the JSON body returned by Vault
+     * @return the parsed token
+     * @throws Exception if the response does not contain an auth block with a client token
+     */
+
+    public static VaultToken fromResponse(String responseBody) throws Exception {
+        return VaultResponseDecoder.decodeToken(responseBody);
+    }
+
+    public String getClientToken() {
+        return clientToken;
+    }
+
+    /**
+     * @return the token TTL in seconds, 0 for tokens that never expire
+     */
+    public long getLeaseDuration() {
+        return leaseDuration;
+    }
+
+    public boolean isRenewable() {
+        return renewable;
+    }
+
+    public long getIssuedAt() {
+        return issuedAt;
+    }
+
+    /**
+     * @return the epoch time in milliseconds at which the token expires, or Long.MAX_VALUE for tokens that never expire
+     */
+    public long getExpiresAt() {
+        return leaseDuration <= 0 ? Long.MAX_VALUE : issuedAt + leaseDuration * 1000;
+    }
+
+    public boolean isExpired(long now) {
+        return now >= getExpiresAt();
+    }
+
+    @Override
+    public String toString() {
+        return "VaultToken{leaseDuration=" + leaseDuration + ", renewable=" + renewable + ", issuedAt=" + issuedAt + "}";
+    }
+}
@@ -0,0 +1,224 @@
+package com.sc.hcv.auth;
+
+import com.sc.hcv.VaultException;
+import com.sc.hcv.async.VaultThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps a Vault token in memory and renews it in the background before it expires.
+ * Callers obtain the current token with {@link #getToken()}; when no valid token is held, concurrent callers
+ * share a single login instead of each logging in on their own.
+ */
+public class VaultTokenManager implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VaultTokenManager.class);
+
+    private static final long MIN_RETRY_DELAY = 1000;
+
+    private final VaultAuthenticator authenticator;
+    private final VaultLogin login;
+    private final double renewalFraction;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicReference<CompletableFuture<VaultToken>> pendingLogin = new AtomicReference<>();
+    private volatile VaultToken currentToken;
+
+
+    /**
+     * @param authenticator   the authenticator used to renew the token through renew-self
+     * @param login           the login performed when no valid token is held
+     * @param renewalFraction the fraction of the token TTL after which it is renewed, between 0 and 1 (exclusive)
+     */
+    public VaultTokenManager(VaultAuthenticator authenticator, VaultLogin login, double renewalFraction) {
+        if (renewalFraction <= 0 || renewalFraction >= 1) {
+            throw new IllegalArgumentException("renewalFraction must be between 0 and 1");
+        }
+        this.authenticator = authenticator;
+        this.login = login;
+        this.renewalFraction = renewalFraction;
+        this.scheduler = VaultThreads.newScheduler("vault-token-renewal");
+    }
+
+
+    /**
+     * Returns the current client token, logging in first if no valid token is held.
+     *
+     * @return the client token
+     * @throws Exception if the login fails
+     */
+
+    public String getToken() throws Exception {
+        return getVaultToken().getClientToken();
+    }
+
+    /**
+     * Returns the current token with its lease information, logging in first if no valid token is held.
+     *
+     * @return the current token
+     * @throws Exception if the login fails
+     */
+
+    public VaultToken getVaultToken() throws Exception {
+        VaultToken token = currentToken;
+        if (token != null && !token.isExpired(System.currentTimeMillis())) {
+            return token;
+        }
+        return login(token);
+    }
+
+    /**
+     * @return the token currently held, or null if none is held; never logs in
+     */
+
+    public VaultToken getCurrentToken() {
+        return currentToken;
+    }
+
+    /**
+     * Takes over a token obtained earlier, e.g. one saved in a {@link com.sc.hcv.cache.VaultSecretSnapshot}, instead
+     * of logging in. Its renewal is scheduled relative to the time it was issued.
+     *
+     * @param token the token to hold
+     * @return false if the token has already expired and was not taken over
+     */
+
+    public boolean restore(VaultToken token) {
+        long now = System.currentTimeMillis();
+        if (token.isExpired(now)) {
+            return false;
+        }
+        currentToken = token;
+        if (token.getLeaseDuration() > 0) {
+            long renewAt = token.getIssuedAt() + (long) (token.getLeaseDuration() * 1000 * renewalFraction);
+            scheduler.schedule(() -> renew(token), Math.max(0, renewAt - now), TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    /**
+     * Drops the held token, e.g. after Vault rejected it or it was revoked. The next call to {@link #getToken()} logs in again.
+     * The token is also removed from the authenticator's validity cache.
+     */
+
+    public void invalidate() {
+        VaultToken token = currentToken;
+        currentToken = null;
+        if (token != null) {
+            authenticator.invalidateToken(token.getClientToken());
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Logs in unless another thread already replaced the given token. Only one login runs at a time;
+     * threads arriving while it is in flight wait for its result.
+     *
+     * @param observed the token the caller found to be missing or expired
+     * @return the token obtained by the shared login
+     * @throws Exception if the login fails
+     */
+
+    private VaultToken login(VaultToken observed) throws Exception {
+        while (true) {
+            CompletableFuture<VaultToken> pending = pendingLogin.get();
+            if (pending != null) {
+                return await(pending);
+            }
+            CompletableFuture<VaultToken> created = new CompletableFuture<>();
+            if (pendingLogin.compareAndSet(null, created)) {
+                try {
+                    VaultToken current = currentToken;
+                    if (current != null && current != observed && !current.isExpired(System.currentTimeMillis())) {
+                        created.complete(current);
+                    } else {
+                        VaultToken token = login.login();
+                        update(token);
+                        created.complete(token);
+                    }
+                } catch (Exception ex) {
+                    created.completeExceptionally(ex);
+                } finally {
+                    pendingLogin.compareAndSet(created, null);
+                }
+                return await(created);
+            }
+        }
+    }
+
+    private void update(VaultToken token) {
+        currentToken = token;
+        if (token.getLeaseDuration() > 0) {
+            long delay = (long) (token.getLeaseDuration() * 1000 * renewalFraction);
+            scheduler.schedule(() -> renew(token), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Renews the token through renew-self. Tokens that are not renewable, or whose renewal was capped by
+     * their max TTL, are replaced by a fresh login instead, and so are tokens Vault rejects as revoked, e.g. one
+     * restored from a snapshot after it was revoked.
+     */
+
+    private void renew(VaultToken token) {
+        if (token != currentToken) {
+            return;
+        }
+        try {
+            if (token.isRenewable()) {
+                VaultToken renewed;
+                try {
+                    renewed = authenticator.renewSelf(token.getClientToken(), token.getLeaseDuration());
+                } catch (VaultException ex) {
+                    if (ex.getStatusCode() != 401 && ex.getStatusCode() != 403) {
+                        throw ex;
+                    }
+                    LOGGER.warn("Vault token was revoked, logging in again");
+                    if (token == currentToken) {
+                        invalidate();
+                    }
+                    login(token);
+                    return;
+                }
+                if (renewed.getLeaseDuration() >= token.getLeaseDuration()) {
+                    LOGGER.debug("Renewed Vault token for {} seconds", renewed.getLeaseDuration());
+                    update(renewed);
+                    return;
+                }
+                LOGGER.info("Vault token is approaching its max TTL, logging in again");
+            }
+            login(token);
+        } catch (Exception ex) {
+            long remaining = token.getExpiresAt() - System.currentTimeMillis();
+            if (remaining > MIN_RETRY_DELAY) {
+                long delay = Math.max(MIN_RETRY_DELAY, remaining / 2);
+                LOGGER.warn("Vault token renewal failed, retrying in {} milliseconds", delay, ex);
+                scheduler.schedule(() -> renew(token), delay, TimeUnit.MILLISECONDS);
+            } else {
+                LOGGER.error("Vault token renewal failed, the next request will log in again", ex);
+            }
+        }
+    }
+
+    private static VaultToken await(CompletableFuture<VaultToken> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw ex;
+        }
+    }
+}
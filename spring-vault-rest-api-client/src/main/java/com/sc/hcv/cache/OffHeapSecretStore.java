@@ -0,0 +1,443 @@
+package com.sc.hcv.cache;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Holds secret values outside the Java heap, for processes that keep hundreds of thousands of secrets.
+ * <p>
+ * Secrets are appended to fixed-size direct {@link ByteBuffer} segments used as a ring: once the last segment is full,
+ * the oldest one is zeroed and reused, evicting the secrets it held. A replaced or removed secret is zeroed in place
+ * at once. Secrets are found through an open-addressed index of 64-bit path hashes, so the heap holds two
+ * {@code long}s per secret instead of a map of {@code String}s.
+ * <p>
+ * {@link #get} returns a {@link SecretView} over the stored bytes; values are decoded only when the caller copies them
+ * into a {@code char[]}, which the caller wipes once done.
+ * <p>
+ * Each segment record is laid out as
+ * {@code int length | byte live | long hash | u16 pathLength | path | u16 count | (u16 keyLength | key | int valueLength | value)*},
+ * with strings in UTF-8.
+ */
+public class OffHeapSecretStore implements Closeable {
+
+    static final int HEADER_SIZE = 13;
+
+    private static final int LIVE_OFFSET = 4;
+    private static final int HASH_OFFSET = 5;
+    private static final long EMPTY = -1;
+    private static final long DELETED = -2;
+    private static final float LOAD_FACTOR = 0.7f;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final int segmentSize;
+    private final ByteBuffer[] segments;
+    private final int[] generations;
+    private int currentSegment;
+    private int writePosition;
+    private long[] hashes;
+    private long[] locations;
+    private int size;
+    private int deleted;
+    private boolean closed;
+
+
+    /**
+     * @param segmentSize the size in bytes of each segment, which bounds the size of a single secret
+     * @param maxSegments the number of segments; the store holds at most {@code segmentSize * maxSegments} bytes
+     */
+    public OffHeapSecretStore(int segmentSize, int maxSegments) {
+        if (segmentSize < 64 || maxSegments < 2) {
+            throw new IllegalArgumentException("At least two segments of 64 bytes are required");
+        }
+        this.segmentSize = segmentSize;
+        this.segments = new ByteBuffer[maxSegments];
+        this.generations = new int[maxSegments];
+        this.segments[0] = ByteBuffer.allocateDirect(segmentSize);
+        resizeIndex(1024);
+    }
+
+
+    /**
+     * Stores the secret at the given path, zeroing the secret it replaces.
+     *
+     * @param path   the secret path, e.g. {@code tenant-a/secret/data/db}
+     * @param values the key/value pairs of the secret
+     * @throws IllegalArgumentException if the encoded secret does not fit in a segment
+     */
+
+    public void put(String path, Map<String, String> values) {
+        byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+        byte[][] encoded = new byte[values.size() * 2][];
+        int length = HEADER_SIZE + 2 + pathBytes.length + 2;
+        int i = 0;
+        for (Map.Entry<String, String> value : values.entrySet()) {
+            encoded[i] = value.getKey().getBytes(StandardCharsets.UTF_8);
+            encoded[i + 1] = value.getValue() == null ? new byte[0] : value.getValue().getBytes(StandardCharsets.UTF_8);
+            length += 2 + encoded[i].length + 4 + encoded[i + 1].length;
+            i += 2;
+        }
+        if (length > segmentSize || pathBytes.length > 0xffff || values.size() > 0xffff) {
+            throw new IllegalArgumentException("Secret " + path + " does not fit in a segment of " + segmentSize + " bytes");
+        }
+        long hash = hash(pathBytes);
+
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            int slot = find(hash, pathBytes);
+            if (slot >= 0) {
+                kill(locations[slot]);
+                locations[slot] = DELETED;
+                size--;
+                deleted++;
+            }
+            long location = allocate(length);
+            ByteBuffer segment = segments[segmentOf(location)];
+            int position = offsetOf(location);
+            segment.putInt(position, length);
+            segment.put(position + LIVE_OFFSET, (byte) 1);
+            segment.putLong(position + HASH_OFFSET, hash);
+            position = putBytes(segment, position + HEADER_SIZE, pathBytes);
+            segment.putShort(position, (short) values.size());
+            position += 2;
+            for (int j = 0; j < encoded.length; j += 2) {
+                position = putBytes(segment, position, encoded[j]);
+                segment.putInt(position, encoded[j + 1].length);
+                segment.position(position + 4);
+                segment.put(encoded[j + 1]);
+                position += 4 + encoded[j + 1].length;
+                Arrays.fill(encoded[j + 1], (byte) 0);
+            }
+            insert(hash, location);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param path the secret path
+     * @return a view of the stored secret, or null if no secret is stored at the path
+     */
+
+    public SecretView get(String path) {
+        byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(pathBytes);
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            int slot = find(hash, pathBytes);
+            if (slot < 0) {
+                return null;
+            }
+            long location = locations[slot];
+            return new SecretView(this, segmentOf(location), offsetOf(location), generations[segmentOf(location)]);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Removes and zeroes the secret at the given path.
+     *
+     * @param path the secret path
+     * @return true if a secret was stored at the path
+     */
+
+    public boolean remove(String path) {
+        byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(pathBytes);
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            int slot = find(hash, pathBytes);
+            if (slot < 0) {
+                return false;
+            }
+            kill(locations[slot]);
+            locations[slot] = DELETED;
+            size--;
+            deleted++;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of stored secrets
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of off-heap bytes allocated so far
+     */
+    public long getAllocatedBytes() {
+        lock.readLock().lock();
+        try {
+            long allocated = 0;
+            for (ByteBuffer segment : segments) {
+                allocated += segment == null ? 0 : segment.capacity();
+            }
+            return allocated;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Zeroes and removes every stored secret.
+     */
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < segments.length; i++) {
+                if (segments[i] != null) {
+                    zero(segments[i], 0, segmentSize);
+                    generations[i]++;
+                }
+            }
+            currentSegment = 0;
+            writePosition = 0;
+            locations = null;
+            resizeIndex(1024);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Zeroes every stored secret and releases the segments.
+     */
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            clear();
+            Arrays.fill(segments, null);
+            closed = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Runs the read against the record of a view while no write can move or zero it.
+     *
+     * @throws IllegalStateException if the record was replaced, removed or evicted since the view was created
+     */
+
+    <T> T read(SecretView view, RecordReader<T> reader) {
+        lock.readLock().lock();
+        try {
+            ByteBuffer segment = closed ? null : segments[view.segment];
+            if (segment == null || generations[view.segment] != view.generation || segment.get(view.offset + LIVE_OFFSET) != 1) {
+                throw new IllegalStateException("The secret was replaced or evicted after it was read");
+            }
+            return reader.read(segment, view.offset);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    interface RecordReader<T> {
+        T read(ByteBuffer segment, int offset);
+    }
+
+    /**
+     * Reserves space for a record, moving to the next segment of the ring when the current one is full and evicting
+     * the secrets that segment held.
+     */
+
+    private long allocate(int length) {
+        if (writePosition + length > segmentSize) {
+            currentSegment = (currentSegment + 1) % segments.length;
+            writePosition = 0;
+            if (segments[currentSegment] == null) {
+                segments[currentSegment] = ByteBuffer.allocateDirect(segmentSize);
+            } else {
+                evict(currentSegment);
+            }
+        }
+        long location = ((long) currentSegment << 32) | writePosition;
+        writePosition += length;
+        return location;
+    }
+
+    private void evict(int segmentIndex) {
+        ByteBuffer segment = segments[segmentIndex];
+        int position = 0;
+        while (position + HEADER_SIZE <= segmentSize) {
+            int length = segment.getInt(position);
+            if (length <= 0) {
+                break;
+            }
+            if (segment.get(position + LIVE_OFFSET) == 1) {
+                long location = ((long) segmentIndex << 32) | position;
+                int slot = slotOf(segment.getLong(position + HASH_OFFSET), location);
+                if (slot >= 0) {
+                    locations[slot] = DELETED;
+                    size--;
+                    deleted++;
+                }
+            }
+            position += length;
+        }
+        zero(segment, 0, segmentSize);
+        generations[segmentIndex]++;
+    }
+
+    /**
+     * Marks a record as dead and zeroes everything but its length, which is kept so the segment can still be walked.
+     */
+
+    private void kill(long location) {
+        ByteBuffer segment = segments[segmentOf(location)];
+        int offset = offsetOf(location);
+        zero(segment, offset + LIVE_OFFSET, segment.getInt(offset) - LIVE_OFFSET);
+    }
+
+    private int find(long hash, byte[] pathBytes) {
+        int mask = hashes.length - 1;
+        for (int slot = spread(hash) & mask; locations[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (locations[slot] >= 0 && hashes[slot] == hash && pathEquals(locations[slot], pathBytes)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int slotOf(long hash, long location) {
+        int mask = hashes.length - 1;
+        for (int slot = spread(hash) & mask; locations[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (locations[slot] == location) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void insert(long hash, long location) {
+        if (size + deleted + 1 > hashes.length * LOAD_FACTOR) {
+            resizeIndex(size + 1 > hashes.length * LOAD_FACTOR / 2 ? hashes.length * 2 : hashes.length);
+        }
+        int mask = hashes.length - 1;
+        int slot = spread(hash) & mask;
+        while (locations[slot] >= 0) {
+            slot = (slot + 1) & mask;
+        }
+        if (locations[slot] == DELETED) {
+            deleted--;
+        }
+        hashes[slot] = hash;
+        locations[slot] = location;
+        size++;
+    }
+
+    /**
+     * Rebuilds the index with the given capacity, dropping deleted slots.
+     */
+
+    private void resizeIndex(int capacity) {
+        long[] oldHashes = hashes;
+        long[] oldLocations = locations;
+        hashes = new long[capacity];
+        locations = new long[capacity];
+        Arrays.fill(locations, EMPTY);
+        size = 0;
+        deleted = 0;
+        if (oldLocations == null) {
+            return;
+        }
+        for (int i = 0; i < oldLocations.length; i++) {
+            if (oldLocations[i] >= 0) {
+                int mask = capacity - 1;
+                int slot = spread(oldHashes[i]) & mask;
+                while (locations[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                hashes[slot] = oldHashes[i];
+                locations[slot] = oldLocations[i];
+                size++;
+            }
+        }
+    }
+
+    private boolean pathEquals(long location, byte[] pathBytes) {
+        ByteBuffer segment = segments[segmentOf(location)];
+        int position = offsetOf(location) + HEADER_SIZE;
+        if ((segment.getShort(position) & 0xffff) != pathBytes.length) {
+            return false;
+        }
+        for (int i = 0; i < pathBytes.length; i++) {
+            if (segment.get(position + 2 + i) != pathBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("The secret store is closed");
+        }
+    }
+
+    private static int putBytes(ByteBuffer segment, int position, byte[] bytes) {
+        segment.putShort(position, (short) bytes.length);
+        segment.position(position + 2);
+        segment.put(bytes);
+        return position + 2 + bytes.length;
+    }
+
+    static void zero(ByteBuffer segment, int offset, int length) {
+        int end = offset + length;
+        int position = offset;
+        for (; position + 8 <= end; position += 8) {
+            segment.putLong(position, 0);
+        }
+        for (; position < end; position++) {
+            segment.put(position, (byte) 0);
+        }
+    }
+
+    /**
+     * FNV-1a over the UTF-8 bytes of the path.
+     */
+
+    static long hash(byte[] pathBytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : pathBytes) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static int spread(long hash) {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private static int segmentOf(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offsetOf(long location) {
+        return (int) location;
+    }
+}
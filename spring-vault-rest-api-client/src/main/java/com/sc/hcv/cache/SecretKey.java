@@ -0,0 +1,49 @@
+package com.sc.hcv.cache;
+
+import com.sc.hcv.secrets.SecretEngine;
+
+import java.util.Objects;
+
+/**
+ * Identifies a secret read by engine, path and the digest of the token it is read with.
+ * The raw token is never kept.
+ */
+final class SecretKey {
+
+    final SecretEngine engine;
+    final String path;
+    final String tokenDigest;
+    private final int hash;
+
+
+    SecretKey(SecretEngine engine, String path, String tokenDigest) {
+        this.engine = engine;
+        this.path = path;
+        this.tokenDigest = tokenDigest;
+        this.hash = Objects.hash(engine, path, tokenDigest);
+    }
+
+    /**
+     * @return the key of the engine and path alone, under which the cache indexes the keys of all tokens
+     */
+    SecretKey withoutToken() {
+        return new SecretKey(engine, path, "");
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof SecretKey)) {
+            return false;
+        }
+        SecretKey that = (SecretKey) other;
+        return engine == that.engine && path.equals(that.path) && tokenDigest.equals(that.tokenDigest);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
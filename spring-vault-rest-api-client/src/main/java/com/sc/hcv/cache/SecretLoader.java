@@ -0,0 +1,12 @@
+package com.sc.hcv.cache;
+
+import com.sc.hcv.secrets.VaultSecret;
+
+/**
+ * Reads a secret from Vault when it is missing from, or due for refresh in, a {@link VaultSecretCache}.
+ */
+@FunctionalInterface
+public interface SecretLoader {
+
+    VaultSecret load() throws Exception;
+}
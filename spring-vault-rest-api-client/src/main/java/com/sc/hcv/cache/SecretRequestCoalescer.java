@@ -0,0 +1,105 @@
+package com.sc.hcv.cache;
+
+import com.sc.hcv.auth.TokenDigest;
+import com.sc.hcv.secrets.SecretEngine;
+import com.sc.hcv.secrets.VaultSecret;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates concurrent reads of the same secret.
+ * <p>
+ * While a read for an (engine, path, token) is in flight, further callers for the same key wait for it and receive
+ * its result or error instead of sending their own request. The entry is removed as soon as the read completes,
+ * so nothing is cached beyond the lifetime of the request.
+ */
+public class SecretRequestCoalescer {
+
+    private final ConcurrentHashMap<SecretKey, CompletableFuture<VaultSecret>> inFlight = new ConcurrentHashMap<>();
+
+
+    /**
+     * Reads the secret on the calling thread, or waits for a read of the same secret that is already in flight.
+     *
+     * @param engine     the secret engine the path belongs to
+     * @param path       the secret path
+     * @param vaultToken the token the secret is read with; reads are never shared between tokens
+     * @param loader     reads the secret from Vault
+     * @return the secret
+     * @throws Exception the error of the shared read
+     */
+
+    public VaultSecret load(SecretEngine engine, String path, String vaultToken, SecretLoader loader) throws Exception {
+        SecretKey key = new SecretKey(engine, path, TokenDigest.of(vaultToken));
+        CompletableFuture<VaultSecret> pending = new CompletableFuture<>();
+        CompletableFuture<VaultSecret> existing = inFlight.putIfAbsent(key, pending);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            VaultSecret secret = loader.load();
+            pending.complete(secret);
+            return secret;
+        } catch (Exception ex) {
+            pending.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key, pending);
+        }
+    }
+
+    /**
+     * Asynchronous variant of {@link #load}. Callers that arrive while a read is in flight share its future.
+     *
+     * @param engine     the secret engine the path belongs to
+     * @param path       the secret path
+     * @param vaultToken the token the secret is read with; reads are never shared between tokens
+     * @param loader     starts an asynchronous read of the secret from Vault
+     * @return a future completed with the secret
+     */
+
+    public CompletableFuture<VaultSecret> loadAsync(SecretEngine engine, String path, String vaultToken, Supplier<CompletableFuture<VaultSecret>> loader) {
+        SecretKey key = new SecretKey(engine, path, TokenDigest.of(vaultToken));
+        CompletableFuture<VaultSecret> pending = new CompletableFuture<>();
+        CompletableFuture<VaultSecret> existing = inFlight.putIfAbsent(key, pending);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            loader.get().whenComplete((secret, error) -> {
+                inFlight.remove(key, pending);
+                if (error == null) {
+                    pending.complete(secret);
+                } else {
+                    pending.completeExceptionally(error);
+                }
+            });
+        } catch (RuntimeException ex) {
+            inFlight.remove(key, pending);
+            pending.completeExceptionally(ex);
+        }
+        return pending;
+    }
+
+    /**
+     * @return the number of reads currently in flight
+     */
+    public int size() {
+        return inFlight.size();
+    }
+
+    private static VaultSecret await(CompletableFuture<VaultSecret> pending) throws Exception {
+        try {
+            return pending.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw ex;
+        }
+    }
+}
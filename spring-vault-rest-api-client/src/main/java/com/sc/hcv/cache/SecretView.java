@@ -0,0 +1,152 @@
+package com.sc.hcv.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Flyweight view of a secret held by an {@link OffHeapSecretStore}. The view only records where the secret is stored;
+ * values are decoded from the off-heap bytes each time they are copied out.
+ * <p>
+ * Copied values should be wiped by the caller once used, e.g. with {@code Arrays.fill(password, '\0')}. A view
+ * becomes invalid once its secret is replaced, removed or evicted, and then throws {@link IllegalStateException}.
+ */
+public final class SecretView {
+
+    private final OffHeapSecretStore store;
+    final int segment;
+    final int offset;
+    final int generation;
+
+
+    SecretView(OffHeapSecretStore store, int segment, int offset, int generation) {
+        this.store = store;
+        this.segment = segment;
+        this.offset = offset;
+        this.generation = generation;
+    }
+
+
+    /**
+     * @return the keys of the secret, in the order they were stored
+     */
+    public List<String> getKeys() {
+        return store.read(this, (buffer, position) -> {
+            ByteBuffer record = buffer.duplicate();
+            int count = skipPath(record, position);
+            List<String> keys = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                keys.add(readKey(record));
+                skipValue(record);
+            }
+            return keys;
+        });
+    }
+
+    /**
+     * Decodes a value into a new array that the caller owns and should wipe once used.
+     *
+     * @param key the key within the secret
+     * @return the value, or null if the secret has no such key
+     */
+    public char[] getChars(String key) {
+        return store.read(this, (buffer, position) -> {
+            ByteBuffer record = buffer.duplicate();
+            int count = skipPath(record, position);
+            for (int i = 0; i < count; i++) {
+                if (key.equals(readKey(record))) {
+                    int length = record.getInt();
+                    record.limit(record.position() + length);
+                    return decode(record);
+                }
+                skipValue(record);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Copies a value into the given array, so that a caller can reuse one buffer for many reads.
+     *
+     * @param key         the key within the secret
+     * @param destination the array the value is copied to
+     * @return the number of chars copied, or -1 if the secret has no such key
+     * @throws IllegalArgumentException if the value does not fit in the array
+     */
+    public int copyChars(String key, char[] destination) {
+        char[] value = getChars(key);
+        if (value == null) {
+            return -1;
+        }
+        try {
+            if (value.length > destination.length) {
+                throw new IllegalArgumentException("The value of " + key + " needs " + value.length + " chars");
+            }
+            System.arraycopy(value, 0, destination, 0, value.length);
+            return value.length;
+        } finally {
+            Arrays.fill(value, '\0');
+        }
+    }
+
+    /**
+     * @return the number of bytes the secret occupies off the heap
+     */
+    public int getStoredSize() {
+        return store.read(this, ByteBuffer::getInt);
+    }
+
+    private static int skipPath(ByteBuffer record, int position) {
+        record.position(position + OffHeapSecretStore.HEADER_SIZE);
+        int pathLength = record.getShort() & 0xffff;
+        record.position(record.position() + pathLength);
+        return record.getShort() & 0xffff;
+    }
+
+    private static String readKey(ByteBuffer record) {
+        int length = record.getShort() & 0xffff;
+        byte[] key = new byte[length];
+        record.get(key);
+        return new String(key, StandardCharsets.UTF_8);
+    }
+
+    private static void skipValue(ByteBuffer record) {
+        int length = record.getInt();
+        record.position(record.position() + length);
+    }
+
+    /**
+     * Decodes UTF-8 without going through a String, wiping the decoder's intermediate buffer.
+     *
+     * @throws IllegalStateException if the bytes are not valid UTF-8, rather than returning a truncated value
+     */
+
+    static char[] decode(ByteBuffer bytes) {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+        CharBuffer chars = CharBuffer.allocate((int) (bytes.remaining() * (double) decoder.maxCharsPerByte()));
+        try {
+            CoderResult result = decoder.decode(bytes, chars, true);
+            if (!result.isUnderflow()) {
+                result.throwException();
+            }
+            result = decoder.flush(chars);
+            if (!result.isUnderflow()) {
+                result.throwException();
+            }
+            chars.flip();
+            char[] value = new char[chars.remaining()];
+            chars.get(value);
+            return value;
+        } catch (CharacterCodingException ex) {
+            throw new IllegalStateException("The stored value is not valid UTF-8", ex);
+        } finally {
+            Arrays.fill(chars.array(), '\0');
+        }
+    }
+}
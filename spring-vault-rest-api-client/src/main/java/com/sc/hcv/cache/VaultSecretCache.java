@@ -0,0 +1,376 @@
+package com.sc.hcv.cache;
+
+import com.sc.hcv.async.VaultThreads;
+import com.sc.hcv.auth.TokenDigest;
+import com.sc.hcv.metrics.VaultMetrics;
+import com.sc.hcv.metrics.VaultMetrics.CacheResult;
+import com.sc.hcv.secrets.SecretEngine;
+import com.sc.hcv.secrets.VaultSecret;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * In-process cache for secrets read from Vault.
+ * <p>
+ * Entries are fresh for the configured TTL, or for the secret's own lease duration / ttl when that is shorter.
+ * Once an entry is no longer fresh it is still served for up to {@code maxStale} milliseconds (but never past the end
+ * of its lease) while a single background refresh reloads it. Cache hits are plain map reads without locks or I/O.
+ * When the cache grows beyond {@code maxEntries}, the least recently used entries are evicted.
+ * <p>
+ * Entries are also indexed by engine and path, so that dropping a path is proportional to the tokens it was read with
+ * rather than to the size of the cache. Each drop also advances the path's generation, and a read that started before
+ * it is not cached, so that a load in flight when a path is invalidated cannot put back the data it replaced.
+ */
+public class VaultSecretCache implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VaultSecretCache.class);
+
+    private static final long ACCESS_GRANULARITY = 1000;
+
+    private final ConcurrentHashMap<SecretKey, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<SecretKey, Set<SecretKey>> keysByPath = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<SecretKey, Long> generations = new ConcurrentHashMap<>();
+    private final AtomicLong clears = new AtomicLong();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final int maxEntries;
+    private final long ttl;
+    private final long maxStale;
+    private final ExecutorService refreshExecutor;
+    private volatile VaultMetrics metrics = VaultMetrics.NOOP;
+
+
+    /**
+     * @param maxEntries the maximum number of cached secrets
+     * @param ttl        how long (ms) an entry is fresh when the secret itself does not report a shorter TTL
+     * @param maxStale   how long (ms) an expired entry may still be served while it is refreshed in the background
+     */
+    public VaultSecretCache(int maxEntries, long ttl, long maxStale) {
+        this(maxEntries, ttl, maxStale, VaultThreads.newTaskExecutor("vault-secret-refresh", 2));
+    }
+
+    public VaultSecretCache(int maxEntries, long ttl, long maxStale, ExecutorService refreshExecutor) {
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+        this.maxStale = maxStale;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+
+    /**
+     * Returns the cached secret for the given engine, path and token, loading it on a miss.
+     * A stale entry is returned immediately and refreshed in the background.
+     *
+     * @param engine     the secret engine the path belongs to
+     * @param path       the secret path
+     * @param vaultToken the token the secret is read with; entries are never shared between tokens
+     * @param loader     reads the secret from Vault
+     * @return the secret
+     * @throws Exception if the secret is not cached and the loader fails
+     */
+
+    public VaultSecret get(SecretEngine engine, String path, String vaultToken, SecretLoader loader) throws Exception {
+        SecretKey key = new SecretKey(engine, path, TokenDigest.of(vaultToken));
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (now < entry.freshUntil) {
+                metrics.cacheLookup(engine, CacheResult.HIT);
+                entry.touch(now);
+                return entry.secret;
+            }
+            if (now < entry.staleUntil) {
+                metrics.cacheLookup(engine, CacheResult.STALE);
+                entry.touch(now);
+                refreshInBackground(key, entry, loader);
+                return entry.secret;
+            }
+        }
+        metrics.cacheLookup(engine, CacheResult.MISS);
+        long generation = generation(key);
+        VaultSecret secret = loader.load();
+        put(key, secret, generation);
+        return secret;
+    }
+
+    /**
+     * Asynchronous variant of {@link #get}. Fresh and stale hits complete immediately; a stale hit starts one
+     * refresh through the loader, and a miss completes when the loader does.
+     *
+     * @param engine     the secret engine the path belongs to
+     * @param path       the secret path
+     * @param vaultToken the token the secret is read with; entries are never shared between tokens
+     * @param loader     starts an asynchronous read of the secret from Vault
+     * @return a future completed with the secret
+     */
+
+    public CompletableFuture<VaultSecret> getAsync(SecretEngine engine, String path, String vaultToken, Supplier<CompletableFuture<VaultSecret>> loader) {
+        SecretKey key = new SecretKey(engine, path, TokenDigest.of(vaultToken));
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (now < entry.freshUntil) {
+                metrics.cacheLookup(engine, CacheResult.HIT);
+                entry.touch(now);
+                return CompletableFuture.completedFuture(entry.secret);
+            }
+            if (now < entry.staleUntil) {
+                metrics.cacheLookup(engine, CacheResult.STALE);
+                entry.touch(now);
+                if (entry.refreshing.compareAndSet(false, true)) {
+                    long generation = generation(key);
+                    loader.get().whenComplete((secret, error) -> {
+                        if (error == null) {
+                            put(key, secret, generation);
+                        } else {
+                            LOGGER.warn("Background refresh failed for {} secret: {}", engine, path, error);
+                        }
+                        entry.refreshing.set(false);
+                    });
+                }
+                return CompletableFuture.completedFuture(entry.secret);
+            }
+        }
+        metrics.cacheLookup(engine, CacheResult.MISS);
+        long generation = generation(key);
+        return loader.get().thenApply(secret -> {
+            put(key, secret, generation);
+            return secret;
+        });
+    }
+
+    /**
+     * Removes every cached entry for the given path, whichever token it was read with.
+     *
+     * @param engine the secret engine the path belongs to
+     * @param path   the secret path
+     */
+
+    public void invalidate(SecretEngine engine, String path) {
+        invalidatePath(new SecretKey(engine, path, ""));
+    }
+
+    public void invalidateAll() {
+        clears.incrementAndGet();
+        for (SecretKey pathKey : keysByPath.keySet()) {
+            invalidatePath(pathKey);
+        }
+    }
+
+    /**
+     * Ends the freshness of every entry without dropping it, e.g. when changes may have been missed. Each entry is
+     * then revalidated in the background on its next read and, should Vault be unreachable, still served until its
+     * stale limit.
+     */
+
+    public void markAllStale() {
+        long now = System.currentTimeMillis();
+        for (Entry entry : entries.values()) {
+            entry.markStale(now);
+        }
+    }
+
+    /**
+     * Adds an entry read from a {@link VaultSecretSnapshot}. It is served as stale until {@code staleUntil}, the limit
+     * computed when it was first cached, so that its first read returns at once and revalidates it in the background.
+     *
+     * @return false if the entry has already passed its limit, or the key is cached already
+     */
+
+    boolean restore(SecretKey key, VaultSecret secret, long staleUntil) {
+        long now = System.currentTimeMillis();
+        if (now >= staleUntil || !putIfAbsent(key, new Entry(secret, now, staleUntil, now))) {
+            return false;
+        }
+        if (entries.size() > maxEntries) {
+            evict(now);
+        }
+        return true;
+    }
+
+    Map<SecretKey, Entry> entries() {
+        return Collections.unmodifiableMap(entries);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Sets where hits, stale hits and misses are reported.
+     *
+     * @param metrics the metrics to report to, or {@link VaultMetrics#NOOP} to record nothing
+     */
+
+    public void setMetrics(VaultMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void close() {
+        refreshExecutor.shutdownNow();
+    }
+
+    private void refreshInBackground(SecretKey key, Entry entry, SecretLoader loader) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    long generation = generation(key);
+                    put(key, loader.load(), generation);
+                } catch (Exception ex) {
+                    LOGGER.warn("Background refresh failed for {} secret: {}", key.engine, key.path, ex);
+                } finally {
+                    entry.refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            entry.refreshing.set(false);
+        }
+    }
+
+    /**
+     * @return a value that changes whenever the key's path is invalidated; only ever increases
+     */
+
+    private long generation(SecretKey key) {
+        return clears.get() + generations.getOrDefault(key.withoutToken(), 0L);
+    }
+
+    /**
+     * Caches a secret read from Vault, unless its path was invalidated since the read started.
+     *
+     * @param generation the {@link #generation} of the key taken before the read
+     */
+
+    private void put(SecretKey key, VaultSecret secret, long generation) {
+        long now = System.currentTimeMillis();
+        long secretTtl = secret.getTtl() * 1000;
+        long leaseEnd = secretTtl > 0 ? now + secretTtl : Long.MAX_VALUE;
+        long freshUntil = now + (secretTtl > 0 ? Math.min(ttl, secretTtl) : ttl);
+        long staleUntil = Math.min(freshUntil + maxStale, leaseEnd);
+        Entry entry = new Entry(secret, freshUntil, staleUntil, now);
+        keysByPath.compute(key.withoutToken(), (pathKey, keys) -> {
+            if (generation(key) != generation) {
+                return keys;
+            }
+            entries.put(key, entry);
+            return index(keys, key);
+        });
+        if (entries.size() > maxEntries) {
+            evict(now);
+        }
+    }
+
+    private boolean putIfAbsent(SecretKey key, Entry entry) {
+        boolean[] added = new boolean[1];
+        keysByPath.compute(key.withoutToken(), (pathKey, keys) -> {
+            added[0] = entries.putIfAbsent(key, entry) == null;
+            return added[0] ? index(keys, key) : keys;
+        });
+        return added[0];
+    }
+
+    private static Set<SecretKey> index(Set<SecretKey> keys, SecretKey key) {
+        // the path's key set is only read and written inside compute, which serialises access per path
+        Set<SecretKey> indexed = keys != null ? keys : new HashSet<>();
+        indexed.add(key);
+        return indexed;
+    }
+
+    private void invalidatePath(SecretKey pathKey) {
+        // compute rather than computeIfPresent, so that the generation also advances for a path whose first read is
+        // still in flight
+        keysByPath.compute(pathKey, (ignored, keys) -> {
+            generations.merge(pathKey, 1L, Long::sum);
+            if (keys != null) {
+                for (SecretKey key : keys) {
+                    entries.remove(key);
+                }
+            }
+            return null;
+        });
+    }
+
+    private void remove(SecretKey key, Entry entry) {
+        keysByPath.computeIfPresent(key.withoutToken(), (pathKey, keys) -> {
+            if (entries.remove(key, entry)) {
+                keys.remove(key);
+            }
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    /**
+     * Drops expired entries and then the least recently used ones, down to 90% of the capacity so that
+     * eviction runs once per batch of inserts rather than on every insert.
+     */
+
+    private void evict(long now) {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            for (Map.Entry<SecretKey, Entry> cached : entries.entrySet()) {
+                if (now >= cached.getValue().staleUntil) {
+                    remove(cached.getKey(), cached.getValue());
+                }
+            }
+            int excess = entries.size() - (int) (maxEntries * 0.9);
+            if (excess <= 0) {
+                return;
+            }
+            List<Map.Entry<SecretKey, Entry>> candidates = new ArrayList<>(entries.entrySet());
+            candidates.sort((a, b) -> Long.compare(a.getValue().lastAccess, b.getValue().lastAccess));
+            for (int i = 0; i < excess && i < candidates.size(); i++) {
+                remove(candidates.get(i).getKey(), candidates.get(i).getValue());
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    static final class Entry {
+        final VaultSecret secret;
+        volatile long freshUntil;
+        final long staleUntil;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile long lastAccess;
+
+        Entry(VaultSecret secret, long freshUntil, long staleUntil, long now) {
+            this.secret = secret;
+            this.freshUntil = freshUntil;
+            this.staleUntil = staleUntil;
+            this.lastAccess = now;
+        }
+
+        void markStale(long now) {
+            if (freshUntil > now) {
+                freshUntil = now;
+            }
+        }
+
+        void touch(long now) {
+            if (now - lastAccess > ACCESS_GRANULARITY) {
+                lastAccess = now;
+            }
+        }
+    }
+}
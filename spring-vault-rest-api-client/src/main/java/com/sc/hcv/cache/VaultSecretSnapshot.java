@@ -0,0 +1,257 @@
+package com.sc.hcv.cache;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sc.hcv.auth.VaultToken;
+import com.sc.hcv.auth.VaultTokenManager;
+import com.sc.hcv.secrets.SecretEngine;
+import com.sc.hcv.secrets.VaultSecret;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Saves the entries of a {@link VaultSecretCache} and the token of a {@link VaultTokenManager} to an encrypted file,
+ * so that a restarted process can serve secrets before, or without, reaching Vault.
+ * <p>
+ * The file is encrypted with AES-GCM under a local key and holds the raw token, which is needed to match the cached
+ * entries again, so the key must be kept apart from the file. Snapshots are written to a temporary file through a
+ * memory mapping and moved over the previous one, so readers see either the old or the new snapshot. On restore, each
+ * entry is kept only until the limit computed when it was first cached (its lease end, or TTL plus {@code maxStale}),
+ * and is served as stale, so its first read revalidates it in the background. A missing, unreadable or tampered file
+ * is logged and ignored, and the process starts with an empty cache.
+ */
+public class VaultSecretSnapshot {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VaultSecretSnapshot.class);
+
+    private static final int MAGIC = 0x56534e50;
+    private static final byte VERSION = 1;
+    private static final int HEADER_LENGTH = 5;
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final Path file;
+    private final SecretKeySpec key;
+
+
+    /**
+     * @param file the snapshot file
+     * @param key  the AES key, 16, 24 or 32 bytes
+     */
+    public VaultSecretSnapshot(Path file, byte[] key) {
+        if (key.length != 16 && key.length != 24 && key.length != 32) {
+            throw new IllegalArgumentException("The snapshot key must be 16, 24 or 32 bytes");
+        }
+        this.file = file;
+        this.key = new SecretKeySpec(key, "AES");
+    }
+
+
+    /**
+     * Reads a base64 encoded AES key, e.g. one created with {@code openssl rand -base64 32}.
+     *
+     * @param keyFile the key file
+     * @return the key
+     * @throws IOException if the file cannot be read
+     */
+
+    public static byte[] readKey(Path keyFile) throws IOException {
+        return Base64.getDecoder().decode(new String(Files.readAllBytes(keyFile), StandardCharsets.US_ASCII).trim());
+    }
+
+    /**
+     * Writes the current entries of the cache and the token held by the token manager. Response-wrapped secrets are
+     * not saved, as their wrapping tokens are single-use.
+     *
+     * @param cache        the cache to save
+     * @param tokenManager the token manager whose token is saved; its token is not saved if none is held
+     * @throws IOException if the snapshot cannot be written
+     */
+
+    public void save(VaultSecretCache cache, VaultTokenManager tokenManager) throws IOException {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        VaultToken token = tokenManager.getCurrentToken();
+        if (token != null) {
+            Map<String, Object> auth = new LinkedHashMap<>();
+            auth.put("client_token", token.getClientToken());
+            auth.put("lease_duration", token.getLeaseDuration());
+            auth.put("renewable", token.isRenewable());
+            auth.put("issued_at", token.getIssuedAt());
+            snapshot.put("token", auth);
+        }
+        List<Map<String, Object>> secrets = new ArrayList<>();
+        for (Map.Entry<SecretKey, VaultSecretCache.Entry> cached : cache.entries().entrySet()) {
+            VaultSecret secret = cached.getValue().secret;
+            if (secret.getWrapInfo() != null) {
+                continue;
+            }
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("engine", cached.getKey().engine.name());
+            entry.put("path", cached.getKey().path);
+            entry.put("token_digest", cached.getKey().tokenDigest);
+            entry.put("stale_until", cached.getValue().staleUntil);
+            entry.put("secret", secret.getBody());
+            secrets.add(entry);
+        }
+        snapshot.put("secrets", secrets);
+
+        byte[] plaintext = MAPPER.writeValueAsBytes(snapshot);
+        try {
+            write(encrypt(plaintext));
+        } finally {
+            Arrays.fill(plaintext, (byte) 0);
+        }
+        LOGGER.info("Saved {} secrets to {}", secrets.size(), file);
+    }
+
+    /**
+     * Loads the snapshot into the cache and hands its token to the token manager, if it has not expired.
+     *
+     * @param cache        the cache to fill
+     * @param tokenManager the token manager to take over the saved token
+     * @return the number of secrets restored
+     */
+
+    public int restore(VaultSecretCache cache, VaultTokenManager tokenManager) {
+        Map<String, Object> snapshot;
+        try {
+            snapshot = read();
+        } catch (NoSuchFileException ex) {
+            LOGGER.info("No secret snapshot found at {}", file);
+            return 0;
+        } catch (IOException | GeneralSecurityException | RuntimeException ex) {
+            LOGGER.warn("Secret snapshot {} cannot be read, starting without it", file, ex);
+            return 0;
+        }
+
+        Object auth = snapshot.get("token");
+        if (auth instanceof Map) {
+            Map<?, ?> token = (Map<?, ?>) auth;
+            if (!tokenManager.restore(new VaultToken((String) token.get("client_token"), toLong(token.get("lease_duration")),
+                    Boolean.TRUE.equals(token.get("renewable")), toLong(token.get("issued_at"))))) {
+                LOGGER.info("The Vault token in {} has expired", file);
+            }
+        }
+
+        int restored = 0;
+        Object secrets = snapshot.get("secrets");
+        if (secrets instanceof List) {
+            for (Object item : (List<?>) secrets) {
+                if (restore(cache, item)) {
+                    restored++;
+                }
+            }
+        }
+        LOGGER.info("Restored {} secrets from {}", restored, file);
+        return restored;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean restore(VaultSecretCache cache, Object item) {
+        if (!(item instanceof Map)) {
+            return false;
+        }
+        Map<String, Object> entry = (Map<String, Object>) item;
+        if (!(entry.get("secret") instanceof Map)) {
+            return false;
+        }
+        SecretKey key = new SecretKey(SecretEngine.valueOf((String) entry.get("engine")), (String) entry.get("path"),
+                (String) entry.get("token_digest"));
+        return cache.restore(key, new VaultSecret((Map<String, Object>) entry.get("secret")), toLong(entry.get("stale_until")));
+    }
+
+    private ByteBuffer encrypt(byte[] plaintext) throws IOException {
+        try {
+            byte[] iv = new byte[IV_LENGTH];
+            RANDOM.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+            ByteBuffer output = ByteBuffer.allocate(HEADER_LENGTH + IV_LENGTH + cipher.getOutputSize(plaintext.length));
+            output.putInt(MAGIC).put(VERSION);
+            cipher.updateAAD(output.array(), 0, HEADER_LENGTH);
+            output.put(iv);
+            cipher.doFinal(ByteBuffer.wrap(plaintext), output);
+            output.flip();
+            return output;
+        } catch (GeneralSecurityException ex) {
+            throw new IOException("Encrypting the secret snapshot failed", ex);
+        }
+    }
+
+    private void write(ByteBuffer contents) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Set<StandardOpenOption> options = EnumSet.of(StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileAttribute<?>[] attributes = temporary.getFileSystem().supportedFileAttributeViews().contains("posix")
+                ? new FileAttribute<?>[]{PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"))}
+                : new FileAttribute<?>[0];
+        try (FileChannel channel = FileChannel.open(temporary, options, attributes)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, contents.remaining());
+            mapped.put(contents);
+            mapped.force();
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Map<String, Object> read() throws IOException, GeneralSecurityException {
+        byte[] plaintext;
+        int length;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_LENGTH + IV_LENGTH + TAG_BITS / 8 || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a secret snapshot");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            byte[] header = new byte[HEADER_LENGTH];
+            mapped.get(header);
+            if (ByteBuffer.wrap(header).getInt() != MAGIC || header[4] != VERSION) {
+                throw new IOException("Not a secret snapshot");
+            }
+            byte[] iv = new byte[IV_LENGTH];
+            mapped.get(iv);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+            cipher.updateAAD(header);
+            plaintext = new byte[cipher.getOutputSize(mapped.remaining())];
+            length = cipher.doFinal(mapped, ByteBuffer.wrap(plaintext));
+        }
+        try {
+            return MAPPER.readValue(plaintext, 0, length, new TypeReference<Map<String, Object>>() {});
+        } finally {
+            Arrays.fill(plaintext, (byte) 0);
+        }
+    }
+
+    private static long toLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+}
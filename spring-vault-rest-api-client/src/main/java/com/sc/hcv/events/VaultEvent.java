@@ -0,0 +1,85 @@
+package com.sc.hcv.events;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+
+/**
+ * A secret change reported by the Vault event stream, e.g. a {@code kv-v2/data-write} to {@code secret/data/app}.
+ */
+public final class VaultEvent {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String eventType;
+    private final String path;
+    private final long version;
+
+
+    public VaultEvent(String eventType, String path, long version) {
+        this.eventType = eventType;
+        this.path = path;
+        this.version = version;
+    }
+
+
+    /**
+     * Parses a message of {@code sys/events/subscribe} sent with {@code json=true}. The affected path is taken from the
+     * event metadata; KV version 2 metadata paths ({@code <mount>/metadata/<path>}) are reported as the data path
+     * ({@code <mount>/data/<path>}) that secrets are read from.
+     *
+     * @param message the CloudEvents JSON message
+     * @return the event, or null if the message does not name a secret path
+     * @throws IOException if the message is not valid JSON
+     */
+
+    public static VaultEvent parse(String message) throws IOException {
+        JsonNode root = MAPPER.readTree(message);
+        JsonNode data = root.path("data");
+        JsonNode metadata = data.path("event").path("metadata");
+        String path = metadata.path("data_path").asText(metadata.path("path").asText(""));
+        if (path.isEmpty()) {
+            return null;
+        }
+        String mount = data.path("plugin_info").path("mount_path").asText("");
+        if (!mount.isEmpty() && path.startsWith(mount + "metadata/")) {
+            path = mount + "data/" + path.substring(mount.length() + "metadata/".length());
+        }
+        String eventType = data.path("event_type").asText(root.path("type").asText(""));
+        return new VaultEvent(eventType, path, metadata.path("current_version").asLong(0));
+    }
+
+    /**
+     * @return the Vault event type, e.g. kv-v2/data-write
+     */
+    public String getEventType() {
+        return eventType;
+    }
+
+    /**
+     * @return the secret path as it is read, e.g. secret/data/app
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the current version reported for KV version 2 writes, 0 if the event does not carry one
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return true if the secret, or some of its versions, was deleted or destroyed
+     */
+    public boolean isDelete() {
+        return eventType.endsWith("delete") || eventType.endsWith("destroy");
+    }
+
+    @Override
+    public String toString() {
+        return eventType + " " + path + (version > 0 ? " (version " + version + ")" : "");
+    }
+}
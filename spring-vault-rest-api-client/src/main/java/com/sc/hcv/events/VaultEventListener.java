@@ -0,0 +1,43 @@
+package com.sc.hcv.events;
+
+import com.sc.hcv.cache.VaultSecretCache;
+import com.sc.hcv.secrets.SecretEngine;
+
+/**
+ * Receives the secret changes of a {@link VaultEventSubscriber}.
+ */
+public interface VaultEventListener {
+
+    /**
+     * Called on the subscriber's thread for every event naming a secret path.
+     *
+     * @param event the change
+     */
+    void onEvent(VaultEvent event);
+
+    /**
+     * Called when changes may have been missed: after the stream reconnects, and every poll interval while events are
+     * unavailable. Listeners should re-check everything they hold.
+     */
+    default void resync() {
+    }
+
+    /**
+     * @param cache the cache to keep consistent
+     * @return a listener that drops the cached KV entries of every changed path and, on a resync, marks the whole
+     * cache stale so that entries are revalidated in the background but still served while Vault is unreachable
+     */
+    static VaultEventListener invalidating(VaultSecretCache cache) {
+        return new VaultEventListener() {
+            @Override
+            public void onEvent(VaultEvent event) {
+                cache.invalidate(SecretEngine.KV, event.getPath());
+            }
+
+            @Override
+            public void resync() {
+                cache.markAllStale();
+            }
+        };
+    }
+}
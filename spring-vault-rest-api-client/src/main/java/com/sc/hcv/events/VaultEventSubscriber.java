@@ -0,0 +1,309 @@
+package com.sc.hcv.events;
+
+import com.sc.hcv.async.VaultThreads;
+import com.sc.hcv.auth.VaultTokenManager;
+import com.sc.hcv.retry.RetryPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLSocketFactory;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Subscribes to Vault's {@code sys/events/subscribe} WebSocket and tells {@link VaultEventListener}s which secret paths
+ * changed, so that caches and watchers re-read only those paths instead of polling all of them.
+ * <p>
+ * When the stream drops, the subscriber reconnects with the backoff of its {@link RetryPolicy}. Vault does not replay
+ * events sent while a subscriber was away, so every reconnect is followed by a {@link VaultEventListener#resync()}.
+ * After {@code maxRetries} failed attempts in a row, or at once if Vault refuses the subscription (403 where the
+ * token's policy lacks the {@code subscribe} capability, or 404 where events are not enabled), the subscriber falls
+ * back to polling: listeners are resynced every {@code pollInterval} milliseconds until the stream is back. Only a 401
+ * drops the shared token of the {@link VaultTokenManager}.
+ */
+public class VaultEventSubscriber implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VaultEventSubscriber.class);
+
+    private final String vaultUrl;
+    private final VaultTokenManager tokenManager;
+    private final RetryPolicy reconnectPolicy;
+    private final long pollInterval;
+    private final List<VaultEventListener> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService pollScheduler = VaultThreads.newScheduler("vault-events-poll");
+    private final ReentrantLock connectionLock = new ReentrantLock();
+    private volatile String eventType = "kv*";
+    private volatile SSLSocketFactory sslSocketFactory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+    private volatile int connectTimeout = 5000;
+    private volatile int pingInterval = 30000;
+    private volatile int maxMessageSize = 1024 * 1024;
+    private volatile boolean connected;
+    private volatile boolean closed;
+    private WebSocketConnection connection;
+    private ScheduledFuture<?> polling;
+    private Thread reader;
+
+
+    /**
+     * @param vaultUrl        the Vault address, e.g. https://vault:8200
+     * @param tokenManager    supplies the token sent with the subscription
+     * @param reconnectPolicy the backoff between reconnects, and the failures in a row after which polling starts
+     * @param pollInterval    the time (ms) between two resyncs while events are unavailable
+     */
+    public VaultEventSubscriber(String vaultUrl, VaultTokenManager tokenManager, RetryPolicy reconnectPolicy, long pollInterval) {
+        this.vaultUrl = vaultUrl.endsWith("/") ? vaultUrl.substring(0, vaultUrl.length() - 1) : vaultUrl;
+        this.tokenManager = tokenManager;
+        this.reconnectPolicy = reconnectPolicy;
+        this.pollInterval = pollInterval;
+    }
+
+
+    public void addListener(VaultEventListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Sets the events subscribed to, as a Vault event type pattern. Defaults to {@code kv*}, the writes and deletes of
+     * both KV versions.
+     *
+     * @param eventType the event type pattern
+     */
+
+    public void setEventType(String eventType) {
+        this.eventType = eventType;
+    }
+
+    /**
+     * Sets how wss:// connections are made, e.g. to trust a private CA.
+     *
+     * @param sslSocketFactory the factory for TLS sockets
+     */
+
+    public void setSslSocketFactory(SSLSocketFactory sslSocketFactory) {
+        this.sslSocketFactory = sslSocketFactory;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * Sets how long the stream may stay silent before it is pinged. A connection that stays silent for another
+     * interval is considered dropped and is reconnected. Defaults to 30 seconds.
+     *
+     * @param pingInterval the interval (ms)
+     */
+
+    public void setPingInterval(int pingInterval) {
+        this.pingInterval = pingInterval;
+    }
+
+    /**
+     * Sets the largest event accepted; a larger one fails the connection, which is then reconnected. Defaults to 1 MiB.
+     *
+     * @param maxMessageSize the size (bytes)
+     */
+
+    public void setMaxMessageSize(int maxMessageSize) {
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    /**
+     * Starts receiving events on a background thread.
+     */
+
+    public void start() {
+        connectionLock.lock();
+        try {
+            if (reader == null && !closed) {
+                reader = VaultThreads.threadFactory("vault-events").newThread(this::run);
+                reader.start();
+            }
+        } finally {
+            connectionLock.unlock();
+        }
+    }
+
+    /**
+     * @return true while the event stream is open
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * @return true while listeners are resynced on a timer because events are unavailable
+     */
+    public boolean isPolling() {
+        connectionLock.lock();
+        try {
+            return polling != null;
+        } finally {
+            connectionLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        connectionLock.lock();
+        try {
+            if (connection != null) {
+                connection.close();
+            }
+            if (reader != null) {
+                reader.interrupt();
+            }
+        } finally {
+            connectionLock.unlock();
+        }
+        pollScheduler.shutdownNow();
+    }
+
+    URI subscribeUri() {
+        String base = vaultUrl.startsWith("https://") ? "wss://" + vaultUrl.substring(8)
+                : vaultUrl.startsWith("http://") ? "ws://" + vaultUrl.substring(7) : vaultUrl;
+        return URI.create(base + "/v1/sys/events/subscribe/" + eventType + "?json=true");
+    }
+
+    private void run() {
+        int failures = 0;
+        boolean missedEvents = false;
+        while (!closed) {
+            boolean refused = false;
+            try {
+                WebSocketConnection opened = WebSocketConnection.open(subscribeUri(),
+                        Collections.singletonMap("X-Vault-Token", tokenManager.getToken()), sslSocketFactory, connectTimeout,
+                        pingInterval, maxMessageSize);
+                if (!setConnection(opened)) {
+                    return;
+                }
+                LOGGER.info("Subscribed to Vault {} events", eventType);
+                failures = 0;
+                connected = true;
+                stopPolling();
+                if (missedEvents) {
+                    resync();
+                }
+                for (String message = opened.readText(); message != null; message = opened.readText()) {
+                    dispatch(message);
+                }
+                LOGGER.info("Vault closed the event stream");
+            } catch (WebSocketConnection.HandshakeException ex) {
+                int status = ex.getStatusCode();
+                if (status == 401) {
+                    // the token is no longer valid; the next attempt logs in again
+                    tokenManager.invalidate();
+                }
+                // a 403 means the token's policy lacks the subscribe capability, not that the token is invalid,
+                // so it is kept: dropping it would log in again on every attempt for all clients sharing it
+                refused = status == 403 || status == 404 || status == 405;
+                LOGGER.warn("Vault refused the event subscription: {}", ex.getMessage());
+            } catch (Exception ex) {
+                if (!closed) {
+                    LOGGER.warn("Vault event stream failed", ex);
+                }
+            } finally {
+                connected = false;
+                setConnection(null);
+            }
+            if (closed) {
+                return;
+            }
+            missedEvents = true;
+            failures++;
+            if (refused || failures >= reconnectPolicy.getMaxRetries()) {
+                startPolling();
+            }
+            try {
+                Thread.sleep(refused ? reconnectPolicy.getMaxBackoffInterval() : reconnectPolicy.backoff(failures));
+            } catch (InterruptedException ex) {
+                return;
+            }
+        }
+    }
+
+    private void dispatch(String message) {
+        VaultEvent event;
+        try {
+            event = VaultEvent.parse(message);
+        } catch (IOException ex) {
+            LOGGER.warn("Ignoring malformed Vault event", ex);
+            return;
+        }
+        if (event == null) {
+            return;
+        }
+        LOGGER.debug("Vault event {}", event);
+        for (VaultEventListener listener : listeners) {
+            try {
+                listener.onEvent(event);
+            } catch (RuntimeException ex) {
+                LOGGER.warn("Vault event listener failed for {}", event.getPath(), ex);
+            }
+        }
+    }
+
+    private void resync() {
+        for (VaultEventListener listener : listeners) {
+            try {
+                listener.resync();
+            } catch (RuntimeException ex) {
+                LOGGER.warn("Vault event listener failed to resync", ex);
+            }
+        }
+    }
+
+    /**
+     * @return false if the subscriber was closed, in which case the connection is closed at once
+     */
+
+    private boolean setConnection(WebSocketConnection opened) {
+        connectionLock.lock();
+        try {
+            if (opened != null && closed) {
+                opened.close();
+                return false;
+            }
+            if (opened == null && connection != null) {
+                connection.close();
+            }
+            connection = opened;
+            return true;
+        } finally {
+            connectionLock.unlock();
+        }
+    }
+
+    private void startPolling() {
+        connectionLock.lock();
+        try {
+            if (polling == null && !closed) {
+                LOGGER.warn("Vault events are unavailable, resyncing every {} milliseconds", pollInterval);
+                polling = pollScheduler.scheduleWithFixedDelay(this::resync, 0, pollInterval, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            connectionLock.unlock();
+        }
+    }
+
+    private void stopPolling() {
+        connectionLock.lock();
+        try {
+            if (polling != null) {
+                polling.cancel(false);
+                polling = null;
+            }
+        } finally {
+            connectionLock.unlock();
+        }
+    }
+}
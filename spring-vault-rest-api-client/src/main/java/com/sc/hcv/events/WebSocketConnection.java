@@ -0,0 +1,339 @@
+package com.sc.hcv.events;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Client side of a WebSocket (RFC 6455) that receives text messages, which is all the Vault event stream needs.
+ * Pings are answered, fragmented messages are reassembled, and a close from the server ends the stream.
+ * <p>
+ * A connection dropped silently, e.g. by a NAT or load balancer, would otherwise block a read forever: when nothing is
+ * received for {@code pingInterval} milliseconds the client sends a ping, and when nothing arrives for another interval
+ * the read fails with a {@link SocketTimeoutException}. Frames and messages larger than {@code maxMessageSize} fail the
+ * read before their payload is allocated.
+ * <p>
+ * Java 8 has no WebSocket client and Spring's requires a JSR-356 container, so the protocol is spoken directly on
+ * the socket.
+ */
+final class WebSocketConnection implements Closeable {
+
+    private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final int MAX_HEADER_LINE = 8192;
+
+    private static final int OP_CONTINUATION = 0x0;
+    private static final int OP_TEXT = 0x1;
+    private static final int OP_BINARY = 0x2;
+    private static final int OP_CLOSE = 0x8;
+    private static final int OP_PING = 0x9;
+    private static final int OP_PONG = 0xA;
+
+    private final Socket socket;
+    private final int maxMessageSize;
+    private final DataInputStream input;
+    private final OutputStream output;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicBoolean closeSent = new AtomicBoolean();
+
+
+    private WebSocketConnection(Socket socket, InputStream input, int maxMessageSize) throws IOException {
+        this.socket = socket;
+        this.maxMessageSize = maxMessageSize;
+        this.input = new DataInputStream(input);
+        this.output = socket.getOutputStream();
+    }
+
+
+    /**
+     * Connects and performs the opening handshake.
+     *
+     * @param uri              the ws:// or wss:// address
+     * @param headers          extra request headers, e.g. the Vault token
+     * @param sslSocketFactory creates the socket for wss:// addresses
+     * @param connectTimeout   the socket connect timeout (ms)
+     * @param pingInterval     the time (ms) without traffic after which a ping is sent, and after which the connection
+     *                         is considered dead if the ping goes unanswered; also bounds the handshake
+     * @param maxMessageSize   the largest message (bytes) accepted from the server
+     * @return the open connection
+     * @throws HandshakeException if the server answered with another status than 101
+     * @throws IOException        if the connection failed
+     */
+
+    static WebSocketConnection open(URI uri, Map<String, String> headers, SSLSocketFactory sslSocketFactory, int connectTimeout,
+                                    int pingInterval, int maxMessageSize) throws IOException {
+        boolean secure = "wss".equalsIgnoreCase(uri.getScheme());
+        int port = uri.getPort() > 0 ? uri.getPort() : secure ? 443 : 80;
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(uri.getHost(), port), connectTimeout);
+            socket.setSoTimeout(pingInterval);
+            if (secure) {
+                socket = sslSocketFactory.createSocket(socket, uri.getHost(), port, true);
+                SSLParameters parameters = ((SSLSocket) socket).getSSLParameters();
+                parameters.setEndpointIdentificationAlgorithm("HTTPS");
+                ((SSLSocket) socket).setSSLParameters(parameters);
+            }
+            String key = Base64.getEncoder().encodeToString(randomBytes(16));
+            StringBuilder request = new StringBuilder()
+                    .append("GET ").append(uri.getRawPath())
+                    .append(uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery()).append(" HTTP/1.1\r\n")
+                    .append("Host: ").append(uri.getHost()).append(':').append(port).append("\r\n")
+                    .append("Upgrade: websocket\r\n")
+                    .append("Connection: Upgrade\r\n")
+                    .append("Sec-WebSocket-Key: ").append(key).append("\r\n")
+                    .append("Sec-WebSocket-Version: 13\r\n");
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                request.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+            }
+            request.append("\r\n");
+            OutputStream out = socket.getOutputStream();
+            out.write(request.toString().getBytes(StandardCharsets.UTF_8));
+            out.flush();
+
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            String statusLine = readLine(in);
+            String[] status = statusLine.split(" ", 3);
+            if (status.length < 2 || !status[1].equals("101")) {
+                throw new HandshakeException(status.length < 2 ? 0 : parseStatus(status[1]), statusLine);
+            }
+            String accept = null;
+            for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+                int colon = line.indexOf(':');
+                if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Sec-WebSocket-Accept")) {
+                    accept = line.substring(colon + 1).trim();
+                }
+            }
+            if (!expectedAccept(key).equals(accept)) {
+                throw new IOException("Invalid Sec-WebSocket-Accept in the WebSocket handshake");
+            }
+            return new WebSocketConnection(socket, in, maxMessageSize);
+        } catch (IOException | RuntimeException ex) {
+            socket.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Blocks until the next text message arrives.
+     *
+     * @return the message, or null once the server closed the stream
+     * @throws IOException if the connection failed
+     */
+
+    String readText() throws IOException {
+        ByteArrayOutputStream message = new ByteArrayOutputStream();
+        boolean inMessage = false;
+        while (true) {
+            int first = readFrameStart();
+            int second = input.readUnsignedByte();
+            boolean fin = (first & 0x80) != 0;
+            int opcode = first & 0x0f;
+            int maxLength = opcode >= OP_CLOSE ? 125 : opcode == OP_CONTINUATION ? maxMessageSize - message.size() : maxMessageSize;
+            byte[] payload = readPayload(second, maxLength);
+            switch (opcode) {
+                case OP_PING:
+                    send(OP_PONG, payload);
+                    break;
+                case OP_CLOSE:
+                    sendClose();
+                    return null;
+                case OP_TEXT:
+                case OP_BINARY:
+                case OP_CONTINUATION:
+                    if (opcode != OP_CONTINUATION) {
+                        message.reset();
+                        inMessage = true;
+                    }
+                    if (inMessage) {
+                        message.write(payload);
+                    }
+                    if (fin && inMessage) {
+                        return new String(message.toByteArray(), StandardCharsets.UTF_8);
+                    }
+                    break;
+                default:
+                    // pongs and reserved opcodes carry nothing for us
+            }
+        }
+    }
+
+    /**
+     * Sends a close frame if the connection is still open, then closes the socket, which also ends a blocked read.
+     */
+
+    @Override
+    public void close() {
+        try {
+            sendClose();
+        } catch (IOException ex) {
+            // the connection is already broken
+        }
+        try {
+            socket.close();
+        } catch (IOException ex) {
+            // nothing left to release
+        }
+    }
+
+    /**
+     * Reads the first byte of the next frame, pinging the server once if it stays silent for a ping interval.
+     */
+
+    private int readFrameStart() throws IOException {
+        boolean pingSent = false;
+        while (true) {
+            try {
+                return input.readUnsignedByte();
+            } catch (SocketTimeoutException ex) {
+                if (pingSent) {
+                    throw new SocketTimeoutException("WebSocket ping was not answered");
+                }
+                send(OP_PING, new byte[0]);
+                pingSent = true;
+            }
+        }
+    }
+
+    /**
+     * @param maxLength the largest payload the frame may carry: 125 bytes for control frames, otherwise what is left
+     *                  of the message size limit
+     */
+
+    private byte[] readPayload(int second, int maxLength) throws IOException {
+        boolean masked = (second & 0x80) != 0;
+        long length = second & 0x7f;
+        if (length == 126) {
+            length = input.readUnsignedShort();
+        } else if (length == 127) {
+            length = input.readLong();
+        }
+        if (length < 0 || length > maxLength) {
+            throw new IOException("WebSocket frame of " + length + " bytes exceeds the limit of " + maxLength + " bytes");
+        }
+        byte[] mask = new byte[4];
+        if (masked) {
+            input.readFully(mask);
+        }
+        byte[] payload = new byte[(int) length];
+        input.readFully(payload);
+        if (masked) {
+            for (int i = 0; i < payload.length; i++) {
+                payload[i] ^= mask[i % 4];
+            }
+        }
+        return payload;
+    }
+
+    private void sendClose() throws IOException {
+        if (closeSent.compareAndSet(false, true) && !socket.isClosed()) {
+            send(OP_CLOSE, new byte[0]);
+        }
+    }
+
+    /**
+     * Writes one frame; frames sent by a client must be masked.
+     */
+
+    private void send(int opcode, byte[] payload) throws IOException {
+        writeLock.lock();
+        try {
+            ByteArrayOutputStream frame = new ByteArrayOutputStream(payload.length + 14);
+            frame.write(0x80 | opcode);
+            if (payload.length < 126) {
+                frame.write(0x80 | payload.length);
+            } else {
+                frame.write(0x80 | 126);
+                frame.write(payload.length >>> 8);
+                frame.write(payload.length);
+            }
+            byte[] mask = randomBytes(4);
+            frame.write(mask);
+            for (int i = 0; i < payload.length; i++) {
+                frame.write(payload[i] ^ mask[i % 4]);
+            }
+            output.write(frame.toByteArray());
+            output.flush();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int b = in.read(); b != '\n'; b = in.read()) {
+            if (b < 0) {
+                throw new EOFException("Connection closed during the WebSocket handshake");
+            }
+            if (line.length() >= MAX_HEADER_LINE) {
+                throw new IOException("WebSocket handshake line exceeds " + MAX_HEADER_LINE + " characters");
+            }
+            if (b != '\r') {
+                line.append((char) b);
+            }
+        }
+        return line.toString();
+    }
+
+    private static int parseStatus(String status) {
+        try {
+            return Integer.parseInt(status);
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    static String expectedAccept(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest((key + ACCEPT_GUID).getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-1 is not available", ex);
+        }
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        RANDOM.nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * The server refused the upgrade, e.g. with 403 when the token may not subscribe or 404 when events are not enabled.
+     */
+
+    static final class HandshakeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final int statusCode;
+
+        HandshakeException(int statusCode, String statusLine) {
+            super("WebSocket upgrade refused: " + statusLine);
+            this.statusCode = statusCode;
+        }
+
+        int getStatusCode() {
+            return statusCode;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.sc.hcv.kv;
+
+/**
+ * Notified when {@link KVSecretWatcher} finds a new version of a watched KV secret.
+ */
+@FunctionalInterface
+public interface KVChangeListener {
+
+    /**
+     * @param change the keys added, updated and removed by the new version
+     */
+    void onChange(KVSecretChange change);
+}
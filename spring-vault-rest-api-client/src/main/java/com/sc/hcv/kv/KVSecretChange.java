@@ -0,0 +1,98 @@
+package com.sc.hcv.kv;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The difference between two versions of a KV version 2 secret.
+ */
+public class KVSecretChange {
+
+    private final String secretPath;
+    private final long previousVersion;
+    private final long version;
+    private final Map<String, Object> added;
+    private final Map<String, Object> updated;
+    private final Set<String> removed;
+    private final Map<String, Object> data;
+
+
+    public KVSecretChange(String secretPath, long previousVersion, long version, Map<String, Object> added,
+                          Map<String, Object> updated, Set<String> removed, Map<String, Object> data) {
+        this.secretPath = secretPath;
+        this.previousVersion = previousVersion;
+        this.version = version;
+        this.added = Collections.unmodifiableMap(added);
+        this.updated = Collections.unmodifiableMap(updated);
+        this.removed = Collections.unmodifiableSet(removed);
+        this.data = data;
+    }
+
+    /**
+     * Compares the data of two versions key by key.
+     *
+     * @param secretPath      the watched path
+     * @param previousVersion the version that was held, or 0 if none
+     * @param previous        the data of that version
+     * @param version         the new version
+     * @param current         the data of the new version
+     * @return the change
+     */
+
+    static KVSecretChange between(String secretPath, long previousVersion, Map<String, Object> previous,
+                                  long version, Map<String, Object> current) {
+        Map<String, Object> added = new HashMap<>();
+        Map<String, Object> updated = new HashMap<>();
+        Set<String> removed = new HashSet<>(previous.keySet());
+        for (Map.Entry<String, Object> entry : current.entrySet()) {
+            if (!removed.remove(entry.getKey())) {
+                added.put(entry.getKey(), entry.getValue());
+            } else if (!Objects.equals(previous.get(entry.getKey()), entry.getValue())) {
+                updated.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return new KVSecretChange(secretPath, previousVersion, version, added, updated, removed, current);
+    }
+
+    public String getSecretPath() {
+        return secretPath;
+    }
+
+    public long getPreviousVersion() {
+        return previousVersion;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Map<String, Object> getAdded() {
+        return added;
+    }
+
+    public Map<String, Object> getUpdated() {
+        return updated;
+    }
+
+    public Set<String> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return the complete data of the new version
+     */
+    public Map<String, Object> getData() {
+        return data;
+    }
+
+    /**
+     * @return true if the new version holds the same keys and values as the previous one
+     */
+    public boolean isEmpty() {
+        return added.isEmpty() && updated.isEmpty() && removed.isEmpty();
+    }
+}
@@ -0,0 +1,221 @@
+package com.sc.hcv.kv;
+
+import com.sc.hcv.async.VaultThreads;
+import com.sc.hcv.auth.VaultTokenManager;
+import com.sc.hcv.events.VaultEvent;
+import com.sc.hcv.events.VaultEventListener;
+import com.sc.hcv.secrets.VaultSecret;
+import com.sc.hcv.secrets.VaultStaticSecrets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the data of KV version 2 secrets in memory and refreshes it only when a new version is written.
+ * <p>
+ * Every poll interval, the {@code metadata} endpoint of each watched path is read, which returns the
+ * {@code current_version} without the secret itself. Only when that version differs from the one held is the secret
+ * downloaded, pinned with {@code ?version=} so that the data always matches the version it is stored under, and
+ * listeners of the path are notified of the keys that were added, updated or removed.
+ * Paths are expected in the form {@code <mount>/data/<path>}.
+ * <p>
+ * Registered with a {@link com.sc.hcv.events.VaultEventSubscriber}, the watcher checks a path as soon as an event
+ * reports a change to it, and polling can be turned off or made infrequent.
+ */
+public class KVSecretWatcher implements Closeable, VaultEventListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(KVSecretWatcher.class);
+
+    private final VaultStaticSecrets kvSecrets;
+    private final VaultTokenManager tokenManager;
+    private final ScheduledExecutorService scheduler;
+    private final ConcurrentHashMap<String, WatchedSecret> secrets = new ConcurrentHashMap<>();
+
+
+    /**
+     * @param kvSecrets    the client used to read metadata and secrets
+     * @param tokenManager supplies the Vault token
+     * @param pollInterval the time (ms) between two checks of the watched paths for a new version, or 0 to check
+     *                     only when Vault events report a change
+     */
+    public KVSecretWatcher(VaultStaticSecrets kvSecrets, VaultTokenManager tokenManager, long pollInterval) {
+        this.kvSecrets = kvSecrets;
+        this.tokenManager = tokenManager;
+        this.scheduler = VaultThreads.newScheduler("vault-kv-watcher");
+        if (pollInterval > 0) {
+            scheduler.scheduleWithFixedDelay(this::poll, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+
+    /**
+     * Returns the data of the latest version seen of the given path, reading it from Vault on first use.
+     * The path is watched from then on.
+     *
+     * @param secretPath the KV version 2 path, e.g. secret/data/my-app
+     * @return the secret data, empty if the secret does not exist or its current version was deleted
+     * @throws Exception if the path is read for the first time and the read fails
+     */
+
+    public Map<String, Object> getSecret(String secretPath) throws Exception {
+        WatchedSecret secret = secrets.computeIfAbsent(secretPath, WatchedSecret::new);
+        Version current = secret.current;
+        return current != null ? current.data : secret.refresh().data;
+    }
+
+    /**
+     * Registers a listener for new versions of the given path. The first read of the path is reported as a change
+     * from version 0 that adds every key.
+     *
+     * @param secretPath the KV version 2 path
+     * @param listener   the listener to notify
+     */
+
+    public void watch(String secretPath, KVChangeListener listener) {
+        secrets.computeIfAbsent(secretPath, WatchedSecret::new).listeners.add(listener);
+    }
+
+    /**
+     * Stops watching the given path and drops its data and listeners.
+     *
+     * @param secretPath the KV version 2 path
+     */
+
+    public void unwatch(String secretPath) {
+        secrets.remove(secretPath);
+    }
+
+    /**
+     * Checks the changed path for a new version on the watcher's thread, if the path is watched.
+     *
+     * @param event the change reported by Vault
+     */
+
+    @Override
+    public void onEvent(VaultEvent event) {
+        WatchedSecret secret = secrets.get(event.getPath());
+        if (secret != null) {
+            scheduler.execute(() -> {
+                try {
+                    secret.refresh();
+                } catch (Exception ex) {
+                    LOGGER.warn("Checking {} for a new version failed", secret.secretPath, ex);
+                }
+            });
+        }
+    }
+
+    /**
+     * Checks every watched path, as changes may have been missed while Vault events were unavailable.
+     */
+
+    @Override
+    public void resync() {
+        scheduler.execute(this::poll);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Checks every watched path for a new version. Paths are checked one after another, so a slow or failing path
+     * delays the others by at most the retry policy of the client.
+     */
+
+    void poll() {
+        for (WatchedSecret secret : secrets.values()) {
+            try {
+                secret.refresh();
+            } catch (Exception ex) {
+                LOGGER.warn("Checking {} for a new version failed", secret.secretPath, ex);
+            }
+        }
+    }
+
+    private static final class Version {
+        private static final Version NONE = new Version(0, Collections.emptyMap());
+
+        private final long version;
+        private final Map<String, Object> data;
+
+        Version(long version, Map<String, Object> data) {
+            this.version = version;
+            this.data = data;
+        }
+    }
+
+    private final class WatchedSecret {
+        private final String secretPath;
+        private final List<KVChangeListener> listeners = new CopyOnWriteArrayList<>();
+        private final ReentrantLock refreshLock = new ReentrantLock();
+        private volatile Version current;
+
+        WatchedSecret(String secretPath) {
+            this.secretPath = secretPath;
+        }
+
+        Version refresh() throws Exception {
+            // a lock rather than synchronized, so that a virtual thread waiting on Vault does not pin its carrier
+            refreshLock.lock();
+            try {
+                return refreshLocked();
+            } finally {
+                refreshLock.unlock();
+            }
+        }
+
+        private Version refreshLocked() throws Exception {
+            Version previous = current != null ? current : Version.NONE;
+            String vaultToken = tokenManager.getToken();
+            long version = kvSecrets.readKVCurrentVersion(vaultToken, secretPath);
+            if (current != null && version == previous.version) {
+                return previous;
+            }
+            Version next = version == 0 ? Version.NONE : read(vaultToken, version);
+            current = next;
+            KVSecretChange change = KVSecretChange.between(secretPath, previous.version, previous.data, next.version, next.data);
+            if (!change.isEmpty()) {
+                LOGGER.info("Version {} of {} found", next.version, secretPath);
+                for (KVChangeListener listener : listeners) {
+                    try {
+                        listener.onChange(change);
+                    } catch (RuntimeException ex) {
+                        LOGGER.warn("KV change listener failed for {}", secretPath, ex);
+                    }
+                }
+            }
+            return next;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Version read(String vaultToken, long version) throws Exception {
+            try {
+                VaultSecret secret = kvSecrets.readKVSecretVersion(vaultToken, secretPath, version);
+                Object data = secret.getData().get("data");
+                return new Version(version, data instanceof Map
+                        ? Collections.unmodifiableMap(new HashMap<>((Map<String, Object>) data))
+                        : Collections.emptyMap());
+            } catch (HttpClientErrorException ex) {
+                if (ex.getStatusCode() == HttpStatus.NOT_FOUND) {
+                    // the current version was deleted or destroyed
+                    return new Version(version, Collections.emptyMap());
+                }
+                throw ex;
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.sc.hcv.lease;
+
+/**
+ * Notified when {@link DatabaseCredentialManager} replaces the credentials of a database path,
+ * e.g. so that a connection pool can switch to the new user without blocking request threads.
+ */
+@FunctionalInterface
+public interface CredentialRotationListener {
+
+    /**
+     * @param previous the credentials that were replaced; their lease is left to expire
+     * @param current  the new credentials
+     */
+    void onRotation(DatabaseCredentials previous, DatabaseCredentials current);
+}
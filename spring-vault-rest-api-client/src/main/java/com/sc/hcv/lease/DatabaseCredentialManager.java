@@ -0,0 +1,169 @@
+package com.sc.hcv.lease;
+
+import com.sc.hcv.async.VaultThreads;
+import com.sc.hcv.auth.VaultTokenManager;
+import com.sc.hcv.secrets.VaultDBSecrets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Holds one set of dynamic database credentials per database path and keeps their leases alive.
+ * <p>
+ * Each lease is renewed through sys/leases/renew after a configurable fraction of its duration. Once Vault grants less
+ * than the requested increment (the lease is approaching its max TTL), or the lease cannot be renewed, new credentials
+ * are requested in the background and subscribers are notified of the rotation. Request threads only ever read the
+ * current credentials, except for the very first read of a path or when every background attempt failed.
+ */
+public class DatabaseCredentialManager implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseCredentialManager.class);
+
+    private static final long MIN_RETRY_DELAY = 1000;
+
+    private final VaultDBSecrets dbSecrets;
+    private final VaultTokenManager tokenManager;
+    private final double renewalFraction;
+    private final ScheduledExecutorService scheduler;
+    private final ConcurrentHashMap<String, LeaseState> leases = new ConcurrentHashMap<>();
+
+
+    /**
+     * @param dbSecrets       the client used to read credentials and renew leases
+     * @param tokenManager    supplies the Vault token
+     * @param renewalFraction the fraction of the lease duration after which it is renewed, between 0 and 1 (exclusive)
+     */
+    public DatabaseCredentialManager(VaultDBSecrets dbSecrets, VaultTokenManager tokenManager, double renewalFraction) {
+        if (renewalFraction <= 0 || renewalFraction >= 1) {
+            throw new IllegalArgumentException("renewalFraction must be between 0 and 1");
+        }
+        this.dbSecrets = dbSecrets;
+        this.tokenManager = tokenManager;
+        this.renewalFraction = renewalFraction;
+        this.scheduler = VaultThreads.newScheduler("vault-lease-renewal");
+    }
+
+
+    /**
+     * Returns the current credentials for the given path, requesting them from Vault on first use.
+     *
+     * @param databasePath the path to the database credentials, e.g. database/creds/my-role
+     * @return the current credentials
+     * @throws Exception if no valid credentials are held and they cannot be read from Vault
+     */
+
+    public DatabaseCredentials getCredentials(String databasePath) throws Exception {
+        LeaseState state = leases.computeIfAbsent(databasePath, LeaseState::new);
+        DatabaseCredentials credentials = state.current;
+        if (credentials != null && !credentials.isExpired(System.currentTimeMillis())) {
+            return credentials;
+        }
+        return state.acquire(credentials);
+    }
+
+    /**
+     * Registers a listener for credential rotations of the given path.
+     *
+     * @param databasePath the path to the database credentials
+     * @param listener     the listener to notify
+     */
+
+    public void subscribe(String databasePath, CredentialRotationListener listener) {
+        leases.computeIfAbsent(databasePath, LeaseState::new).listeners.add(listener);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private void scheduleRenewal(LeaseState state, DatabaseCredentials credentials) {
+        if (credentials.getLeaseDuration() > 0) {
+            long delay = (long) (credentials.getLeaseDuration() * 1000 * renewalFraction);
+            scheduler.schedule(() -> state.renew(credentials), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void scheduleRetry(LeaseState state, DatabaseCredentials credentials, Exception cause) {
+        long remaining = credentials.getExpiresAt() - System.currentTimeMillis();
+        if (remaining > MIN_RETRY_DELAY) {
+            long delay = Math.max(MIN_RETRY_DELAY, remaining / 2);
+            LOGGER.warn("Lease maintenance failed for {}, retrying in {} milliseconds", state.databasePath, delay, cause);
+            scheduler.schedule(() -> state.renew(credentials), delay, TimeUnit.MILLISECONDS);
+        } else {
+            LOGGER.error("Lease maintenance failed for {}, the next read will request new credentials", state.databasePath, cause);
+        }
+    }
+
+    private final class LeaseState {
+        private final String databasePath;
+        private final List<CredentialRotationListener> listeners = new CopyOnWriteArrayList<>();
+        private final ReentrantLock rotationLock = new ReentrantLock();
+        private volatile DatabaseCredentials current;
+        private volatile long increment;
+
+        LeaseState(String databasePath) {
+            this.databasePath = databasePath;
+        }
+
+        /**
+         * Requests new credentials unless another thread already replaced the observed ones.
+         */
+        DatabaseCredentials acquire(DatabaseCredentials observed) throws Exception {
+            rotationLock.lock();
+            try {
+                DatabaseCredentials credentials = current;
+                if (credentials != null && credentials != observed && !credentials.isExpired(System.currentTimeMillis())) {
+                    return credentials;
+                }
+                DatabaseCredentials rotated = DatabaseCredentials.fromSecret(dbSecrets.readDatabaseLease(tokenManager.getToken(), databasePath));
+                increment = rotated.getLeaseDuration();
+                current = rotated;
+                scheduleRenewal(this, rotated);
+                if (credentials != null) {
+                    LOGGER.info("Rotated database credentials for {}", databasePath);
+                    for (CredentialRotationListener listener : listeners) {
+                        try {
+                            listener.onRotation(credentials, rotated);
+                        } catch (RuntimeException ex) {
+                            LOGGER.warn("Credential rotation listener failed for {}", databasePath, ex);
+                        }
+                    }
+                }
+                return rotated;
+            } finally {
+                rotationLock.unlock();
+            }
+        }
+
+        void renew(DatabaseCredentials credentials) {
+            if (credentials != current) {
+                return;
+            }
+            try {
+                if (credentials.isRenewable()) {
+                    DatabaseCredentials renewed = credentials.renewed(dbSecrets.renewLease(tokenManager.getToken(), credentials.getLeaseId(), increment));
+                    if (renewed.getLeaseDuration() >= increment) {
+                        LOGGER.debug("Renewed lease {} for {} seconds", renewed.getLeaseId(), renewed.getLeaseDuration());
+                        current = renewed;
+                        scheduleRenewal(this, renewed);
+                        return;
+                    }
+                    LOGGER.info("Lease {} is approaching its max TTL, rotating credentials", credentials.getLeaseId());
+                    current = renewed;
+                    credentials = renewed;
+                }
+                acquire(credentials);
+            } catch (Exception ex) {
+                scheduleRetry(this, credentials, ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.sc.hcv.lease;
+
+import com.sc.hcv.secrets.VaultSecret;
+
+/**
+ * Immutable dynamic database credentials together with the Vault lease that backs them.
+ */
+public class DatabaseCredentials {
+
+    private final String username;
+    private final String password;
+    private final String leaseId;
+    private final long leaseDuration;
+    private final boolean renewable;
+    private final long issuedAt;
+
+
+    public DatabaseCredentials(String username, String password, String leaseId, long leaseDuration, boolean renewable, long issuedAt) {
+        this.username = username;
+        this.password = password;
+        this.leaseId = leaseId;
+        this.leaseDuration = leaseDuration;
+        this.renewable = renewable;
+        this.issuedAt = issuedAt;
+    }
+
+    /**
+     * Builds credentials from a database/creds response.
+     *
+     * @param secret the response envelope
+     * @return the credentials
+     * @throws Exception if the response does not contain a username and password
+     */
+
+    public static DatabaseCredentials fromSecret(VaultSecret secret) throws Exception {
+        Object username = secret.getData().get("username");
+        Object password = secret.getData().get("password");
+        if (username == null || password == null) {
+            throw new Exception("Vault response does not contain database credentials");
+        }
+        return new DatabaseCredentials(username.toString(), password.toString(), secret.getLeaseId(), secret.getLeaseDuration(),
+                secret.isRenewable(), System.currentTimeMillis());
+    }
+
+    /**
+     * Returns a copy of these credentials with the lease extended by a renewal.
+     *
+     * @param renewal the sys/leases/renew response
+     * @return the renewed credentials
+     */
+
+    public DatabaseCredentials renewed(VaultSecret renewal) {
+        return new DatabaseCredentials(username, password, leaseId, renewal.getLeaseDuration(), renewal.isRenewable(), System.currentTimeMillis());
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public String getLeaseId() {
+        return leaseId;
+    }
+
+    public long getLeaseDuration() {
+        return leaseDuration;
+    }
+
+    public boolean isRenewable() {
+        return renewable;
+    }
+
+    public long getIssuedAt() {
+        return issuedAt;
+    }
+
+    /**
+     * @return the epoch time in milliseconds at which the lease expires, or Long.MAX_VALUE if the credentials are not leased
+     */
+    public long getExpiresAt() {
+        return leaseDuration <= 0 ? Long.MAX_VALUE : issuedAt + leaseDuration * 1000;
+    }
+
+    public boolean isExpired(long now) {
+        return now >= getExpiresAt();
+    }
+
+    @Override
+    public String toString() {
+        return "DatabaseCredentials{username=" + username + ", leaseId=" + leaseId + ", leaseDuration=" + leaseDuration + "}";
+    }
+}
@@ -0,0 +1,141 @@
+package com.sc.hcv.metrics;
+
+import com.sc.hcv.secrets.SecretEngine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publishes Vault client measurements to a Micrometer {@link MeterRegistry}:
+ * <ul>
+ *     <li>{@code vault.requests} - timer with percentile histogram, tagged with operation, engine, path and status</li>
+ *     <li>{@code vault.requests.active} - gauge of requests in flight, tagged with operation</li>
+ *     <li>{@code vault.retries} - timer of the backoff before each retry, tagged with operation</li>
+ *     <li>{@code vault.token.renewals} - counter tagged with result</li>
+ *     <li>{@code vault.cache.lookups} - counter tagged with engine and result</li>
+ * </ul>
+ * Secret paths are reduced to their mount and, where the engine has one, the endpoint below it, so that
+ * {@code database/creds/orders} and {@code database/creds/billing} share the series {@code database/creds/*}, and
+ * every KV version 2 secret of a mount shares {@code secret/data/*} however deeply it is nested. Auth and sys
+ * endpoints are fixed paths and are tagged as they are. Meters are registered once per tag combination and reused.
+ */
+public class MicrometerVaultMetrics implements VaultMetrics {
+
+    private static final String NONE = "none";
+
+    /**
+     * The endpoints of a KV version 2 mount; other second segments are part of a KV version 1 secret path.
+     */
+    private static final Set<String> KV_V2_ENDPOINTS = new HashSet<>(Arrays.asList(
+            "data", "metadata", "delete", "undelete", "destroy", "subkeys"));
+
+    private final MeterRegistry registry;
+    private final ConcurrentHashMap<String, AtomicInteger> activeRequests = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<List<String>, Timer> requestTimers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Timer> retryTimers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<List<String>, Counter> counters = new ConcurrentHashMap<>();
+
+
+    public MicrometerVaultMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+
+    @Override
+    public void requestStarted(String operation) {
+        activeRequests(operation).incrementAndGet();
+    }
+
+    @Override
+    public void requestCompleted(String operation, SecretEngine engine, String path, int status, long durationNanos) {
+        activeRequests(operation).decrementAndGet();
+        List<String> tags = Arrays.asList(operation, engineTag(engine), pathTemplate(engine, path),
+                status == 0 ? "CLIENT_ERROR" : String.valueOf(status));
+        requestTimers.computeIfAbsent(tags, key -> Timer.builder("vault.requests")
+                .description("Requests sent to Vault")
+                .tags(Tags.of("operation", key.get(0), "engine", key.get(1), "path", key.get(2), "status", key.get(3)))
+                .publishPercentileHistogram()
+                .register(registry))
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void retryScheduled(String operation, long backoffMillis) {
+        retryTimers.computeIfAbsent(operation, name -> Timer.builder("vault.retries")
+                .description("Backoff before requests to Vault are retried")
+                .tag("operation", name)
+                .register(registry))
+                .record(backoffMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void tokenRenewed(boolean success) {
+        counter("vault.token.renewals", "result", success ? "success" : "failure").increment();
+    }
+
+    @Override
+    public void cacheLookup(SecretEngine engine, CacheResult result) {
+        counter("vault.cache.lookups", "engine", engineTag(engine), "result", result.name().toLowerCase(Locale.ROOT)).increment();
+    }
+
+    /**
+     * @param tags the tag keys and values, alternating
+     */
+
+    private Counter counter(String name, String... tags) {
+        List<String> key = new ArrayList<>(tags.length + 1);
+        key.add(name);
+        key.addAll(Arrays.asList(tags));
+        return counters.computeIfAbsent(key, ignored -> Counter.builder(name).tags(tags).register(registry));
+    }
+
+    private AtomicInteger activeRequests(String operation) {
+        return activeRequests.computeIfAbsent(operation,
+                name -> registry.gauge("vault.requests.active", Tags.of("operation", name), new AtomicInteger()));
+    }
+
+    private static String engineTag(SecretEngine engine) {
+        return engine == null ? NONE : engine.name().toLowerCase(Locale.ROOT);
+    }
+
+    static String pathTemplate(SecretEngine engine, String path) {
+        if (path == null) {
+            return NONE;
+        }
+        int end = path.indexOf('?');
+        if (end < 0) {
+            end = path.length();
+        }
+        while (end > 0 && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        if (engine == null) {
+            return path.substring(0, end);
+        }
+        int mountEnd = path.indexOf('/');
+        if (mountEnd < 0 || mountEnd >= end) {
+            return "*";
+        }
+        String mount = path.substring(0, mountEnd);
+        int endpointEnd = path.indexOf('/', mountEnd + 1);
+        if (endpointEnd < 0 || endpointEnd >= end) {
+            return mount + "/*";
+        }
+        String endpoint = path.substring(mountEnd + 1, endpointEnd);
+        if (engine == SecretEngine.KV && !KV_V2_ENDPOINTS.contains(endpoint)) {
+            return mount + "/*";
+        }
+        return mount + "/" + endpoint + "/*";
+    }
+}
@@ -0,0 +1,71 @@
+package com.sc.hcv.metrics;
+
+import com.sc.hcv.secrets.SecretEngine;
+
+/**
+ * Receives the measurements taken by the Vault clients, their retry engine and the secret cache.
+ * <p>
+ * Every method is called on the request path, so implementations must be cheap and thread-safe. All arguments are
+ * values the caller already holds, which keeps {@link #NOOP} free of allocation; building tags or path templates is
+ * left to the implementation.
+ */
+public interface VaultMetrics {
+
+    /**
+     * Records nothing. Used until metrics are configured.
+     */
+    VaultMetrics NOOP = new VaultMetrics() {
+    };
+
+    /**
+     * An HTTP request to Vault is about to be sent.
+     *
+     * @param operation the operation name, e.g. "Vault authentication"
+     */
+    default void requestStarted(String operation) {
+    }
+
+    /**
+     * An HTTP request to Vault finished, successfully or not.
+     *
+     * @param operation     the operation name passed to {@link #requestStarted}
+     * @param engine        the secret engine the path belongs to, or null for auth and sys endpoints
+     * @param path          the requested path, or null if unknown
+     * @param status        the HTTP status, or 0 if the request failed without one, such as on an I/O error
+     * @param durationNanos the time the request took
+     */
+    default void requestCompleted(String operation, SecretEngine engine, String path, int status, long durationNanos) {
+    }
+
+    /**
+     * A failed request will be sent again.
+     *
+     * @param operation     the operation name
+     * @param backoffMillis the time waited before the next attempt
+     */
+    default void retryScheduled(String operation, long backoffMillis) {
+    }
+
+    /**
+     * A token renewal finished, after any retries.
+     *
+     * @param success whether Vault renewed the token
+     */
+    default void tokenRenewed(boolean success) {
+    }
+
+    /**
+     * The secret cache answered a lookup.
+     *
+     * @param engine the secret engine the path belongs to
+     * @param result whether the entry was fresh, stale or missing
+     */
+    default void cacheLookup(SecretEngine engine, CacheResult result) {
+    }
+
+    enum CacheResult {
+        HIT,
+        STALE,
+        MISS
+    }
+}
@@ -0,0 +1,187 @@
+package com.sc.hcv.prefetch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.sc.hcv.secrets.SecretEngine;
+import com.sc.hcv.secrets.SecretRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The secrets to read at startup, with the number of reads in flight, the time allowed and what happens on failure.
+ * <p>
+ * A manifest is read from {@code vault.prefetch.*} entries of {@code vault.properties}:
+ * <pre>
+ * vault.prefetch.policy=degrade
+ * vault.prefetch.0.engine=kv
+ * vault.prefetch.0.path=secret/data/my-app
+ * vault.prefetch.0.keys=username,password
+ * vault.prefetch.1.engine=database
+ * vault.prefetch.1.path=database/creds/my-role
+ * </pre>
+ * or from a YAML file with the same fields:
+ * <pre>
+ * policy: degrade
+ * secrets:
+ *   - engine: kv
+ *     path: secret/data/my-app
+ *     keys: [username, password]
+ *   - engine: database
+ *     path: database/creds/my-role
+ * </pre>
+ * Engines are {@code kv}, {@code database}, {@code ldap} and {@code active_directory}. An Active Directory entry names
+ * its role in {@code keys} and defaults its path to {@code vault.ad.path}.
+ */
+public final class PrefetchManifest {
+
+    public static final int DEFAULT_CONCURRENCY = 8;
+    public static final long DEFAULT_TIMEOUT = 30000;
+
+    private static final String PREFIX = "vault.prefetch.";
+
+    private final List<SecretRequest> requests;
+    private final PrefetchPolicy policy;
+    private final int concurrency;
+    private final long timeout;
+
+
+    /**
+     * @param requests    the secrets to read
+     * @param policy      what happens when a secret cannot be read
+     * @param concurrency the maximum number of reads in flight
+     * @param timeout     the time (ms) allowed for the whole prefetch
+     */
+    public PrefetchManifest(List<SecretRequest> requests, PrefetchPolicy policy, int concurrency, long timeout) {
+        this.requests = Collections.unmodifiableList(new ArrayList<>(requests));
+        this.policy = policy;
+        this.concurrency = concurrency;
+        this.timeout = timeout;
+    }
+
+
+    /**
+     * Reads the {@code vault.prefetch.*} entries. Entries are numbered from 0; the first missing number ends the list.
+     *
+     * @param properties the Vault properties
+     * @return the manifest, empty if there are no entries
+     */
+
+    public static PrefetchManifest fromProperties(Properties properties) {
+        List<SecretRequest> requests = new ArrayList<>();
+        for (int i = 0; properties.getProperty(PREFIX + i + ".engine") != null; i++) {
+            String keys = properties.getProperty(PREFIX + i + ".keys", "").trim();
+            requests.add(request(properties.getProperty(PREFIX + i + ".engine"), properties.getProperty(PREFIX + i + ".path"),
+                    keys.isEmpty() ? new String[0] : keys.split("\\s*,\\s*"), properties.getProperty("vault.ad.path")));
+        }
+        return new PrefetchManifest(requests,
+                policy(properties.getProperty(PREFIX + "policy")),
+                Integer.parseInt(properties.getProperty(PREFIX + "concurrency", String.valueOf(DEFAULT_CONCURRENCY))),
+                Long.parseLong(properties.getProperty(PREFIX + "timeout", String.valueOf(DEFAULT_TIMEOUT))));
+    }
+
+    /**
+     * Reads a YAML manifest.
+     *
+     * @param yaml   the YAML document
+     * @param adPath the default path of Active Directory entries, or null
+     * @return the manifest
+     * @throws IOException if the document cannot be parsed
+     */
+
+    public static PrefetchManifest fromYaml(InputStream yaml, String adPath) throws IOException {
+        Map<?, ?> document = new ObjectMapper(new YAMLFactory()).readValue(yaml, Map.class);
+        if (document == null) {
+            return new PrefetchManifest(Collections.<SecretRequest>emptyList(), PrefetchPolicy.DEGRADE, DEFAULT_CONCURRENCY, DEFAULT_TIMEOUT);
+        }
+        List<SecretRequest> requests = new ArrayList<>();
+        Object secrets = document.get("secrets");
+        if (secrets instanceof List) {
+            for (Object item : (List<?>) secrets) {
+                if (!(item instanceof Map)) {
+                    throw new IllegalArgumentException("Prefetch entries must be mappings: " + item);
+                }
+                Map<?, ?> entry = (Map<?, ?>) item;
+                Object keys = entry.get("keys");
+                List<String> keyList = new ArrayList<>();
+                if (keys instanceof List) {
+                    for (Object key : (List<?>) keys) {
+                        keyList.add(String.valueOf(key));
+                    }
+                } else if (keys != null) {
+                    keyList.add(String.valueOf(keys));
+                }
+                requests.add(request(stringValue(entry.get("engine")), stringValue(entry.get("path")),
+                        keyList.toArray(new String[0]), adPath));
+            }
+        }
+        return new PrefetchManifest(requests,
+                policy(stringValue(document.get("policy"))),
+                document.get("concurrency") instanceof Number ? ((Number) document.get("concurrency")).intValue() : DEFAULT_CONCURRENCY,
+                document.get("timeout") instanceof Number ? ((Number) document.get("timeout")).longValue() : DEFAULT_TIMEOUT);
+    }
+
+    public List<SecretRequest> getRequests() {
+        return requests;
+    }
+
+    public PrefetchPolicy getPolicy() {
+        return policy;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * @return the time (ms) allowed for the whole prefetch
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public boolean isEmpty() {
+        return requests.isEmpty();
+    }
+
+    private static SecretRequest request(String engine, String path, String[] keys, String adPath) {
+        if (engine == null) {
+            throw new IllegalArgumentException("Prefetch entry without an engine");
+        }
+        SecretEngine secretEngine = SecretEngine.valueOf(engine.trim().toUpperCase(Locale.ROOT));
+        if (secretEngine == SecretEngine.ACTIVE_DIRECTORY) {
+            path = path != null ? path : adPath;
+            if (path == null || keys.length != 1) {
+                throw new IllegalArgumentException("An active_directory prefetch entry needs a path and exactly one key");
+            }
+            return SecretRequest.activeDirectory(path, keys[0]);
+        }
+        if (path == null) {
+            throw new IllegalArgumentException("Prefetch entry for " + engine + " without a path");
+        }
+        switch (secretEngine) {
+            case KV:
+                return SecretRequest.kv(path, keys);
+            case DATABASE:
+                return SecretRequest.database(path);
+            case LDAP:
+                return SecretRequest.ldap(path);
+            default:
+                throw new IllegalArgumentException(engine + " secrets cannot be prefetched");
+        }
+    }
+
+    private static PrefetchPolicy policy(String policy) {
+        return policy == null ? PrefetchPolicy.DEGRADE : PrefetchPolicy.valueOf(policy.trim().toUpperCase(Locale.ROOT));
+    }
+
+    private static String stringValue(Object value) {
+        return value == null ? null : value.toString();
+    }
+}
@@ -0,0 +1,15 @@
+package com.sc.hcv.prefetch;
+
+/**
+ * What startup does when some of the secrets of a {@link PrefetchManifest} cannot be read.
+ */
+public enum PrefetchPolicy {
+    /**
+     * Startup fails.
+     */
+    FAIL,
+    /**
+     * Startup continues and the failed secrets are read on first use; readiness reports {@link PrefetchState#DEGRADED}.
+     */
+    DEGRADE
+}
@@ -0,0 +1,21 @@
+package com.sc.hcv.prefetch;
+
+/**
+ * The readiness of a {@link SecretPrefetcher}.
+ */
+public enum PrefetchState {
+    NOT_STARTED,
+    IN_PROGRESS,
+    /**
+     * Every secret of the manifest was read.
+     */
+    READY,
+    /**
+     * Some secrets could not be read and the manifest allows startup to continue without them.
+     */
+    DEGRADED,
+    /**
+     * Some secrets could not be read and the manifest requires all of them.
+     */
+    FAILED
+}
@@ -0,0 +1,125 @@
+package com.sc.hcv.prefetch;
+
+import com.sc.hcv.secrets.SecretRequest;
+import com.sc.hcv.secrets.SecretResult;
+import com.sc.hcv.secrets.VaultBulkSecrets;
+import com.sc.hcv.secrets.VaultDBSecretsAsync;
+import com.sc.hcv.secrets.VaultDirectorySecretsAsync;
+import com.sc.hcv.secrets.VaultStaticSecretsAsync;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Reads the secrets of a {@link PrefetchManifest} in parallel after login, so that they are in the clients' caches
+ * before the first request needs them, and reports whether the application is ready to serve.
+ * <p>
+ * Prefetching only saves later reads when the clients have a {@link com.sc.hcv.cache.VaultSecretCache} set.
+ */
+public class SecretPrefetcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SecretPrefetcher.class);
+
+    private final PrefetchManifest manifest;
+    private final VaultBulkSecrets bulkSecrets;
+    private volatile PrefetchState state = PrefetchState.NOT_STARTED;
+    private volatile List<SecretResult> results = Collections.emptyList();
+
+
+    /**
+     * @param manifest         the secrets to read
+     * @param staticSecrets    the client for KV paths, or null if the manifest has none
+     * @param dbSecrets        the client for database paths, or null if the manifest has none
+     * @param directorySecrets the client for LDAP and AD paths, or null if the manifest has none
+     */
+    public SecretPrefetcher(PrefetchManifest manifest, VaultStaticSecretsAsync staticSecrets, VaultDBSecretsAsync dbSecrets,
+                            VaultDirectorySecretsAsync directorySecrets) {
+        this.manifest = manifest;
+        this.bulkSecrets = new VaultBulkSecrets(staticSecrets, dbSecrets, directorySecrets, manifest.getConcurrency());
+    }
+
+
+    /**
+     * Reads every secret of the manifest and waits for them, up to the manifest's timeout.
+     *
+     * @param vaultToken the Vault token used for authentication
+     * @return the resulting state, {@link PrefetchState#READY} or {@link PrefetchState#DEGRADED}
+     * @throws Exception if secrets could not be read and the manifest's policy is {@link PrefetchPolicy#FAIL}
+     */
+
+    public PrefetchState prefetch(String vaultToken) throws Exception {
+        state = PrefetchState.IN_PROGRESS;
+        long start = System.currentTimeMillis();
+        int failures;
+        Throwable firstError = null;
+        try {
+            results = bulkSecrets.fetchAll(vaultToken, manifest.getRequests()).get(manifest.getTimeout(), TimeUnit.MILLISECONDS);
+            failures = 0;
+            for (SecretResult result : results) {
+                if (!result.isSuccess()) {
+                    LOGGER.warn("Prefetching {} failed", result.getRequest(), result.getError());
+                    firstError = firstError == null ? result.getError() : firstError;
+                    failures++;
+                }
+            }
+        } catch (TimeoutException ex) {
+            LOGGER.warn("Prefetching {} secrets did not finish within {} milliseconds", manifest.getRequests().size(), manifest.getTimeout());
+            failures = manifest.getRequests().size();
+            firstError = ex;
+        } catch (ExecutionException ex) {
+            failures = manifest.getRequests().size();
+            firstError = ex.getCause();
+        }
+
+        if (failures == 0) {
+            state = PrefetchState.READY;
+            LOGGER.info("Prefetched {} secrets in {} milliseconds", results.size(), System.currentTimeMillis() - start);
+        } else if (manifest.getPolicy() == PrefetchPolicy.DEGRADE) {
+            state = PrefetchState.DEGRADED;
+            LOGGER.warn("Prefetching failed for {} of {} secrets, continuing without them", failures, manifest.getRequests().size());
+        } else {
+            state = PrefetchState.FAILED;
+            throw new Exception("Prefetching failed for " + failures + " of " + manifest.getRequests().size() + " secrets", firstError);
+        }
+        return state;
+    }
+
+    public PrefetchState getState() {
+        return state;
+    }
+
+    /**
+     * @return true once the prefetch has finished and the application may serve, possibly degraded
+     */
+    public boolean isReady() {
+        PrefetchState current = state;
+        return current == PrefetchState.READY || current == PrefetchState.DEGRADED;
+    }
+
+    /**
+     * @return the result of each secret of the last prefetch, in manifest order, empty before it finished or if it
+     * timed out
+     */
+    public List<SecretResult> getResults() {
+        return results;
+    }
+
+    /**
+     * @return the secrets that could not be read by the last prefetch
+     */
+    public List<SecretRequest> getFailed() {
+        List<SecretRequest> failed = new ArrayList<>();
+        for (SecretResult result : results) {
+            if (!result.isSuccess()) {
+                failed.add(result.getRequest());
+            }
+        }
+        return failed;
+    }
+}
@@ -0,0 +1,248 @@
+package com.sc.hcv.response;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.sc.hcv.auth.VaultToken;
+import com.sc.hcv.secrets.VaultSecret;
+import com.sc.hcv.secrets.WrapInfo;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.ResponseExtractor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes Vault response envelopes with the Jackson streaming parser.
+ * <p>
+ * Responses are read straight from the HTTP body into {@link VaultSecret} and {@link VaultToken}, without building
+ * the body as a String or an intermediate tree. Only the envelope fields the clients use are decoded; everything
+ * else (warnings, metadata, policies, ...) is skipped by the parser.
+ */
+public final class VaultResponseDecoder {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final ResponseExtractor<VaultSecret> SECRET_EXTRACTOR =
+            response -> response.getRawStatusCode() == HttpStatus.OK.value() ? decodeSecret(response.getBody()) : null;
+
+    private static final ResponseExtractor<VaultToken> TOKEN_EXTRACTOR =
+            response -> response.getRawStatusCode() == HttpStatus.OK.value() ? decodeToken(response.getBody()) : null;
+
+
+    private VaultResponseDecoder() {
+    }
+
+
+    /**
+     * @return an extractor that decodes a 200 response into a secret, and returns null for any other success status
+     */
+    public static ResponseExtractor<VaultSecret> secretExtractor() {
+        return SECRET_EXTRACTOR;
+    }
+
+    /**
+     * @return an extractor that decodes the "auth" block of a 200 response, and returns null for any other success status
+     */
+    public static ResponseExtractor<VaultToken> tokenExtractor() {
+        return TOKEN_EXTRACTOR;
+    }
+
+    /**
+     * Decodes the envelope of a secret read: request_id, lease_id, lease_duration, renewable, data and wrap_info.
+     *
+     * @param body the response body
+     * @return the decoded secret
+     * @throws IOException if the body is not valid JSON
+     */
+
+    public static VaultSecret decodeSecret(InputStream body) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            return readSecret(parser);
+        }
+    }
+
+    public static VaultSecret decodeSecret(String body) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            return readSecret(parser);
+        }
+    }
+
+    /**
+     * Decodes the "auth" block of a login or token renewal response.
+     *
+     * @param body the response body
+     * @return the issued token
+     * @throws IOException if the body is not valid JSON or has no auth block with a client token
+     */
+
+    public static VaultToken decodeToken(InputStream body) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            return readToken(parser);
+        }
+    }
+
+    public static VaultToken decodeToken(String body) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            return readToken(parser);
+        }
+    }
+
+    private static VaultSecret readSecret(JsonParser parser) throws IOException {
+        expectObject(parser);
+        String requestId = null;
+        String leaseId = null;
+        long leaseDuration = 0;
+        boolean renewable = false;
+        Map<String, Object> data = null;
+        WrapInfo wrapInfo = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            switch (field) {
+                case "request_id":
+                    requestId = parser.getValueAsString();
+                    break;
+                case "lease_id":
+                    leaseId = parser.getValueAsString();
+                    break;
+                case "lease_duration":
+                    leaseDuration = parser.getValueAsLong();
+                    break;
+                case "renewable":
+                    renewable = parser.getValueAsBoolean();
+                    break;
+                case "data":
+                    data = token == JsonToken.START_OBJECT ? readObject(parser) : skip(parser);
+                    break;
+                case "wrap_info":
+                    wrapInfo = token == JsonToken.START_OBJECT ? readWrapInfo(parser) : skip(parser);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return new VaultSecret(requestId, leaseId, leaseDuration, renewable, data, wrapInfo);
+    }
+
+    private static VaultToken readToken(JsonParser parser) throws IOException {
+        expectObject(parser);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("auth".equals(field) && token == JsonToken.START_OBJECT) {
+                String clientToken = null;
+                long leaseDuration = 0;
+                boolean renewable = false;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String authField = parser.getCurrentName();
+                    parser.nextToken();
+                    switch (authField) {
+                        case "client_token":
+                            clientToken = parser.getValueAsString();
+                            break;
+                        case "lease_duration":
+                            leaseDuration = parser.getValueAsLong();
+                            break;
+                        case "renewable":
+                            renewable = parser.getValueAsBoolean();
+                            break;
+                        default:
+                            parser.skipChildren();
+                    }
+                }
+                if (clientToken != null) {
+                    return new VaultToken(clientToken, leaseDuration, renewable, System.currentTimeMillis());
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        throw new IOException("Vault response does not contain a client token");
+    }
+
+    private static WrapInfo readWrapInfo(JsonParser parser) throws IOException {
+        String token = null;
+        String accessor = null;
+        long ttl = 0;
+        String creationTime = null;
+        String creationPath = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "token":
+                    token = parser.getValueAsString();
+                    break;
+                case "accessor":
+                    accessor = parser.getValueAsString();
+                    break;
+                case "ttl":
+                    ttl = parser.getValueAsLong();
+                    break;
+                case "creation_time":
+                    creationTime = parser.getValueAsString();
+                    break;
+                case "creation_path":
+                    creationPath = parser.getValueAsString();
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return new WrapInfo(token, accessor, ttl, creationTime, creationPath);
+    }
+
+    /**
+     * Reads the object the parser is positioned on into a map of plain Java values.
+     */
+
+    private static Map<String, Object> readObject(JsonParser parser) throws IOException {
+        Map<String, Object> map = new LinkedHashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            map.put(field, readValue(parser));
+        }
+        return map;
+    }
+
+    private static Object readValue(JsonParser parser) throws IOException {
+        switch (parser.currentToken()) {
+            case START_OBJECT:
+                return readObject(parser);
+            case START_ARRAY:
+                List<Object> list = new ArrayList<>();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    list.add(readValue(parser));
+                }
+                return list;
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return parser.getNumberValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            default:
+                return null;
+        }
+    }
+
+    private static <T> T skip(JsonParser parser) throws IOException {
+        parser.skipChildren();
+        return null;
+    }
+
+    private static void expectObject(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Vault response is not a JSON object");
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.sc.hcv.retry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fails requests fast while Vault is unhealthy.
+ * <p>
+ * After {@code failureThreshold} consecutive server-side failures the breaker opens and rejects requests for
+ * {@code openDuration} milliseconds. It then lets a single trial request through: success closes it again,
+ * failure re-opens it.
+ */
+public class CircuitBreaker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    private final int failureThreshold;
+    private final long openDuration;
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicBoolean trialInFlight = new AtomicBoolean();
+    private volatile long openUntil;
+
+
+    public CircuitBreaker(int failureThreshold, long openDuration) {
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+    }
+
+
+    /**
+     * @return true if a request may be sent now
+     */
+    public boolean allowRequest() {
+        if (consecutiveFailures.get() < failureThreshold) {
+            return true;
+        }
+        if (System.currentTimeMillis() < openUntil) {
+            return false;
+        }
+        return trialInFlight.compareAndSet(false, true);
+    }
+
+    public void recordSuccess() {
+        if (consecutiveFailures.getAndSet(0) >= failureThreshold) {
+            LOGGER.info("Vault circuit breaker closed");
+        }
+        trialInFlight.set(false);
+    }
+
+    public void recordFailure() {
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            if (System.currentTimeMillis() >= openUntil) {
+                LOGGER.warn("Vault circuit breaker opened for {} milliseconds", openDuration);
+            }
+            openUntil = System.currentTimeMillis() + openDuration;
+        }
+        trialInFlight.set(false);
+    }
+
+    public boolean isOpen() {
+        return consecutiveFailures.get() >= failureThreshold && System.currentTimeMillis() < openUntil;
+    }
+}
@@ -0,0 +1,13 @@
+package com.sc.hcv.retry;
+
+/**
+ * Raised instead of sending a request while the {@link CircuitBreaker} is open.
+ */
+public class CircuitOpenException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public CircuitOpenException(String operation) {
+        super("Vault circuit breaker is open, not attempting " + operation);
+    }
+}
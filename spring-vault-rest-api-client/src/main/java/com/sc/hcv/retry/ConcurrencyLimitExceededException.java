@@ -0,0 +1,14 @@
+package com.sc.hcv.retry;
+
+/**
+ * Raised instead of sending a request when a {@link ConcurrencyLimiter} has no permit for it: its wait queue is full,
+ * or no permit was freed within the maximum wait.
+ */
+public class ConcurrencyLimitExceededException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public ConcurrencyLimitExceededException(String limiter, String reason) {
+        super("Too many concurrent Vault requests to " + limiter + ": " + reason);
+    }
+}
@@ -0,0 +1,298 @@
+package com.sc.hcv.retry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of requests in flight to Vault, adapting the limit to how Vault responds (AIMD).
+ * <p>
+ * Each response faster than {@code latencyThreshold} raises the limit by {@code 1 / limit}, so a fully used limit grows
+ * by about one per round trip. A 429, a 5xx, an I/O error or a response slower than the threshold lowers the limit
+ * by 10%; only requests sent after the previous decrease can lower it again, so one burst of slow responses counts once.
+ * <p>
+ * Requests over the limit wait in a FIFO queue of at most {@code maxQueueSize} entries for at most {@code maxWait}
+ * milliseconds, and fail with a {@link ConcurrencyLimitExceededException} beyond that.
+ */
+public class ConcurrencyLimiter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConcurrencyLimiter.class);
+
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final String name;
+    private final int maxLimit;
+    private final long latencyThreshold;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+    private double limit;
+    private int inFlight;
+    private long lastDecrease;
+    private volatile int maxQueueSize = 100;
+    private volatile long maxWait = 1000;
+
+
+    /**
+     * @param name             the mount or engine the limiter applies to, used in log and error messages
+     * @param initialLimit     the number of concurrent requests allowed at first
+     * @param maxLimit         the highest the limit can grow to
+     * @param latencyThreshold the response time (ms) above which Vault is considered overloaded
+     */
+    public ConcurrencyLimiter(String name, int initialLimit, int maxLimit, long latencyThreshold) {
+        if (initialLimit < 1 || maxLimit < initialLimit) {
+            throw new IllegalArgumentException("Invalid concurrency limits " + initialLimit + ".." + maxLimit);
+        }
+        this.name = name;
+        this.maxLimit = maxLimit;
+        this.latencyThreshold = TimeUnit.MILLISECONDS.toNanos(latencyThreshold);
+        this.limit = initialLimit;
+        this.lastDecrease = System.nanoTime();
+    }
+
+
+    /**
+     * Sets how many requests may wait for a permit, and for how long, before they are rejected.
+     *
+     * @param maxQueueSize the number of waiting requests, 0 to reject requests over the limit at once
+     * @param maxWait      the time (ms) a request waits for a permit
+     */
+
+    public void setQueue(int maxQueueSize, long maxWait) {
+        this.maxQueueSize = maxQueueSize;
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * Takes a permit if one is free and no request is waiting for one.
+     *
+     * @return true if a permit was taken and must be given back with {@link #release}
+     */
+
+    public boolean tryAcquire() {
+        lock.lock();
+        try {
+            if (waiters.isEmpty() && inFlight < currentLimit()) {
+                inFlight++;
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes a permit, waiting on the calling thread for one to be released if the limit is reached.
+     *
+     * @throws ConcurrencyLimitExceededException if the wait queue is full or no permit was released in time
+     * @throws InterruptedException              if the thread was interrupted while waiting
+     */
+
+    public void acquire() throws ConcurrencyLimitExceededException, InterruptedException {
+        CompletableFuture<Void> permit = enqueue();
+        if (permit == null) {
+            return;
+        }
+        try {
+            permit.get(maxWait, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            if (withdraw(permit)) {
+                throw timedOut();
+            }
+            // granted just as the wait ran out
+        } catch (InterruptedException ex) {
+            if (!withdraw(permit)) {
+                giveBack();
+            }
+            throw ex;
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    /**
+     * Takes a permit without blocking: the returned future completes once a permit is granted, or fails with a
+     * {@link ConcurrencyLimitExceededException} if the queue is full or no permit was released in time.
+     *
+     * @param timer schedules the wait timeout
+     * @return a future completed when the permit is granted
+     */
+
+    public CompletableFuture<Void> acquireAsync(ScheduledExecutorService timer) {
+        CompletableFuture<Void> permit;
+        try {
+            permit = enqueue();
+        } catch (ConcurrencyLimitExceededException ex) {
+            CompletableFuture<Void> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(ex);
+            return rejected;
+        }
+        if (permit == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        ScheduledFuture<?> timeout = timer.schedule(() -> {
+            if (withdraw(permit)) {
+                permit.completeExceptionally(timedOut());
+            }
+        }, maxWait, TimeUnit.MILLISECONDS);
+        permit.whenComplete((ignored, error) -> timeout.cancel(false));
+        return permit;
+    }
+
+    /**
+     * Gives back a permit and adjusts the limit to the outcome of the request.
+     *
+     * @param startNanos the {@link System#nanoTime()} at which the request was sent
+     * @param overloaded true if Vault answered 429 or 5xx, or did not answer
+     */
+
+    public void release(long startNanos, boolean overloaded) {
+        long now = System.nanoTime();
+        List<CompletableFuture<Void>> granted;
+        lock.lock();
+        try {
+            if (overloaded || now - startNanos > latencyThreshold) {
+                if (startNanos - lastDecrease >= 0) {
+                    limit = Math.max(1, limit * BACKOFF_RATIO);
+                    lastDecrease = now;
+                    LOGGER.debug("Vault concurrency limit for {} lowered to {}", name, currentLimit());
+                }
+            } else if (inFlight * 2 >= limit) {
+                // only a limit that is actually used is evidence that Vault can take more
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            inFlight--;
+            granted = grant();
+        } finally {
+            lock.unlock();
+        }
+        complete(granted);
+    }
+
+    /**
+     * Gives back a permit that was not used to send a request, without adjusting the limit.
+     */
+
+    public void giveBack() {
+        List<CompletableFuture<Void>> granted;
+        lock.lock();
+        try {
+            inFlight--;
+            granted = grant();
+        } finally {
+            lock.unlock();
+        }
+        complete(granted);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of requests currently allowed in flight
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return currentLimit();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of requests waiting for a permit
+     */
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return waiters.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return null if a permit was taken at once, otherwise the queued permit to wait for
+     */
+
+    private CompletableFuture<Void> enqueue() throws ConcurrencyLimitExceededException {
+        lock.lock();
+        try {
+            if (waiters.isEmpty() && inFlight < currentLimit()) {
+                inFlight++;
+                return null;
+            }
+            if (waiters.size() >= maxQueueSize) {
+                throw new ConcurrencyLimitExceededException(name, "limit " + currentLimit() + " reached and "
+                        + waiters.size() + " requests waiting");
+            }
+            CompletableFuture<Void> permit = new CompletableFuture<>();
+            waiters.add(permit);
+            return permit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if the permit was still waiting and is now removed from the queue, false if it was granted
+     */
+
+    private boolean withdraw(CompletableFuture<Void> permit) {
+        lock.lock();
+        try {
+            return waiters.remove(permit);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<CompletableFuture<Void>> grant() {
+        if (waiters.isEmpty() || inFlight >= currentLimit()) {
+            return Collections.emptyList();
+        }
+        List<CompletableFuture<Void>> granted = new ArrayList<>();
+        while (!waiters.isEmpty() && inFlight < currentLimit()) {
+            inFlight++;
+            granted.add(waiters.poll());
+        }
+        return granted;
+    }
+
+    private int currentLimit() {
+        return (int) limit;
+    }
+
+    private ConcurrencyLimitExceededException timedOut() {
+        return new ConcurrencyLimitExceededException(name, "no permit within " + maxWait + " milliseconds");
+    }
+
+    private static void complete(List<CompletableFuture<Void>> granted) {
+        // completed outside the lock, as completing runs the waiters' continuations
+        for (CompletableFuture<Void> permit : granted) {
+            permit.complete(null);
+        }
+    }
+}
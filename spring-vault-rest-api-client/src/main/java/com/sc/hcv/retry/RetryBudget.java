@@ -0,0 +1,66 @@
+package com.sc.hcv.retry;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide limit on retries, so that a degraded Vault is not hit with a multiple of the normal request rate.
+ * <p>
+ * Every first attempt deposits {@code retryRatio} tokens and every retry withdraws one; in addition the budget is
+ * refilled with {@code minRetriesPerSecond} tokens per second so that low-traffic clients can still retry.
+ * The balance is capped, so a long quiet period cannot bank an unbounded burst of retries.
+ */
+public class RetryBudget {
+
+    private static final long SCALE = 1000;
+
+    private final long depositPerRequest;
+    private final long refillPerSecond;
+    private final long capacity;
+    private final AtomicLong balance;
+    private final AtomicLong lastRefill = new AtomicLong(System.nanoTime());
+
+
+    /**
+     * @param retryRatio          the fraction of requests that may be retried, e.g. 0.2 for 20%
+     * @param minRetriesPerSecond retries that are always allowed per second regardless of traffic
+     */
+    public RetryBudget(double retryRatio, int minRetriesPerSecond) {
+        this.depositPerRequest = (long) (retryRatio * SCALE);
+        this.refillPerSecond = minRetriesPerSecond * SCALE;
+        this.capacity = Math.max(refillPerSecond * 10, SCALE);
+        this.balance = new AtomicLong(refillPerSecond);
+    }
+
+
+    public void recordRequest() {
+        refill();
+        balance.updateAndGet(current -> Math.min(capacity, current + depositPerRequest));
+    }
+
+    /**
+     * @return true if a retry may be performed, in which case it has been charged to the budget
+     */
+    public boolean tryAcquireRetry() {
+        refill();
+        while (true) {
+            long current = balance.get();
+            if (current < SCALE) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - SCALE)) {
+                return true;
+            }
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        long last = lastRefill.get();
+        long elapsed = now - last;
+        if (elapsed < 100_000_000L || !lastRefill.compareAndSet(last, now)) {
+            return;
+        }
+        long tokens = refillPerSecond * elapsed / 1_000_000_000L;
+        balance.updateAndGet(current -> Math.min(capacity, current + tokens));
+    }
+}
@@ -0,0 +1,52 @@
+package com.sc.hcv.retry;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Per-client retry settings: the number of attempts and an exponential backoff with full jitter.
+ * The wait before retry n is a random value between 0 and {@code min(maxBackoffInterval, backoffInterval * 2^(n-1))}.
+ */
+public class RetryPolicy {
+
+    private final int maxRetries;
+    private final long backoffInterval;
+    private final long maxBackoffInterval;
+
+
+    /**
+     * @param maxRetries         the maximum number of attempts
+     * @param backoffInterval    the base wait between attempts in milliseconds
+     * @param maxBackoffInterval the maximum wait between attempts in milliseconds
+     */
+    public RetryPolicy(int maxRetries, long backoffInterval, long maxBackoffInterval) {
+        this.maxRetries = maxRetries;
+        this.backoffInterval = backoffInterval;
+        this.maxBackoffInterval = maxBackoffInterval;
+    }
+
+
+    /**
+     * @param numRetries the number of attempts that have failed so far, starting at 1
+     * @return the time in milliseconds to wait before the next attempt
+     */
+    public long backoff(int numRetries) {
+        int exponent = Math.min(numRetries - 1, 30);
+        long ceiling = Math.min(maxBackoffInterval, backoffInterval << exponent);
+        if (ceiling <= 0) {
+            return 0;
+        }
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public long getBackoffInterval() {
+        return backoffInterval;
+    }
+
+    public long getMaxBackoffInterval() {
+        return maxBackoffInterval;
+    }
+}
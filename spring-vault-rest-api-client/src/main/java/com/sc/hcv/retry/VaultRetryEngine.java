@@ -0,0 +1,440 @@
+package com.sc.hcv.retry;
+
+import com.sc.hcv.VaultException;
+import com.sc.hcv.metrics.VaultMetrics;
+import com.sc.hcv.secrets.SecretEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Retry engine shared by all Vault clients, synchronous and asynchronous.
+ * <p>
+ * Failures are classified by HTTP status: 4xx responses other than 429 are returned to the caller at once, while
+ * 429, 5xx and I/O errors are retried with the caller's {@link RetryPolicy}. Retries are drawn from a process-wide
+ * {@link RetryBudget}, and a shared {@link CircuitBreaker} fails requests fast while Vault keeps returning errors.
+ * Optional {@link ConcurrencyLimiter}s, one per mount or a default one, cap the attempts in flight to Vault.
+ * Every attempt and retry is reported to the engine's {@link VaultMetrics}, which records nothing by default.
+ */
+public class VaultRetryEngine {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VaultRetryEngine.class);
+
+    private static final ThreadLocal<int[]> REPORTED_STATUS = ThreadLocal.withInitial(() -> new int[1]);
+
+    private static VaultRetryEngine defaultEngine;
+
+    private final RetryBudget retryBudget;
+    private final CircuitBreaker circuitBreaker;
+    private final Map<String, ConcurrencyLimiter> concurrencyLimiters = new ConcurrentHashMap<>();
+    private volatile ConcurrencyLimiter defaultConcurrencyLimiter;
+    private volatile VaultMetrics metrics = VaultMetrics.NOOP;
+
+
+    public VaultRetryEngine(RetryBudget retryBudget, CircuitBreaker circuitBreaker) {
+        this.retryBudget = retryBudget;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+
+    /**
+     * Returns the process-wide engine used by clients that are not given one explicitly.
+     * It allows retries for 20% of requests plus 10 per second, and opens its circuit breaker for 10 seconds
+     * after 5 consecutive failures.
+     *
+     * @return the shared default engine
+     */
+
+    public static synchronized VaultRetryEngine getDefault() {
+        if (defaultEngine == null) {
+            defaultEngine = new VaultRetryEngine(new RetryBudget(0.2, 10), new CircuitBreaker(5, 10000));
+        }
+        return defaultEngine;
+    }
+
+    /**
+     * Creates an engine from the {@code vault.retry.*}, {@code vault.circuit-breaker.*} and {@code vault.concurrency.*}
+     * properties, falling back to the defaults of {@link #getDefault()} for missing keys.
+     * <p>
+     * Concurrency limiting is off unless {@code vault.concurrency.enabled} is true. A default limiter then applies to
+     * all requests, and each mount listed in {@code vault.concurrency.mounts} gets a limiter of its own, configured
+     * with {@code vault.concurrency.mount.<mount>.*} keys that fall back to the {@code vault.concurrency.*} values.
+     *
+     * @param properties the Vault properties
+     * @return the engine
+     */
+
+    public static VaultRetryEngine fromProperties(Properties properties) {
+        RetryBudget retryBudget = new RetryBudget(
+                Double.parseDouble(properties.getProperty("vault.retry.budget-ratio", "0.2")),
+                Integer.parseInt(properties.getProperty("vault.retry.min-retries-per-second", "10")));
+        CircuitBreaker circuitBreaker = new CircuitBreaker(
+                Integer.parseInt(properties.getProperty("vault.circuit-breaker.failure-threshold", "5")),
+                Long.parseLong(properties.getProperty("vault.circuit-breaker.open-duration", "10000")));
+        VaultRetryEngine engine = new VaultRetryEngine(retryBudget, circuitBreaker);
+        if (Boolean.parseBoolean(properties.getProperty("vault.concurrency.enabled", "false"))) {
+            engine.setConcurrencyLimiter(concurrencyLimiter(properties, "vault", "vault.concurrency."));
+            for (String mount : properties.getProperty("vault.concurrency.mounts", "").split(",")) {
+                mount = mount.trim();
+                if (!mount.isEmpty()) {
+                    engine.setConcurrencyLimiter(mount, concurrencyLimiter(properties, mount, "vault.concurrency.mount." + mount + "."));
+                }
+            }
+        }
+        return engine;
+    }
+
+    /**
+     * Runs the attempt on the calling thread until it succeeds, fails with a non-retryable error,
+     * or the policy or retry budget is exhausted.
+     *
+     * @param operation the operation name used in log and error messages
+     * @param policy    the number of attempts and backoff to use
+     * @param attempt   a single, non-retrying request
+     * @return the result of the first successful attempt
+     * @throws Exception the non-retryable error, or an exception wrapping the last error once retries are exhausted
+     */
+
+    public <T> T execute(String operation, RetryPolicy policy, Callable<T> attempt) throws Exception {
+        return execute(operation, null, null, policy, attempt);
+    }
+
+    /**
+     * Same as {@link #execute(String, RetryPolicy, Callable)}, reporting the secret engine and path to the metrics.
+     *
+     * @param operation the operation name used in log and error messages
+     * @param engine    the secret engine the path belongs to, or null for auth and sys endpoints
+     * @param path      the requested path
+     * @param policy    the number of attempts and backoff to use
+     * @param attempt   a single, non-retrying request
+     * @return the result of the first successful attempt
+     * @throws Exception the non-retryable error, or an exception wrapping the last error once retries are exhausted
+     */
+
+    public <T> T execute(String operation, SecretEngine engine, String path, RetryPolicy policy, Callable<T> attempt) throws Exception {
+        VaultMetrics metrics = this.metrics;
+        ConcurrencyLimiter limiter = getConcurrencyLimiter(path);
+        retryBudget.recordRequest();
+        int numRetries = 0;
+        while (true) {
+            // the permit is taken first, as a half-open breaker lets exactly one trial through once asked
+            if (limiter != null) {
+                limiter.acquire();
+            }
+            if (!circuitBreaker.allowRequest()) {
+                giveBack(limiter);
+                throw new CircuitOpenException(operation);
+            }
+            metrics.requestStarted(operation);
+            long start = System.nanoTime();
+            try {
+                T result = call(attempt);
+                metrics.requestCompleted(operation, engine, path, takeReportedStatus(), System.nanoTime() - start);
+                release(limiter, start, null);
+                circuitBreaker.recordSuccess();
+                return result;
+            } catch (Exception ex) {
+                metrics.requestCompleted(operation, engine, path, statusOf(ex), System.nanoTime() - start);
+                release(limiter, start, ex);
+                numRetries++;
+                Thread.sleep(onFailure(metrics, operation, policy, ex, numRetries));
+            }
+        }
+    }
+
+    /**
+     * Asynchronous variant of {@link #execute}. Attempts run on the I/O executor and the wait between them is
+     * scheduled on the timer, so no thread is parked while backing off or waiting for a concurrency permit.
+     *
+     * @param operation  the operation name used in log and error messages
+     * @param policy     the number of attempts and backoff to use
+     * @param attempt    a single, non-retrying request
+     * @param ioExecutor runs the attempts
+     * @param timer      schedules the retries
+     * @return a future completed with the result of the first successful attempt
+     */
+
+    public <T> CompletableFuture<T> executeAsync(String operation, RetryPolicy policy, Callable<T> attempt,
+                                                 Executor ioExecutor, ScheduledExecutorService timer) {
+        return executeAsync(operation, null, null, policy, attempt, ioExecutor, timer);
+    }
+
+    /**
+     * Same as {@link #executeAsync(String, RetryPolicy, Callable, Executor, ScheduledExecutorService)}, reporting the
+     * secret engine and path to the metrics.
+     *
+     * @param operation  the operation name used in log and error messages
+     * @param engine     the secret engine the path belongs to, or null for auth and sys endpoints
+     * @param path       the requested path
+     * @param policy     the number of attempts and backoff to use
+     * @param attempt    a single, non-retrying request
+     * @param ioExecutor runs the attempts
+     * @param timer      schedules the retries
+     * @return a future completed with the result of the first successful attempt
+     */
+
+    public <T> CompletableFuture<T> executeAsync(String operation, SecretEngine engine, String path, RetryPolicy policy,
+                                                 Callable<T> attempt, Executor ioExecutor, ScheduledExecutorService timer) {
+        VaultMetrics metrics = this.metrics;
+        ConcurrencyLimiter limiter = getConcurrencyLimiter(path);
+        retryBudget.recordRequest();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger numRetries = new AtomicInteger();
+        Runnable[] run = new Runnable[1];
+        Runnable send = () -> {
+            if (!circuitBreaker.allowRequest()) {
+                giveBack(limiter);
+                result.completeExceptionally(new CircuitOpenException(operation));
+                return;
+            }
+            metrics.requestStarted(operation);
+            long start = System.nanoTime();
+            try {
+                T value = call(attempt);
+                metrics.requestCompleted(operation, engine, path, takeReportedStatus(), System.nanoTime() - start);
+                release(limiter, start, null);
+                circuitBreaker.recordSuccess();
+                result.complete(value);
+            } catch (Exception ex) {
+                metrics.requestCompleted(operation, engine, path, statusOf(ex), System.nanoTime() - start);
+                release(limiter, start, ex);
+                try {
+                    long delay = onFailure(metrics, operation, policy, ex, numRetries.incrementAndGet());
+                    timer.schedule(() -> submit(ioExecutor, run[0], result), delay, TimeUnit.MILLISECONDS);
+                } catch (Exception terminal) {
+                    result.completeExceptionally(terminal);
+                }
+            }
+        };
+        run[0] = () -> {
+            if (limiter == null || limiter.tryAcquire()) {
+                send.run();
+                return;
+            }
+            limiter.acquireAsync(timer).whenComplete((ignored, error) -> {
+                if (error != null) {
+                    result.completeExceptionally(error);
+                    return;
+                }
+                try {
+                    ioExecutor.execute(send);
+                } catch (RejectedExecutionException ex) {
+                    limiter.giveBack();
+                    result.completeExceptionally(ex);
+                }
+            });
+        };
+        submit(ioExecutor, run[0], result);
+        return result;
+    }
+
+    /**
+     * @param ex the error raised by an attempt
+     * @return true if the same request may succeed when sent again
+     */
+
+    public static boolean isRetryable(Exception ex) {
+        if (ex instanceof VaultException) {
+            int status = ((VaultException) ex).getStatusCode();
+            return status == 429 || status >= 500;
+        }
+        if (ex instanceof HttpStatusCodeException) {
+            int status = ((HttpStatusCodeException) ex).getRawStatusCode();
+            return status == 429 || status < 400 || status >= 500;
+        }
+        return !(ex instanceof CircuitOpenException || ex instanceof ConcurrencyLimitExceededException);
+    }
+
+    /**
+     * Reports the HTTP status of a response that the running attempt turns into a result rather than an error, such as
+     * a 404 read as "the secret does not exist", so that metrics record that status instead of 200. Must be called on
+     * the thread running the attempt.
+     *
+     * @param status the HTTP status of the response
+     */
+
+    public static void reportStatus(int status) {
+        REPORTED_STATUS.get()[0] = status;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Sets the limiter for requests to mounts that have no limiter of their own.
+     *
+     * @param limiter the limiter, or null to leave those requests unlimited
+     */
+
+    public void setConcurrencyLimiter(ConcurrencyLimiter limiter) {
+        this.defaultConcurrencyLimiter = limiter;
+    }
+
+    /**
+     * Sets the limiter for requests to one mount, e.g. {@code database} for {@code database/creds/my-role}.
+     *
+     * @param mount   the first segment of the request paths
+     * @param limiter the limiter, or null to use the default limiter for this mount again
+     */
+
+    public void setConcurrencyLimiter(String mount, ConcurrencyLimiter limiter) {
+        if (limiter == null) {
+            concurrencyLimiters.remove(mount);
+        } else {
+            concurrencyLimiters.put(mount, limiter);
+        }
+    }
+
+    /**
+     * @param path the requested path, or null
+     * @return the limiter that applies to the path, or null if its requests are not limited
+     */
+
+    public ConcurrencyLimiter getConcurrencyLimiter(String path) {
+        if (path != null && !concurrencyLimiters.isEmpty()) {
+            int slash = path.indexOf('/');
+            ConcurrencyLimiter limiter = concurrencyLimiters.get(slash < 0 ? path : path.substring(0, slash));
+            if (limiter != null) {
+                return limiter;
+            }
+        }
+        return defaultConcurrencyLimiter;
+    }
+
+    /**
+     * Sets where request latency, status codes, retries and in-flight requests are reported.
+     * Applies to every client using this engine.
+     *
+     * @param metrics the metrics to report to, or {@link VaultMetrics#NOOP} to record nothing
+     */
+
+    public void setMetrics(VaultMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public VaultMetrics getMetrics() {
+        return metrics;
+    }
+
+    private static <T> T call(Callable<T> attempt) throws Exception {
+        REPORTED_STATUS.get()[0] = 0;
+        return attempt.call();
+    }
+
+    /**
+     * @return the status reported by the successful attempt, 200 if it reported none
+     */
+
+    private static int takeReportedStatus() {
+        int[] reported = REPORTED_STATUS.get();
+        int status = reported[0];
+        reported[0] = 0;
+        return status == 0 ? 200 : status;
+    }
+
+    /**
+     * @return the HTTP status carried by the error, or 0 if the request failed without a response
+     */
+
+    private static int statusOf(Exception ex) {
+        if (ex instanceof VaultException) {
+            return ((VaultException) ex).getStatusCode();
+        }
+        if (ex instanceof HttpStatusCodeException) {
+            return ((HttpStatusCodeException) ex).getRawStatusCode();
+        }
+        return 0;
+    }
+
+    /**
+     * Records a failed attempt and decides what happens next.
+     *
+     * @return the time in milliseconds to wait before the next attempt
+     * @throws Exception the error to return to the caller if the request must not be retried
+     */
+
+    private long onFailure(VaultMetrics metrics, String operation, RetryPolicy policy, Exception ex, int numRetries) throws Exception {
+        if (!isRetryable(ex)) {
+            // Vault answered, so it is healthy even though it rejected this request
+            circuitBreaker.recordSuccess();
+            throw ex;
+        }
+        circuitBreaker.recordFailure();
+        if (numRetries >= policy.getMaxRetries()) {
+            LOGGER.error("Max retries exceeded for {}", operation);
+            throw new Exception("Max retries exceeded for " + operation, ex);
+        }
+        if (!retryBudget.tryAcquireRetry()) {
+            LOGGER.error("Retry budget exhausted, not retrying {}", operation);
+            throw new Exception("Retry budget exhausted for " + operation, ex);
+        }
+        long delay = policy.backoff(numRetries);
+        LOGGER.warn("Retrying {} after {} milliseconds", operation, delay);
+        metrics.retryScheduled(operation, delay);
+        return delay;
+    }
+
+    private static ConcurrencyLimiter concurrencyLimiter(Properties properties, String name, String prefix) {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(name,
+                Integer.parseInt(concurrencyProperty(properties, prefix, "initial-limit", "20")),
+                Integer.parseInt(concurrencyProperty(properties, prefix, "max-limit", "200")),
+                Long.parseLong(concurrencyProperty(properties, prefix, "latency-threshold", "1000")));
+        limiter.setQueue(Integer.parseInt(concurrencyProperty(properties, prefix, "max-queue", "100")),
+                Long.parseLong(concurrencyProperty(properties, prefix, "max-wait", "1000")));
+        return limiter;
+    }
+
+    private static String concurrencyProperty(Properties properties, String prefix, String key, String defaultValue) {
+        return properties.getProperty(prefix + key, properties.getProperty("vault.concurrency." + key, defaultValue));
+    }
+
+    /**
+     * Gives back the permit of a finished attempt; 429, 5xx and I/O errors tell the limiter that Vault is overloaded.
+     */
+
+    private static void release(ConcurrencyLimiter limiter, long start, Exception ex) {
+        if (limiter != null) {
+            limiter.release(start, ex != null && isOverload(ex));
+        }
+    }
+
+    /**
+     * @return true if the error shows that Vault is overloaded rather than that the request or its response was wrong
+     */
+
+    private static boolean isOverload(Exception ex) {
+        int status = statusOf(ex);
+        if (status != 0) {
+            return status == 429 || status >= 500;
+        }
+        return ex instanceof IOException || ex instanceof ResourceAccessException;
+    }
+
+    private static void giveBack(ConcurrencyLimiter limiter) {
+        if (limiter != null) {
+            limiter.giveBack();
+        }
+    }
+
+    private static void submit(Executor executor, Runnable task, CompletableFuture<?> result) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ex) {
+            result.completeExceptionally(ex);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.sc.hcv.secrets;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Plaintext data keys by the token that unwrapped or generated them and their wrapped form, so that data encrypted
+ * under the same data key is decrypted without a request to Vault. A key is only handed back to the token Vault gave
+ * it to, since another token may not be allowed to decrypt under the Transit key. Keys are dropped after {@code ttl} milliseconds or {@code maxUses} uses, and the least recently
+ * used keys are dropped once more than {@code maxEntries} are held.
+ */
+final class DataKeyCache {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, CachedKey> keys = new LinkedHashMap<>(16, 0.75f, true);
+    private final int maxEntries;
+    private final long ttl;
+    private final long maxUses;
+
+
+    DataKeyCache(int maxEntries, long ttl, long maxUses) {
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+        this.maxUses = maxUses;
+    }
+
+
+    /**
+     * @param tokenDigest the {@link com.sc.hcv.auth.TokenDigest} of the token the key is used with
+     * @return the plaintext key for the wrapped key, counting one use, or null if it is not cached for the token or
+     * used up
+     */
+    SecretKeySpec get(String tokenDigest, String wrappedKey) {
+        String cacheKey = cacheKey(tokenDigest, wrappedKey);
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            CachedKey cached = keys.get(cacheKey);
+            if (cached == null) {
+                return null;
+            }
+            if (now >= cached.expiresAt || cached.uses >= maxUses) {
+                keys.remove(cacheKey);
+                return null;
+            }
+            cached.uses++;
+            return cached.key;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void put(String tokenDigest, String wrappedKey, SecretKeySpec key) {
+        lock.lock();
+        try {
+            keys.put(cacheKey(tokenDigest, wrappedKey), new CachedKey(key, System.currentTimeMillis() + ttl));
+            if (keys.size() > maxEntries) {
+                Iterator<Map.Entry<String, CachedKey>> eldest = keys.entrySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void clear() {
+        lock.lock();
+        try {
+            keys.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static String cacheKey(String tokenDigest, String wrappedKey) {
+        // the digest is hex and never contains the separator
+        return tokenDigest + ' ' + wrappedKey;
+    }
+
+    private static final class CachedKey {
+        private final SecretKeySpec key;
+        private final long expiresAt;
+        private long uses;
+
+        CachedKey(SecretKeySpec key, long expiresAt) {
+            this.key = key;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
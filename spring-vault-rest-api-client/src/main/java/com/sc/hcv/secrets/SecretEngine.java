@@ -0,0 +1,12 @@
+package com.sc.hcv.secrets;
+
+/**
+ * The Vault secret engines read by the clients in this package.
+ */
+public enum SecretEngine {
+    KV,
+    DATABASE,
+    LDAP,
+    ACTIVE_DIRECTORY,
+    TRANSIT
+}
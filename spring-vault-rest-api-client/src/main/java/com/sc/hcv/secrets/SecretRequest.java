@@ -0,0 +1,71 @@
+package com.sc.hcv.secrets;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * One entry of a bulk read: the engine, the path and, for KV paths, the keys to return.
+ */
+public final class SecretRequest {
+
+    private final SecretEngine engine;
+    private final String path;
+    private final String[] keys;
+
+
+    private SecretRequest(SecretEngine engine, String path, String... keys) {
+        this.engine = engine;
+        this.path = path;
+        this.keys = keys;
+    }
+
+    public static SecretRequest kv(String secretPath, String... secretKeys) {
+        return new SecretRequest(SecretEngine.KV, secretPath, secretKeys);
+    }
+
+    public static SecretRequest database(String databasePath) {
+        return new SecretRequest(SecretEngine.DATABASE, databasePath);
+    }
+
+    public static SecretRequest ldap(String ldapPath) {
+        return new SecretRequest(SecretEngine.LDAP, ldapPath);
+    }
+
+    public static SecretRequest activeDirectory(String adPath, String adKey) {
+        return new SecretRequest(SecretEngine.ACTIVE_DIRECTORY, adPath + "/" + adKey);
+    }
+
+    public SecretEngine getEngine() {
+        return engine;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String[] getKeys() {
+        return keys.clone();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof SecretRequest)) {
+            return false;
+        }
+        SecretRequest that = (SecretRequest) other;
+        return engine == that.engine && path.equals(that.path) && Arrays.equals(keys, that.keys);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Objects.hash(engine, path) + Arrays.hashCode(keys);
+    }
+
+    @Override
+    public String toString() {
+        return engine + ":" + path;
+    }
+}
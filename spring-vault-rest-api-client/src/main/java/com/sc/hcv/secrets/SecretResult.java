@@ -0,0 +1,50 @@
+package com.sc.hcv.secrets;
+
+import java.util.Map;
+
+/**
+ * The outcome of one entry of a bulk read: either the secret data or the error that prevented reading it.
+ */
+public final class SecretResult {
+
+    private final SecretRequest request;
+    private final Map<String, String> secrets;
+    private final Throwable error;
+
+
+    private SecretResult(SecretRequest request, Map<String, String> secrets, Throwable error) {
+        this.request = request;
+        this.secrets = secrets;
+        this.error = error;
+    }
+
+    static SecretResult success(SecretRequest request, Map<String, String> secrets) {
+        return new SecretResult(request, secrets, null);
+    }
+
+    static SecretResult failure(SecretRequest request, Throwable error) {
+        return new SecretResult(request, null, error);
+    }
+
+    public SecretRequest getRequest() {
+        return request;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * @return the secret data, or null if the read failed
+     */
+    public Map<String, String> getSecrets() {
+        return secrets;
+    }
+
+    /**
+     * @return the error that prevented the read, or null if it succeeded
+     */
+    public Throwable getError() {
+        return error;
+    }
+}
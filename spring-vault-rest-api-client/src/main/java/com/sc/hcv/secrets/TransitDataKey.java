@@ -0,0 +1,31 @@
+package com.sc.hcv.secrets;
+
+/**
+ * A data key generated by the Transit engine: the plaintext key for local encryption, and the same key wrapped by the
+ * named Transit key, to be stored next to the data it encrypts.
+ */
+public class TransitDataKey {
+
+    private final byte[] plaintext;
+    private final String ciphertext;
+
+
+    public TransitDataKey(byte[] plaintext, String ciphertext) {
+        this.plaintext = plaintext;
+        this.ciphertext = ciphertext;
+    }
+
+    /**
+     * @return the plaintext key; not copied, so callers must not keep or change it
+     */
+    public byte[] getPlaintext() {
+        return plaintext;
+    }
+
+    /**
+     * @return the wrapped key, e.g. vault:v1:...
+     */
+    public String getCiphertext() {
+        return ciphertext;
+    }
+}
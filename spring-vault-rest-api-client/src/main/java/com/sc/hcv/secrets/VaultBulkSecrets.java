@@ -0,0 +1,149 @@
+package com.sc.hcv.secrets;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Reads many secret paths, possibly from different engines, in parallel.
+ * At most {@code maxConcurrency} requests are in flight at a time, and a failure of one path is reported
+ * in its {@link SecretResult} without failing the rest of the batch.
+ */
+public class VaultBulkSecrets {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VaultBulkSecrets.class);
+
+    private final VaultStaticSecretsAsync staticSecrets;
+    private final VaultDBSecretsAsync dbSecrets;
+    private final VaultDirectorySecretsAsync directorySecrets;
+    private final int maxConcurrency;
+
+
+    /**
+     * @param staticSecrets    the client for KV paths, or null if none are read
+     * @param dbSecrets        the client for database paths, or null if none are read
+     * @param directorySecrets the client for LDAP and AD paths, or null if none are read
+     * @param maxConcurrency   the maximum number of requests in flight at a time
+     */
+    public VaultBulkSecrets(VaultStaticSecretsAsync staticSecrets, VaultDBSecretsAsync dbSecrets,
+                            VaultDirectorySecretsAsync directorySecrets, int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be at least 1");
+        }
+        this.staticSecrets = staticSecrets;
+        this.dbSecrets = dbSecrets;
+        this.directorySecrets = directorySecrets;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+
+    /**
+     * Reads all requested paths and waits for the batch to finish.
+     *
+     * @param vaultToken the Vault token used for authentication
+     * @param requests   the paths to read
+     * @return one result per request, in request order; a request listed twice is read twice and has two results
+     */
+
+    public List<SecretResult> readAll(String vaultToken, Collection<SecretRequest> requests) {
+        return fetchAll(vaultToken, requests).join();
+    }
+
+    /**
+     * Starts reading all requested paths.
+     *
+     * @param vaultToken the Vault token used for authentication
+     * @param requests   the paths to read
+     * @return a future completed with one result per request, in request order, once every request has finished
+     */
+
+    public CompletableFuture<List<SecretResult>> fetchAll(String vaultToken, Collection<SecretRequest> requests) {
+        List<SecretRequest> pending = new ArrayList<>(requests);
+        AtomicReferenceArray<SecretResult> results = new AtomicReferenceArray<>(pending.size());
+        AtomicInteger next = new AtomicInteger();
+        CompletableFuture<?>[] workers = new CompletableFuture<?>[Math.min(maxConcurrency, pending.size())];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = readNext(vaultToken, pending, results, next);
+        }
+        return CompletableFuture.allOf(workers).thenApply(ignored -> {
+            // a list rather than a map by request, so that duplicate requests, e.g. two database credentials with
+            // leases of their own, each keep their result
+            List<SecretResult> ordered = new ArrayList<>(pending.size());
+            int failures = 0;
+            for (int i = 0; i < pending.size(); i++) {
+                SecretResult result = results.get(i);
+                if (!result.isSuccess()) {
+                    failures++;
+                }
+                ordered.add(result);
+            }
+            LOGGER.info("Bulk secret read of {} paths finished with {} failures", pending.size(), failures);
+            return ordered;
+        });
+    }
+
+    /**
+     * Reads the next unclaimed request and, once it completes, continues with the one after, so that each worker
+     * keeps exactly one request in flight until the batch is exhausted. Requests that complete immediately
+     * (e.g. cache hits) are handled in a loop rather than recursively.
+     */
+
+    private CompletableFuture<Void> readNext(String vaultToken, List<SecretRequest> pending, AtomicReferenceArray<SecretResult> results, AtomicInteger next) {
+        while (true) {
+            int index = next.getAndIncrement();
+            if (index >= pending.size()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            SecretRequest request = pending.get(index);
+            CompletableFuture<Void> recorded = read(vaultToken, request).handle((secrets, error) -> {
+                results.set(index, error == null ? SecretResult.success(request, secrets) : SecretResult.failure(request, unwrap(error)));
+                return null;
+            });
+            if (!recorded.isDone()) {
+                return recorded.thenCompose(ignored -> readNext(vaultToken, pending, results, next));
+            }
+        }
+    }
+
+    private CompletableFuture<Map<String, String>> read(String vaultToken, SecretRequest request) {
+        try {
+            switch (request.getEngine()) {
+                case KV:
+                    return requireClient(staticSecrets, request).readKVSecrets(vaultToken, request.getPath(), request.getKeys());
+                case DATABASE:
+                    return requireClient(dbSecrets, request).readDatabaseSecret(vaultToken, request.getPath());
+                case LDAP:
+                    return requireClient(directorySecrets, request).readLdapSecret(vaultToken, request.getPath());
+                case ACTIVE_DIRECTORY:
+                    int separator = request.getPath().lastIndexOf('/');
+                    return requireClient(directorySecrets, request).readActiveDirectorySecret(vaultToken,
+                            request.getPath().substring(0, separator), request.getPath().substring(separator + 1));
+                default:
+                    throw new IllegalArgumentException("Unsupported secret engine: " + request.getEngine());
+            }
+        } catch (RuntimeException ex) {
+            CompletableFuture<Map<String, String>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(ex);
+            return failed;
+        }
+    }
+
+    private static <T> T requireClient(T client, SecretRequest request) {
+        if (client == null) {
+            throw new IllegalStateException("No client configured for " + request.getEngine() + " secrets");
+        }
+        return client;
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+}
@@ -1,9 +1,19 @@
 package com.sc.hcv.secrets;
 
+import com.sc.hcv.VaultException;
+import com.sc.hcv.cache.SecretLoader;
+import com.sc.hcv.cache.SecretRequestCoalescer;
+import com.sc.hcv.cache.VaultSecretCache;
+import com.sc.hcv.response.VaultResponseDecoder;
+import com.sc.hcv.retry.RetryPolicy;
+import com.sc.hcv.retry.VaultRetryEngine;
+import com.sc.hcv.transport.VaultHttpTransport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
@@ -15,18 +25,21 @@ public class VaultDBSecrets {
     private static final Logger LOGGER = LoggerFactory.getLogger(com.sc.hcv.secrets.VaultDBSecrets.class);
 
     private final String vaultUrl;
-    private RestTemplate restTemplate;
-    private final int maxRetries;
-    private final long backoffInterval;
-    private final long maxBackoffInterval;
+    private final RestTemplate restTemplate;
+    private final RetryPolicy retryPolicy;
+    private VaultRetryEngine retryEngine = VaultRetryEngine.getDefault();
+    private final SecretRequestCoalescer requestCoalescer = new SecretRequestCoalescer();
+    private VaultSecretCache secretCache;
 
 
     public VaultDBSecrets(String vaultUrl, int maxRetries, long backoffInterval, long maxBackOffInterval) {
+        this(vaultUrl, maxRetries, backoffInterval, maxBackOffInterval, VaultHttpTransport.getDefault());
+    }
+
+    public VaultDBSecrets(String vaultUrl, int maxRetries, long backoffInterval, long maxBackOffInterval, VaultHttpTransport transport) {
         this.vaultUrl = vaultUrl;
-        this.maxRetries = maxRetries;
-        this.backoffInterval = backoffInterval;
-        this.maxBackoffInterval = maxBackOffInterval;
-        this.restTemplate = new RestTemplate();
+        this.retryPolicy = new RetryPolicy(maxRetries, backoffInterval, maxBackOffInterval);
+        this.restTemplate = transport.getRestTemplate();
     }
 
 
@@ -39,55 +52,167 @@ public class VaultDBSecrets {
      */
 
     public Map<String, String> readDatabaseSecret(String vaultToken, String databasePath) throws Exception {
-        int numRetries = 0;
-        while (numRetries < maxRetries) {
-            try {
-                Map<String, String> requestMap = new HashMap<>();
-                requestMap.put("token", vaultToken);
-
-                ResponseEntity<Map> response = restTemplate.getForEntity(vaultUrl + "/v1/" + databasePath, Map.class, requestMap);
-
-                if (response.getStatusCode() == HttpStatus.OK) {
-                    Map<String, String> data = response.getBody();
-                    LOGGER.info("Reading database secret retrieval from : {} successful", databasePath);
-                    return data;
-                } else {
-                    LOGGER.error("Vault database secret retrieval failed for path: {}", databasePath);
-                    throw new Exception("Vault database secret retrieval failed");
-                }
-            } catch (HttpClientErrorException ex) {
-                if (ex.getStatusCode() == HttpStatus.UNAUTHORIZED) {
-                    LOGGER.error("Invalid Vault token");
-                    throw new Exception("Invalid Vault token");
-                } else {
-                    numRetries++;
-                    LOGGER.warn("Retrying database secret retrieval after {} milliseconds", backoffInterval * numRetries);
-                    waitUntilConditionMet(backoffInterval * numRetries, maxBackoffInterval);
-                }
-            } catch (Exception ex) {
-                numRetries++;
-                LOGGER.warn("Retrying database secret retrieval after {} milliseconds", backoffInterval * numRetries);
-                waitUntilConditionMet(backoffInterval * numRetries, maxBackoffInterval);
+        VaultSecret secret = read(SecretEngine.DATABASE, databasePath, vaultToken, () -> fetchDatabaseSecret(vaultToken, databasePath));
+        return secret.copyBody();
+    }
+
+    /**
+     * Requests new dynamic database credentials and returns them together with their lease.
+     * Unlike {@link #readDatabaseSecret}, this always bypasses the cache, so every call creates a new database user.
+     * @param vaultToken the Vault token to use for authentication
+     * @param databasePath the path to the database credentials, e.g. database/creds/my-role
+     * @return the response envelope including lease_id, lease_duration and renewable
+     * @throws Exception if there is an error retrieving the database secret from Vault or if the maximum number of retries is exceeded
+     */
+
+    public VaultSecret readDatabaseLease(String vaultToken, String databasePath) throws Exception {
+        return fetchDatabaseSecret(vaultToken, databasePath);
+    }
+
+    /**
+     * Renews a lease through the sys/leases/renew endpoint.
+     * Vault grants less than the requested increment once the lease approaches its max TTL.
+     * @param vaultToken the Vault token to use for authentication
+     * @param leaseId the lease to renew
+     * @param increment the requested lease extension in seconds
+     * @return the renewal response with the new lease_duration
+     * @throws Exception if the lease can no longer be renewed or if the maximum number of retries is exceeded
+     */
+
+    public VaultSecret renewLease(String vaultToken, String leaseId, long increment) throws Exception {
+        return retryEngine.execute("Vault lease renewal", null, "sys/leases/renew", retryPolicy, () -> attemptRenewLease(vaultToken, leaseId, increment));
+    }
+
+    /**
+     * Performs a single sys/leases/renew request without retrying.
+     * @param vaultToken the Vault token to use for authentication
+     * @param leaseId the lease to renew
+     * @param increment the requested lease extension in seconds
+     * @return the renewal response
+     * @throws VaultException if the lease can no longer be renewed
+     * @throws Exception if the request fails and may be retried
+     */
+
+    VaultSecret attemptRenewLease(String vaultToken, String leaseId, long increment) throws Exception {
+        try {
+            HttpHeaders headers = new HttpHeaders();
+            if (vaultToken != null) {
+                headers.setBearerAuth(vaultToken);
+            }
+            Map<String, Object> requestMap = new HashMap<>();
+            requestMap.put("lease_id", leaseId);
+            requestMap.put("increment", increment);
+
+            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestMap, headers);
+            VaultSecret renewal = restTemplate.execute(vaultUrl + "/v1/sys/leases/renew", HttpMethod.PUT,
+                    restTemplate.httpEntityCallback(entity), VaultResponseDecoder.secretExtractor());
+
+            if (renewal != null) {
+                LOGGER.debug("Renewing lease {} successful", leaseId);
+                return renewal;
+            } else {
+                LOGGER.error("Vault lease renewal failed for lease: {}", leaseId);
+                throw new Exception("Vault lease renewal failed");
             }
+        } catch (HttpClientErrorException ex) {
+            if (ex.getStatusCode() == HttpStatus.UNAUTHORIZED || ex.getStatusCode() == HttpStatus.BAD_REQUEST || ex.getStatusCode() == HttpStatus.FORBIDDEN) {
+                LOGGER.error("Vault lease {} can no longer be renewed", leaseId);
+                throw new VaultException("Vault lease can no longer be renewed", ex.getRawStatusCode());
+            }
+            throw ex;
         }
-        LOGGER.error("Max retries exceeded for Vault database secret retrieval for path: {}", databasePath);
-        throw new Exception("Max retries exceeded for Vault database secret retrieval");
     }
 
+    /**
+     * Reads the complete response of a database secret path, including its lease information.
+     * @param vaultToken the Vault token to use for authentication
+     * @param databasePath the path to the database secret engine in Vault
+     * @return the response envelope
+     * @throws Exception if there is an error retrieving the database secret from Vault or if the maximum number of retries is exceeded
+     */
+
+    private VaultSecret fetchDatabaseSecret(String vaultToken, String databasePath) throws Exception {
+        return retryEngine.execute("Vault database secret retrieval", SecretEngine.DATABASE, databasePath, retryPolicy, () -> attemptDatabaseSecret(vaultToken, databasePath));
+    }
 
     /**
-     * This method will cause the thread to wait for a specific amount of time
-     * or until the maximum wait time is reached, whichever comes first.
-     *
-     * @param waitTime    the time (in milliseconds) to wait between iterations
-     * @param maxWaitTime the maximum time (in milliseconds) to wait for the condition to be met
-     * @throws InterruptedException if the thread is interrupted while waiting
+     * Performs a single read of a database secret path without retrying.
+     * @param vaultToken the Vault token to use for authentication
+     * @param databasePath the path to the database secret engine in Vault
+     * @return the response envelope
+     * @throws VaultException if Vault rejects the token
+     * @throws Exception if the request fails and may be retried
      */
 
-    private void waitUntilConditionMet(long waitTime, long maxWaitTime) throws InterruptedException {
-        long startTime = System.currentTimeMillis();
-        while (System.currentTimeMillis() - startTime < maxWaitTime) {
-            Thread.sleep(waitTime);
+    VaultSecret attemptDatabaseSecret(String vaultToken, String databasePath) throws Exception {
+        try {
+            HttpHeaders headers = new HttpHeaders();
+            if (vaultToken != null) {
+                headers.setBearerAuth(vaultToken);
+            }
+            HttpEntity<String> entity = new HttpEntity<>(null, headers);
+
+            VaultSecret secret = restTemplate.execute(vaultUrl + "/v1/" + databasePath, HttpMethod.GET,
+                    restTemplate.httpEntityCallback(entity), VaultResponseDecoder.secretExtractor());
+
+            if (secret != null) {
+                LOGGER.info("Reading database secret retrieval from : {} successful", databasePath);
+                return secret;
+            } else {
+                LOGGER.error("Vault database secret retrieval failed for path: {}", databasePath);
+                throw new Exception("Vault database secret retrieval failed");
+            }
+        } catch (HttpClientErrorException ex) {
+            if (ex.getStatusCode() == HttpStatus.UNAUTHORIZED) {
+                LOGGER.error("Invalid Vault token");
+                throw new VaultException("Invalid Vault token", ex.getRawStatusCode());
+            }
+            throw ex;
         }
     }
+
+    /**
+     * Reads a secret through the cache, if one is set, sharing any read of the same secret that is already in flight.
+     */
+
+    private VaultSecret read(SecretEngine engine, String path, String vaultToken, SecretLoader fetch) throws Exception {
+        SecretLoader loader = () -> requestCoalescer.load(engine, path, vaultToken, fetch);
+        return secretCache == null ? loader.load() : secretCache.get(engine, path, vaultToken, loader);
+    }
+
+    /**
+     * Places a cache in front of {@link #readDatabaseSecret}. Pass null to read from Vault on every call.
+     * @param secretCache the cache to use
+     */
+
+    public void setSecretCache(VaultSecretCache secretCache) {
+        this.secretCache = secretCache;
+    }
+
+
+    VaultSecretCache getSecretCache() {
+        return secretCache;
+    }
+
+    SecretRequestCoalescer getRequestCoalescer() {
+        return requestCoalescer;
+    }
+
+    /**
+     * Replaces the process-wide {@link VaultRetryEngine} used for this client's requests.
+     * @param retryEngine the retry engine to use
+     */
+
+    public void setRetryEngine(VaultRetryEngine retryEngine) {
+        this.retryEngine = retryEngine;
+    }
+
+    VaultRetryEngine getRetryEngine() {
+        return retryEngine;
+    }
+
+    RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
 }
@@ -0,0 +1,76 @@
+package com.sc.hcv.secrets;
+
+import com.sc.hcv.async.VaultAsyncExecutor;
+import com.sc.hcv.cache.VaultSecretCache;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking variant of {@link VaultDBSecrets}. Requests run on the I/O pool of a {@link VaultAsyncExecutor},
+ * retries are scheduled on its timer, and the cache of the wrapped client (if any) is consulted first.
+ */
+public class VaultDBSecretsAsync {
+
+    private final VaultDBSecrets dbSecrets;
+    private final VaultAsyncExecutor executor;
+
+
+    public VaultDBSecretsAsync(VaultDBSecrets dbSecrets, VaultAsyncExecutor executor) {
+        this.dbSecrets = dbSecrets;
+        this.executor = executor;
+    }
+
+
+    /**
+     * Retrieves a database secret from Vault using the Vault token and the database path.
+     * @param vaultToken the Vault token to use for authentication
+     * @param databasePath the path to the database secret engine in Vault
+     * @return a future completed with the database secret data
+     */
+
+    public CompletableFuture<Map<String, String>> readDatabaseSecret(String vaultToken, String databasePath) {
+        CompletableFuture<VaultSecret> secret = read(SecretEngine.DATABASE, databasePath, vaultToken, () -> fetch(vaultToken, databasePath));
+        return secret.thenApply(VaultSecret::copyBody);
+    }
+
+    /**
+     * Requests new dynamic database credentials, bypassing the cache.
+     * @param vaultToken the Vault token to use for authentication
+     * @param databasePath the path to the database credentials, e.g. database/creds/my-role
+     * @return a future completed with the response envelope including its lease
+     */
+
+    public CompletableFuture<VaultSecret> readDatabaseLease(String vaultToken, String databasePath) {
+        return fetch(vaultToken, databasePath);
+    }
+
+    /**
+     * Renews a lease through the sys/leases/renew endpoint.
+     * @param vaultToken the Vault token to use for authentication
+     * @param leaseId the lease to renew
+     * @param increment the requested lease extension in seconds
+     * @return a future completed with the renewal response
+     */
+
+    public CompletableFuture<VaultSecret> renewLease(String vaultToken, String leaseId, long increment) {
+        return executor.retry("Vault lease renewal", null, "sys/leases/renew", () -> dbSecrets.attemptRenewLease(vaultToken, leaseId, increment),
+                dbSecrets.getRetryEngine(), dbSecrets.getRetryPolicy());
+    }
+
+    /**
+     * Reads a secret through the cache, if one is set, sharing any read of the same secret that is already in flight.
+     */
+
+    private CompletableFuture<VaultSecret> read(SecretEngine engine, String path, String vaultToken, Supplier<CompletableFuture<VaultSecret>> fetch) {
+        Supplier<CompletableFuture<VaultSecret>> loader = () -> dbSecrets.getRequestCoalescer().loadAsync(engine, path, vaultToken, fetch);
+        VaultSecretCache secretCache = dbSecrets.getSecretCache();
+        return secretCache == null ? loader.get() : secretCache.getAsync(engine, path, vaultToken, loader);
+    }
+
+    private CompletableFuture<VaultSecret> fetch(String vaultToken, String databasePath) {
+        return executor.retry("Vault database secret retrieval", SecretEngine.DATABASE, databasePath, () -> dbSecrets.attemptDatabaseSecret(vaultToken, databasePath),
+                dbSecrets.getRetryEngine(), dbSecrets.getRetryPolicy());
+    }
+}
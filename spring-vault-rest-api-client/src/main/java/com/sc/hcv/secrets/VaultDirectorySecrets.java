@@ -1,6 +1,13 @@
 package com.sc.hcv.secrets;
 
-import org.json.JSONObject;
+import com.sc.hcv.VaultException;
+import com.sc.hcv.cache.SecretLoader;
+import com.sc.hcv.cache.SecretRequestCoalescer;
+import com.sc.hcv.cache.VaultSecretCache;
+import com.sc.hcv.response.VaultResponseDecoder;
+import com.sc.hcv.retry.RetryPolicy;
+import com.sc.hcv.retry.VaultRetryEngine;
+import com.sc.hcv.transport.VaultHttpTransport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.*;
@@ -8,7 +15,6 @@ import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 
 public class VaultDirectorySecrets {
@@ -16,18 +22,21 @@ public class VaultDirectorySecrets {
     private static final Logger LOGGER = LoggerFactory.getLogger(com.sc.hcv.secrets.VaultDirectorySecrets.class);
 
     private final String vaultUrl;
-    private  RestTemplate restTemplate;
-    private final int maxRetries;
-    private final long backoffInterval;
-    private final long maxBackoffInterval;
+    private final RestTemplate restTemplate;
+    private final RetryPolicy retryPolicy;
+    private VaultRetryEngine retryEngine = VaultRetryEngine.getDefault();
+    private final SecretRequestCoalescer requestCoalescer = new SecretRequestCoalescer();
+    private VaultSecretCache secretCache;
 
 
     public VaultDirectorySecrets(String vaultUrl, int maxRetries, long backoffInterval, long maxBackOffInterval) {
+        this(vaultUrl, maxRetries, backoffInterval, maxBackOffInterval, VaultHttpTransport.getDefault());
+    }
+
+    public VaultDirectorySecrets(String vaultUrl, int maxRetries, long backoffInterval, long maxBackOffInterval, VaultHttpTransport transport) {
         this.vaultUrl = vaultUrl;
-        this.maxRetries = maxRetries;
-        this.backoffInterval = backoffInterval;
-        this.maxBackoffInterval = maxBackOffInterval;
-        this.restTemplate = new RestTemplate();
+        this.retryPolicy = new RetryPolicy(maxRetries, backoffInterval, maxBackOffInterval);
+        this.restTemplate = transport.getRestTemplate();
     }
 
 
@@ -42,57 +51,71 @@ public class VaultDirectorySecrets {
      */
     public Map<String, String> readActiveDirectorySecret(String vaultToken, String adPath, String adKey) throws Exception {
         String secretPath = adPath + "/" + adKey;
-        Map<String, String> requestMap = new HashMap<>();
-        requestMap.put("token", vaultToken);
-
-        ResponseEntity<Map> response = null;
-        int numRetries = 0;
-        while (numRetries < maxRetries) {
-            try {
-                response = restTemplate.getForEntity(vaultUrl + "/v1/" + secretPath, Map.class, requestMap);
-
-                if (response.getStatusCode() == HttpStatus.OK) {
-                    JSONObject data = new JSONObject(response.getBody());
-                    if (data.has("data") && !data.isNull("data")) {
-                        JSONObject secretData = data.getJSONObject("data");
-                        Map<String, String> secretMap = new HashMap<>();
-                        Iterator<String> keys = secretData.keys();
-                        while (keys.hasNext()) {
-                            String key = keys.next();
-                            String value = secretData.getString(key);
-                            secretMap.put(key, value);
-                        }
-                        LOGGER.info("Vault AD secret retrieval from : {} successful", secretPath);
-                        return secretMap;
-                    } else {
-                        LOGGER.error("Vault AD secret not found for path: {}", secretPath);
-                        throw new Exception("Secret data not found");
-                    }
-                } else {
-                    LOGGER.error("Vault AD secret retrieval failed for path: {}", secretPath);
-                    throw new Exception("Secret retrieval failed");
+        VaultSecret secret = read(SecretEngine.ACTIVE_DIRECTORY, secretPath, vaultToken, () -> fetchActiveDirectorySecret(vaultToken, secretPath));
+        Map<String, String> secretMap = new HashMap<>();
+        for (Map.Entry<String, Object> entry : secret.getData().entrySet()) {
+            secretMap.put(entry.getKey(), String.valueOf(entry.getValue()));
+        }
+        return secretMap;
+    }
 
-                }
-            } catch (HttpClientErrorException ex) {
-                if (ex.getStatusCode() == HttpStatus.UNAUTHORIZED) {
-                    LOGGER.error("Invalid Vault token");
-                    throw new Exception("Invalid Vault token");
-                } else if (ex.getStatusCode() == HttpStatus.NOT_FOUND) {
-                    LOGGER.error("Vault AD secret not found for path: {}", secretPath);
-                    throw new Exception("Secret not found");
+    /**
+     * Reads the complete response of an Active Directory Secret Engine path, including its TTL.
+     *
+     * @param vaultToken   The Vault token used to authenticate with the Vault server.
+     * @param secretPath   The path to the secret in the Active Directory Secret Engine.
+     * @return             The response envelope.
+     * @throws Exception   If an error occurs while retrieving the secret, such as an invalid token or a non-existent secret.
+     */
+
+    private VaultSecret fetchActiveDirectorySecret(String vaultToken, String secretPath) throws Exception {
+        return retryEngine.execute("secret retrieval", SecretEngine.ACTIVE_DIRECTORY, secretPath, retryPolicy, () -> attemptActiveDirectorySecret(vaultToken, secretPath));
+    }
+
+    /**
+     * Performs a single read of an Active Directory Secret Engine path without retrying.
+     *
+     * @param vaultToken   The Vault token used to authenticate with the Vault server.
+     * @param secretPath   The path to the secret in the Active Directory Secret Engine.
+     * @return             The response envelope.
+     * @throws VaultException If Vault rejects the token or the secret does not exist.
+     * @throws Exception   If the request fails and may be retried.
+     */
+
+    VaultSecret attemptActiveDirectorySecret(String vaultToken, String secretPath) throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        if (vaultToken != null) {
+            headers.setBearerAuth(vaultToken);
+        }
+        HttpEntity<String> entity = new HttpEntity<>(null, headers);
+
+        try {
+            VaultSecret secret = restTemplate.execute(vaultUrl + "/v1/" + secretPath, HttpMethod.GET,
+                    restTemplate.httpEntityCallback(entity), VaultResponseDecoder.secretExtractor());
+
+            if (secret != null) {
+                if (secret.hasData()) {
+                    LOGGER.info("Vault AD secret retrieval from : {} successful", secretPath);
+                    return secret;
                 } else {
-                    numRetries++;
-                    LOGGER.warn("Retrying AD secret retrieval after {} milliseconds", backoffInterval * numRetries);
-                    waitUntilConditionMet(backoffInterval * numRetries, maxBackoffInterval);
+                    LOGGER.error("Vault AD secret not found for path: {}", secretPath);
+                    throw new Exception("Secret data not found");
                 }
-            } catch (Exception ex) {
-                numRetries++;
-                LOGGER.warn("Retrying AD secret retrieval after {} milliseconds", backoffInterval * numRetries);
-                waitUntilConditionMet(backoffInterval * numRetries, maxBackoffInterval);
+            } else {
+                LOGGER.error("Vault AD secret retrieval failed for path: {}", secretPath);
+                throw new Exception("Secret retrieval failed");
+
+            }
+        } catch (HttpClientErrorException ex) {
+            if (ex.getStatusCode() == HttpStatus.UNAUTHORIZED) {
+                LOGGER.error("Invalid Vault token");
+                throw new VaultException("Invalid Vault token", ex.getRawStatusCode());
+            } else if (ex.getStatusCode() == HttpStatus.NOT_FOUND) {
+                LOGGER.error("Vault AD secret not found for path: {}", secretPath);
+                throw new VaultException("Secret not found", ex.getRawStatusCode());
             }
+            throw ex;
         }
-        LOGGER.error("Max retries exceeded for Vault AD secret retrieval for path: {}", secretPath);
-        throw new Exception("Max retries exceeded for secret retrieval");
     }
 
     /**
@@ -105,62 +128,108 @@ public class VaultDirectorySecrets {
      */
 
     public Map<String, String> readLdapSecret(String vaultToken, String ldapPath) throws Exception {
-        int numRetries = 0;
-        while (numRetries < maxRetries) {
-            try {
-                Map<String, String> requestMap = new HashMap<>();
-                requestMap.put("token", vaultToken);
+        VaultSecret secret = read(SecretEngine.LDAP, ldapPath, vaultToken, () -> fetchLdapSecret(vaultToken, ldapPath));
+        return secret.copyBody();
+    }
+
+    /**
+     * Reads the complete response of an LDAP Secret Engine path, including its TTL.
+     *
+     * @param vaultToken   The Vault token used to authenticate with the Vault server.
+     * @param ldapPath     The path to the secret in the LDAP  Secret Engine.
+     * @return             The response envelope.
+     * @throws Exception   If an error occurs while retrieving the secret, such as an invalid token or a non-existent secret.
+     */
 
-                ResponseEntity<Map> response = restTemplate.getForEntity(vaultUrl + "/v1/" + ldapPath, Map.class, requestMap);
+    private VaultSecret fetchLdapSecret(String vaultToken, String ldapPath) throws Exception {
+        return retryEngine.execute("Vault LDAP secret retrieval", SecretEngine.LDAP, ldapPath, retryPolicy, () -> attemptLdapSecret(vaultToken, ldapPath));
+    }
 
-                if (response.getStatusCode() == HttpStatus.OK) {
-                    Map<String, String> data = response.getBody();
-                    LOGGER.info("Vault LDAP secret retrieval from : {} successful", ldapPath);
+    /**
+     * Performs a single read of an LDAP Secret Engine path without retrying.
+     *
+     * @param vaultToken   The Vault token used to authenticate with the Vault server.
+     * @param ldapPath     The path to the secret in the LDAP  Secret Engine.
+     * @return             The response envelope.
+     * @throws VaultException If Vault rejects the token or the secret does not exist.
+     * @throws Exception   If the request fails and may be retried.
+     */
 
-                    return data;
-                } else {
-                    LOGGER.error("Vault LDAP secret retrieval failed for path: {}", ldapPath);
-                    throw new Exception("Vault LDAP secret retrieval failed");
-                }
-            } catch (HttpClientErrorException ex) {
-                if (ex.getStatusCode() == HttpStatus.UNAUTHORIZED) {
-                    LOGGER.error("Invalid Vault token");
-                    throw new Exception("Invalid Vault token");
-                } else if (ex.getStatusCode() == HttpStatus.NOT_FOUND) {
-                    LOGGER.error("Vault LDAP secret not found for path: {}", ldapPath);
-                    throw new Exception("Secret not found");
-                } else {
-                    numRetries++;
-                    LOGGER.warn("Retrying LDAP secret retrieval after {} milliseconds", backoffInterval * numRetries);
-                    waitUntilConditionMet(backoffInterval * numRetries, maxBackoffInterval);
-                }
-            } catch (Exception ex) {
-                numRetries++;
-                LOGGER.warn("Retrying LDAP secret retrieval after {} milliseconds", backoffInterval * numRetries);
-                waitUntilConditionMet(backoffInterval * numRetries, maxBackoffInterval);
+    VaultSecret attemptLdapSecret(String vaultToken, String ldapPath) throws Exception {
+        try {
+            HttpHeaders headers = new HttpHeaders();
+            if (vaultToken != null) {
+                headers.setBearerAuth(vaultToken);
+            }
+            HttpEntity<String> entity = new HttpEntity<>(null, headers);
+
+            VaultSecret secret = restTemplate.execute(vaultUrl + "/v1/" + ldapPath, HttpMethod.GET,
+                    restTemplate.httpEntityCallback(entity), VaultResponseDecoder.secretExtractor());
+
+            if (secret != null) {
+                LOGGER.info("Vault LDAP secret retrieval from : {} successful", ldapPath);
+                return secret;
+            } else {
+                LOGGER.error("Vault LDAP secret retrieval failed for path: {}", ldapPath);
+                throw new Exception("Vault LDAP secret retrieval failed");
             }
+        } catch (HttpClientErrorException ex) {
+            if (ex.getStatusCode() == HttpStatus.UNAUTHORIZED) {
+                LOGGER.error("Invalid Vault token");
+                throw new VaultException("Invalid Vault token", ex.getRawStatusCode());
+            } else if (ex.getStatusCode() == HttpStatus.NOT_FOUND) {
+                LOGGER.error("Vault LDAP secret not found for path: {}", ldapPath);
+                throw new VaultException("Secret not found", ex.getRawStatusCode());
+            }
+            throw ex;
         }
-        throw new Exception("Max retries exceeded for Vault LDAP secret retrieval");
     }
 
 
+    /**
+     * Reads a secret through the cache, if one is set, sharing any read of the same secret that is already in flight.
+     */
+
+    private VaultSecret read(SecretEngine engine, String path, String vaultToken, SecretLoader fetch) throws Exception {
+        SecretLoader loader = () -> requestCoalescer.load(engine, path, vaultToken, fetch);
+        return secretCache == null ? loader.load() : secretCache.get(engine, path, vaultToken, loader);
+    }
+
+    /**
+     * Places a cache in front of {@link #readActiveDirectorySecret} and {@link #readLdapSecret}. Pass null to read from Vault on every call.
+     * @param secretCache the cache to use
+     */
+
+    public void setSecretCache(VaultSecretCache secretCache) {
+        this.secretCache = secretCache;
+    }
+
+    VaultSecretCache getSecretCache() {
+        return secretCache;
+    }
+
+    SecretRequestCoalescer getRequestCoalescer() {
+        return requestCoalescer;
+    }
 
     /**
-     * This method will cause the thread to wait for a specific amount of time
-     * or until the maximum wait time is reached, whichever comes first.
-     *
-     * @param waitTime    the time (in milliseconds) to wait between iterations
-     * @param maxWaitTime the maximum time (in milliseconds) to wait for the condition to be met
-     * @throws InterruptedException if the thread is interrupted while waiting
+     * Replaces the process-wide {@link VaultRetryEngine} used for this client's requests.
+     * @param retryEngine the retry engine to use
      */
 
-    private void waitUntilConditionMet(long waitTime, long maxWaitTime) throws InterruptedException {
-        long startTime = System.currentTimeMillis();
-        while (System.currentTimeMillis() - startTime < maxWaitTime) {
-            Thread.sleep(waitTime);
-        }
+    public void setRetryEngine(VaultRetryEngine retryEngine) {
+        this.retryEngine = retryEngine;
+    }
+
+    VaultRetryEngine getRetryEngine() {
+        return retryEngine;
+    }
+
+    RetryPolicy getRetryPolicy() {
+        return retryPolicy;
     }
 
 
+
 }
 
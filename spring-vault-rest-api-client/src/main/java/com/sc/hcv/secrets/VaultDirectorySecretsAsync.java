@@ -0,0 +1,80 @@
+package com.sc.hcv.secrets;
+
+import com.sc.hcv.async.VaultAsyncExecutor;
+import com.sc.hcv.cache.VaultSecretCache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking variant of {@link VaultDirectorySecrets}. Requests run on the I/O pool of a {@link VaultAsyncExecutor},
+ * retries are scheduled on its timer, and the cache of the wrapped client (if any) is consulted first.
+ */
+public class VaultDirectorySecretsAsync {
+
+    private final VaultDirectorySecrets directorySecrets;
+    private final VaultAsyncExecutor executor;
+
+
+    public VaultDirectorySecretsAsync(VaultDirectorySecrets directorySecrets, VaultAsyncExecutor executor) {
+        this.directorySecrets = directorySecrets;
+        this.executor = executor;
+    }
+
+
+    /**
+     * Retrieves a secret from the Active Directory Secret Engine.
+     *
+     * @param vaultToken The Vault token used to authenticate with the Vault server.
+     * @param adPath     The path to the secret in the Active Directory Secret Engine.
+     * @param adKey      The key of the secret to retrieve.
+     * @return A future completed with the secret data.
+     */
+
+    public CompletableFuture<Map<String, String>> readActiveDirectorySecret(String vaultToken, String adPath, String adKey) {
+        String secretPath = adPath + "/" + adKey;
+        CompletableFuture<VaultSecret> secret = read(SecretEngine.ACTIVE_DIRECTORY, secretPath, vaultToken, () -> fetchActiveDirectory(vaultToken, secretPath));
+        return secret.thenApply(response -> {
+            Map<String, String> secretMap = new HashMap<>();
+            for (Map.Entry<String, Object> entry : response.getData().entrySet()) {
+                secretMap.put(entry.getKey(), String.valueOf(entry.getValue()));
+            }
+            return secretMap;
+        });
+    }
+
+    /**
+     * Retrieves a secret from the LDAP Secret Engine.
+     *
+     * @param vaultToken The Vault token used to authenticate with the Vault server.
+     * @param ldapPath   The path to the secret in the LDAP Secret Engine.
+     * @return A future completed with the secret response.
+     */
+
+    public CompletableFuture<Map<String, String>> readLdapSecret(String vaultToken, String ldapPath) {
+        CompletableFuture<VaultSecret> secret = read(SecretEngine.LDAP, ldapPath, vaultToken, () -> fetchLdap(vaultToken, ldapPath));
+        return secret.thenApply(VaultSecret::copyBody);
+    }
+
+    /**
+     * Reads a secret through the cache, if one is set, sharing any read of the same secret that is already in flight.
+     */
+
+    private CompletableFuture<VaultSecret> read(SecretEngine engine, String path, String vaultToken, Supplier<CompletableFuture<VaultSecret>> fetch) {
+        Supplier<CompletableFuture<VaultSecret>> loader = () -> directorySecrets.getRequestCoalescer().loadAsync(engine, path, vaultToken, fetch);
+        VaultSecretCache secretCache = directorySecrets.getSecretCache();
+        return secretCache == null ? loader.get() : secretCache.getAsync(engine, path, vaultToken, loader);
+    }
+
+    private CompletableFuture<VaultSecret> fetchActiveDirectory(String vaultToken, String secretPath) {
+        return executor.retry("AD secret retrieval", SecretEngine.ACTIVE_DIRECTORY, secretPath, () -> directorySecrets.attemptActiveDirectorySecret(vaultToken, secretPath),
+                directorySecrets.getRetryEngine(), directorySecrets.getRetryPolicy());
+    }
+
+    private CompletableFuture<VaultSecret> fetchLdap(String vaultToken, String ldapPath) {
+        return executor.retry("LDAP secret retrieval", SecretEngine.LDAP, ldapPath, () -> directorySecrets.attemptLdapSecret(vaultToken, ldapPath),
+                directorySecrets.getRetryEngine(), directorySecrets.getRetryPolicy());
+    }
+}
@@ -0,0 +1,215 @@
+package com.sc.hcv.secrets;
+
+import com.sc.hcv.auth.TokenDigest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Encrypts data locally with AES-GCM under data keys generated by the Transit engine, so that only the generation and
+ * unwrapping of data keys reaches Vault.
+ * <p>
+ * One data key is used for encryption until it is {@code keyTtl} milliseconds old or has encrypted
+ * {@code maxUsesPerKey} payloads, then a new one is generated. Each payload carries its data key in wrapped form:
+ * <pre>
+ * version (1 byte) | wrapped key length (2 bytes) | wrapped key | IV (12 bytes) | ciphertext and GCM tag
+ * </pre>
+ * and the header is authenticated along with the ciphertext. On decryption, unwrapped keys are cached by their wrapped
+ * form under the same age and use limits, so a run of payloads under one data key costs a single {@code decrypt} call,
+ * which is itself batched by {@link VaultTransitSecrets}.
+ * <p>
+ * Data keys, whether used for encryption or cached for decryption, are held per token, so that a token is never
+ * handed a key it could not have obtained from Vault itself.
+ */
+public class VaultEnvelopeEncryption {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VaultEnvelopeEncryption.class);
+
+    private static final byte VERSION = 1;
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+    private static final int KEY_BITS = 256;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final VaultTransitSecrets transit;
+    private final String keyName;
+    private final long keyTtl;
+    private final long maxUsesPerKey;
+    private final int maxCachedKeys;
+    private final DataKeyCache decryptionKeys;
+    private final ReentrantLock rotationLock = new ReentrantLock();
+    private final ConcurrentHashMap<String, EncryptionKey> encryptionKeys = new ConcurrentHashMap<>();
+
+
+    /**
+     * @param transit       the client used to generate and unwrap data keys
+     * @param keyName       the Transit key that wraps the data keys
+     * @param maxCachedKeys the maximum number of unwrapped data keys kept for decryption, and of tokens whose current
+     *                      data key is kept for encryption
+     * @param keyTtl        how long (ms) a data key is used and cached
+     * @param maxUsesPerKey how many payloads a data key encrypts, or decrypts from the cache, before it is replaced
+     */
+    public VaultEnvelopeEncryption(VaultTransitSecrets transit, String keyName, int maxCachedKeys, long keyTtl, long maxUsesPerKey) {
+        this.transit = transit;
+        this.keyName = keyName;
+        this.keyTtl = keyTtl;
+        this.maxUsesPerKey = maxUsesPerKey;
+        this.maxCachedKeys = maxCachedKeys;
+        this.decryptionKeys = new DataKeyCache(maxCachedKeys, keyTtl, maxUsesPerKey);
+    }
+
+
+    /**
+     * Encrypts a payload under the current data key, generating a new one first if it is used up.
+     *
+     * @param vaultToken the Vault token used for authentication
+     * @param plaintext  the payload
+     * @return the envelope holding the wrapped data key and the ciphertext
+     * @throws Exception if a data key cannot be generated
+     */
+
+    public byte[] encrypt(String vaultToken, byte[] plaintext) throws Exception {
+        EncryptionKey key = acquireKey(vaultToken, TokenDigest.of(vaultToken));
+        byte[] wrapped = key.wrappedKey.getBytes(StandardCharsets.US_ASCII);
+        byte[] iv = new byte[IV_LENGTH];
+        RANDOM.nextBytes(iv);
+
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, key.key, new GCMParameterSpec(TAG_BITS, iv));
+        int headerLength = 1 + 2 + wrapped.length + IV_LENGTH;
+        ByteBuffer envelope = ByteBuffer.allocate(headerLength + cipher.getOutputSize(plaintext.length));
+        envelope.put(VERSION).putShort((short) wrapped.length).put(wrapped).put(iv);
+        cipher.updateAAD(envelope.array(), 0, headerLength);
+        cipher.doFinal(ByteBuffer.wrap(plaintext), envelope);
+        return envelope.array();
+    }
+
+    /**
+     * Decrypts an envelope created by {@link #encrypt}, unwrapping its data key through Vault unless it is cached.
+     *
+     * @param vaultToken the Vault token used for authentication
+     * @param envelope   the envelope
+     * @return the payload
+     * @throws GeneralSecurityException if the envelope was modified or is not an envelope
+     * @throws Exception if the data key cannot be unwrapped
+     */
+
+    public byte[] decrypt(String vaultToken, byte[] envelope) throws Exception {
+        ByteBuffer buffer = ByteBuffer.wrap(envelope);
+        if (envelope.length < 3 || buffer.get() != VERSION) {
+            throw new GeneralSecurityException("Not an envelope");
+        }
+        int wrappedLength = buffer.getShort() & 0xffff;
+        int headerLength = 1 + 2 + wrappedLength + IV_LENGTH;
+        if (envelope.length < headerLength + TAG_BITS / 8) {
+            throw new GeneralSecurityException("Not an envelope");
+        }
+        String wrappedKey = new String(envelope, 3, wrappedLength, StandardCharsets.US_ASCII);
+
+        String tokenDigest = TokenDigest.of(vaultToken);
+        SecretKeySpec key = decryptionKeys.get(tokenDigest, wrappedKey);
+        if (key == null) {
+            byte[] plaintextKey = transit.decrypt(vaultToken, keyName, wrappedKey);
+            key = new SecretKeySpec(plaintextKey, "AES");
+            Arrays.fill(plaintextKey, (byte) 0);
+            decryptionKeys.put(tokenDigest, wrappedKey, key);
+        }
+
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, envelope, headerLength - IV_LENGTH, IV_LENGTH));
+        cipher.updateAAD(envelope, 0, headerLength);
+        return cipher.doFinal(envelope, headerLength, envelope.length - headerLength);
+    }
+
+    /**
+     * Drops the current data keys and all cached keys, e.g. after the Transit key was rotated.
+     */
+
+    public void clearKeys() {
+        encryptionKeys.clear();
+        decryptionKeys.clear();
+    }
+
+    /**
+     * Counts one use of the token's current data key, replacing it first when it is too old or used up. Only one
+     * thread generates a new key; the others wait for it.
+     */
+
+    private EncryptionKey acquireKey(String vaultToken, String tokenDigest) throws Exception {
+        EncryptionKey key = encryptionKeys.get(tokenDigest);
+        if (key != null && key.tryUse()) {
+            return key;
+        }
+        rotationLock.lock();
+        try {
+            key = encryptionKeys.get(tokenDigest);
+            if (key != null && key.tryUse()) {
+                return key;
+            }
+            TransitDataKey dataKey = transit.generateDataKey(vaultToken, keyName, KEY_BITS);
+            SecretKeySpec spec = new SecretKeySpec(dataKey.getPlaintext(), "AES");
+            Arrays.fill(dataKey.getPlaintext(), (byte) 0);
+            key = new EncryptionKey(spec, dataKey.getCiphertext(), System.currentTimeMillis() + keyTtl, maxUsesPerKey);
+            key.tryUse();
+            decryptionKeys.put(tokenDigest, dataKey.getCiphertext(), spec);
+            encryptionKeys.put(tokenDigest, key);
+            if (encryptionKeys.size() > maxCachedKeys) {
+                evictEncryptionKeys();
+            }
+            LOGGER.debug("Generated a new data key under Transit key {}", keyName);
+            return key;
+        } finally {
+            rotationLock.unlock();
+        }
+    }
+
+    /**
+     * Drops used up keys and then the ones closest to expiry, down to {@code maxCachedKeys}. Called under the
+     * rotation lock.
+     */
+
+    private void evictEncryptionKeys() {
+        long now = System.currentTimeMillis();
+        encryptionKeys.values().removeIf(key -> !key.isUsable(now));
+        while (encryptionKeys.size() > maxCachedKeys) {
+            encryptionKeys.entrySet().stream()
+                    .min(Comparator.comparingLong(entry -> entry.getValue().expiresAt))
+                    .ifPresent(entry -> encryptionKeys.remove(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    private static final class EncryptionKey {
+        private final SecretKeySpec key;
+        private final String wrappedKey;
+        private final long expiresAt;
+        private final AtomicLong remainingUses;
+
+        EncryptionKey(SecretKeySpec key, String wrappedKey, long expiresAt, long maxUses) {
+            this.key = key;
+            this.wrappedKey = wrappedKey;
+            this.expiresAt = expiresAt;
+            this.remainingUses = new AtomicLong(maxUses);
+        }
+
+        boolean isUsable(long now) {
+            return now < expiresAt && remainingUses.get() > 0;
+        }
+
+        boolean tryUse() {
+            return System.currentTimeMillis() < expiresAt && remainingUses.getAndDecrement() > 0;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.sc.hcv.secrets;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable response of a Vault secret read: the "data" block together with the lease information of the envelope.
+ */
+public class VaultSecret {
+
+    private final String requestId;
+    private final String leaseId;
+    private final long leaseDuration;
+    private final boolean renewable;
+    private final Map<String, Object> data;
+    private final WrapInfo wrapInfo;
+    private volatile Map<String, Object> body;
+
+
+    /**
+     * @param requestId     the request_id of the response
+     * @param leaseId       the lease_id, empty if the secret is not leased
+     * @param leaseDuration the lease_duration in seconds
+     * @param renewable     whether the lease is renewable
+     * @param data          the "data" block, or null if the response has none
+     * @param wrapInfo      the "wrap_info" block, or null if the response is not wrapped
+     */
+    public VaultSecret(String requestId, String leaseId, long leaseDuration, boolean renewable, Map<String, Object> data, WrapInfo wrapInfo) {
+        this.requestId = requestId == null ? "" : requestId;
+        this.leaseId = leaseId == null ? "" : leaseId;
+        this.leaseDuration = leaseDuration;
+        this.renewable = renewable;
+        this.data = data == null ? null : Collections.unmodifiableMap(data);
+        this.wrapInfo = wrapInfo;
+    }
+
+    /**
+     * Creates a secret from an already parsed response envelope.
+     *
+     * @param body the response envelope
+     */
+    @SuppressWarnings("unchecked")
+    public VaultSecret(Map<String, Object> body) {
+        this(body == null ? null : stringValue(body.get("request_id")),
+                body == null ? null : stringValue(body.get("lease_id")),
+                body == null ? 0 : toLong(body.get("lease_duration")),
+                body != null && Boolean.TRUE.equals(body.get("renewable")),
+                body != null && body.get("data") instanceof Map ? (Map<String, Object>) body.get("data") : null,
+                null);
+        this.body = body == null ? Collections.<String, Object>emptyMap() : Collections.unmodifiableMap(body);
+    }
+
+    /**
+     * @return the response envelope as a map, built on first use for decoded responses
+     */
+    public Map<String, Object> getBody() {
+        Map<String, Object> current = body;
+        if (current == null) {
+            Map<String, Object> envelope = new LinkedHashMap<>();
+            envelope.put("request_id", requestId);
+            envelope.put("lease_id", leaseId);
+            envelope.put("renewable", renewable);
+            envelope.put("lease_duration", leaseDuration);
+            envelope.put("data", data);
+            envelope.put("wrap_info", wrapInfo == null ? null : wrapInfo.toMap());
+            current = Collections.unmodifiableMap(envelope);
+            body = current;
+        }
+        return current;
+    }
+
+    /**
+     * @return a mutable copy of the response envelope, typed as the {@code Map<String, String>} that the database and
+     * LDAP read methods have always returned
+     */
+    @SuppressWarnings("unchecked")
+    Map<String, String> copyBody() {
+        // values are not converted: as in the responses these methods returned before, non-string values such as
+        // lease_duration keep their JSON type behind the String type argument
+        return new HashMap<>((Map<String, String>) (Map<String, ?>) getBody());
+    }
+
+    /**
+     * @return the "data" block of the response, or an empty map if the response has none
+     */
+    public Map<String, Object> getData() {
+        return data == null ? Collections.<String, Object>emptyMap() : data;
+    }
+
+    /**
+     * @return true if the response contained a non-null "data" block
+     */
+    public boolean hasData() {
+        return data != null;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public String getLeaseId() {
+        return leaseId;
+    }
+
+    /**
+     * @return the lease duration in seconds, 0 if the secret is not leased
+     */
+    public long getLeaseDuration() {
+        return leaseDuration;
+    }
+
+    public boolean isRenewable() {
+        return renewable;
+    }
+
+    /**
+     * @return the "wrap_info" block, or null if the response is not wrapped
+     */
+    public WrapInfo getWrapInfo() {
+        return wrapInfo;
+    }
+
+    /**
+     * Returns how long the secret may be reused, in seconds. This is the lease duration for leased secrets,
+     * and the "ttl" reported in the data block (LDAP and AD credentials) otherwise.
+     *
+     * @return the TTL in seconds, 0 if Vault did not report one
+     */
+    public long getTtl() {
+        return leaseDuration > 0 ? leaseDuration : toLong(getData().get("ttl"));
+    }
+
+    /**
+     * Returns the requested keys of the data block as strings.
+     *
+     * @param secretKeys the keys to return
+     * @return a new map containing the requested key-value pairs
+     * @throws Exception if one of the keys is missing or is not a string
+     */
+    public Map<String, String> getStrings(String... secretKeys) throws Exception {
+        Map<String, Object> data = getData();
+        Map<String, String> secrets = new HashMap<>();
+        for (String secretKey : secretKeys) {
+            Object value = data.get(secretKey);
+            if (!(value instanceof String)) {
+                throw new Exception("Secret key not found: " + secretKey);
+            }
+            secrets.put(secretKey, (String) value);
+        }
+        return secrets;
+    }
+
+    private static String stringValue(Object value) {
+        return value == null ? null : value.toString();
+    }
+
+    private static long toLong(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof String) {
+            try {
+                return Long.parseLong((String) value);
+            } catch (NumberFormatException ignored) {
+                return 0;
+            }
+        }
+        return 0;
+    }
+}
@@ -1,13 +1,19 @@
 package com.sc.hcv.secrets;
 
-import org.json.JSONObject;
+import com.sc.hcv.VaultException;
+import com.sc.hcv.cache.SecretLoader;
+import com.sc.hcv.cache.SecretRequestCoalescer;
+import com.sc.hcv.cache.VaultSecretCache;
+import com.sc.hcv.response.VaultResponseDecoder;
+import com.sc.hcv.retry.RetryPolicy;
+import com.sc.hcv.retry.VaultRetryEngine;
+import com.sc.hcv.transport.VaultHttpTransport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.*;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
-import java.util.HashMap;
 import java.util.Map;
 
 public class VaultStaticSecrets {
@@ -15,18 +21,21 @@ public class VaultStaticSecrets {
     private static final Logger LOGGER = LoggerFactory.getLogger(com.sc.hcv.secrets.VaultStaticSecrets.class);
 
     private final String vaultUrl;
-    private RestTemplate restTemplate;
-    private final int maxRetries;
-    private final long backoffInterval;
-    private final long maxBackoffInterval;
+    private final RestTemplate restTemplate;
+    private final RetryPolicy retryPolicy;
+    private VaultRetryEngine retryEngine = VaultRetryEngine.getDefault();
+    private final SecretRequestCoalescer requestCoalescer = new SecretRequestCoalescer();
+    private VaultSecretCache secretCache;
 
 
     public VaultStaticSecrets(String vaultUrl, int maxRetries, long backoffInterval, long maxBackOffInterval) {
+        this(vaultUrl, maxRetries, backoffInterval, maxBackOffInterval, VaultHttpTransport.getDefault());
+    }
+
+    public VaultStaticSecrets(String vaultUrl, int maxRetries, long backoffInterval, long maxBackOffInterval, VaultHttpTransport transport) {
         this.vaultUrl = vaultUrl;
-        this.maxRetries = maxRetries;
-        this.backoffInterval = backoffInterval;
-        this.maxBackoffInterval = maxBackOffInterval;
-        this.restTemplate = new RestTemplate();
+        this.retryPolicy = new RetryPolicy(maxRetries, backoffInterval, maxBackOffInterval);
+        this.restTemplate = transport.getRestTemplate();
     }
 
 
@@ -41,64 +50,176 @@ public class VaultStaticSecrets {
      */
 
     public Map<String, String> readKVSecrets(String vaultToken, String secretPath, String... secretKeys) throws Exception {
-        int numRetries = 0;
+        VaultSecret secret = read(SecretEngine.KV, secretPath, vaultToken, () -> fetchKVSecret(vaultToken, secretPath));
+        return secret.getStrings(secretKeys);
+    }
+
+    /**
+     * Reads the complete response of a Vault key-value (KV) path.
+     * @param vaultToken The Vault token used for authentication.
+     * @param secretPath The path of the KV engine where the secrets are stored.
+     * @return The response envelope including its lease information.
+     * @throws Exception If the authentication fails or the secret cannot be retrieved after the maximum number of retries.
+     */
 
-        // Retry logic is implemented here, similar to AuthN
-        while (numRetries < maxRetries) {
-            try {
-                HttpHeaders headers = new HttpHeaders();
+    private VaultSecret fetchKVSecret(String vaultToken, String secretPath) throws Exception {
+        return retryEngine.execute("reading secrets from Key-Value", SecretEngine.KV, secretPath, retryPolicy, () -> attemptKVSecret(vaultToken, secretPath));
+    }
+
+    /**
+     * Performs a single read of a Vault key-value (KV) path without retrying.
+     * @param vaultToken The Vault token used for authentication.
+     * @param secretPath The path of the KV engine where the secrets are stored.
+     * @return The response envelope.
+     * @throws VaultException If Vault rejects the token.
+     * @throws Exception If the request fails and may be retried.
+     */
+
+    VaultSecret attemptKVSecret(String vaultToken, String secretPath) throws Exception {
+        try {
+            HttpHeaders headers = new HttpHeaders();
+            if (vaultToken != null) {
                 headers.setBearerAuth(vaultToken);
-                HttpEntity<String> entity = new HttpEntity<>(null, headers);
-                ResponseEntity<String> response = restTemplate.exchange(vaultUrl + "/v1/" + secretPath, HttpMethod.GET, entity, String.class);
-
-                if (response.getStatusCode() == HttpStatus.OK) {
-                    JSONObject jsonResponse = new JSONObject(response.getBody());
-                    JSONObject data = jsonResponse.getJSONObject("data");
-                    Map<String, String> secrets = new HashMap<>();
-                    for (String secretKey : secretKeys) {
-                        secrets.put(secretKey, data.getString(secretKey));
-                    }
-                    LOGGER.info("Reading secrets from Key-Value: {} successful", secretPath);
-                    return secrets;
-                } else {
-                    LOGGER.error("Error reading secrets from Key-Value: {}", secretPath);
-                    throw new Exception("Error reading secrets from Key-Value");
-                }
-            } catch (HttpClientErrorException ex) {
-                if (ex.getStatusCode() == HttpStatus.UNAUTHORIZED) {
-                    LOGGER.error("Invalid Vault token");
-                    throw new Exception("Invalid Vault token");
-                } else {
-                    numRetries++;
-                    LOGGER.warn("Retrying reading secrets from Key-Value after {} milliseconds", backoffInterval * numRetries);
-                    waitUntilConditionMet(backoffInterval * numRetries, maxBackoffInterval);
-                }
-            } catch (Exception ex) {
-                numRetries++;
-                LOGGER.warn("Retrying reading secrets from Key-Value after {} milliseconds", backoffInterval * numRetries);
-                waitUntilConditionMet(backoffInterval * numRetries, maxBackoffInterval);
             }
+            HttpEntity<String> entity = new HttpEntity<>(null, headers);
+            VaultSecret secret = restTemplate.execute(vaultUrl + "/v1/" + secretPath, HttpMethod.GET,
+                    restTemplate.httpEntityCallback(entity), VaultResponseDecoder.secretExtractor());
+
+            if (secret != null) {
+                LOGGER.info("Reading secrets from Key-Value: {} successful", secretPath);
+                return secret;
+            } else {
+                LOGGER.error("Error reading secrets from Key-Value: {}", secretPath);
+                throw new Exception("Error reading secrets from Key-Value");
+            }
+        } catch (HttpClientErrorException ex) {
+            if (ex.getStatusCode() == HttpStatus.UNAUTHORIZED) {
+                LOGGER.error("Invalid Vault token");
+                throw new VaultException("Invalid Vault token", ex.getRawStatusCode());
+            }
+            throw ex;
         }
-        LOGGER.error("Max retries exceeded for reading secrets from Key-Value: {}", secretPath);
-        throw new Exception("Max retries exceeded for reading secrets from Key-Value");
     }
 
+    /**
+     * Reads the current version of a KV version 2 secret from its metadata endpoint, without downloading the secret.
+     * @param vaultToken The Vault token used for authentication.
+     * @param secretPath The KV version 2 path of the secret, in the form {@code <mount>/data/<path>}.
+     * @return The current version, or 0 if the secret does not exist.
+     * @throws Exception If the authentication fails or the metadata cannot be retrieved after the maximum number of retries.
+     */
+
+    public long readKVCurrentVersion(String vaultToken, String secretPath) throws Exception {
+        String metadataPath = metadataPath(secretPath);
+        return retryEngine.execute("reading Key-Value metadata", SecretEngine.KV, metadataPath, retryPolicy, () -> attemptKVCurrentVersion(vaultToken, metadataPath));
+    }
+
+    /**
+     * Reads one version of a KV version 2 secret, bypassing the cache.
+     * @param vaultToken The Vault token used for authentication.
+     * @param secretPath The KV version 2 path of the secret, in the form {@code <mount>/data/<path>}.
+     * @param version    The version to read.
+     * @return The response envelope, whose data holds the secret under "data" and its version under "metadata".
+     * @throws Exception If the authentication fails or the secret cannot be retrieved after the maximum number of retries.
+     */
+
+    public VaultSecret readKVSecretVersion(String vaultToken, String secretPath, long version) throws Exception {
+        return retryEngine.execute("reading secrets from Key-Value", SecretEngine.KV, secretPath, retryPolicy, () -> attemptKVSecret(vaultToken, secretPath + "?version=" + version));
+    }
+
+    /**
+     * Performs a single read of a KV version 2 metadata path without retrying.
+     * @param vaultToken   The Vault token used for authentication.
+     * @param metadataPath The metadata path of the secret.
+     * @return The current version, or 0 if the secret does not exist.
+     * @throws VaultException If Vault rejects the token.
+     * @throws Exception If the request fails and may be retried.
+     */
+
+    long attemptKVCurrentVersion(String vaultToken, String metadataPath) throws Exception {
+        try {
+            HttpHeaders headers = new HttpHeaders();
+            if (vaultToken != null) {
+                headers.setBearerAuth(vaultToken);
+            }
+            HttpEntity<String> entity = new HttpEntity<>(null, headers);
+            VaultSecret metadata = restTemplate.execute(vaultUrl + "/v1/" + metadataPath, HttpMethod.GET,
+                    restTemplate.httpEntityCallback(entity), VaultResponseDecoder.secretExtractor());
 
+            Object version = metadata == null ? null : metadata.getData().get("current_version");
+            if (version instanceof Number) {
+                return ((Number) version).longValue();
+            }
+            LOGGER.error("Error reading Key-Value metadata: {}", metadataPath);
+            throw new Exception("Error reading Key-Value metadata");
+        } catch (HttpClientErrorException ex) {
+            if (ex.getStatusCode() == HttpStatus.UNAUTHORIZED) {
+                LOGGER.error("Invalid Vault token");
+                throw new VaultException("Invalid Vault token", ex.getRawStatusCode());
+            } else if (ex.getStatusCode() == HttpStatus.NOT_FOUND) {
+                VaultRetryEngine.reportStatus(ex.getRawStatusCode());
+                return 0;
+            }
+            throw ex;
+        }
+    }
 
     /**
-     * This method will cause the thread to wait for a specific amount of time
-     * or until the maximum wait time is reached, whichever comes first.
-     *
-     * @param waitTime    the time (in milliseconds) to wait between iterations
-     * @param maxWaitTime the maximum time (in milliseconds) to wait for the condition to be met
-     * @throws InterruptedException if the thread is interrupted while waiting
+     * Maps {@code <mount>/data/<path>} to {@code <mount>/metadata/<path>}.
      */
 
-    private void waitUntilConditionMet(long waitTime, long maxWaitTime) throws InterruptedException {
-        long startTime = System.currentTimeMillis();
-        while (System.currentTimeMillis() - startTime < maxWaitTime) {
-            Thread.sleep(waitTime);
+    static String metadataPath(String secretPath) {
+        int data = secretPath.indexOf("/data/");
+        if (data < 0) {
+            throw new IllegalArgumentException("Not a KV version 2 path: " + secretPath);
         }
+        return secretPath.substring(0, data) + "/metadata/" + secretPath.substring(data + "/data/".length());
+    }
+
+    /**
+     * Reads a secret through the cache, if one is set, sharing any read of the same secret that is already in flight.
+     */
+
+    private VaultSecret read(SecretEngine engine, String path, String vaultToken, SecretLoader fetch) throws Exception {
+        SecretLoader loader = () -> requestCoalescer.load(engine, path, vaultToken, fetch);
+        return secretCache == null ? loader.load() : secretCache.get(engine, path, vaultToken, loader);
+    }
+
+    /**
+     * Places a cache in front of {@link #readKVSecrets}. Pass null to read from Vault on every call.
+     * @param secretCache the cache to use
+     */
+
+    public void setSecretCache(VaultSecretCache secretCache) {
+        this.secretCache = secretCache;
     }
+
+
+
+    VaultSecretCache getSecretCache() {
+        return secretCache;
+    }
+
+    SecretRequestCoalescer getRequestCoalescer() {
+        return requestCoalescer;
+    }
+
+    /**
+     * Replaces the process-wide {@link VaultRetryEngine} used for this client's requests.
+     * @param retryEngine the retry engine to use
+     */
+
+    public void setRetryEngine(VaultRetryEngine retryEngine) {
+        this.retryEngine = retryEngine;
+    }
+
+    VaultRetryEngine getRetryEngine() {
+        return retryEngine;
+    }
+
+    RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
 }
 
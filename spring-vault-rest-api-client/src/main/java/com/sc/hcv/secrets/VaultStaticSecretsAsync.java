@@ -0,0 +1,70 @@
+package com.sc.hcv.secrets;
+
+import com.sc.hcv.async.VaultAsyncExecutor;
+import com.sc.hcv.cache.VaultSecretCache;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking variant of {@link VaultStaticSecrets}. Requests run on the I/O pool of a {@link VaultAsyncExecutor},
+ * retries are scheduled on its timer, and the cache of the wrapped client (if any) is consulted first.
+ */
+public class VaultStaticSecretsAsync {
+
+    private final VaultStaticSecrets secrets;
+    private final VaultAsyncExecutor executor;
+
+
+    public VaultStaticSecretsAsync(VaultStaticSecrets secrets, VaultAsyncExecutor executor) {
+        this.secrets = secrets;
+        this.executor = executor;
+    }
+
+
+    /**
+     * Retrieves multiple secrets from a Vault key-value (KV) path.
+     * @param vaultToken The Vault token used for authentication.
+     * @param secretPath The path of the KV engine where the secrets are stored.
+     * @param secretKeys A list of secret keys to retrieve.
+     * @return A future completed with the secret key-value pairs.
+     */
+
+    public CompletableFuture<Map<String, String>> readKVSecrets(String vaultToken, String secretPath, String... secretKeys) {
+        return readKVSecret(vaultToken, secretPath).thenApply(secret -> {
+            try {
+                return secret.getStrings(secretKeys);
+            } catch (Exception ex) {
+                throw new CompletionException(ex);
+            }
+        });
+    }
+
+    /**
+     * Reads the complete response of a Vault key-value (KV) path.
+     * @param vaultToken The Vault token used for authentication.
+     * @param secretPath The path of the KV engine where the secrets are stored.
+     * @return A future completed with the response envelope.
+     */
+
+    public CompletableFuture<VaultSecret> readKVSecret(String vaultToken, String secretPath) {
+        return read(SecretEngine.KV, secretPath, vaultToken, () -> fetch(vaultToken, secretPath));
+    }
+
+    /**
+     * Reads a secret through the cache, if one is set, sharing any read of the same secret that is already in flight.
+     */
+
+    private CompletableFuture<VaultSecret> read(SecretEngine engine, String path, String vaultToken, Supplier<CompletableFuture<VaultSecret>> fetch) {
+        Supplier<CompletableFuture<VaultSecret>> loader = () -> secrets.getRequestCoalescer().loadAsync(engine, path, vaultToken, fetch);
+        VaultSecretCache secretCache = secrets.getSecretCache();
+        return secretCache == null ? loader.get() : secretCache.getAsync(engine, path, vaultToken, loader);
+    }
+
+    private CompletableFuture<VaultSecret> fetch(String vaultToken, String secretPath) {
+        return executor.retry("reading secrets from Key-Value", SecretEngine.KV, secretPath, () -> secrets.attemptKVSecret(vaultToken, secretPath),
+                secrets.getRetryEngine(), secrets.getRetryPolicy());
+    }
+}
@@ -0,0 +1,527 @@
+package com.sc.hcv.secrets;
+
+import com.sc.hcv.VaultException;
+import com.sc.hcv.async.VaultThreads;
+import com.sc.hcv.response.VaultResponseDecoder;
+import com.sc.hcv.retry.RetryPolicy;
+import com.sc.hcv.retry.VaultRetryEngine;
+import com.sc.hcv.transport.VaultHttpTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Encrypts, decrypts and rewraps data with the Transit secret engine.
+ * <p>
+ * Single-record calls are collected into {@code batch_input} requests: records for the same operation, key and token
+ * are sent together once {@code batchSize} of them are waiting, or {@code linger} milliseconds after the first one
+ * arrived, whichever comes first. Each record still gets its own result or error. The {@code *Batch} methods send a
+ * list directly, and {@link #encryptAll} encrypts a record stream one batch at a time, so only one batch is held in
+ * memory. Batches are retried as a whole through the shared {@link VaultRetryEngine}.
+ */
+public class VaultTransitSecrets implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(com.sc.hcv.secrets.VaultTransitSecrets.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 250;
+    public static final long DEFAULT_LINGER = 5;
+
+    private static final String ENCRYPT = "encrypt";
+    private static final String DECRYPT = "decrypt";
+    private static final String REWRAP = "rewrap";
+
+    private final String vaultUrl;
+    private final RestTemplate restTemplate;
+    private final RetryPolicy retryPolicy;
+    private VaultRetryEngine retryEngine = VaultRetryEngine.getDefault();
+    private String mountPath = "transit";
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private long linger = DEFAULT_LINGER;
+
+    private final ReentrantLock batchLock = new ReentrantLock();
+    private final Map<BatchKey, PendingBatch> pending = new HashMap<>();
+    private final ExecutorService sender = VaultThreads.newTaskExecutor("vault-transit", 4);
+    private final ScheduledExecutorService timer = VaultThreads.newScheduler("vault-transit-linger");
+
+
+    public VaultTransitSecrets(String vaultUrl, int maxRetries, long backoffInterval, long maxBackOffInterval) {
+        this(vaultUrl, maxRetries, backoffInterval, maxBackOffInterval, VaultHttpTransport.getDefault());
+    }
+
+    public VaultTransitSecrets(String vaultUrl, int maxRetries, long backoffInterval, long maxBackOffInterval, VaultHttpTransport transport) {
+        this.vaultUrl = vaultUrl;
+        this.retryPolicy = new RetryPolicy(maxRetries, backoffInterval, maxBackOffInterval);
+        this.restTemplate = transport.getRestTemplate();
+    }
+
+
+    /**
+     * Encrypts one record, batched with other records for the same key.
+     * @param vaultToken the Vault token used for authentication
+     * @param keyName    the name of the Transit key
+     * @param plaintext  the data to encrypt
+     * @return the ciphertext, e.g. vault:v1:...
+     * @throws Exception if the record cannot be encrypted or the maximum number of retries is exceeded
+     */
+
+    public String encrypt(String vaultToken, String keyName, byte[] plaintext) throws Exception {
+        return await(encryptAsync(vaultToken, keyName, plaintext));
+    }
+
+    public CompletableFuture<String> encryptAsync(String vaultToken, String keyName, byte[] plaintext) {
+        return submit(ENCRYPT, vaultToken, keyName, plaintextItem(plaintext)).thenApply(result -> (String) result.get("ciphertext"));
+    }
+
+    /**
+     * Decrypts one ciphertext, batched with other ciphertexts for the same key.
+     * @param vaultToken the Vault token used for authentication
+     * @param keyName    the name of the Transit key
+     * @param ciphertext the ciphertext returned by an encryption
+     * @return the plaintext
+     * @throws Exception if the ciphertext cannot be decrypted or the maximum number of retries is exceeded
+     */
+
+    public byte[] decrypt(String vaultToken, String keyName, String ciphertext) throws Exception {
+        return await(decryptAsync(vaultToken, keyName, ciphertext));
+    }
+
+    public CompletableFuture<byte[]> decryptAsync(String vaultToken, String keyName, String ciphertext) {
+        return submit(DECRYPT, vaultToken, keyName, ciphertextItem(ciphertext)).thenApply(VaultTransitSecrets::plaintextOf);
+    }
+
+    /**
+     * Re-encrypts one ciphertext with the latest version of the key, without revealing the plaintext.
+     * @param vaultToken the Vault token used for authentication
+     * @param keyName    the name of the Transit key
+     * @param ciphertext the ciphertext to rewrap
+     * @return the ciphertext under the latest key version
+     * @throws Exception if the ciphertext cannot be rewrapped or the maximum number of retries is exceeded
+     */
+
+    public String rewrap(String vaultToken, String keyName, String ciphertext) throws Exception {
+        return await(rewrapAsync(vaultToken, keyName, ciphertext));
+    }
+
+    public CompletableFuture<String> rewrapAsync(String vaultToken, String keyName, String ciphertext) {
+        return submit(REWRAP, vaultToken, keyName, ciphertextItem(ciphertext)).thenApply(result -> (String) result.get("ciphertext"));
+    }
+
+    /**
+     * Encrypts a list of records, sending one request per {@code batchSize} records.
+     * @return the ciphertexts, in record order
+     * @throws VaultException if any record is rejected
+     * @throws Exception if a batch cannot be sent or the maximum number of retries is exceeded
+     */
+
+    public List<String> encryptBatch(String vaultToken, String keyName, List<byte[]> plaintexts) throws Exception {
+        List<Map<String, Object>> items = new ArrayList<>(plaintexts.size());
+        for (byte[] plaintext : plaintexts) {
+            items.add(plaintextItem(plaintext));
+        }
+        return strings(send(ENCRYPT, vaultToken, keyName, items), "ciphertext");
+    }
+
+    /**
+     * Decrypts a list of ciphertexts, sending one request per {@code batchSize} ciphertexts.
+     * @return the plaintexts, in ciphertext order
+     * @throws VaultException if any ciphertext is rejected
+     * @throws Exception if a batch cannot be sent or the maximum number of retries is exceeded
+     */
+
+    public List<byte[]> decryptBatch(String vaultToken, String keyName, List<String> ciphertexts) throws Exception {
+        List<byte[]> plaintexts = new ArrayList<>(ciphertexts.size());
+        for (Map<String, Object> result : send(DECRYPT, vaultToken, keyName, ciphertextItems(ciphertexts))) {
+            plaintexts.add(plaintextOf(result));
+        }
+        return plaintexts;
+    }
+
+    /**
+     * Rewraps a list of ciphertexts, sending one request per {@code batchSize} ciphertexts.
+     * @return the rewrapped ciphertexts, in input order
+     * @throws VaultException if any ciphertext is rejected
+     * @throws Exception if a batch cannot be sent or the maximum number of retries is exceeded
+     */
+
+    public List<String> rewrapBatch(String vaultToken, String keyName, List<String> ciphertexts) throws Exception {
+        return strings(send(REWRAP, vaultToken, keyName, ciphertextItems(ciphertexts)), "ciphertext");
+    }
+
+    /**
+     * Encrypts a stream of records of any length. Records are read and sent {@code batchSize} at a time, and each
+     * batch's ciphertexts are passed on, in record order, before the next batch is read.
+     * @param plaintexts the records to encrypt
+     * @param ciphertexts receives the ciphertext of each record
+     * @return the number of records encrypted
+     * @throws VaultException if any record is rejected; ciphertexts of earlier batches have been passed on
+     * @throws Exception if a batch cannot be sent or the maximum number of retries is exceeded
+     */
+
+    public long encryptAll(String vaultToken, String keyName, Iterator<byte[]> plaintexts, Consumer<String> ciphertexts) throws Exception {
+        long count = 0;
+        List<Map<String, Object>> items = new ArrayList<>(batchSize);
+        while (plaintexts.hasNext()) {
+            items.add(plaintextItem(plaintexts.next()));
+            if (items.size() == batchSize || !plaintexts.hasNext()) {
+                for (String ciphertext : strings(send(ENCRYPT, vaultToken, keyName, items), "ciphertext")) {
+                    ciphertexts.accept(ciphertext);
+                }
+                count += items.size();
+                items.clear();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Generates a data key through {@code datakey/plaintext}, for encrypting data locally.
+     * @param vaultToken the Vault token used for authentication
+     * @param keyName    the name of the Transit key that wraps the data key
+     * @param bits       the size of the data key: 128, 256 or 512
+     * @return the plaintext data key together with its wrapped form
+     * @throws Exception if the key cannot be generated or the maximum number of retries is exceeded
+     */
+
+    public TransitDataKey generateDataKey(String vaultToken, String keyName, int bits) throws Exception {
+        String path = mountPath + "/datakey/plaintext/" + keyName;
+        return retryEngine.execute("Transit data key", SecretEngine.TRANSIT, path, retryPolicy, () -> attemptDataKey(vaultToken, path, bits));
+    }
+
+    /**
+     * Performs a single data key request without retrying.
+     * @throws VaultException if Vault rejects the token or the request
+     * @throws Exception if the request fails and may be retried
+     */
+
+    TransitDataKey attemptDataKey(String vaultToken, String path, int bits) throws Exception {
+        try {
+            HttpHeaders headers = new HttpHeaders();
+            if (vaultToken != null) {
+                headers.setBearerAuth(vaultToken);
+            }
+            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(Collections.<String, Object>singletonMap("bits", bits), headers);
+            VaultSecret response = restTemplate.execute(vaultUrl + "/v1/" + path, HttpMethod.POST,
+                    restTemplate.httpEntityCallback(entity), VaultResponseDecoder.secretExtractor());
+
+            Object plaintext = response == null ? null : response.getData().get("plaintext");
+            Object ciphertext = response == null ? null : response.getData().get("ciphertext");
+            if (plaintext instanceof String && ciphertext instanceof String) {
+                LOGGER.debug("Generating data key from {} successful", path);
+                return new TransitDataKey(Base64.getDecoder().decode((String) plaintext), (String) ciphertext);
+            }
+            LOGGER.error("Error reading the data key from {}", path);
+            throw new Exception("Error reading the Transit data key");
+        } catch (HttpClientErrorException ex) {
+            if (ex.getStatusCode().is4xxClientError() && ex.getStatusCode() != HttpStatus.TOO_MANY_REQUESTS) {
+                LOGGER.error("Vault rejected the data key request for {}", path);
+                throw new VaultException("Transit data key request rejected", ex.getRawStatusCode());
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Sends the items in batches of {@code batchSize} and fails if any item was rejected.
+     */
+
+    private List<Map<String, Object>> send(String operation, String vaultToken, String keyName, List<Map<String, Object>> items) throws Exception {
+        List<Map<String, Object>> results = new ArrayList<>(items.size());
+        for (int start = 0; start < items.size(); start += batchSize) {
+            List<Map<String, Object>> batch = items.subList(start, Math.min(items.size(), start + batchSize));
+            List<Map<String, Object>> batchResults = sendBatch(operation, vaultToken, keyName, batch);
+            for (int i = 0; i < batchResults.size(); i++) {
+                Object error = batchResults.get(i).get("error");
+                if (error != null && !error.toString().isEmpty()) {
+                    throw new VaultException("Transit " + operation + " failed for record " + (start + i) + ": " + error, HttpStatus.BAD_REQUEST.value());
+                }
+            }
+            results.addAll(batchResults);
+        }
+        return results;
+    }
+
+    private List<Map<String, Object>> sendBatch(String operation, String vaultToken, String keyName, List<Map<String, Object>> batch) throws Exception {
+        String path = mountPath + "/" + operation + "/" + keyName;
+        return retryEngine.execute("Transit " + operation, SecretEngine.TRANSIT, path, retryPolicy, () -> attemptBatch(vaultToken, path, batch));
+    }
+
+    /**
+     * Performs a single batch request without retrying.
+     * @return one result per item, in item order; rejected items carry an "error"
+     * @throws VaultException if Vault rejects the token or the whole request
+     * @throws Exception if the request fails and may be retried
+     */
+
+    List<Map<String, Object>> attemptBatch(String vaultToken, String path, List<Map<String, Object>> batch) throws Exception {
+        VaultSecret response;
+        try {
+            HttpHeaders headers = new HttpHeaders();
+            if (vaultToken != null) {
+                headers.setBearerAuth(vaultToken);
+            }
+            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(Collections.<String, Object>singletonMap("batch_input", batch), headers);
+            response = restTemplate.execute(vaultUrl + "/v1/" + path, HttpMethod.POST,
+                    restTemplate.httpEntityCallback(entity), VaultResponseDecoder.secretExtractor());
+        } catch (HttpClientErrorException ex) {
+            if (ex.getStatusCode() == HttpStatus.UNAUTHORIZED || ex.getStatusCode() == HttpStatus.FORBIDDEN) {
+                LOGGER.error("Vault rejected the token for {}", path);
+                throw new VaultException("Invalid Vault token", ex.getRawStatusCode());
+            }
+            if (ex.getStatusCode() != HttpStatus.BAD_REQUEST) {
+                throw ex;
+            }
+            // Vault answers 400 when any item of the batch fails, with the results of every item in the body
+            response = VaultResponseDecoder.decodeSecret(new ByteArrayInputStream(ex.getResponseBodyAsByteArray()));
+            if (!(response.getData().get("batch_results") instanceof List)) {
+                throw new VaultException("Transit request rejected: " + ex.getResponseBodyAsString(), ex.getRawStatusCode());
+            }
+        }
+        Object results = response == null ? null : response.getData().get("batch_results");
+        if (!(results instanceof List) || ((List<?>) results).size() != batch.size()) {
+            LOGGER.error("Error reading Transit batch results from {}", path);
+            throw new Exception("Error reading Transit batch results");
+        }
+        List<Map<String, Object>> batchResults = new ArrayList<>(batch.size());
+        for (Object result : (List<?>) results) {
+            batchResults.add(result instanceof Map ? castMap(result) : Collections.<String, Object>emptyMap());
+        }
+        LOGGER.debug("Transit batch of {} records to {} successful", batch.size(), path);
+        return batchResults;
+    }
+
+    /**
+     * Adds one item to the pending batch for its operation, key and token, and sends the batch once it is full.
+     */
+
+    private CompletableFuture<Map<String, Object>> submit(String operation, String vaultToken, String keyName, Map<String, Object> item) {
+        CompletableFuture<Map<String, Object>> result = new CompletableFuture<>();
+        BatchKey key = new BatchKey(operation, vaultToken, keyName);
+        PendingBatch full = null;
+        batchLock.lock();
+        try {
+            PendingBatch batch = pending.get(key);
+            if (batch == null) {
+                batch = new PendingBatch(key);
+                pending.put(key, batch);
+                PendingBatch scheduled = batch;
+                try {
+                    timer.schedule(() -> flush(scheduled), linger, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException ex) {
+                    pending.remove(key);
+                    result.completeExceptionally(new IllegalStateException("VaultTransitSecrets is closed"));
+                    return result;
+                }
+            }
+            batch.items.add(item);
+            batch.results.add(result);
+            if (batch.items.size() >= batchSize) {
+                pending.remove(key);
+                full = batch;
+            }
+        } finally {
+            batchLock.unlock();
+        }
+        if (full != null) {
+            dispatch(full);
+        }
+        return result;
+    }
+
+    private void flush(PendingBatch batch) {
+        batchLock.lock();
+        try {
+            if (!pending.remove(batch.key, batch)) {
+                return;
+            }
+        } finally {
+            batchLock.unlock();
+        }
+        dispatch(batch);
+    }
+
+    private void dispatch(PendingBatch batch) {
+        try {
+            sender.execute(() -> {
+                try {
+                    List<Map<String, Object>> results = sendBatch(batch.key.operation, batch.key.vaultToken, batch.key.keyName, batch.items);
+                    for (int i = 0; i < results.size(); i++) {
+                        Object error = results.get(i).get("error");
+                        if (error != null && !error.toString().isEmpty()) {
+                            batch.results.get(i).completeExceptionally(new VaultException("Transit " + batch.key.operation + " failed: " + error,
+                                    HttpStatus.BAD_REQUEST.value()));
+                        } else {
+                            batch.results.get(i).complete(results.get(i));
+                        }
+                    }
+                } catch (Exception ex) {
+                    for (CompletableFuture<Map<String, Object>> result : batch.results) {
+                        result.completeExceptionally(ex);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            for (CompletableFuture<Map<String, Object>> result : batch.results) {
+                result.completeExceptionally(new IllegalStateException("VaultTransitSecrets is closed"));
+            }
+        }
+    }
+
+    /**
+     * Sets the mount path of the Transit engine; defaults to "transit".
+     * @param mountPath the mount path
+     */
+
+    public void setMountPath(String mountPath) {
+        this.mountPath = mountPath;
+    }
+
+    /**
+     * Sets how records are batched.
+     * @param batchSize the maximum number of records per request
+     * @param linger    the longest time (ms) a single-record call waits for others to share its request
+     */
+
+    public void setBatching(int batchSize, long linger) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1");
+        }
+        this.batchSize = batchSize;
+        this.linger = linger;
+    }
+
+    /**
+     * Replaces the process-wide {@link VaultRetryEngine} used for this client's requests.
+     * @param retryEngine the retry engine to use
+     */
+
+    public void setRetryEngine(VaultRetryEngine retryEngine) {
+        this.retryEngine = retryEngine;
+    }
+
+    /**
+     * Sends the records still waiting for their batch to fill and stops the batching threads.
+     */
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        List<PendingBatch> remaining;
+        batchLock.lock();
+        try {
+            remaining = new ArrayList<>(pending.values());
+            pending.clear();
+        } finally {
+            batchLock.unlock();
+        }
+        for (PendingBatch batch : remaining) {
+            dispatch(batch);
+        }
+        sender.shutdown();
+    }
+
+    private static Map<String, Object> plaintextItem(byte[] plaintext) {
+        return Collections.<String, Object>singletonMap("plaintext", Base64.getEncoder().encodeToString(plaintext));
+    }
+
+    private static Map<String, Object> ciphertextItem(String ciphertext) {
+        return Collections.<String, Object>singletonMap("ciphertext", ciphertext);
+    }
+
+    private static List<Map<String, Object>> ciphertextItems(List<String> ciphertexts) {
+        List<Map<String, Object>> items = new ArrayList<>(ciphertexts.size());
+        for (String ciphertext : ciphertexts) {
+            items.add(ciphertextItem(ciphertext));
+        }
+        return items;
+    }
+
+    private static byte[] plaintextOf(Map<String, Object> result) {
+        Object plaintext = result.get("plaintext");
+        return plaintext == null ? new byte[0] : Base64.getDecoder().decode(plaintext.toString());
+    }
+
+    private static List<String> strings(List<Map<String, Object>> results, String field) {
+        List<String> values = new ArrayList<>(results.size());
+        for (Map<String, Object> result : results) {
+            values.add((String) result.get(field));
+        }
+        return values;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> castMap(Object value) {
+        return (Map<String, Object>) value;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw ex;
+        }
+    }
+
+    private static final class BatchKey {
+        private final String operation;
+        private final String vaultToken;
+        private final String keyName;
+
+        BatchKey(String operation, String vaultToken, String keyName) {
+            this.operation = operation;
+            this.vaultToken = vaultToken;
+            this.keyName = keyName;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof BatchKey)) {
+                return false;
+            }
+            BatchKey that = (BatchKey) other;
+            return operation.equals(that.operation) && Objects.equals(vaultToken, that.vaultToken) && keyName.equals(that.keyName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(operation, vaultToken, keyName);
+        }
+    }
+
+    private static final class PendingBatch {
+        private final BatchKey key;
+        private final List<Map<String, Object>> items = new ArrayList<>();
+        private final List<CompletableFuture<Map<String, Object>>> results = new ArrayList<>();
+
+        PendingBatch(BatchKey key) {
+            this.key = key;
+        }
+    }
+}
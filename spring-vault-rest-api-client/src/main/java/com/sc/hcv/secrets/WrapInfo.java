@@ -0,0 +1,61 @@
+package com.sc.hcv.secrets;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable view of the "wrap_info" block Vault returns in place of the data of a response-wrapped request.
+ */
+public class WrapInfo {
+
+    private final String token;
+    private final String accessor;
+    private final long ttl;
+    private final String creationTime;
+    private final String creationPath;
+
+
+    public WrapInfo(String token, String accessor, long ttl, String creationTime, String creationPath) {
+        this.token = token;
+        this.accessor = accessor;
+        this.ttl = ttl;
+        this.creationTime = creationTime;
+        this.creationPath = creationPath;
+    }
+
+    /**
+     * @return the single-use token that unwraps the response
+     */
+    public String getToken() {
+        return token;
+    }
+
+    public String getAccessor() {
+        return accessor;
+    }
+
+    /**
+     * @return the TTL of the wrapping token in seconds
+     */
+    public long getTtl() {
+        return ttl;
+    }
+
+    public String getCreationTime() {
+        return creationTime;
+    }
+
+    public String getCreationPath() {
+        return creationPath;
+    }
+
+    Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("token", token);
+        map.put("accessor", accessor);
+        map.put("ttl", ttl);
+        map.put("creation_time", creationTime);
+        map.put("creation_path", creationPath);
+        return map;
+    }
+}
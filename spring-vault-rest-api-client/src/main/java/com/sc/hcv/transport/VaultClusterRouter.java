@@ -0,0 +1,239 @@
+package com.sc.hcv.transport;
+
+import com.sc.hcv.async.VaultThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.support.HttpRequestWrapper;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spreads the requests of all clients on a transport across the nodes of a Vault cluster.
+ * <p>
+ * The router is installed as an interceptor on the transport's RestTemplate. Clients are built with
+ * {@link #getVaultUrl()} as their Vault URL, and every request addressed to one of the nodes is sent to the node the
+ * router selects instead, including the certificate logins a {@link com.sc.hcv.auth.VaultAuthenticator} on the transport
+ * sends over a transport of its own:
+ * <ul>
+ * <li>reads (GET) go to a performance standby, or to the active node when no performance standby is available;</li>
+ * <li>logins, renewals and other writes go to the active node.</li>
+ * </ul>
+ * Among the eligible nodes, two are picked at random and the one with the lower average response time is used, so
+ * slow nodes get less traffic without all clients moving to the same node at once. Node roles are refreshed from
+ * {@code sys/health} in the background; a node that fails to respond is skipped until its next successful probe.
+ * <p>
+ * For read-after-write consistency, the {@code X-Vault-Index} returned by the latest write is sent with later reads
+ * together with {@code X-Vault-Inconsistent: forward-active-node}, so a standby that has not yet replicated the write
+ * forwards the read to the active node.
+ */
+public class VaultClusterRouter implements ClientHttpRequestInterceptor, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VaultClusterRouter.class);
+
+    static final String INDEX_HEADER = "X-Vault-Index";
+    static final String INCONSISTENT_HEADER = "X-Vault-Inconsistent";
+
+    private static final ParameterizedTypeReference<Map<String, Object>> HEALTH_TYPE = new ParameterizedTypeReference<Map<String, Object>>() {
+    };
+
+    private final List<VaultNode> nodes;
+    private final RestTemplate probeTemplate;
+    private final ScheduledExecutorService scheduler = VaultThreads.newScheduler("vault-health-probe");
+    private volatile String lastWriteIndex;
+
+
+    /**
+     * @param nodeUrls  the addresses of the Vault nodes, e.g. https://vault-1:8200
+     * @param transport the transport whose requests are routed
+     */
+    public VaultClusterRouter(List<String> nodeUrls, VaultHttpTransport transport) {
+        if (nodeUrls.isEmpty()) {
+            throw new IllegalArgumentException("At least one Vault node is required");
+        }
+        List<VaultNode> created = new ArrayList<>();
+        for (String nodeUrl : nodeUrls) {
+            created.add(new VaultNode(nodeUrl.trim()));
+        }
+        this.nodes = Collections.unmodifiableList(created);
+        // probes are sent on the transport's connections, but must not be rerouted, by this or any other router
+        this.probeTemplate = new RestTemplate(transport.getRequestFactory());
+        transport.getRestTemplate().getInterceptors().add(this);
+    }
+
+
+    /**
+     * Probes every node now and then every {@code probeInterval} milliseconds.
+     *
+     * @param probeInterval the time (ms) between two probes of the cluster
+     */
+
+    public void start(long probeInterval) {
+        scheduler.scheduleWithFixedDelay(this::probe, 0, probeInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the URL to build the clients with; requests to it are routed across the cluster
+     */
+    public String getVaultUrl() {
+        return nodes.get(0).getUri().toString();
+    }
+
+    public List<VaultNode> getNodes() {
+        return nodes;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        if (!isClusterRequest(request.getURI())) {
+            return execution.execute(request, body);
+        }
+        boolean read = request.getMethod() == HttpMethod.GET;
+        VaultNode node = select(read);
+        URI target = UriComponentsBuilder.fromUri(request.getURI())
+                .scheme(node.getUri().getScheme()).host(node.getUri().getHost()).port(node.getUri().getPort())
+                .build(true).toUri();
+        HttpRequest routed = new HttpRequestWrapper(request) {
+            @Override
+            public URI getURI() {
+                return target;
+            }
+        };
+        String index = lastWriteIndex;
+        if (read && index != null) {
+            routed.getHeaders().set(INDEX_HEADER, index);
+            routed.getHeaders().set(INCONSISTENT_HEADER, "forward-active-node");
+        }
+
+        long start = System.nanoTime();
+        ClientHttpResponse response;
+        try {
+            response = execution.execute(routed, body);
+        } catch (IOException ex) {
+            LOGGER.warn("Vault node {} did not respond, skipping it until it passes a health check", node.getUri());
+            node.setRole(VaultNode.Role.UNREACHABLE);
+            throw ex;
+        }
+        node.recordLatency(System.nanoTime() - start);
+        if (response.getRawStatusCode() == 503) {
+            node.setRole(VaultNode.Role.SEALED);
+        }
+        String responseIndex = response.getHeaders().getFirst(INDEX_HEADER);
+        if (!read && responseIndex != null) {
+            lastWriteIndex = responseIndex;
+        }
+        return response;
+    }
+
+    /**
+     * Reads {@code sys/health} of every node and updates its role.
+     */
+
+    void probe() {
+        for (VaultNode node : nodes) {
+            long start = System.nanoTime();
+            try {
+                ResponseEntity<Map<String, Object>> health = probeTemplate.exchange(node.getUri()
+                        + "/v1/sys/health?standbyok=true&perfstandbyok=true&sealedcode=200&uninitcode=200", HttpMethod.GET, null, HEALTH_TYPE);
+                node.recordLatency(System.nanoTime() - start);
+                node.setRole(roleOf(health.getBody()));
+            } catch (RestClientException ex) {
+                if (node.getRole() != VaultNode.Role.UNREACHABLE) {
+                    LOGGER.warn("Health check of Vault node {} failed", node.getUri(), ex);
+                }
+                node.setRole(VaultNode.Role.UNREACHABLE);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    static VaultNode.Role roleOf(Map<?, ?> health) {
+        if (health == null || Boolean.TRUE.equals(health.get("sealed")) || Boolean.FALSE.equals(health.get("initialized"))) {
+            return VaultNode.Role.SEALED;
+        }
+        if (Boolean.TRUE.equals(health.get("performance_standby"))) {
+            return VaultNode.Role.PERFORMANCE_STANDBY;
+        }
+        return Boolean.TRUE.equals(health.get("standby")) ? VaultNode.Role.STANDBY : VaultNode.Role.ACTIVE;
+    }
+
+    /**
+     * Picks the node for a request: the performance standbys for reads if any are available, otherwise the active
+     * node, otherwise any node that is not known to be down, and as a last resort any node at all.
+     */
+
+    VaultNode select(boolean read) {
+        List<VaultNode> candidates = read ? withRole(VaultNode.Role.PERFORMANCE_STANDBY) : Collections.<VaultNode>emptyList();
+        if (candidates.isEmpty()) {
+            candidates = withRole(VaultNode.Role.ACTIVE);
+        }
+        if (candidates.isEmpty()) {
+            candidates = new ArrayList<>();
+            for (VaultNode node : nodes) {
+                if (node.isAvailable()) {
+                    candidates.add(node);
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
+            candidates = nodes;
+        }
+        return pickFaster(candidates);
+    }
+
+    private List<VaultNode> withRole(VaultNode.Role role) {
+        List<VaultNode> matching = new ArrayList<>();
+        for (VaultNode node : nodes) {
+            if (node.getRole() == role) {
+                matching.add(node);
+            }
+        }
+        return matching;
+    }
+
+    private static VaultNode pickFaster(List<VaultNode> candidates) {
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates.size());
+        int second = random.nextInt(candidates.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        VaultNode a = candidates.get(first);
+        VaultNode b = candidates.get(second);
+        return a.getLatencyMillis() <= b.getLatencyMillis() ? a : b;
+    }
+
+    private boolean isClusterRequest(URI uri) {
+        for (VaultNode node : nodes) {
+            if (node.matches(uri)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,235 @@
+package com.sc.hcv.transport;
+
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.ssl.SSLContexts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import javax.net.ssl.SSLContext;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared HTTP transport for the Vault clients.
+ * Wraps a pooled, keep-alive Apache HttpClient and a RestTemplate on top of it, so that
+ * connections and TLS sessions are reused across calls instead of being set up per request.
+ */
+public class VaultHttpTransport implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VaultHttpTransport.class);
+
+    /**
+     * The address of the {@code listener "tcp"} block in vault-agent-config.hcl.
+     */
+    public static final String DEFAULT_AGENT_URL = "http://127.0.0.1:8202";
+
+    private static VaultHttpTransport defaultTransport;
+
+    private final VaultTransportConfig config;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final ClientHttpRequestFactory requestFactory;
+    private final RestTemplate restTemplate;
+
+
+    public VaultHttpTransport(VaultTransportConfig config) {
+        this(config, SSLContexts.createDefault());
+    }
+
+    public VaultHttpTransport(VaultTransportConfig config, SSLContext sslContext) {
+        this.config = config;
+        Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", new SSLConnectionSocketFactory(sslContext, SSLConnectionSocketFactory.getDefaultHostnameVerifier()))
+                .build();
+
+        this.connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry);
+        this.connectionManager.setMaxTotal(config.getMaxTotalConnections());
+        this.connectionManager.setDefaultMaxPerRoute(config.getMaxConnectionsPerRoute());
+        this.connectionManager.setValidateAfterInactivity(config.getValidateAfterInactivity());
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(config.getConnectTimeout())
+                .setSocketTimeout(config.getReadTimeout())
+                .setConnectionRequestTimeout(config.getConnectionRequestTimeout())
+                .build();
+
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(keepAliveStrategy(config.getKeepAlive()))
+                // the clients do not keep per-user state; without this, connections authenticated with a client
+                // certificate are tagged with its principal and never handed out again to a new request
+                .disableConnectionState()
+                .evictExpiredConnections()
+                .evictIdleConnections(config.getIdleEvictionInterval(), TimeUnit.MILLISECONDS)
+                .build();
+
+        this.requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        this.restTemplate = new RestTemplate(requestFactory);
+    }
+
+    /**
+     * For transports built on an HTTP client other than Apache HttpClient, such as the HTTP/2 transport of
+     * spring-vault-rest-api-client-http2. {@link #getHttpClient()} and {@link #getConnectionManager()} return null
+     * for these transports.
+     *
+     * @param config         the timeout settings
+     * @param requestFactory creates the requests sent by the RestTemplate
+     */
+    protected VaultHttpTransport(VaultTransportConfig config, ClientHttpRequestFactory requestFactory) {
+        this.config = config;
+        this.connectionManager = null;
+        this.httpClient = null;
+        this.requestFactory = requestFactory;
+        this.restTemplate = new RestTemplate(requestFactory);
+    }
+
+
+    /**
+     * Returns the process-wide transport used by clients that are not given one explicitly.
+     * It is created on first use with the default {@link VaultTransportConfig}.
+     *
+     * @return the shared default transport
+     */
+
+    public static synchronized VaultHttpTransport getDefault() {
+        if (defaultTransport == null) {
+            defaultTransport = new VaultHttpTransport(new VaultTransportConfig());
+        }
+        return defaultTransport;
+    }
+
+    /**
+     * Creates a transport for sending requests through a local Vault Agent listener, see {@link VaultTransportConfig#forAgent()}.
+     * Clients built on it take the agent's address, e.g. {@link #DEFAULT_AGENT_URL}, as their Vault URL. When the agent
+     * is configured with {@code use_auto_auth_token}, null may be passed as the Vault token and the agent adds its own.
+     *
+     * @return a transport tuned for loopback connections
+     */
+
+    public static VaultHttpTransport forAgent() {
+        return new VaultHttpTransport(VaultTransportConfig.forAgent());
+    }
+
+    /**
+     * Creates a transport that presents a client certificate for TLS authentication.
+     * The key store and trust store are loaded once, and the resulting SSLContext is reused by every pooled connection.
+     *
+     * @param config             the pool and timeout settings
+     * @param keyStorePath       the file path of the PKCS12 format key store containing the client certificate and private key
+     * @param keyStorePassword   the password for the key store
+     * @param trustStorePath     the file path of the JKS format trust store containing the trusted CA certificates
+     * @param trustStorePassword the password for the trust store
+     * @return a transport configured for TLS authentication
+     * @throws Exception if an error occurs while loading the key store or trust store, or creating the SSLContext
+     */
+
+    public static VaultHttpTransport withClientCertificate(VaultTransportConfig config, String keyStorePath, String keyStorePassword,
+                                                           String trustStorePath, String trustStorePassword) throws Exception {
+        return new VaultHttpTransport(config, createSslContext(keyStorePath, keyStorePassword, trustStorePath, trustStorePassword));
+    }
+
+    /**
+     * Builds an SSLContext from a PKCS12 key store and a JKS trust store.
+     *
+     * @param keyStorePath       the file path of the PKCS12 format key store containing the client certificate and private key
+     * @param keyStorePassword   the password for the key store
+     * @param trustStorePath     the file path of the JKS format trust store containing the trusted CA certificates
+     * @param trustStorePassword the password for the trust store
+     * @return the SSLContext
+     * @throws Exception if an error occurs while loading the key store or trust store
+     */
+
+    public static SSLContext createSslContext(String keyStorePath, String keyStorePassword, String trustStorePath, String trustStorePassword) throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream inputStream = new FileInputStream(keyStorePath)) {
+            keyStore.load(inputStream, keyStorePassword.toCharArray());
+        }
+
+        KeyStore trustStore = KeyStore.getInstance("JKS");
+        try (InputStream inputStream = new FileInputStream(trustStorePath)) {
+            trustStore.load(inputStream, trustStorePassword.toCharArray());
+        }
+
+        return SSLContexts.custom()
+                .loadKeyMaterial(keyStore, keyStorePassword.toCharArray())
+                .loadTrustMaterial(trustStore, null)
+                .build();
+    }
+
+    public VaultTransportConfig getConfig() {
+        return config;
+    }
+
+    public RestTemplate getRestTemplate() {
+        return restTemplate;
+    }
+
+    /**
+     * @return the factory the transport's requests are created with, without the interceptors installed on its
+     * RestTemplate, e.g. for requests that a {@link VaultClusterRouter} must not reroute
+     */
+    public ClientHttpRequestFactory getRequestFactory() {
+        return requestFactory;
+    }
+
+    public CloseableHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    public PoolingHttpClientConnectionManager getConnectionManager() {
+        return connectionManager;
+    }
+
+    @Override
+    public void close() throws IOException {
+        LOGGER.info("Closing Vault HTTP transport");
+        if (httpClient != null) {
+            httpClient.close();
+        }
+    }
+
+    /**
+     * Honours the server's Keep-Alive timeout when present, and falls back to the configured value otherwise.
+     */
+
+    private static ConnectionKeepAliveStrategy keepAliveStrategy(long defaultKeepAlive) {
+        return (HttpResponse response, HttpContext context) -> {
+            HeaderElementIterator iterator = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+            while (iterator.hasNext()) {
+                HeaderElement element = iterator.nextElement();
+                if ("timeout".equalsIgnoreCase(element.getName()) && element.getValue() != null) {
+                    try {
+                        return Long.parseLong(element.getValue()) * 1000;
+                    } catch (NumberFormatException ignored) {
+                        // fall through to the configured keep-alive
+                    }
+                }
+            }
+            return defaultKeepAlive;
+        };
+    }
+}
@@ -0,0 +1,80 @@
+package com.sc.hcv.transport;
+
+import java.net.URI;
+
+/**
+ * One Vault server of a cluster, as last seen by a {@link VaultClusterRouter}: its role from {@code sys/health} and
+ * a moving average of its response times.
+ */
+public final class VaultNode {
+
+    /**
+     * The weight of the newest sample in the latency average.
+     */
+    private static final double LATENCY_WEIGHT = 0.2;
+
+    public enum Role {
+        /**
+         * Not probed yet; treated like a standby, which forwards requests it cannot serve.
+         */
+        UNKNOWN,
+        ACTIVE,
+        STANDBY,
+        PERFORMANCE_STANDBY,
+        SEALED,
+        UNREACHABLE
+    }
+
+    private final URI uri;
+    private volatile Role role = Role.UNKNOWN;
+    private volatile double latencyMillis;
+
+
+    VaultNode(String url) {
+        this.uri = URI.create(url.endsWith("/") ? url.substring(0, url.length() - 1) : url);
+    }
+
+
+    public URI getUri() {
+        return uri;
+    }
+
+    public Role getRole() {
+        return role;
+    }
+
+    /**
+     * @return the moving average of the response times of this node in milliseconds, 0 before the first response
+     */
+    public double getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    /**
+     * @return true if the node can take requests
+     */
+    public boolean isAvailable() {
+        Role current = role;
+        return current != Role.SEALED && current != Role.UNREACHABLE;
+    }
+
+    void setRole(Role role) {
+        this.role = role;
+    }
+
+    void recordLatency(long nanos) {
+        double millis = nanos / 1_000_000.0;
+        double current = latencyMillis;
+        latencyMillis = current == 0 ? millis : current + LATENCY_WEIGHT * (millis - current);
+    }
+
+    boolean matches(URI requestUri) {
+        return uri.getPort() == requestUri.getPort() && uri.getHost().equalsIgnoreCase(requestUri.getHost())
+                && uri.getScheme().equalsIgnoreCase(requestUri.getScheme());
+    }
+
+    @Override
+    public String toString() {
+        return uri + " (" + role + ")";
+    }
+}
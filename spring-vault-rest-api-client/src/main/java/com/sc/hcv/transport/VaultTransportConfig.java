@@ -0,0 +1,141 @@
+package com.sc.hcv.transport;
+
+import java.util.Properties;
+
+/**
+ * Connection pool and timeout settings for {@link VaultHttpTransport}.
+ * All durations are in milliseconds.
+ */
+public class VaultTransportConfig {
+
+    private int maxTotalConnections = 50;
+    private int maxConnectionsPerRoute = 20;
+    private int connectTimeout = 5000;
+    private int readTimeout = 10000;
+    private int connectionRequestTimeout = 5000;
+    private long keepAlive = 30000;
+    private long idleEvictionInterval = 30000;
+    private int validateAfterInactivity = 2000;
+
+
+    /**
+     * Builds a configuration from the "vault.http.*" entries of the given properties.
+     * Entries that are missing keep their default values.
+     *
+     * @param properties the properties loaded from vault.properties
+     * @return the transport configuration
+     */
+
+    public static VaultTransportConfig fromProperties(Properties properties) {
+        return fromProperties(properties, new VaultTransportConfig());
+    }
+
+    /**
+     * Returns settings for talking to a local Vault Agent listener instead of Vault itself.
+     * Loopback connections are cheap to open but there is no reason to close them, so they are kept alive for 4 minutes,
+     * just under the 5 minute idle timeout of the agent's listener, and only re-validated after 10 seconds of inactivity.
+     * A handful of connections is enough, since the agent answers cached requests locally and multiplexes the rest
+     * onto its own upstream connections. A connect timeout of 1 second fails fast when the agent is not running.
+     *
+     * @return the agent transport configuration
+     */
+
+    public static VaultTransportConfig forAgent() {
+        VaultTransportConfig config = new VaultTransportConfig();
+        config.setMaxTotalConnections(16);
+        config.setMaxConnectionsPerRoute(16);
+        config.setConnectTimeout(1000);
+        config.setConnectionRequestTimeout(1000);
+        config.setKeepAlive(240000);
+        config.setIdleEvictionInterval(240000);
+        config.setValidateAfterInactivity(10000);
+        return config;
+    }
+
+    /**
+     * Same as {@link #fromProperties(Properties)}, but missing entries keep the values of {@link #forAgent()}.
+     *
+     * @param properties the properties loaded from vault.properties
+     * @return the agent transport configuration
+     */
+
+    public static VaultTransportConfig forAgent(Properties properties) {
+        return fromProperties(properties, forAgent());
+    }
+
+    private static VaultTransportConfig fromProperties(Properties properties, VaultTransportConfig config) {
+        config.setMaxTotalConnections(Integer.parseInt(properties.getProperty("vault.http.max-connections", String.valueOf(config.maxTotalConnections))));
+        config.setMaxConnectionsPerRoute(Integer.parseInt(properties.getProperty("vault.http.max-connections-per-route", String.valueOf(config.maxConnectionsPerRoute))));
+        config.setConnectTimeout(Integer.parseInt(properties.getProperty("vault.http.connect-timeout", String.valueOf(config.connectTimeout))));
+        config.setReadTimeout(Integer.parseInt(properties.getProperty("vault.http.read-timeout", String.valueOf(config.readTimeout))));
+        config.setConnectionRequestTimeout(Integer.parseInt(properties.getProperty("vault.http.connection-request-timeout", String.valueOf(config.connectionRequestTimeout))));
+        config.setKeepAlive(Long.parseLong(properties.getProperty("vault.http.keep-alive", String.valueOf(config.keepAlive))));
+        config.setIdleEvictionInterval(Long.parseLong(properties.getProperty("vault.http.idle-eviction-interval", String.valueOf(config.idleEvictionInterval))));
+        config.setValidateAfterInactivity(Integer.parseInt(properties.getProperty("vault.http.validate-after-inactivity", String.valueOf(config.validateAfterInactivity))));
+        return config;
+    }
+
+    public int getMaxTotalConnections() {
+        return maxTotalConnections;
+    }
+
+    public void setMaxTotalConnections(int maxTotalConnections) {
+        this.maxTotalConnections = maxTotalConnections;
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    public int getConnectionRequestTimeout() {
+        return connectionRequestTimeout;
+    }
+
+    public void setConnectionRequestTimeout(int connectionRequestTimeout) {
+        this.connectionRequestTimeout = connectionRequestTimeout;
+    }
+
+    public long getKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(long keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public long getIdleEvictionInterval() {
+        return idleEvictionInterval;
+    }
+
+    public void setIdleEvictionInterval(long idleEvictionInterval) {
+        this.idleEvictionInterval = idleEvictionInterval;
+    }
+
+    public int getValidateAfterInactivity() {
+        return validateAfterInactivity;
+    }
+
+    public void setValidateAfterInactivity(int validateAfterInactivity) {
+        this.validateAfterInactivity = validateAfterInactivity;
+    }
+}
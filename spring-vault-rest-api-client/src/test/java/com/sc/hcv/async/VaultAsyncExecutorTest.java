@@ -0,0 +1,69 @@
+package com.sc.hcv.async;
+
+import com.sc.hcv.VaultException;
+import com.sc.hcv.retry.CircuitBreaker;
+import com.sc.hcv.retry.RetryBudget;
+import com.sc.hcv.retry.RetryPolicy;
+import com.sc.hcv.retry.VaultRetryEngine;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class VaultAsyncExecutorTest {
+    private final VaultAsyncExecutor executor = new VaultAsyncExecutor(2);
+    private final VaultRetryEngine retryEngine = new VaultRetryEngine(new RetryBudget(0.2, 100), new CircuitBreaker(100, 1000));
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    @After
+    public void tearDown() {
+        executor.close();
+    }
+
+    @Test
+    public void testRetriesUntilSuccess() throws Exception {
+        String result = executor.retry("test", () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new Exception("transient");
+            }
+            return "ok";
+        }, retryEngine, new RetryPolicy(5, 10, 100)).get(2, TimeUnit.SECONDS);
+
+        assertEquals("ok", result);
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    public void testVaultExceptionIsNotRetried() throws Exception {
+        try {
+            executor.retry("test", () -> {
+                attempts.incrementAndGet();
+                throw new VaultException("Invalid Vault token", 401);
+            }, retryEngine, new RetryPolicy(5, 10, 100)).get(2, TimeUnit.SECONDS);
+            fail("Expected the future to fail");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof VaultException);
+        }
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void testFailsAfterMaxRetries() throws Exception {
+        try {
+            executor.retry("test", () -> {
+                attempts.incrementAndGet();
+                throw new Exception("transient");
+            }, retryEngine, new RetryPolicy(3, 10, 100)).get(2, TimeUnit.SECONDS);
+            fail("Expected the future to fail");
+        } catch (ExecutionException ex) {
+            assertEquals("Max retries exceeded for test", ex.getCause().getMessage());
+        }
+        assertEquals(3, attempts.get());
+    }
+}
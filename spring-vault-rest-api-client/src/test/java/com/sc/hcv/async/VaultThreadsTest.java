@@ -0,0 +1,62 @@
+package com.sc.hcv.async;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class VaultThreadsTest {
+
+    @After
+    public void tearDown() {
+        VaultThreads.setVirtualThreads(false);
+    }
+
+    @Test
+    public void testPlatformThreadsByDefault() throws Exception {
+        ExecutorService executor = VaultThreads.newTaskExecutor("test", 1);
+        try {
+            Thread thread = executor.submit(Thread::currentThread).get(2, TimeUnit.SECONDS);
+            assertEquals("test-1", thread.getName());
+            assertTrue(thread.isDaemon());
+            assertFalse(isVirtual(thread));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testVirtualThreadsWhenSupported() throws Exception {
+        Assume.assumeTrue(VaultThreads.isVirtualThreadsSupported());
+        VaultThreads.setVirtualThreads(true);
+        ExecutorService executor = VaultThreads.newTaskExecutor("test", 1);
+        try {
+            Thread thread = executor.submit(Thread::currentThread).get(2, TimeUnit.SECONDS);
+            assertTrue(thread.getName().startsWith("test-"));
+            assertTrue(isVirtual(thread));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testUnsupportedFallsBackToPlatformThreads() {
+        Assume.assumeFalse(VaultThreads.isVirtualThreadsSupported());
+        VaultThreads.setVirtualThreads(true);
+        assertFalse(VaultThreads.isVirtualThreads());
+    }
+
+    private static boolean isVirtual(Thread thread) throws Exception {
+        try {
+            return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch (NoSuchMethodException ex) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.sc.hcv.auth;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+public class TokenDigestTest {
+
+    @Test
+    public void testDigestIsHexSha256() {
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", TokenDigest.of("abc"));
+        assertEquals("", TokenDigest.of(null));
+    }
+
+    @Test
+    public void testConcurrentDigestsDoNotInterfere() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                String token = "s.token" + i;
+                String expected = TokenDigest.of(token);
+                results.add(executor.submit(() -> {
+                    for (int j = 0; j < 1000; j++) {
+                        if (!expected.equals(TokenDigest.of(token))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertEquals(true, result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.sc.hcv.auth;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TokenValidityCacheTest {
+    private final TokenValidityCache cache = new TokenValidityCache(2, 60000);
+
+    @Test
+    public void testValidTokenIsTrustedUntilReverification() {
+        long now = System.currentTimeMillis();
+        cache.put("fresh", new TokenInfo(3600, null, Collections.singletonList("default"), true, now));
+        cache.put("old", new TokenInfo(3600, null, Collections.singletonList("default"), true, now - 120000));
+
+        assertEquals(Boolean.TRUE, cache.getValidity("fresh"));
+        assertEquals(Collections.singletonList("default"), cache.getInfo("fresh").getPolicies());
+        assertNull(cache.getValidity("old"));
+        assertNull(cache.getInfo("old"));
+    }
+
+    @Test
+    public void testExpiredTokensAreCheckedOffline() {
+        long now = System.currentTimeMillis();
+        cache.put("batch", new TokenInfo(1, null, Collections.<String>emptyList(), false, now - 2000));
+        cache.put("service", new TokenInfo(1, null, Collections.<String>emptyList(), true, now - 2000));
+
+        assertEquals(Boolean.FALSE, cache.getValidity("batch"));
+        // a renewable token may have been renewed since, so Vault is asked again
+        assertNull(cache.getValidity("service"));
+    }
+
+    @Test
+    public void testRejectedTokenStaysInvalidUntilInvalidated() {
+        cache.put("revoked", null);
+        assertEquals(Boolean.FALSE, cache.getValidity("revoked"));
+
+        cache.invalidate("revoked");
+        assertNull(cache.getValidity("revoked"));
+    }
+
+    @Test
+    public void testRejectedTokenExpires() throws Exception {
+        cache.setRejected(10, 1);
+        cache.put("revoked", null);
+
+        Thread.sleep(5);
+        assertNull(cache.getValidity("revoked"));
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 50; i++) {
+            cache.put("token" + i, new TokenInfo(0, null, Collections.<String>emptyList(), false, now));
+        }
+
+        assertTrue(cache.size() <= 2);
+        assertEquals(Boolean.TRUE, cache.getValidity("token49"));
+    }
+
+    @Test
+    public void testRejectedTokensDoNotEvictValidOnes() {
+        cache.setRejected(5, 60000);
+        cache.put("valid", new TokenInfo(0, null, Collections.<String>emptyList(), false, System.currentTimeMillis()));
+        for (int i = 0; i < 100; i++) {
+            cache.put("bogus" + i, null);
+        }
+
+        assertEquals(Boolean.TRUE, cache.getValidity("valid"));
+        assertEquals(Boolean.FALSE, cache.getValidity("bogus99"));
+        assertTrue(cache.size() <= 6);
+    }
+
+    @Test
+    public void testLookupResponseIsParsed() {
+        Map<String, Object> data = new HashMap<>();
+        data.put("ttl", 3600);
+        data.put("expire_time", "2030-01-01T00:00:00.000000Z");
+        data.put("policies", Arrays.asList("default", "app"));
+        data.put("renewable", true);
+
+        TokenInfo info = TokenInfo.fromLookup(data, 1000);
+
+        assertEquals(3600, info.getTtl());
+        assertEquals(1000 + 3600 * 1000, info.getExpiresAt());
+        assertEquals(Arrays.asList("default", "app"), info.getPolicies());
+        assertEquals(Long.MAX_VALUE, TokenInfo.fromLookup(new HashMap<>(), 1000).getExpiresAt());
+    }
+}
@@ -1,18 +1,33 @@
 package com.sc.hcv.auth;
 
+import com.sc.hcv.retry.CircuitBreaker;
+import com.sc.hcv.retry.RetryBudget;
+import com.sc.hcv.retry.VaultRetryEngine;
+import com.sc.hcv.transport.VaultHttpTransport;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -20,6 +35,8 @@ public class VaultAuthenticatorTest {
     private VaultAuthenticator vaultAuthenticator;
     @Mock
     private RestTemplate restTemplate;
+    @Mock
+    private VaultHttpTransport transport;
 
     private final String roleId = "testRoleId";
     private final String secretId = "testSecretId";
@@ -31,15 +48,16 @@ public class VaultAuthenticatorTest {
 
     @Before
     public void setUp() {
-        vaultAuthenticator = new VaultAuthenticator(vaultUrl, maxRetries, backoffInterval, maxBackoffInterval);
+        when(transport.getRestTemplate()).thenReturn(restTemplate);
+        vaultAuthenticator = new VaultAuthenticator(vaultUrl, maxRetries, backoffInterval, maxBackoffInterval, transport);
+        vaultAuthenticator.setRetryEngine(new VaultRetryEngine(new RetryBudget(0.2, 10), new CircuitBreaker(5, 10000)));
     }
 
     @Test
     public void testAuthenticateAppRoleSuccess() throws Exception {
         String token = "testToken";
         String responseJson = "{\"auth\": {\"client_token\": \"" + token + "\"}}";
-        ResponseEntity<String> responseEntity = new ResponseEntity<>(responseJson, HttpStatus.OK);
-        when(restTemplate.postForEntity(eq(vaultUrl + authPath), any(), eq(String.class))).thenReturn(responseEntity);
+        respond(HttpStatus.OK, responseJson);
 
         String result = vaultAuthenticator.authenticateAppRole(roleId, secretId, authPath);
         assertEquals(token, result);
@@ -47,17 +65,57 @@ public class VaultAuthenticatorTest {
 
     @Test(expected = Exception.class)
     public void testAuthenticateAppRoleFailure() throws Exception {
-        ResponseEntity<String> responseEntity = new ResponseEntity<>("{\"code\": \"testCode\", \"message\": \"testMessage\"}", HttpStatus.BAD_REQUEST);
-        when(restTemplate.postForEntity(eq(vaultUrl + authPath), any(), eq(String.class))).thenReturn(responseEntity);
+        respond(HttpStatus.BAD_REQUEST, "{\"code\": \"testCode\", \"message\": \"testMessage\"}");
 
         vaultAuthenticator.authenticateAppRole(roleId, secretId, authPath);
     }
 
     @Test(expected = Exception.class)
     public void testAuthenticateAppRoleMaxRetries() throws Exception {
-        when(restTemplate.postForEntity(eq(vaultUrl + authPath), any(), eq(String.class))).thenThrow(HttpClientErrorException.class);
+        when(restTemplate.execute(eq(vaultUrl + authPath), eq(HttpMethod.POST), any(), any(ResponseExtractor.class))).thenThrow(HttpClientErrorException.class);
 
         vaultAuthenticator.authenticateAppRole(roleId, secretId, authPath);
     }
-}
 
+    @Test
+    public void testValidTokenIsCheckedInVaultOnce() throws Exception {
+        vaultAuthenticator.setValidityCache(new TokenValidityCache(100, 60000));
+        respondToLookup(HttpStatus.OK, "{\"data\": {\"ttl\": 3600, \"policies\": [\"default\"], \"renewable\": true}}");
+
+        assertTrue(vaultAuthenticator.isValidToken("token"));
+        assertTrue(vaultAuthenticator.isValidToken("token"));
+        assertEquals(Collections.singletonList("default"), vaultAuthenticator.lookupToken("token").getPolicies());
+
+        verify(restTemplate, times(1)).execute(eq(vaultUrl + "/v1/auth/token/lookup-self"), eq(HttpMethod.GET), any(), any(ResponseExtractor.class));
+    }
+
+    @Test
+    public void testRevokedTokenIsCheckedAgainAfterInvalidation() throws Exception {
+        vaultAuthenticator.setValidityCache(new TokenValidityCache(100, 60000));
+        when(restTemplate.execute(eq(vaultUrl + "/v1/auth/token/lookup-self"), eq(HttpMethod.GET), any(), any(ResponseExtractor.class)))
+                .thenThrow(new HttpClientErrorException(HttpStatus.FORBIDDEN));
+
+        assertFalse(vaultAuthenticator.isValidToken("token"));
+        assertFalse(vaultAuthenticator.isValidToken("token"));
+        vaultAuthenticator.invalidateToken("token");
+        assertFalse(vaultAuthenticator.isValidToken("token"));
+
+        verify(restTemplate, times(2)).execute(eq(vaultUrl + "/v1/auth/token/lookup-self"), eq(HttpMethod.GET), any(), any(ResponseExtractor.class));
+    }
+
+    private void respondToLookup(HttpStatus status, String body) throws Exception {
+        ClientHttpResponse response = mock(ClientHttpResponse.class);
+        when(response.getRawStatusCode()).thenReturn(status.value());
+        when(response.getBody()).thenAnswer(invocation -> new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+        when(restTemplate.execute(eq(vaultUrl + "/v1/auth/token/lookup-self"), eq(HttpMethod.GET), any(), any(ResponseExtractor.class)))
+                .thenAnswer(invocation -> invocation.<ResponseExtractor<?>>getArgument(3).extractData(response));
+    }
+
+    private void respond(HttpStatus status, String body) throws Exception {
+        ClientHttpResponse response = mock(ClientHttpResponse.class);
+        when(response.getRawStatusCode()).thenReturn(status.value());
+        when(response.getBody()).thenAnswer(invocation -> new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+        when(restTemplate.execute(eq(vaultUrl + authPath), eq(HttpMethod.POST), any(), any(ResponseExtractor.class)))
+                .thenAnswer(invocation -> invocation.<ResponseExtractor<?>>getArgument(3).extractData(response));
+    }
+}
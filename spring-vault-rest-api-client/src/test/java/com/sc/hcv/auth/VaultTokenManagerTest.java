@@ -0,0 +1,109 @@
+package com.sc.hcv.auth;
+
+import com.sc.hcv.VaultException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class VaultTokenManagerTest {
+    @Mock
+    private VaultAuthenticator authenticator;
+
+    private final AtomicInteger logins = new AtomicInteger();
+    private VaultTokenManager tokenManager;
+
+    @After
+    public void tearDown() {
+        if (tokenManager != null) {
+            tokenManager.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentCallersShareSingleLogin() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        tokenManager = new VaultTokenManager(authenticator, () -> {
+            logins.incrementAndGet();
+            release.await(5, TimeUnit.SECONDS);
+            return new VaultToken("testToken", 3600, true, System.currentTimeMillis());
+        }, 0.5);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(tokenManager::getToken));
+        }
+        Thread.sleep(200);
+        release.countDown();
+        for (Future<String> result : results) {
+            assertEquals("testToken", result.get(5, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        assertEquals(1, logins.get());
+    }
+
+    @Test
+    public void testCachedTokenIsReturnedWithoutLogin() throws Exception {
+        tokenManager = new VaultTokenManager(authenticator, () -> {
+            logins.incrementAndGet();
+            return new VaultToken("testToken", 3600, true, System.currentTimeMillis());
+        }, 0.5);
+
+        tokenManager.getToken();
+        tokenManager.getToken();
+        assertEquals(1, logins.get());
+    }
+
+    @Test
+    public void testExpiredTokenTriggersNewLogin() throws Exception {
+        tokenManager = new VaultTokenManager(authenticator, () -> new VaultToken("token" + logins.incrementAndGet(), 1, false, System.currentTimeMillis() - 2000), 0.5);
+
+        assertEquals("token1", tokenManager.getToken());
+        assertEquals("token2", tokenManager.getToken());
+    }
+
+    @Test
+    public void testRenewableTokenIsRenewedInBackground() throws Exception {
+        when(authenticator.renewSelf(eq("testToken"), anyLong())).thenReturn(new VaultToken("testToken", 1, true, System.currentTimeMillis()));
+        tokenManager = new VaultTokenManager(authenticator, () -> new VaultToken("testToken", 1, true, System.currentTimeMillis()), 0.1);
+
+        tokenManager.getToken();
+        verify(authenticator, timeout(2000)).renewSelf("testToken", 1);
+    }
+
+    @Test
+    public void testRevokedTokenIsReplacedByLogin() throws Exception {
+        when(authenticator.renewSelf(eq("revokedToken"), anyLong())).thenThrow(new VaultException("Invalid Vault token", 403));
+        tokenManager = new VaultTokenManager(authenticator, () -> new VaultToken("token" + logins.incrementAndGet(), 3600, true, System.currentTimeMillis()), 0.5);
+
+        tokenManager.restore(new VaultToken("revokedToken", 3600, true, System.currentTimeMillis() - 3000 * 1000));
+
+        verify(authenticator, timeout(2000)).invalidateToken("revokedToken");
+        long deadline = System.currentTimeMillis() + 2000;
+        while (logins.get() < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("token1", tokenManager.getToken());
+        assertEquals(1, logins.get());
+    }
+}
@@ -0,0 +1,125 @@
+package com.sc.hcv.cache;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OffHeapSecretStoreTest {
+    private final OffHeapSecretStore store = new OffHeapSecretStore(4096, 4);
+
+    @After
+    public void tearDown() {
+        store.close();
+    }
+
+    @Test
+    public void testValuesAreCopiedOut() {
+        Map<String, String> values = new LinkedHashMap<>();
+        values.put("username", "app");
+        values.put("password", "p\u00e4$$w\u00f6rd");
+        store.put("tenant-a/secret/data/db", values);
+
+        SecretView view = store.get("tenant-a/secret/data/db");
+        assertEquals(Arrays.asList("username", "password"), view.getKeys());
+        assertArrayEquals("p\u00e4$$w\u00f6rd".toCharArray(), view.getChars("password"));
+        assertNull(view.getChars("missing"));
+
+        char[] buffer = new char[32];
+        assertEquals(3, view.copyChars("username", buffer));
+        assertEquals("app", new String(buffer, 0, 3));
+        assertNull(store.get("tenant-b/secret/data/db"));
+    }
+
+    @Test
+    public void testReplacedSecretInvalidatesItsViews() {
+        store.put("secret/data/app", Collections.singletonMap("password", "old"));
+        SecretView old = store.get("secret/data/app");
+
+        store.put("secret/data/app", Collections.singletonMap("password", "new"));
+
+        assertEquals(1, store.size());
+        assertArrayEquals("new".toCharArray(), store.get("secret/data/app").getChars("password"));
+        try {
+            old.getChars("password");
+            fail("Expected the replaced secret to be unreadable");
+        } catch (IllegalStateException expected) {
+            // the old record was zeroed
+        }
+    }
+
+    @Test
+    public void testRemove() {
+        store.put("secret/data/app", Collections.singletonMap("password", "secret"));
+
+        assertTrue(store.remove("secret/data/app"));
+        assertFalse(store.remove("secret/data/app"));
+        assertNull(store.get("secret/data/app"));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void testOldestSegmentIsEvictedWhenFull() {
+        char[] large = new char[1000];
+        Arrays.fill(large, 'x');
+        for (int i = 0; i < 20; i++) {
+            store.put("secret/data/app" + i, Collections.singletonMap("value", new String(large)));
+        }
+
+        // four segments of 4096 bytes hold three 1000 byte secrets each, the last one being filled
+        assertNull(store.get("secret/data/app0"));
+        assertNotNull(store.get("secret/data/app19"));
+        assertTrue(store.size() <= 12);
+        assertEquals(4 * 4096, store.getAllocatedBytes());
+    }
+
+    @Test
+    public void testIndexGrowsWithManySecrets() {
+        OffHeapSecretStore large = new OffHeapSecretStore(1 << 20, 4);
+        try {
+            for (int i = 0; i < 10000; i++) {
+                large.put("tenant/" + i, Collections.singletonMap("key", "value" + i));
+            }
+            assertEquals(10000, large.size());
+            for (int i = 0; i < 10000; i += 997) {
+                assertArrayEquals(("value" + i).toCharArray(), large.get("tenant/" + i).getChars("key"));
+            }
+        } finally {
+            large.close();
+        }
+    }
+
+    @Test
+    public void testOversizedSecretIsRejected() {
+        char[] large = new char[5000];
+        try {
+            store.put("secret/data/large", Collections.singletonMap("value", new String(large)));
+            fail("Expected the secret to be rejected");
+        } catch (IllegalArgumentException expected) {
+            assertEquals(0, store.size());
+        }
+    }
+
+    @Test
+    public void testMalformedValueIsRejected() {
+        try {
+            SecretView.decode(ByteBuffer.wrap(new byte[]{'p', (byte) 0xc3, 'w'}));
+            fail("Expected the malformed value to be rejected");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getCause() instanceof CharacterCodingException);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.sc.hcv.cache;
+
+import com.sc.hcv.secrets.SecretEngine;
+import com.sc.hcv.secrets.VaultSecret;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class SecretRequestCoalescerTest {
+    private final SecretRequestCoalescer coalescer = new SecretRequestCoalescer();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    public void testConcurrentReadsShareOneRequest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<VaultSecret>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(pool.submit(() -> coalescer.load(SecretEngine.KV, "secret/app", "token", () -> {
+                    loads.incrementAndGet();
+                    release.await(2, TimeUnit.SECONDS);
+                    return new VaultSecret(Collections.singletonMap("data", Collections.singletonMap("key", "value")));
+                })));
+            }
+            while (coalescer.size() == 0) {
+                Thread.sleep(1);
+            }
+            Thread.sleep(50);
+            release.countDown();
+
+            VaultSecret first = results.get(0).get(2, TimeUnit.SECONDS);
+            for (Future<VaultSecret> result : results) {
+                assertSame(first, result.get(2, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loads.get());
+            assertEquals(0, coalescer.size());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testErrorIsSharedAndNotRemembered() throws Exception {
+        CompletableFuture<VaultSecret> pending = new CompletableFuture<>();
+        CompletableFuture<VaultSecret> first = coalescer.loadAsync(SecretEngine.KV, "secret/app", "token", () -> {
+            loads.incrementAndGet();
+            return pending;
+        });
+        CompletableFuture<VaultSecret> second = coalescer.loadAsync(SecretEngine.KV, "secret/app", "token", () -> {
+            loads.incrementAndGet();
+            return pending;
+        });
+        pending.completeExceptionally(new Exception("Vault unavailable"));
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        try {
+            coalescer.load(SecretEngine.KV, "secret/app", "token", () -> {
+                loads.incrementAndGet();
+                throw new Exception("still unavailable");
+            });
+            fail("Expected the read to fail");
+        } catch (Exception ex) {
+            assertEquals("still unavailable", ex.getMessage());
+        }
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testReadsAreNotSharedBetweenTokens() throws Exception {
+        CompletableFuture<VaultSecret> pending = new CompletableFuture<>();
+        coalescer.loadAsync(SecretEngine.KV, "secret/app", "token1", () -> pending);
+        coalescer.loadAsync(SecretEngine.KV, "secret/app", "token2", () -> pending);
+
+        assertEquals(2, coalescer.size());
+        pending.complete(new VaultSecret(Collections.emptyMap()));
+        assertEquals(0, coalescer.size());
+    }
+}
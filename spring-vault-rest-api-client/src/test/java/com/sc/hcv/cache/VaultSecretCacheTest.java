@@ -0,0 +1,185 @@
+package com.sc.hcv.cache;
+
+import com.sc.hcv.secrets.SecretEngine;
+import com.sc.hcv.secrets.VaultSecret;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VaultSecretCacheTest {
+    private final AtomicInteger loads = new AtomicInteger();
+    private VaultSecretCache cache;
+
+    @After
+    public void tearDown() {
+        cache.close();
+    }
+
+    @Test
+    public void testHitDoesNotReload() throws Exception {
+        cache = new VaultSecretCache(10, 60000, 0);
+
+        cache.get(SecretEngine.KV, "secret/app", "token", this::load);
+        VaultSecret secret = cache.get(SecretEngine.KV, "secret/app", "token", this::load);
+
+        assertEquals(1, loads.get());
+        assertEquals("value1", secret.getData().get("key"));
+    }
+
+    @Test
+    public void testEntriesAreNotSharedBetweenTokens() throws Exception {
+        cache = new VaultSecretCache(10, 60000, 0);
+
+        cache.get(SecretEngine.KV, "secret/app", "token1", this::load);
+        cache.get(SecretEngine.KV, "secret/app", "token2", this::load);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testStaleEntryIsServedWhileRefreshing() throws Exception {
+        cache = new VaultSecretCache(10, 1, 60000);
+
+        cache.get(SecretEngine.KV, "secret/app", "token", this::load);
+        Thread.sleep(10);
+        VaultSecret stale = cache.get(SecretEngine.KV, "secret/app", "token", this::load);
+        assertEquals("value1", stale.getData().get("key"));
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (loads.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testLeasedSecretIsNotServedPastItsLease() throws Exception {
+        cache = new VaultSecretCache(10, 60000, 60000);
+        SecretLoader leased = () -> {
+            Map<String, Object> body = new HashMap<>();
+            body.put("lease_id", "database/creds/app/" + loads.incrementAndGet());
+            body.put("lease_duration", 1);
+            return new VaultSecret(body);
+        };
+
+        cache.get(SecretEngine.DATABASE, "database/creds/app", "token", leased);
+        Thread.sleep(1100);
+        VaultSecret secret = cache.get(SecretEngine.DATABASE, "database/creds/app", "token", leased);
+
+        assertEquals(2, loads.get());
+        assertEquals("database/creds/app/2", secret.getLeaseId());
+    }
+
+    @Test
+    public void testSizeIsBounded() throws Exception {
+        cache = new VaultSecretCache(10, 60000, 0);
+
+        for (int i = 0; i < 50; i++) {
+            cache.get(SecretEngine.KV, "secret/app" + i, "token", this::load);
+        }
+        assertTrue(cache.size() <= 10);
+    }
+
+    @Test
+    public void testInvalidateRemovesPath() throws Exception {
+        cache = new VaultSecretCache(10, 60000, 0);
+
+        cache.get(SecretEngine.KV, "secret/app", "token", this::load);
+        cache.invalidate(SecretEngine.KV, "secret/app");
+        cache.get(SecretEngine.KV, "secret/app", "token", this::load);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testInvalidateRemovesPathForEveryToken() throws Exception {
+        cache = new VaultSecretCache(10, 60000, 0);
+
+        cache.get(SecretEngine.KV, "secret/app", "token1", this::load);
+        cache.get(SecretEngine.KV, "secret/app", "token2", this::load);
+        cache.get(SecretEngine.KV, "secret/other", "token1", this::load);
+        cache.invalidate(SecretEngine.KV, "secret/app");
+
+        assertEquals(1, cache.size());
+        cache.get(SecretEngine.KV, "secret/other", "token1", this::load);
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void testLoadInFlightDuringInvalidateIsNotCached() throws Exception {
+        cache = new VaultSecretCache(10, 60000, 0);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch invalidated = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<VaultSecret> inFlight = executor.submit(() -> cache.get(SecretEngine.KV, "secret/app", "token", () -> {
+                loading.countDown();
+                invalidated.await();
+                return load();
+            }));
+            assertTrue(loading.await(2, TimeUnit.SECONDS));
+            cache.invalidate(SecretEngine.KV, "secret/app");
+            invalidated.countDown();
+
+            assertEquals("value1", inFlight.get(2, TimeUnit.SECONDS).getData().get("key"));
+            assertEquals(0, cache.size());
+            VaultSecret secret = cache.get(SecretEngine.KV, "secret/app", "token", this::load);
+            assertEquals("value2", secret.getData().get("key"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testEvictedEntriesCanBeCachedAgain() throws Exception {
+        cache = new VaultSecretCache(10, 60000, 0);
+
+        for (int i = 0; i < 50; i++) {
+            cache.get(SecretEngine.KV, "secret/app" + i, "token", this::load);
+        }
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+        cache.get(SecretEngine.KV, "secret/app49", "token", this::load);
+        cache.invalidate(SecretEngine.KV, "secret/app49");
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testStaleMarkedEntryIsServedWhileVaultIsDown() throws Exception {
+        cache = new VaultSecretCache(10, 60000, 60000);
+
+        cache.get(SecretEngine.KV, "secret/app", "token", this::load);
+        cache.markAllStale();
+        VaultSecret secret = cache.get(SecretEngine.KV, "secret/app", "token", () -> {
+            loads.incrementAndGet();
+            throw new Exception("Vault is down");
+        });
+
+        assertEquals("value1", secret.getData().get("key"));
+        long deadline = System.currentTimeMillis() + 2000;
+        while (loads.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.size());
+    }
+
+    private VaultSecret load() {
+        Map<String, Object> data = new HashMap<>();
+        data.put("key", "value" + loads.incrementAndGet());
+        Map<String, Object> body = new HashMap<>();
+        body.put("data", data);
+        return new VaultSecret(body);
+    }
+}
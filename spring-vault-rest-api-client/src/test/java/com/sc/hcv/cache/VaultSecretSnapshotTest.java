@@ -0,0 +1,118 @@
+package com.sc.hcv.cache;
+
+import com.sc.hcv.auth.VaultAuthenticator;
+import com.sc.hcv.auth.VaultToken;
+import com.sc.hcv.auth.VaultTokenManager;
+import com.sc.hcv.secrets.SecretEngine;
+import com.sc.hcv.secrets.VaultSecret;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+
+public class VaultSecretSnapshotTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final byte[] key = new byte[32];
+    private final AtomicInteger loads = new AtomicInteger();
+    private final AtomicInteger logins = new AtomicInteger();
+    private final Instance saved = new Instance();
+    private final Instance restored = new Instance();
+
+    @After
+    public void tearDown() {
+        saved.close();
+        restored.close();
+    }
+
+    @Test
+    public void testRestoredSecretIsServedWithoutLogin() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("vault.snapshot");
+        saved.cache.get(SecretEngine.KV, "secret/app", saved.tokenManager.getToken(), this::load);
+        new VaultSecretSnapshot(file, key).save(saved.cache, saved.tokenManager);
+
+        assertEquals(1, new VaultSecretSnapshot(file, key).restore(restored.cache, restored.tokenManager));
+        VaultSecret secret = restored.cache.get(SecretEngine.KV, "secret/app", restored.tokenManager.getToken(), () -> {
+            throw new Exception("Vault is down");
+        });
+
+        assertEquals("value1", secret.getData().get("key"));
+        assertEquals(1, logins.get());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testSnapshotIsEncrypted() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("vault.snapshot");
+        saved.cache.get(SecretEngine.KV, "secret/app", saved.tokenManager.getToken(), this::load);
+        new VaultSecretSnapshot(file, key).save(saved.cache, saved.tokenManager);
+
+        String contents = new String(Files.readAllBytes(file), "ISO-8859-1");
+        assertFalse(contents.contains("value1"));
+        assertFalse(contents.contains("testToken"));
+    }
+
+    @Test
+    public void testWrongKeyRestoresNothing() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("vault.snapshot");
+        saved.cache.get(SecretEngine.KV, "secret/app", saved.tokenManager.getToken(), this::load);
+        new VaultSecretSnapshot(file, key).save(saved.cache, saved.tokenManager);
+
+        byte[] otherKey = new byte[32];
+        otherKey[0] = 1;
+        assertEquals(0, new VaultSecretSnapshot(file, otherKey).restore(restored.cache, restored.tokenManager));
+        assertEquals(0, restored.cache.size());
+        assertNull(restored.tokenManager.getCurrentToken());
+    }
+
+    @Test
+    public void testMissingFileRestoresNothing() {
+        Path file = folder.getRoot().toPath().resolve("missing.snapshot");
+
+        assertEquals(0, new VaultSecretSnapshot(file, key).restore(restored.cache, restored.tokenManager));
+    }
+
+    @Test
+    public void testExpiredEntriesAreNotRestored() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("vault.snapshot");
+        VaultSecretCache shortCache = new VaultSecretCache(10, 1, 0);
+        try {
+            shortCache.get(SecretEngine.KV, "secret/app", saved.tokenManager.getToken(), this::load);
+            new VaultSecretSnapshot(file, key).save(shortCache, saved.tokenManager);
+        } finally {
+            shortCache.close();
+        }
+        Thread.sleep(10);
+
+        assertEquals(0, new VaultSecretSnapshot(file, key).restore(restored.cache, restored.tokenManager));
+    }
+
+    private VaultSecret load() {
+        loads.incrementAndGet();
+        return new VaultSecret("", "", 0, false, Collections.<String, Object>singletonMap("key", "value1"), null);
+    }
+
+    private final class Instance {
+        private final VaultSecretCache cache = new VaultSecretCache(10, 60000, 60000);
+        private final VaultTokenManager tokenManager = new VaultTokenManager(mock(VaultAuthenticator.class), () -> {
+            logins.incrementAndGet();
+            return new VaultToken("testToken", 3600, true, System.currentTimeMillis());
+        }, 0.5);
+
+        void close() {
+            cache.close();
+            tokenManager.close();
+        }
+    }
+}
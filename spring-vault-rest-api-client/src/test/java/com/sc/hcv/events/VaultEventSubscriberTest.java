@@ -0,0 +1,247 @@
+package com.sc.hcv.events;
+
+import com.sc.hcv.auth.VaultTokenManager;
+import com.sc.hcv.retry.RetryPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class VaultEventSubscriberTest {
+    @Mock
+    private VaultTokenManager tokenManager;
+
+    private final BlockingQueue<Connection> connections = new LinkedBlockingQueue<>();
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+    private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+    private ServerSocket server;
+    private VaultEventSubscriber subscriber;
+
+    @Before
+    public void setUp() throws Exception {
+        when(tokenManager.getToken()).thenReturn("token");
+        server = new ServerSocket(0, 10, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::serve, "stub-vault");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        subscriber = new VaultEventSubscriber("http://127.0.0.1:" + server.getLocalPort(), tokenManager, new RetryPolicy(3, 10, 50), 20);
+        subscriber.addListener(new VaultEventListener() {
+            @Override
+            public void onEvent(VaultEvent event) {
+                received.add("event " + event.getPath() + " " + event.getVersion());
+            }
+
+            @Override
+            public void resync() {
+                received.add("resync");
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        subscriber.close();
+        server.close();
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testWriteEventsAreDispatched() throws Exception {
+        connections.add(new Connection(101, true, writeEvent("secret/data/app", 2)));
+        subscriber.start();
+
+        assertEquals("event secret/data/app 2", received.poll(5, TimeUnit.SECONDS));
+        assertEquals("GET /v1/sys/events/subscribe/kv*?json=true HTTP/1.1 token=token", requests.get(0));
+        assertTrue(subscriber.isConnected());
+        assertFalse(subscriber.isPolling());
+    }
+
+    @Test
+    public void testReconnectResyncsMissedEvents() throws Exception {
+        connections.add(new Connection(101, false, writeEvent("secret/data/a", 1)));
+        connections.add(new Connection(101, true, writeEvent("secret/data/b", 1)));
+        subscriber.start();
+
+        assertEquals("event secret/data/a 1", received.poll(5, TimeUnit.SECONDS));
+        assertEquals("resync", received.poll(5, TimeUnit.SECONDS));
+        assertEquals("event secret/data/b 1", received.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSilentConnectionIsReconnected() throws Exception {
+        subscriber.setPingInterval(100);
+        connections.add(new Connection(101, true));
+        connections.add(new Connection(101, true, writeEvent("secret/data/app", 4)));
+        subscriber.start();
+
+        assertEquals("resync", received.poll(5, TimeUnit.SECONDS));
+        assertEquals("event secret/data/app 4", received.poll(5, TimeUnit.SECONDS));
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    public void testOversizedMessageFailsTheConnection() throws Exception {
+        subscriber.setMaxMessageSize(64);
+        connections.add(new Connection(101, true, writeEvent("secret/data/app", 5)));
+        connections.add(new Connection(101, true));
+        subscriber.start();
+
+        assertEquals("resync", received.poll(5, TimeUnit.SECONDS));
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    public void testFallsBackToPollingWhenEventsAreUnavailable() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            connections.add(new Connection(404, false));
+        }
+        subscriber.start();
+
+        assertEquals("resync", received.poll(5, TimeUnit.SECONDS));
+        assertEquals("resync", received.poll(5, TimeUnit.SECONDS));
+        assertTrue(subscriber.isPolling());
+        assertFalse(subscriber.isConnected());
+    }
+
+    @Test
+    public void testForbiddenSubscriptionKeepsTheToken() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            connections.add(new Connection(403, false));
+        }
+        subscriber.start();
+
+        assertEquals("resync", received.poll(5, TimeUnit.SECONDS));
+        assertTrue(subscriber.isPolling());
+        verify(tokenManager, never()).invalidate();
+    }
+
+    @Test
+    public void testUnauthorizedSubscriptionDropsTheToken() throws Exception {
+        connections.add(new Connection(401, false));
+        connections.add(new Connection(101, true, writeEvent("secret/data/app", 3)));
+        subscriber.start();
+
+        assertEquals("resync", received.poll(5, TimeUnit.SECONDS));
+        assertEquals("event secret/data/app 3", received.poll(5, TimeUnit.SECONDS));
+        verify(tokenManager).invalidate();
+    }
+
+    @Test
+    public void testMetadataEventsNameTheDataPath() throws Exception {
+        VaultEvent event = VaultEvent.parse("{\"type\":\"kv-v2/metadata-delete\",\"data\":{\"event\":{\"metadata\":"
+                + "{\"path\":\"secret/metadata/app\"}},\"event_type\":\"kv-v2/metadata-delete\","
+                + "\"plugin_info\":{\"mount_path\":\"secret/\",\"plugin\":\"kv\"}}}");
+
+        assertEquals("secret/data/app", event.getPath());
+        assertTrue(event.isDelete());
+    }
+
+    private static String writeEvent(String path, long version) {
+        return "{\"id\":\"1\",\"specversion\":\"1.0\",\"type\":\"kv-v2/data-write\",\"data\":{\"event\":{\"id\":\"1\","
+                + "\"metadata\":{\"current_version\":\"" + version + "\",\"data_path\":\"" + path + "\",\"operation\":\"data-write\","
+                + "\"path\":\"" + path + "\"}},\"event_type\":\"kv-v2/data-write\","
+                + "\"plugin_info\":{\"mount_path\":\"secret/\",\"plugin\":\"kv\"}}}";
+    }
+
+    /**
+     * Answers each WebSocket upgrade with the next scripted connection, standing in for Vault.
+     */
+
+    private void serve() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                sockets.add(socket);
+                Connection connection = connections.poll();
+                handle(socket, connection != null ? connection : new Connection(503, false));
+            } catch (IOException ex) {
+                // the test is over
+            }
+        }
+    }
+
+    private void handle(Socket socket, Connection connection) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        String requestLine = reader.readLine();
+        String key = null;
+        String token = null;
+        for (String line = reader.readLine(); line != null && !line.isEmpty(); line = reader.readLine()) {
+            if (line.startsWith("Sec-WebSocket-Key: ")) {
+                key = line.substring("Sec-WebSocket-Key: ".length());
+            } else if (line.startsWith("X-Vault-Token: ")) {
+                token = line.substring("X-Vault-Token: ".length());
+            }
+        }
+        requests.add(requestLine + " token=" + token);
+        OutputStream output = socket.getOutputStream();
+        if (connection.status != 101) {
+            output.write(("HTTP/1.1 " + connection.status + " Refused\r\nContent-Length: 0\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+            socket.close();
+            return;
+        }
+        output.write(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: " + WebSocketConnection.expectedAccept(key) + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        for (String message : connection.messages) {
+            output.write(textFrame(message));
+        }
+        output.flush();
+        if (!connection.keepOpen) {
+            socket.close();
+        }
+    }
+
+    private static byte[] textFrame(String message) {
+        byte[] payload = message.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        frame.write(0x81);
+        if (payload.length < 126) {
+            frame.write(payload.length);
+        } else {
+            frame.write(126);
+            frame.write(payload.length >>> 8);
+            frame.write(payload.length);
+        }
+        frame.write(payload, 0, payload.length);
+        return frame.toByteArray();
+    }
+
+    private static final class Connection {
+        private final int status;
+        private final boolean keepOpen;
+        private final String[] messages;
+
+        Connection(int status, boolean keepOpen, String... messages) {
+            this.status = status;
+            this.keepOpen = keepOpen;
+            this.messages = messages;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.sc.hcv.kv;
+
+import com.sc.hcv.auth.VaultTokenManager;
+import com.sc.hcv.events.VaultEvent;
+import com.sc.hcv.secrets.VaultSecret;
+import com.sc.hcv.secrets.VaultStaticSecrets;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class KVSecretWatcherTest {
+    @Mock
+    private VaultStaticSecrets kvSecrets;
+    @Mock
+    private VaultTokenManager tokenManager;
+
+    private final String secretPath = "secret/data/app";
+    private KVSecretWatcher watcher;
+
+    @Before
+    public void setUp() throws Exception {
+        when(tokenManager.getToken()).thenReturn("testToken");
+        watcher = new KVSecretWatcher(kvSecrets, tokenManager, 3600000);
+    }
+
+    @After
+    public void tearDown() {
+        watcher.close();
+    }
+
+    @Test
+    public void testPayloadIsOnlyReadWhenVersionChanges() throws Exception {
+        when(kvSecrets.readKVCurrentVersion("testToken", secretPath)).thenReturn(1L);
+        when(kvSecrets.readKVSecretVersion("testToken", secretPath, 1)).thenReturn(version(1, "password", "p1"));
+
+        assertEquals("p1", watcher.getSecret(secretPath).get("password"));
+        watcher.poll();
+        watcher.poll();
+
+        verify(kvSecrets, times(3)).readKVCurrentVersion("testToken", secretPath);
+        verify(kvSecrets, times(1)).readKVSecretVersion("testToken", secretPath, 1);
+    }
+
+    @Test
+    public void testListenersReceiveTheDiff() throws Exception {
+        when(kvSecrets.readKVCurrentVersion("testToken", secretPath)).thenReturn(1L, 2L);
+        when(kvSecrets.readKVSecretVersion("testToken", secretPath, 1)).thenReturn(version(1, "password", "p1", "user", "app"));
+        when(kvSecrets.readKVSecretVersion("testToken", secretPath, 2)).thenReturn(version(2, "password", "p2", "host", "db"));
+        List<KVSecretChange> changes = new ArrayList<>();
+        watcher.watch(secretPath, changes::add);
+
+        watcher.poll();
+        watcher.poll();
+
+        assertEquals(2, changes.size());
+        assertEquals(2, changes.get(0).getAdded().size());
+        KVSecretChange change = changes.get(1);
+        assertEquals(1, change.getPreviousVersion());
+        assertEquals(2, change.getVersion());
+        assertEquals(Collections.singletonMap("host", "db"), change.getAdded());
+        assertEquals(Collections.singletonMap("password", "p2"), change.getUpdated());
+        assertEquals(Collections.singleton("user"), change.getRemoved());
+        assertEquals("p2", watcher.getSecret(secretPath).get("password"));
+    }
+
+    @Test
+    public void testDeletedSecretIsEmpty() throws Exception {
+        when(kvSecrets.readKVCurrentVersion("testToken", secretPath)).thenReturn(0L);
+
+        assertTrue(watcher.getSecret(secretPath).isEmpty());
+    }
+
+    @Test
+    public void testEventRefreshesOnlyTheChangedPath() throws Exception {
+        when(kvSecrets.readKVCurrentVersion("testToken", secretPath)).thenReturn(1L, 2L);
+        when(kvSecrets.readKVSecretVersion("testToken", secretPath, 1)).thenReturn(version(1, "password", "p1"));
+        when(kvSecrets.readKVSecretVersion("testToken", secretPath, 2)).thenReturn(version(2, "password", "p2"));
+        BlockingQueue<KVSecretChange> changes = new LinkedBlockingQueue<>();
+        watcher.watch(secretPath, changes::add);
+        assertEquals("p1", watcher.getSecret(secretPath).get("password"));
+
+        watcher.onEvent(new VaultEvent("kv-v2/data-write", "secret/data/other", 1));
+        watcher.onEvent(new VaultEvent("kv-v2/data-write", secretPath, 2));
+
+        changes.poll(5, TimeUnit.SECONDS);
+        assertEquals(2, changes.poll(5, TimeUnit.SECONDS).getVersion());
+        assertEquals("p2", watcher.getSecret(secretPath).get("password"));
+        verify(kvSecrets, times(2)).readKVCurrentVersion("testToken", secretPath);
+    }
+
+    private static VaultSecret version(long version, String... keyValues) {
+        Map<String, Object> secret = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            secret.put(keyValues[i], keyValues[i + 1]);
+        }
+        Map<String, Object> data = new HashMap<>();
+        data.put("data", secret);
+        data.put("metadata", Collections.singletonMap("version", version));
+        return new VaultSecret(null, null, 0, false, data, null);
+    }
+}
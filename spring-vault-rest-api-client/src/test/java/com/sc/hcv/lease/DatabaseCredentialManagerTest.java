@@ -0,0 +1,101 @@
+package com.sc.hcv.lease;
+
+import com.sc.hcv.auth.VaultTokenManager;
+import com.sc.hcv.secrets.VaultDBSecrets;
+import com.sc.hcv.secrets.VaultSecret;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DatabaseCredentialManagerTest {
+    @Mock
+    private VaultDBSecrets dbSecrets;
+    @Mock
+    private VaultTokenManager tokenManager;
+
+    private final String databasePath = "database/creds/app";
+    private DatabaseCredentialManager credentialManager;
+
+    @Before
+    public void setUp() throws Exception {
+        when(tokenManager.getToken()).thenReturn("testToken");
+        credentialManager = new DatabaseCredentialManager(dbSecrets, tokenManager, 0.1);
+    }
+
+    @After
+    public void tearDown() {
+        credentialManager.close();
+    }
+
+    @Test
+    public void testCredentialsAreReusedUntilRotation() throws Exception {
+        when(dbSecrets.readDatabaseLease("testToken", databasePath)).thenReturn(lease("user1", 3600));
+
+        DatabaseCredentials first = credentialManager.getCredentials(databasePath);
+        DatabaseCredentials second = credentialManager.getCredentials(databasePath);
+
+        assertSame(first, second);
+        verify(dbSecrets, times(1)).readDatabaseLease("testToken", databasePath);
+    }
+
+    @Test
+    public void testLeaseIsRenewedInBackground() throws Exception {
+        when(dbSecrets.readDatabaseLease("testToken", databasePath)).thenReturn(lease("user1", 1));
+        when(dbSecrets.renewLease(eq("testToken"), eq("lease-user1"), anyLong())).thenReturn(renewal(1));
+
+        credentialManager.getCredentials(databasePath);
+
+        verify(dbSecrets, timeout(2000)).renewLease("testToken", "lease-user1", 1);
+        assertEquals("user1", credentialManager.getCredentials(databasePath).getUsername());
+    }
+
+    @Test
+    public void testCappedRenewalRotatesAndNotifies() throws Exception {
+        when(dbSecrets.readDatabaseLease("testToken", databasePath)).thenReturn(lease("user1", 2), lease("user2", 3600));
+        when(dbSecrets.renewLease(eq("testToken"), eq("lease-user1"), anyLong())).thenReturn(renewal(1));
+        CompletableFuture<DatabaseCredentials> rotated = new CompletableFuture<>();
+        credentialManager.subscribe(databasePath, (previous, current) -> rotated.complete(current));
+
+        credentialManager.getCredentials(databasePath);
+
+        assertEquals("user2", rotated.get(3, TimeUnit.SECONDS).getUsername());
+        assertEquals("user2", credentialManager.getCredentials(databasePath).getUsername());
+    }
+
+    private static VaultSecret lease(String username, long leaseDuration) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("username", username);
+        data.put("password", "password");
+        Map<String, Object> body = new HashMap<>();
+        body.put("lease_id", "lease-" + username);
+        body.put("lease_duration", leaseDuration);
+        body.put("renewable", true);
+        body.put("data", data);
+        return new VaultSecret(body);
+    }
+
+    private static VaultSecret renewal(long leaseDuration) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("lease_duration", leaseDuration);
+        body.put("renewable", true);
+        return new VaultSecret(body);
+    }
+}
@@ -0,0 +1,93 @@
+package com.sc.hcv.metrics;
+
+import com.sc.hcv.VaultException;
+import com.sc.hcv.retry.CircuitBreaker;
+import com.sc.hcv.retry.RetryBudget;
+import com.sc.hcv.retry.RetryPolicy;
+import com.sc.hcv.retry.VaultRetryEngine;
+import com.sc.hcv.secrets.SecretEngine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class MicrometerVaultMetricsTest {
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    @Test
+    public void testRequestsAndRetriesAreRecorded() throws Exception {
+        VaultRetryEngine engine = new VaultRetryEngine(new RetryBudget(0.2, 10), new CircuitBreaker(5, 10000));
+        engine.setMetrics(new MicrometerVaultMetrics(registry));
+
+        engine.execute("reading secrets from Key-Value", SecretEngine.KV, "secret/orders", new RetryPolicy(3, 1, 5), () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new VaultException("Vault is sealed", 503);
+            }
+            return "ok";
+        });
+
+        assertEquals(1, registry.get("vault.requests").tags("engine", "kv", "path", "secret/*", "status", "503").timer().count());
+        assertEquals(1, registry.get("vault.requests").tags("engine", "kv", "path", "secret/*", "status", "200").timer().count());
+        assertEquals(1, registry.get("vault.retries").tag("operation", "reading secrets from Key-Value").timer().count());
+        assertEquals(0, registry.get("vault.requests.active").gauge().value(), 0);
+    }
+
+    @Test
+    public void testReportedStatusIsRecorded() throws Exception {
+        VaultRetryEngine engine = new VaultRetryEngine(new RetryBudget(0.2, 10), new CircuitBreaker(5, 10000));
+        engine.setMetrics(new MicrometerVaultMetrics(registry));
+
+        long version = engine.execute("reading Key-Value metadata", SecretEngine.KV, "secret/metadata/team/app",
+                new RetryPolicy(3, 1, 5), () -> {
+                    VaultRetryEngine.reportStatus(404);
+                    return 0L;
+                });
+        engine.execute("reading Key-Value metadata", SecretEngine.KV, "secret/metadata/team/other",
+                new RetryPolicy(3, 1, 5), () -> 3L);
+
+        assertEquals(0, version);
+        assertEquals(1, registry.get("vault.requests").tags("path", "secret/metadata/*", "status", "404").timer().count());
+        assertEquals(1, registry.get("vault.requests").tags("path", "secret/metadata/*", "status", "200").timer().count());
+    }
+
+    @Test
+    public void testMetersAreReused() {
+        MicrometerVaultMetrics metrics = new MicrometerVaultMetrics(registry);
+        for (int i = 0; i < 100; i++) {
+            metrics.requestStarted("reading secrets from Key-Value");
+            metrics.requestCompleted("reading secrets from Key-Value", SecretEngine.KV, "secret/data/tenant" + i + "/app", 200, 1000);
+        }
+
+        assertEquals(1, registry.get("vault.requests").timers().size());
+        assertEquals(100, registry.get("vault.requests").tag("path", "secret/data/*").timer().count());
+    }
+
+    @Test
+    public void testTokenRenewalsAndCacheLookupsAreCounted() {
+        MicrometerVaultMetrics metrics = new MicrometerVaultMetrics(registry);
+        metrics.tokenRenewed(true);
+        metrics.tokenRenewed(false);
+        metrics.tokenRenewed(true);
+        metrics.cacheLookup(SecretEngine.DATABASE, VaultMetrics.CacheResult.STALE);
+
+        assertEquals(2, registry.get("vault.token.renewals").tag("result", "success").counter().count(), 0);
+        assertEquals(1, registry.get("vault.token.renewals").tag("result", "failure").counter().count(), 0);
+        assertEquals(1, registry.get("vault.cache.lookups").tags("engine", "database", "result", "stale").counter().count(), 0);
+    }
+
+    @Test
+    public void testPathTemplate() {
+        assertEquals("database/creds/*", MicrometerVaultMetrics.pathTemplate(SecretEngine.DATABASE, "database/creds/orders"));
+        assertEquals("secret/*", MicrometerVaultMetrics.pathTemplate(SecretEngine.KV, "secret/orders/"));
+        assertEquals("*", MicrometerVaultMetrics.pathTemplate(SecretEngine.KV, "orders"));
+        assertEquals("secret/data/*", MicrometerVaultMetrics.pathTemplate(SecretEngine.KV, "secret/data/tenant/app/config"));
+        assertEquals("secret/data/*", MicrometerVaultMetrics.pathTemplate(SecretEngine.KV, "secret/data/app?version=3"));
+        assertEquals("secret/*", MicrometerVaultMetrics.pathTemplate(SecretEngine.KV, "secret/tenant/app/config"));
+        assertEquals("transit/datakey/*", MicrometerVaultMetrics.pathTemplate(SecretEngine.TRANSIT, "transit/datakey/plaintext/orders"));
+        assertEquals("auth/token/renew-self", MicrometerVaultMetrics.pathTemplate(null, "auth/token/renew-self"));
+        assertEquals("none", MicrometerVaultMetrics.pathTemplate(null, null));
+    }
+}
@@ -0,0 +1,106 @@
+package com.sc.hcv.prefetch;
+
+import com.sc.hcv.secrets.SecretRequest;
+import com.sc.hcv.secrets.VaultDBSecretsAsync;
+import com.sc.hcv.secrets.VaultStaticSecretsAsync;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SecretPrefetcherTest {
+    @Mock
+    private VaultStaticSecretsAsync staticSecrets;
+    @Mock
+    private VaultDBSecretsAsync dbSecrets;
+
+    @Test
+    public void testManifestFromProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("vault.ad.path", "ad/creds");
+        properties.setProperty("vault.prefetch.policy", "fail");
+        properties.setProperty("vault.prefetch.0.engine", "kv");
+        properties.setProperty("vault.prefetch.0.path", "secret/data/app");
+        properties.setProperty("vault.prefetch.0.keys", "username, password");
+        properties.setProperty("vault.prefetch.1.engine", "active_directory");
+        properties.setProperty("vault.prefetch.1.keys", "app-role");
+
+        PrefetchManifest manifest = PrefetchManifest.fromProperties(properties);
+
+        assertEquals(PrefetchPolicy.FAIL, manifest.getPolicy());
+        assertEquals(Arrays.asList(SecretRequest.kv("secret/data/app", "username", "password"),
+                SecretRequest.activeDirectory("ad/creds", "app-role")), manifest.getRequests());
+    }
+
+    @Test
+    public void testManifestFromYaml() throws Exception {
+        String yaml = "concurrency: 4\n"
+                + "secrets:\n"
+                + "  - engine: kv\n"
+                + "    path: secret/data/app\n"
+                + "    keys: [username, password]\n"
+                + "  - engine: database\n"
+                + "    path: database/creds/app\n";
+
+        PrefetchManifest manifest = PrefetchManifest.fromYaml(new ByteArrayInputStream(yaml.getBytes(StandardCharsets.UTF_8)), null);
+
+        assertEquals(PrefetchPolicy.DEGRADE, manifest.getPolicy());
+        assertEquals(4, manifest.getConcurrency());
+        assertEquals(Arrays.asList(SecretRequest.kv("secret/data/app", "username", "password"),
+                SecretRequest.database("database/creds/app")), manifest.getRequests());
+    }
+
+    @Test
+    public void testDegradedWhenPolicyAllows() throws Exception {
+        stubReads();
+        SecretPrefetcher prefetcher = new SecretPrefetcher(manifest(PrefetchPolicy.DEGRADE), staticSecrets, dbSecrets, null);
+
+        assertEquals(PrefetchState.DEGRADED, prefetcher.prefetch("token"));
+        assertTrue(prefetcher.isReady());
+        assertEquals(Collections.singletonList(SecretRequest.database("database/creds/app")), prefetcher.getFailed());
+    }
+
+    @Test
+    public void testFailsWhenPolicyRequiresAll() {
+        stubReads();
+        SecretPrefetcher prefetcher = new SecretPrefetcher(manifest(PrefetchPolicy.FAIL), staticSecrets, dbSecrets, null);
+
+        try {
+            prefetcher.prefetch("token");
+            fail("Expected the prefetch to fail");
+        } catch (Exception ex) {
+            assertEquals("Database unavailable", ex.getCause().getMessage());
+        }
+        assertEquals(PrefetchState.FAILED, prefetcher.getState());
+        assertFalse(prefetcher.isReady());
+    }
+
+    private void stubReads() {
+        CompletableFuture<Map<String, String>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new Exception("Database unavailable"));
+        when(staticSecrets.readKVSecrets(eq("token"), eq("secret/data/app"), any())).thenReturn(CompletableFuture.completedFuture(Collections.singletonMap("username", "app")));
+        when(dbSecrets.readDatabaseSecret("token", "database/creds/app")).thenReturn(failed);
+    }
+
+    private static PrefetchManifest manifest(PrefetchPolicy policy) {
+        return new PrefetchManifest(Arrays.asList(SecretRequest.kv("secret/data/app", "username"),
+                SecretRequest.database("database/creds/app")), policy, 2, 5000);
+    }
+}
@@ -0,0 +1,65 @@
+package com.sc.hcv.response;
+
+import com.sc.hcv.auth.VaultToken;
+import com.sc.hcv.secrets.VaultSecret;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class VaultResponseDecoderTest {
+
+    @Test
+    public void testDecodesSecretEnvelope() throws Exception {
+        VaultSecret secret = VaultResponseDecoder.decodeSecret(stream("{\"request_id\":\"req-1\",\"lease_id\":\"database/creds/app/abc\","
+                + "\"renewable\":true,\"lease_duration\":3600,\"data\":{\"username\":\"user\",\"password\":\"pass\","
+                + "\"nested\":{\"list\":[1,true,null]}},\"wrap_info\":null,\"warnings\":[\"ignored\"],\"auth\":null}"));
+
+        assertEquals("req-1", secret.getRequestId());
+        assertEquals("database/creds/app/abc", secret.getLeaseId());
+        assertEquals(3600, secret.getLeaseDuration());
+        assertTrue(secret.isRenewable());
+        assertEquals("user", secret.getData().get("username"));
+        assertEquals(Arrays.asList(1, true, null), ((Map<?, ?>) secret.getData().get("nested")).get("list"));
+        assertNull(secret.getWrapInfo());
+        assertEquals("pass", ((Map<?, ?>) secret.getBody().get("data")).get("password"));
+    }
+
+    @Test
+    public void testDecodesWrapInfo() throws Exception {
+        VaultSecret secret = VaultResponseDecoder.decodeSecret("{\"data\":null,\"wrap_info\":{\"token\":\"wrapping-token\","
+                + "\"accessor\":\"acc\",\"ttl\":300,\"creation_time\":\"2024-01-01T00:00:00Z\",\"creation_path\":\"secret/app\"}}");
+
+        assertFalse(secret.hasData());
+        assertEquals("wrapping-token", secret.getWrapInfo().getToken());
+        assertEquals(300, secret.getWrapInfo().getTtl());
+        assertEquals("secret/app", secret.getWrapInfo().getCreationPath());
+    }
+
+    @Test
+    public void testDecodesAuthBlock() throws Exception {
+        VaultToken token = VaultResponseDecoder.decodeToken(stream("{\"data\":null,\"auth\":{\"client_token\":\"s.token\","
+                + "\"policies\":[\"default\"],\"metadata\":{\"role\":\"app\"},\"lease_duration\":2764800,\"renewable\":true}}"));
+
+        assertEquals("s.token", token.getClientToken());
+        assertEquals(2764800, token.getLeaseDuration());
+        assertTrue(token.isRenewable());
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingClientTokenIsRejected() throws Exception {
+        VaultResponseDecoder.decodeToken("{\"auth\":null}");
+    }
+
+    private static ByteArrayInputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,108 @@
+package com.sc.hcv.retry;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConcurrencyLimiterTest {
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void tearDown() {
+        timer.shutdownNow();
+    }
+
+    @Test
+    public void testRequestsOverTheLimitWaitInOrder() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("secret", 1, 10, 1000);
+        limiter.acquire();
+
+        CompletableFuture<Void> first = limiter.acquireAsync(timer);
+        CompletableFuture<Void> second = limiter.acquireAsync(timer);
+        assertFalse(first.isDone());
+        assertEquals(2, limiter.getQueueDepth());
+
+        limiter.giveBack();
+        assertTrue(first.isDone());
+        assertFalse(second.isDone());
+
+        limiter.giveBack();
+        second.get(1, TimeUnit.SECONDS);
+        assertEquals(0, limiter.getQueueDepth());
+        assertEquals(1, limiter.getInFlight());
+    }
+
+    @Test
+    public void testFullQueueIsRejected() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("secret", 1, 10, 1000);
+        limiter.setQueue(0, 1000);
+        assertTrue(limiter.tryAcquire());
+
+        try {
+            limiter.acquire();
+            fail("Expected the request to be rejected");
+        } catch (ConcurrencyLimitExceededException expected) {
+            assertEquals(1, limiter.getInFlight());
+        }
+    }
+
+    @Test
+    public void testWaitTimesOut() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("secret", 1, 10, 1000);
+        limiter.setQueue(10, 20);
+        limiter.acquire();
+
+        try {
+            limiter.acquire();
+            fail("Expected the wait to time out");
+        } catch (ConcurrencyLimitExceededException expected) {
+            assertEquals(0, limiter.getQueueDepth());
+        }
+        try {
+            limiter.acquireAsync(timer).get(1, TimeUnit.SECONDS);
+            fail("Expected the wait to time out");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof ConcurrencyLimitExceededException);
+        }
+        assertEquals(1, limiter.getInFlight());
+    }
+
+    @Test
+    public void testOverloadLowersTheLimitOncePerBurst() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("database", 10, 100, 1000);
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+
+        limiter.release(start, true);
+        limiter.release(start, true);
+        assertEquals(9, limiter.getLimit());
+
+        limiter.release(System.nanoTime(), true);
+        assertEquals(8, limiter.getLimit());
+    }
+
+    @Test
+    public void testFastResponsesRaiseTheLimitUpToTheMaximum() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("database", 2, 4, 1000);
+        assertTrue(limiter.tryAcquire());
+
+        for (int i = 0; i < 50; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.release(System.nanoTime(), false);
+        }
+
+        assertEquals(4, limiter.getLimit());
+    }
+}
@@ -0,0 +1,217 @@
+package com.sc.hcv.retry;
+
+import com.sc.hcv.VaultException;
+import com.sc.hcv.secrets.SecretEngine;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class VaultRetryEngineTest {
+    private final RetryPolicy policy = new RetryPolicy(3, 1, 5);
+    private final AtomicInteger attempts = new AtomicInteger();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void tearDown() {
+        timer.shutdownNow();
+    }
+
+    @Test
+    public void testClientErrorsAreNotRetried() throws Exception {
+        VaultRetryEngine engine = new VaultRetryEngine(new RetryBudget(0.2, 10), new CircuitBreaker(5, 10000));
+        try {
+            engine.execute("test", policy, () -> {
+                attempts.incrementAndGet();
+                throw new HttpClientErrorException(HttpStatus.BAD_REQUEST);
+            });
+            fail("Expected the request to fail");
+        } catch (HttpClientErrorException ex) {
+            assertEquals(400, ex.getRawStatusCode());
+        }
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void testThrottlingAndServerErrorsAreRetried() throws Exception {
+        VaultRetryEngine engine = new VaultRetryEngine(new RetryBudget(0.2, 10), new CircuitBreaker(5, 10000));
+        String result = engine.execute("test", policy, () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new HttpClientErrorException(HttpStatus.TOO_MANY_REQUESTS);
+            }
+            if (attempts.get() == 2) {
+                throw new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE);
+            }
+            return "ok";
+        });
+
+        assertEquals("ok", result);
+        assertEquals(3, attempts.get());
+    }
+
+    @Test
+    public void testClassification() {
+        assertFalse(VaultRetryEngine.isRetryable(new VaultException("Invalid Vault token", 403)));
+        assertTrue(VaultRetryEngine.isRetryable(new VaultException("Vault is sealed", 503)));
+        assertTrue(VaultRetryEngine.isRetryable(new HttpClientErrorException(HttpStatus.TOO_MANY_REQUESTS)));
+        assertTrue(VaultRetryEngine.isRetryable(new Exception("Connection reset")));
+    }
+
+    @Test
+    public void testRetryBudgetLimitsRetries() throws Exception {
+        VaultRetryEngine engine = new VaultRetryEngine(new RetryBudget(0, 0), new CircuitBreaker(100, 10000));
+        try {
+            engine.execute("test", policy, () -> {
+                attempts.incrementAndGet();
+                throw new Exception("transient");
+            });
+            fail("Expected the request to fail");
+        } catch (Exception ex) {
+            assertEquals("Retry budget exhausted for test", ex.getMessage());
+        }
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void testCircuitBreakerFailsFastAndRecovers() throws Exception {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(3, 50);
+        VaultRetryEngine engine = new VaultRetryEngine(new RetryBudget(0.2, 10), circuitBreaker);
+        try {
+            engine.execute("test", policy, () -> {
+                attempts.incrementAndGet();
+                throw new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR);
+            });
+            fail("Expected the request to fail");
+        } catch (Exception ex) {
+            assertEquals("Max retries exceeded for test", ex.getMessage());
+        }
+        assertTrue(circuitBreaker.isOpen());
+
+        try {
+            engine.execute("test", policy, () -> attempts.incrementAndGet());
+            fail("Expected the circuit breaker to reject the request");
+        } catch (CircuitOpenException expected) {
+            assertEquals(3, attempts.get());
+        }
+
+        Thread.sleep(60);
+        assertEquals(Integer.valueOf(4), engine.execute("test", policy, () -> attempts.incrementAndGet()));
+        assertFalse(circuitBreaker.isOpen());
+    }
+
+    @Test
+    public void testConcurrencyIsLimitedPerMount() throws Exception {
+        VaultRetryEngine engine = new VaultRetryEngine(new RetryBudget(0.2, 10), new CircuitBreaker(5, 10000));
+        ConcurrencyLimiter databaseLimiter = new ConcurrencyLimiter("database", 1, 1, 1000);
+        databaseLimiter.setQueue(0, 1000);
+        engine.setConcurrencyLimiter("database", databaseLimiter);
+        assertTrue(databaseLimiter.tryAcquire());
+
+        try {
+            engine.execute("test", SecretEngine.DATABASE, "database/creds/my-role", policy, () -> attempts.incrementAndGet());
+            fail("Expected the limiter to reject the request");
+        } catch (ConcurrencyLimitExceededException expected) {
+            assertEquals(0, attempts.get());
+        }
+        assertEquals(Integer.valueOf(1), engine.execute("test", SecretEngine.KV, "secret/data/app", policy, () -> attempts.incrementAndGet()));
+
+        databaseLimiter.giveBack();
+        assertEquals(Integer.valueOf(2), engine.execute("test", SecretEngine.DATABASE, "database/creds/my-role", policy, () -> attempts.incrementAndGet()));
+        assertEquals(0, databaseLimiter.getInFlight());
+    }
+
+    @Test
+    public void testFullLimiterDoesNotHoldTheHalfOpenTrial() throws Exception {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(1, 20);
+        VaultRetryEngine engine = new VaultRetryEngine(new RetryBudget(0.2, 10), circuitBreaker);
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("secret", 1, 1, 1000);
+        limiter.setQueue(0, 1000);
+        engine.setConcurrencyLimiter(limiter);
+        try {
+            engine.execute("test", SecretEngine.KV, "secret/data/app", new RetryPolicy(1, 1, 1), () -> {
+                throw new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE);
+            });
+            fail("Expected the request to fail");
+        } catch (Exception ex) {
+            assertEquals("Max retries exceeded for test", ex.getMessage());
+        }
+        Thread.sleep(30);
+        assertTrue(limiter.tryAcquire());
+
+        try {
+            engine.execute("test", SecretEngine.KV, "secret/data/app", policy, () -> attempts.incrementAndGet());
+            fail("Expected the limiter to reject the request");
+        } catch (ConcurrencyLimitExceededException expected) {
+            assertEquals(0, attempts.get());
+        }
+        try {
+            engine.executeAsync("test", SecretEngine.KV, "secret/data/app", policy, () -> attempts.incrementAndGet(),
+                    Runnable::run, timer).get(5, TimeUnit.SECONDS);
+            fail("Expected the limiter to reject the request");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof ConcurrencyLimitExceededException);
+        }
+
+        limiter.giveBack();
+        assertEquals(Integer.valueOf(1), engine.execute("test", SecretEngine.KV, "secret/data/app", policy, () -> attempts.incrementAndGet()));
+        assertFalse(circuitBreaker.isOpen());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testOnlyOverloadLowersTheConcurrencyLimit() throws Exception {
+        VaultRetryEngine engine = new VaultRetryEngine(new RetryBudget(0.2, 10), new CircuitBreaker(100, 10000));
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("secret", 10, 10, 1000);
+        engine.setConcurrencyLimiter(limiter);
+        RetryPolicy noRetries = new RetryPolicy(1, 1, 1);
+        for (Exception error : new Exception[]{new Exception("Error reading secrets from Key-Value"),
+                new HttpClientErrorException(HttpStatus.NOT_FOUND)}) {
+            try {
+                engine.execute("test", SecretEngine.KV, "secret/data/app", noRetries, () -> {
+                    throw error;
+                });
+                fail("Expected the request to fail");
+            } catch (Exception expected) {
+                assertEquals(10, limiter.getLimit());
+            }
+        }
+
+        try {
+            engine.execute("test", SecretEngine.KV, "secret/data/app", noRetries, () -> {
+                throw new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE);
+            });
+            fail("Expected the request to fail");
+        } catch (Exception expected) {
+            assertEquals(9, limiter.getLimit());
+        }
+    }
+
+    @Test
+    public void testConcurrencyLimitersFromProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("vault.concurrency.enabled", "true");
+        properties.setProperty("vault.concurrency.initial-limit", "5");
+        properties.setProperty("vault.concurrency.mounts", "database");
+        properties.setProperty("vault.concurrency.mount.database.initial-limit", "2");
+
+        VaultRetryEngine engine = VaultRetryEngine.fromProperties(properties);
+
+        assertEquals(2, engine.getConcurrencyLimiter("database/creds/my-role").getLimit());
+        assertEquals(5, engine.getConcurrencyLimiter("secret/data/app").getLimit());
+        assertNull(VaultRetryEngine.fromProperties(new Properties()).getConcurrencyLimiter("secret/data/app"));
+    }
+}
@@ -0,0 +1,88 @@
+package com.sc.hcv.secrets;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class VaultBulkSecretsTest {
+    @Mock
+    private VaultStaticSecretsAsync staticSecrets;
+    @Mock
+    private VaultDBSecretsAsync dbSecrets;
+
+    @Test
+    public void testFailureDoesNotFailBatch() {
+        CompletableFuture<Map<String, String>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new Exception("Secret not found"));
+        when(staticSecrets.readKVSecrets(eq("token"), eq("secret/ok"), any())).thenReturn(CompletableFuture.completedFuture(Collections.singletonMap("key", "value")));
+        when(staticSecrets.readKVSecrets(eq("token"), eq("secret/missing"), any())).thenReturn(failed);
+        when(dbSecrets.readDatabaseSecret("token", "database/creds/app")).thenReturn(CompletableFuture.completedFuture(Collections.singletonMap("lease_id", "lease")));
+
+        VaultBulkSecrets bulkSecrets = new VaultBulkSecrets(staticSecrets, dbSecrets, null, 2);
+        List<SecretResult> results = bulkSecrets.readAll("token", Arrays.asList(
+                SecretRequest.kv("secret/ok", "key"),
+                SecretRequest.kv("secret/missing", "key"),
+                SecretRequest.database("database/creds/app"),
+                SecretRequest.ldap("ldap/static-cred/app")));
+
+        assertEquals("value", results.get(0).getSecrets().get("key"));
+        assertEquals("Secret not found", results.get(1).getError().getMessage());
+        assertTrue(results.get(2).isSuccess());
+        assertFalse(results.get(3).isSuccess());
+        assertEquals(SecretRequest.ldap("ldap/static-cred/app"), results.get(3).getRequest());
+    }
+
+    @Test
+    public void testDuplicateRequestsEachKeepTheirResult() {
+        when(dbSecrets.readDatabaseSecret("token", "database/creds/app")).thenReturn(
+                CompletableFuture.completedFuture(Collections.singletonMap("lease_id", "lease1")),
+                CompletableFuture.completedFuture(Collections.singletonMap("lease_id", "lease2")));
+
+        List<SecretResult> results = new VaultBulkSecrets(null, dbSecrets, null, 2).readAll("token", Arrays.asList(
+                SecretRequest.database("database/creds/app"),
+                SecretRequest.database("database/creds/app")));
+
+        assertEquals(2, results.size());
+        assertEquals("lease1", results.get(0).getSecrets().get("lease_id"));
+        assertEquals("lease2", results.get(1).getSecrets().get("lease_id"));
+    }
+
+    @Test
+    public void testConcurrencyIsBounded() {
+        List<CompletableFuture<Map<String, String>>> inFlight = new ArrayList<>();
+        when(staticSecrets.readKVSecrets(eq("token"), anyString(), any())).thenAnswer(invocation -> {
+            CompletableFuture<Map<String, String>> future = new CompletableFuture<>();
+            inFlight.add(future);
+            return future;
+        });
+        List<SecretRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            requests.add(SecretRequest.kv("secret/app" + i, "key"));
+        }
+
+        CompletableFuture<List<SecretResult>> results = new VaultBulkSecrets(staticSecrets, null, null, 3).fetchAll("token", requests);
+        assertEquals(3, inFlight.size());
+
+        for (int i = 0; i < 10; i++) {
+            inFlight.get(i).complete(Collections.singletonMap("key", "value" + i));
+        }
+        assertEquals(10, results.join().size());
+    }
+}
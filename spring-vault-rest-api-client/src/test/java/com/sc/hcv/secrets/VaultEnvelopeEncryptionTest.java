@@ -0,0 +1,101 @@
+package com.sc.hcv.secrets;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class VaultEnvelopeEncryptionTest {
+    @Mock
+    private VaultTransitSecrets transit;
+
+    private final byte[] dataKey = new byte[32];
+
+    @Before
+    public void setUp() throws Exception {
+        dataKey[0] = 42;
+        when(transit.generateDataKey("token", "orders", 256)).thenAnswer(invocation -> new TransitDataKey(dataKey.clone(), "vault:v1:wrapped"));
+    }
+
+    @Test
+    public void testEncryptsLocallyUnderOneDataKey() throws Exception {
+        VaultEnvelopeEncryption envelope = new VaultEnvelopeEncryption(transit, "orders", 10, 60000, 1000);
+
+        byte[] first = envelope.encrypt("token", bytes("first"));
+        byte[] second = envelope.encrypt("token", bytes("second"));
+
+        assertArrayEquals(bytes("first"), envelope.decrypt("token", first));
+        assertArrayEquals(bytes("second"), envelope.decrypt("token", second));
+        verify(transit, times(1)).generateDataKey("token", "orders", 256);
+        verify(transit, never()).decrypt(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    public void testUnwrapsEachDataKeyOnce() throws Exception {
+        byte[] first = new VaultEnvelopeEncryption(transit, "orders", 10, 60000, 1000).encrypt("token", bytes("first"));
+        byte[] second = new VaultEnvelopeEncryption(transit, "orders", 10, 60000, 1000).encrypt("token", bytes("second"));
+        when(transit.decrypt("token", "orders", "vault:v1:wrapped")).thenAnswer(invocation -> dataKey.clone());
+
+        VaultEnvelopeEncryption reader = new VaultEnvelopeEncryption(transit, "orders", 10, 60000, 1000);
+        assertArrayEquals(bytes("first"), reader.decrypt("token", first));
+        assertArrayEquals(bytes("second"), reader.decrypt("token", second));
+        verify(transit, times(1)).decrypt("token", "orders", "vault:v1:wrapped");
+    }
+
+    @Test
+    public void testCachedDataKeysAreNotSharedBetweenTokens() throws Exception {
+        when(transit.generateDataKey("other", "orders", 256)).thenAnswer(invocation -> new TransitDataKey(dataKey.clone(), "vault:v1:other"));
+        when(transit.decrypt("other", "orders", "vault:v1:wrapped")).thenAnswer(invocation -> dataKey.clone());
+        VaultEnvelopeEncryption envelope = new VaultEnvelopeEncryption(transit, "orders", 10, 60000, 1000);
+        byte[] encrypted = envelope.encrypt("token", bytes("payload"));
+
+        assertArrayEquals(bytes("payload"), envelope.decrypt("other", encrypted));
+        envelope.encrypt("other", bytes("payload"));
+
+        verify(transit, times(1)).decrypt("other", "orders", "vault:v1:wrapped");
+        verify(transit, times(1)).generateDataKey("other", "orders", 256);
+    }
+
+    @Test
+    public void testDataKeyIsReplacedAfterMaxUses() throws Exception {
+        VaultEnvelopeEncryption envelope = new VaultEnvelopeEncryption(transit, "orders", 10, 60000, 2);
+
+        for (int i = 0; i < 3; i++) {
+            envelope.encrypt("token", bytes("record" + i));
+        }
+
+        verify(transit, times(2)).generateDataKey(eq("token"), eq("orders"), eq(256));
+    }
+
+    @Test
+    public void testModifiedEnvelopeIsRejected() throws Exception {
+        VaultEnvelopeEncryption envelope = new VaultEnvelopeEncryption(transit, "orders", 10, 60000, 1000);
+        byte[] encrypted = envelope.encrypt("token", bytes("payload"));
+        encrypted[encrypted.length - 1] ^= 1;
+
+        try {
+            envelope.decrypt("token", encrypted);
+            fail("Expected the modified envelope to be rejected");
+        } catch (GeneralSecurityException expected) {
+            // expected
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,99 @@
+package com.sc.hcv.secrets;
+
+import com.sc.hcv.VaultException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class VaultTransitSecretsTest {
+    private final List<List<Map<String, Object>>> batches = new CopyOnWriteArrayList<>();
+    private final VaultTransitSecrets transit = new VaultTransitSecrets("http://localhost:8200", 0, 10, 100) {
+        @Override
+        List<Map<String, Object>> attemptBatch(String vaultToken, String path, List<Map<String, Object>> batch) {
+            batches.add(new ArrayList<>(batch));
+            List<Map<String, Object>> results = new ArrayList<>();
+            for (Map<String, Object> item : batch) {
+                String plaintext = (String) item.get("plaintext");
+                results.add("YmFk".equals(plaintext)
+                        ? Collections.<String, Object>singletonMap("error", "invalid input")
+                        : Collections.<String, Object>singletonMap("ciphertext", "vault:v1:" + plaintext));
+            }
+            return results;
+        }
+    };
+
+    @After
+    public void tearDown() {
+        transit.close();
+    }
+
+    @Test
+    public void testSingleCallsShareOneBatch() throws Exception {
+        transit.setBatching(3, 10000);
+
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (String record : Arrays.asList("a", "b", "c")) {
+            results.add(transit.encryptAsync("token", "orders", record.getBytes(StandardCharsets.UTF_8)));
+        }
+
+        assertEquals("vault:v1:YQ==", results.get(0).get(2, TimeUnit.SECONDS));
+        assertEquals("vault:v1:Yw==", results.get(2).get(2, TimeUnit.SECONDS));
+        assertEquals(1, batches.size());
+        assertEquals(3, batches.get(0).size());
+    }
+
+    @Test
+    public void testPartialBatchIsSentAfterLinger() throws Exception {
+        transit.setBatching(100, 10);
+
+        assertEquals("vault:v1:YQ==", transit.encrypt("token", "orders", "a".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(1, batches.size());
+    }
+
+    @Test
+    public void testRejectedRecordFailsOnlyItsCall() throws Exception {
+        transit.setBatching(2, 10000);
+
+        CompletableFuture<String> good = transit.encryptAsync("token", "orders", "a".getBytes(StandardCharsets.UTF_8));
+        CompletableFuture<String> bad = transit.encryptAsync("token", "orders", "bad".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("vault:v1:YQ==", good.get(2, TimeUnit.SECONDS));
+        try {
+            bad.get(2, TimeUnit.SECONDS);
+            fail("Expected the record to be rejected");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof VaultException);
+        }
+    }
+
+    @Test
+    public void testEncryptAllSendsBoundedBatches() throws Exception {
+        transit.setBatching(2, 10);
+        List<byte[]> records = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            records.add(("record" + i).getBytes(StandardCharsets.UTF_8));
+        }
+        List<String> ciphertexts = new ArrayList<>();
+
+        assertEquals(5, transit.encryptAll("token", "orders", records.iterator(), ciphertexts::add));
+        assertEquals(5, ciphertexts.size());
+        assertEquals(3, batches.size());
+        for (List<Map<String, Object>> batch : batches) {
+            assertTrue(batch.size() <= 2);
+        }
+    }
+}
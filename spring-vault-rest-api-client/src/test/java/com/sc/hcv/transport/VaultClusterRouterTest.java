@@ -0,0 +1,166 @@
+package com.sc.hcv.transport;
+
+import com.sc.hcv.auth.VaultAuthenticator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class VaultClusterRouterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> activeRequests = new CopyOnWriteArrayList<>();
+    private final List<String> standbyRequests = new CopyOnWriteArrayList<>();
+    private HttpServer active;
+    private HttpServer standby;
+    private VaultHttpTransport transport;
+    private VaultClusterRouter router;
+
+    @Before
+    public void setUp() throws IOException {
+        active = start("{\"initialized\":true,\"sealed\":false,\"standby\":false,\"performance_standby\":false}", activeRequests);
+        standby = start("{\"initialized\":true,\"sealed\":false,\"standby\":true,\"performance_standby\":true}", standbyRequests);
+        transport = new VaultHttpTransport(new VaultTransportConfig());
+        router = new VaultClusterRouter(Arrays.asList(url(active), url(standby)), transport);
+        router.probe();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        router.close();
+        transport.close();
+        active.stop(0);
+        standby.stop(0);
+    }
+
+    @Test
+    public void testHealthDeterminesRoles() {
+        assertEquals(VaultNode.Role.ACTIVE, router.getNodes().get(0).getRole());
+        assertEquals(VaultNode.Role.PERFORMANCE_STANDBY, router.getNodes().get(1).getRole());
+    }
+
+    @Test
+    public void testProbesAreNotReroutedByOtherRouters() throws IOException {
+        try (VaultClusterRouter second = new VaultClusterRouter(Arrays.asList(url(active), url(standby)), transport)) {
+            second.probe();
+
+            assertEquals(VaultNode.Role.ACTIVE, second.getNodes().get(0).getRole());
+            assertEquals(VaultNode.Role.PERFORMANCE_STANDBY, second.getNodes().get(1).getRole());
+        }
+    }
+
+    @Test
+    public void testTlsLoginsAreRouted() throws Exception {
+        String keyStore = emptyStore("PKCS12", "client.p12");
+        String trustStore = emptyStore("JKS", "trust.jks");
+        VaultAuthenticator authenticator = new VaultAuthenticator(router.getVaultUrl(), 1, 1, 1, transport);
+
+        try {
+            authenticator.authenticateTLS(keyStore, "changeit", trustStore, "changeit", "/v1/auth/cert/login");
+            fail("Expected the stub's empty response to be rejected");
+        } catch (Exception expected) {
+            // the stub answers without a token
+        }
+
+        // the router sends GET requests to the standby, while an unrouted request would reach the first node
+        assertTrue(standbyRequests.contains("GET /v1/auth/cert/login index=null"));
+        assertTrue(activeRequests.isEmpty());
+    }
+
+    @Test
+    public void testReadsGoToStandbyAndWritesToActive() {
+        RestTemplate restTemplate = transport.getRestTemplate();
+
+        restTemplate.getForObject(router.getVaultUrl() + "/v1/secret/data/app", String.class);
+        restTemplate.postForObject(router.getVaultUrl() + "/v1/auth/approle/login", "{}", String.class);
+
+        assertEquals(Arrays.asList("GET /v1/secret/data/app index=null"), standbyRequests);
+        assertEquals(Arrays.asList("POST /v1/auth/approle/login index=null"), activeRequests);
+    }
+
+    @Test
+    public void testReadAfterWriteCarriesIndex() {
+        RestTemplate restTemplate = transport.getRestTemplate();
+
+        restTemplate.postForObject(router.getVaultUrl() + "/v1/secret/data/app", "{}", String.class);
+        restTemplate.getForObject(router.getVaultUrl() + "/v1/secret/data/app", String.class);
+
+        assertEquals(Arrays.asList("GET /v1/secret/data/app index=index-1"), standbyRequests);
+    }
+
+    @Test
+    public void testUnreachableNodeIsSkipped() {
+        RestTemplate restTemplate = transport.getRestTemplate();
+        standby.stop(0);
+
+        try {
+            restTemplate.getForObject(router.getVaultUrl() + "/v1/secret/data/app", String.class);
+            fail("Expected the stopped node to fail");
+        } catch (ResourceAccessException expected) {
+            // the retry engine retries this, and the retry goes to the next node
+        }
+        restTemplate.getForObject(router.getVaultUrl() + "/v1/secret/data/app", String.class);
+
+        assertEquals(VaultNode.Role.UNREACHABLE, router.getNodes().get(1).getRole());
+        assertTrue(activeRequests.contains("GET /v1/secret/data/app index=null"));
+    }
+
+    private String emptyStore(String type, String name) throws Exception {
+        File file = folder.newFile(name);
+        KeyStore store = KeyStore.getInstance(type);
+        store.load(null, null);
+        try (OutputStream output = new FileOutputStream(file)) {
+            store.store(output, "changeit".toCharArray());
+        }
+        return file.getPath();
+    }
+
+    private static HttpServer start(String health, List<String> requests) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/sys/health", exchange -> respond(exchange, health));
+        server.createContext("/v1/", exchange -> {
+            requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath()
+                    + " index=" + exchange.getRequestHeaders().getFirst(VaultClusterRouter.INDEX_HEADER));
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set(VaultClusterRouter.INDEX_HEADER, "index-1");
+            }
+            respond(exchange, "{}");
+        });
+        server.start();
+        return server;
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    private static String url(HttpServer server) {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+}
@@ -0,0 +1,134 @@
+package com.sc.hcv.transport;
+
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsParameters;
+import com.sun.net.httpserver.HttpsServer;
+import org.apache.http.ssl.SSLContexts;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+
+public class VaultHttpTransportTest {
+    private static final String PASSWORD = "changeit";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private HttpsServer server;
+    private String vaultUrl;
+
+    @Before
+    public void setUp() throws Exception {
+        File serverKeyStore = generateKeyPair("server", "CN=localhost", "SAN=ip:127.0.0.1,dns:localhost");
+        File clientKeyStore = generateKeyPair("client", "CN=vault-client", null);
+        trust("server", serverKeyStore, "client-trust.jks");
+        trust("client", clientKeyStore, "server-trust.jks");
+
+        SSLContext sslContext = SSLContexts.custom()
+                .loadKeyMaterial(load(serverKeyStore, "PKCS12"), PASSWORD.toCharArray())
+                .loadTrustMaterial(load(new File(folder.getRoot(), "server-trust.jks"), "JKS"), null)
+                .build();
+        server = HttpsServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setHttpsConfigurator(new HttpsConfigurator(sslContext) {
+            @Override
+            public void configure(HttpsParameters params) {
+                SSLParameters sslParameters = getSSLContext().getDefaultSSLParameters();
+                sslParameters.setNeedClientAuth(true);
+                params.setSSLParameters(sslParameters);
+            }
+        });
+        server.createContext("/v1/secret/app", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            byte[] body = "{\"data\":{\"password\":\"p1\"}}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        vaultUrl = "https://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testClientCertificateConnectionIsReused() throws Exception {
+        try (VaultHttpTransport transport = VaultHttpTransport.withClientCertificate(new VaultTransportConfig(),
+                new File(folder.getRoot(), "client.p12").getPath(), PASSWORD,
+                new File(folder.getRoot(), "client-trust.jks").getPath(), PASSWORD)) {
+            for (int i = 0; i < 5; i++) {
+                transport.getRestTemplate().getForObject(vaultUrl + "/v1/secret/app", String.class);
+            }
+
+            assertEquals(1, clientPorts.size());
+            assertEquals(1, transport.getConnectionManager().getTotalStats().getAvailable());
+        }
+    }
+
+    private File generateKeyPair(String alias, String dname, String extension) throws Exception {
+        File keyStore = new File(folder.getRoot(), alias + ".p12");
+        List<String> args = new ArrayList<>(Arrays.asList("-genkeypair", "-alias", alias, "-keyalg", "RSA", "-keysize", "2048",
+                "-dname", dname, "-validity", "2", "-storetype", "PKCS12", "-keystore", keyStore.getPath(),
+                "-storepass", PASSWORD, "-keypass", PASSWORD));
+        if (extension != null) {
+            args.add("-ext");
+            args.add(extension);
+        }
+        keytool(args);
+        return keyStore;
+    }
+
+    private void trust(String alias, File keyStore, String trustStoreName) throws Exception {
+        File certificate = new File(folder.getRoot(), alias + ".crt");
+        keytool(Arrays.asList("-exportcert", "-alias", alias, "-keystore", keyStore.getPath(), "-storepass", PASSWORD,
+                "-file", certificate.getPath()));
+        keytool(Arrays.asList("-importcert", "-noprompt", "-alias", alias, "-file", certificate.getPath(), "-storetype", "JKS",
+                "-keystore", new File(folder.getRoot(), trustStoreName).getPath(), "-storepass", PASSWORD));
+    }
+
+    private void keytool(List<String> args) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/keytool").getPath());
+        command.addAll(args);
+        File log = new File(folder.getRoot(), "keytool.log");
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start();
+        if (process.waitFor() != 0) {
+            throw new IOException("keytool failed: " + new String(Files.readAllBytes(log.toPath()), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static KeyStore load(File file, String type) throws Exception {
+        KeyStore keyStore = KeyStore.getInstance(type);
+        try (InputStream inputStream = new FileInputStream(file)) {
+            keyStore.load(inputStream, PASSWORD.toCharArray());
+        }
+        return keyStore;
+    }
+}
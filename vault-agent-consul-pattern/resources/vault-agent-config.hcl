@@ -29,6 +29,14 @@ template {
   }
 }
 
+# Answers identical requests from the local cache and lets clients that send no token use the auto-auth token
+cache {
+}
+
+api_proxy {
+  use_auto_auth_token = true
+}
+
 listener "tcp" {
   address = "127.0.0.1:8202"
   tls_disable = true
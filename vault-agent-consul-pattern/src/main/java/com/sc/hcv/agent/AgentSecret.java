@@ -0,0 +1,40 @@
+package com.sc.hcv.agent;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * One secret object rendered by Vault Agent, e.g. an element of the {@code static-secrets} array in
+ * {@code template.ctmpl}. Only scalar fields are kept, as strings.
+ */
+public final class AgentSecret {
+
+    public static final String TYPE_FIELD = "secret-type";
+
+    private final Map<String, String> fields;
+
+
+    public AgentSecret(Map<String, String> fields) {
+        this.fields = Collections.unmodifiableMap(fields);
+    }
+
+
+    /**
+     * @return the value of the {@code secret-type} field, or null if the secret has none
+     */
+    public String getType() {
+        return fields.get(TYPE_FIELD);
+    }
+
+    /**
+     * @param field the field name, e.g. username
+     * @return the field value, or null if the secret has no such field
+     */
+    public String get(String field) {
+        return fields.get(field);
+    }
+
+    public Map<String, String> getFields() {
+        return fields;
+    }
+}
@@ -0,0 +1,64 @@
+package com.sc.hcv.agent;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable view of the files written by Vault Agent: the secrets rendered from the template and the token
+ * written by the auto-auth file sink. A snapshot never changes; a reload replaces it as a whole.
+ */
+public final class AgentSnapshot {
+
+    static final AgentSnapshot EMPTY = new AgentSnapshot(Collections.emptyList(), null, 0);
+
+    private final List<AgentSecret> secrets;
+    private final Map<String, AgentSecret> secretsByType;
+    private final String token;
+    private final long loadedAt;
+
+
+    public AgentSnapshot(List<AgentSecret> secrets, String token, long loadedAt) {
+        Map<String, AgentSecret> secretsByType = new HashMap<>();
+        for (AgentSecret secret : secrets) {
+            if (secret.getType() != null) {
+                secretsByType.putIfAbsent(secret.getType(), secret);
+            }
+        }
+        this.secrets = Collections.unmodifiableList(secrets);
+        this.secretsByType = Collections.unmodifiableMap(secretsByType);
+        this.token = token;
+        this.loadedAt = loadedAt;
+    }
+
+
+    /**
+     * @return every rendered secret, in file order
+     */
+    public List<AgentSecret> getSecrets() {
+        return secrets;
+    }
+
+    /**
+     * @param type the value of the secret's {@code secret-type} field
+     * @return the first secret of that type, or null if there is none
+     */
+    public AgentSecret getSecret(String type) {
+        return secretsByType.get(type);
+    }
+
+    /**
+     * @return the token from the file sink, or null if the sink has not been written yet
+     */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * @return the time (ms since the epoch) the files were read
+     */
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+}
@@ -0,0 +1,14 @@
+package com.sc.hcv.agent;
+
+/**
+ * Notified when {@link VaultAgentSecrets} replaces its snapshot after Vault Agent rewrote its files.
+ */
+@FunctionalInterface
+public interface AgentSnapshotListener {
+
+    /**
+     * @param previous the snapshot that was replaced
+     * @param current  the new snapshot
+     */
+    void onReload(AgentSnapshot previous, AgentSnapshot current);
+}
@@ -0,0 +1,95 @@
+package com.sc.hcv.agent;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the files written by Vault Agent into an {@link AgentSnapshot}.
+ * <p>
+ * The rendered template is read with the Jackson streaming parser, token by token, without loading it into a String
+ * or a tree first. Every object inside a top-level array (such as {@code static-secrets}) becomes an
+ * {@link AgentSecret}; nested objects and arrays inside a secret are skipped. Trailing commas are accepted, since
+ * templates that close a {@code with} block after the last field easily render one.
+ */
+final class AgentSnapshotReader {
+
+    private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+            .enable(JsonReadFeature.ALLOW_TRAILING_COMMA)
+            .build();
+
+    private AgentSnapshotReader() {
+    }
+
+
+    /**
+     * @param templateDestination the file the template is rendered to
+     * @param tokenSink           the file the auto-auth sink writes the token to; may not exist yet
+     * @return the snapshot
+     * @throws IOException if the rendered template is missing or is not valid JSON
+     */
+    static AgentSnapshot read(Path templateDestination, Path tokenSink) throws IOException {
+        List<AgentSecret> secrets;
+        try (InputStream in = Files.newInputStream(templateDestination)) {
+            secrets = readSecrets(in);
+        }
+        return new AgentSnapshot(secrets, readToken(tokenSink), System.currentTimeMillis());
+    }
+
+    static List<AgentSecret> readSecrets(InputStream in) throws IOException {
+        List<AgentSecret> secrets = new ArrayList<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Rendered template is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                if (parser.nextToken() != JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    if (parser.currentToken() == JsonToken.START_OBJECT) {
+                        secrets.add(readSecret(parser));
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+        }
+        return secrets;
+    }
+
+    private static AgentSecret readSecret(JsonParser parser) throws IOException {
+        Map<String, String> fields = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (value.isScalarValue() && value != JsonToken.VALUE_NULL) {
+                fields.put(field, parser.getText());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new AgentSecret(fields);
+    }
+
+    private static String readToken(Path tokenSink) throws IOException {
+        try {
+            String token = Files.readString(tokenSink).trim();
+            return token.isEmpty() ? null : token;
+        } catch (NoSuchFileException ex) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.sc.hcv.agent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Serves the secrets and token written by a Vault Agent sidecar from memory.
+ * <p>
+ * The template destination ({@code output/output_file.json}) and the token sink ({@code output/token_id_file}) are
+ * watched with a {@link WatchService}. Changes are debounced the same way as the template's {@code wait} block:
+ * the files are read once no further change arrived for {@code waitMin}, but no later than {@code waitMax} after the
+ * first change. Each reload builds a new immutable {@link AgentSnapshot} and swaps it in atomically, so readers never
+ * take a lock and never see a partly updated snapshot. If a reload fails, the previous snapshot stays in place.
+ */
+public class VaultAgentSecrets implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VaultAgentSecrets.class);
+
+    /**
+     * The {@code wait { min, max }} of the template in {@code vault-agent-config.hcl}.
+     */
+    public static final Duration DEFAULT_WAIT_MIN = Duration.ofSeconds(5);
+    public static final Duration DEFAULT_WAIT_MAX = Duration.ofSeconds(10);
+
+    private final Path templateDestination;
+    private final Path tokenSink;
+    private final long waitMin;
+    private final long waitMax;
+    private final AtomicReference<AgentSnapshot> snapshot = new AtomicReference<>(AgentSnapshot.EMPTY);
+    private final List<AgentSnapshotListener> listeners = new CopyOnWriteArrayList<>();
+    private WatchService watchService;
+    private Thread watcher;
+
+
+    public VaultAgentSecrets(Path templateDestination, Path tokenSink) {
+        this(templateDestination, tokenSink, DEFAULT_WAIT_MIN, DEFAULT_WAIT_MAX);
+    }
+
+    /**
+     * @param templateDestination the file the template is rendered to
+     * @param tokenSink           the file the auto-auth sink writes the token to
+     * @param waitMin             how long the files must stay unchanged before they are read
+     * @param waitMax             the longest time a reload is delayed by further changes
+     */
+    public VaultAgentSecrets(Path templateDestination, Path tokenSink, Duration waitMin, Duration waitMax) {
+        if (waitMin.compareTo(waitMax) > 0) {
+            throw new IllegalArgumentException("waitMin must not be greater than waitMax");
+        }
+        this.templateDestination = templateDestination.toAbsolutePath().normalize();
+        this.tokenSink = tokenSink.toAbsolutePath().normalize();
+        this.waitMin = waitMin.toNanos();
+        this.waitMax = waitMax.toNanos();
+    }
+
+
+    /**
+     * Reads the files once and starts watching them.
+     *
+     * @throws IOException if the rendered template cannot be read or its directory cannot be watched
+     */
+
+    public synchronized void start() throws IOException {
+        if (watcher != null) {
+            throw new IllegalStateException("Already started");
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        Set<Path> directories = new LinkedHashSet<>();
+        directories.add(templateDestination.getParent());
+        directories.add(tokenSink.getParent());
+        for (Path directory : directories) {
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+        snapshot.set(AgentSnapshotReader.read(templateDestination, tokenSink));
+        watcher = new Thread(this::watch, "vault-agent-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * @return the current snapshot; empty until {@link #start()} has been called
+     */
+
+    public AgentSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * @param type the value of the secret's {@code secret-type} field
+     * @return the first secret of that type in the current snapshot, or null if there is none
+     */
+
+    public AgentSecret getSecret(String type) {
+        return snapshot.get().getSecret(type);
+    }
+
+    /**
+     * @return the token from the file sink, or null if the sink has not been written yet
+     */
+
+    public String getToken() {
+        return snapshot.get().getToken();
+    }
+
+    public void addListener(AgentSnapshotListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    /**
+     * Reads the files now and swaps in the new snapshot.
+     *
+     * @return true if the snapshot was replaced
+     */
+
+    boolean reload() {
+        AgentSnapshot current;
+        try {
+            current = AgentSnapshotReader.read(templateDestination, tokenSink);
+        } catch (IOException ex) {
+            LOGGER.warn("Reading {} failed, keeping the previous snapshot", templateDestination, ex);
+            return false;
+        }
+        AgentSnapshot previous = snapshot.getAndSet(current);
+        LOGGER.info("Reloaded {} secrets from {}", current.getSecrets().size(), templateDestination);
+        for (AgentSnapshotListener listener : listeners) {
+            try {
+                listener.onReload(previous, current);
+            } catch (RuntimeException ex) {
+                LOGGER.warn("Agent snapshot listener failed", ex);
+            }
+        }
+        return true;
+    }
+
+    private void watch() {
+        boolean pending = false;
+        long quietUntil = 0;
+        long deadline = 0;
+        try {
+            while (true) {
+                WatchKey key;
+                if (pending) {
+                    long wait = Math.min(quietUntil, deadline) - System.nanoTime();
+                    if (wait <= 0) {
+                        pending = false;
+                        reload();
+                        continue;
+                    }
+                    key = watchService.poll(wait, TimeUnit.NANOSECONDS);
+                    if (key == null) {
+                        continue;
+                    }
+                } else {
+                    key = watchService.take();
+                }
+                boolean changed = isRelevant(key);
+                key.reset();
+                if (changed) {
+                    long now = System.nanoTime();
+                    if (!pending) {
+                        pending = true;
+                        deadline = now + waitMax;
+                    }
+                    quietUntil = now + waitMin;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException ex) {
+            // closed
+        }
+    }
+
+    private boolean isRelevant(WatchKey key) {
+        boolean relevant = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                relevant = true;
+            } else {
+                Path path = ((Path) key.watchable()).resolve((Path) event.context());
+                relevant |= path.equals(templateDestination) || path.equals(tokenSink);
+            }
+        }
+        return relevant;
+    }
+}
@@ -0,0 +1,120 @@
+package com.sc.hcv.agent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class VaultAgentSecretsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path output;
+    private Path token;
+    private VaultAgentSecrets agentSecrets;
+
+    @Before
+    public void setUp() throws Exception {
+        output = folder.getRoot().toPath().resolve("output_file.json");
+        token = folder.getRoot().toPath().resolve("token_id_file");
+        render("p1");
+        Files.writeString(token, "s.token1\n");
+        agentSecrets = new VaultAgentSecrets(output, token, Duration.ofMillis(200), Duration.ofSeconds(1));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        agentSecrets.close();
+    }
+
+    @Test
+    public void testRenderedTemplateIsParsed() throws Exception {
+        List<AgentSecret> secrets = AgentSnapshotReader.readSecrets(new ByteArrayInputStream(template("p1").getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(2, secrets.size());
+        assertEquals("sample1", secrets.get(0).getType());
+        assertEquals("app", secrets.get(0).get("username"));
+        assertEquals("p1", secrets.get(0).get("password"));
+        assertEquals("other", secrets.get(1).get("username"));
+    }
+
+    @Test
+    public void testSnapshotIsReadOnStart() throws Exception {
+        agentSecrets.start();
+
+        assertEquals("p1", agentSecrets.getSecret("sample1").get("password"));
+        assertEquals("s.token1", agentSecrets.getToken());
+        assertNull(agentSecrets.getSecret("sample3"));
+    }
+
+    @Test
+    public void testChangesAreDebouncedIntoOneReload() throws Exception {
+        LinkedBlockingQueue<AgentSnapshot> reloads = new LinkedBlockingQueue<>();
+        agentSecrets.addListener((previous, current) -> reloads.add(current));
+        agentSecrets.start();
+
+        render("p2");
+        Files.writeString(token, "s.token2\n");
+        render("p3");
+
+        AgentSnapshot reloaded = reloads.poll(5, TimeUnit.SECONDS);
+        assertEquals("p3", reloaded.getSecret("sample1").get("password"));
+        assertEquals("s.token2", reloaded.getToken());
+        assertNull(reloads.poll(500, TimeUnit.MILLISECONDS));
+        assertEquals("p3", agentSecrets.getSecret("sample1").get("password"));
+    }
+
+    @Test
+    public void testInvalidFileKeepsPreviousSnapshot() throws Exception {
+        AtomicInteger reloads = new AtomicInteger();
+        agentSecrets.addListener((previous, current) -> reloads.incrementAndGet());
+        agentSecrets.start();
+
+        Files.writeString(output, "{\"static-secrets\": [");
+
+        assertFalse(agentSecrets.reload());
+        assertEquals(0, reloads.get());
+        assertEquals("p1", agentSecrets.getSecret("sample1").get("password"));
+    }
+
+    /**
+     * Writes the file the way Vault Agent does: to a temporary file that is then renamed over the destination.
+     */
+    private void render(String password) throws Exception {
+        Path temp = Files.writeString(folder.getRoot().toPath().resolve("render.tmp"), template(password));
+        Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String template(String password) {
+        return "{\n" +
+                "    \"static-secrets\":[\n" +
+                "        {\n" +
+                "            \"secret-type\":\"sample1\",\n" +
+                "            \"username\":\"app\",\n" +
+                "            \"password\":\"" + password + "\",\n" +
+                "        },\n" +
+                "        {\n" +
+                "            \"secret-type\":\"sample2\",\n" +
+                "            \"username\":\"other\",\n" +
+                "            \"password\":\"secret\"\n" +
+                "        }\n" +
+                "    ]\n" +
+                "}";
+    }
+}